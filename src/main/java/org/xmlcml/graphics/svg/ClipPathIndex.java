@@ -0,0 +1,275 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nu.xom.Element;
+import nu.xom.Elements;
+import nu.xom.ParentNode;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.euclid.Transform2;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimap;
+
+/** clipPaths of a document and the elements which reference them.
+ *
+ * Built in one pass over the descendants of the root; references are read from
+ * either the clip-path attribute or clip-path in the style attribute. Replaces
+ * repeated XPath scans when several clip-path queries are made on the same document.
+ * The index is a snapshot; detachFullyClippedElements() and detachUnusedClipPaths()
+ * keep it up to date but other edits require a new index.
+ *
+ * @author pm286
+ *
+ */
+public class ClipPathIndex {
+	private static final Logger LOG = Logger.getLogger(ClipPathIndex.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String CLIP_PATH_ATT = "clip-path";
+	private static final String TRANSFORM_ATT = "transform";
+	private static final Pattern CLIP_PATH_URL = Pattern.compile("url\\(\\s*#([^\\)\\s]*)\\s*\\)");
+	/** tolerance when testing whether a drawn box is outside its clip box */
+	public static final double DEFAULT_CLIP_MARGIN = 0.5;
+
+	private SVGElement root;
+	private Map<String, SVGClipPath> clipPathById;
+	private ListMultimap<String, SVGElement> elementsByClipPathId;
+	private Map<String, Real2Range> clipBoxById;
+
+	public ClipPathIndex(SVGElement root) {
+		this.root = root;
+		clipPathById = new LinkedHashMap<String, SVGClipPath>();
+		elementsByClipPathId = ArrayListMultimap.create();
+		clipBoxById = new HashMap<String, Real2Range>();
+		indexDescendants(root);
+	}
+
+	private void indexDescendants(Element element) {
+		for (int i = 0; i < element.getChildCount(); i++) {
+			if (!(element.getChild(i) instanceof Element)) {
+				continue;
+			}
+			Element child = (Element) element.getChild(i);
+			if (child instanceof SVGElement) {
+				SVGElement svgChild = (SVGElement) child;
+				if (svgChild instanceof SVGClipPath) {
+					String id = svgChild.getId();
+					if (id != null) {
+						clipPathById.put(id, (SVGClipPath) svgChild);
+					}
+				}
+				String ref = getClipPathRef(svgChild);
+				if (ref != null) {
+					elementsByClipPathId.put(ref, svgChild);
+				}
+			}
+			indexDescendants(child);
+		}
+	}
+
+	/** id referenced by clip-path attribute or clip-path property of style.
+	 *
+	 * @param element may be null
+	 * @return id (without #) or null
+	 */
+	public static String getClipPathRef(SVGElement element) {
+		if (element == null) {
+			return null;
+		}
+		String value = element.getAttributeValue(CLIP_PATH_ATT);
+		if (value == null) {
+			value = element.getStyleProperty(CLIP_PATH_ATT);
+			if (value == null) {
+				return null;
+			}
+		}
+		Matcher matcher = CLIP_PATH_URL.matcher(value);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+
+	public SVGClipPath getClipPath(String id) {
+		return clipPathById.get(id);
+	}
+
+	/** clipPaths in document order.
+	 *
+	 * @return new list
+	 */
+	public List<SVGClipPath> getClipPaths() {
+		return new ArrayList<SVGClipPath>(clipPathById.values());
+	}
+
+	/** elements referencing clipPath.
+	 *
+	 * @param id
+	 * @return list in document order (not a copy; do not alter)
+	 */
+	public List<SVGElement> getElements(String id) {
+		return elementsByClipPathId.get(id);
+	}
+
+	/** referencing elements keyed by clipPath id.
+	 *
+	 * ids may include references to missing clipPaths.
+	 *
+	 * @return map (not a copy)
+	 */
+	public Multimap<String, SVGElement> getElementsByClipPath() {
+		return elementsByClipPathId;
+	}
+
+	/** clipPaths referenced by at least one element.
+	 *
+	 * @return new list in document order
+	 */
+	public List<SVGClipPath> getUsedClipPaths() {
+		List<SVGClipPath> clipPaths = new ArrayList<SVGClipPath>();
+		for (Map.Entry<String, SVGClipPath> entry : clipPathById.entrySet()) {
+			if (elementsByClipPathId.containsKey(entry.getKey())) {
+				clipPaths.add(entry.getValue());
+			}
+		}
+		return clipPaths;
+	}
+
+	/** bounding box of clipPath geometry.
+	 *
+	 * in the user space of the referencing element (clipPathUnits=userSpaceOnUse).
+	 *
+	 * @param id
+	 * @return null if clipPath is missing, has no geometry, is transformed or uses objectBoundingBox units
+	 */
+	public Real2Range getClipBox(String id) {
+		if (!clipBoxById.containsKey(id)) {
+			clipBoxById.put(id, createClipBox(clipPathById.get(id)));
+		}
+		return clipBoxById.get(id);
+	}
+
+	private static Real2Range createClipBox(SVGClipPath clipPath) {
+		if (clipPath == null || clipPath.getAttribute(TRANSFORM_ATT) != null ||
+				"objectBoundingBox".equals(clipPath.getAttributeValue("clipPathUnits"))) {
+			return null;
+		}
+		Real2Range box = null;
+		Elements children = clipPath.getChildElements();
+		for (int i = 0; i < children.size(); i++) {
+			Element child = children.get(i);
+			if (!(child instanceof SVGElement) || child.getAttribute(TRANSFORM_ATT) != null) {
+				return null;
+			}
+			Real2Range childBox = ((SVGElement) child).getBoundingBox();
+			if (childBox == null || !childBox.isValid()) {
+				return null;
+			}
+			box = box == null ? childBox : box.plus(childBox);
+		}
+		return box;
+	}
+
+	/** whether element is drawn entirely outside its clip region.
+	 *
+	 * conservative: false unless the element is a drawable, untransformed element whose
+	 * drawn box (including stroke) and clip box are both known and do not overlap.
+	 *
+	 * @param element
+	 * @param margin added to the drawn box
+	 * @return
+	 */
+	public boolean isFullyClipped(SVGElement element, double margin) {
+		String id = getClipPathRef(element);
+		if (id == null || !element.isDrawable() || element.getAttribute(TRANSFORM_ATT) != null) {
+			return false;
+		}
+		Real2Range clipBox = getClipBox(id);
+		if (clipBox == null) {
+			return false;
+		}
+		Real2Range drawnBox = element.getDrawnBoundingBox(new Transform2());
+		if (drawnBox == null) {
+			return false;
+		}
+		return drawnBox.getXMax() + margin < clipBox.getXMin() || drawnBox.getXMin() - margin > clipBox.getXMax() ||
+				drawnBox.getYMax() + margin < clipBox.getYMin() || drawnBox.getYMin() - margin > clipBox.getYMax();
+	}
+
+	/** detaches elements which lie entirely outside their clip region.
+	 *
+	 * PDF conversions often carry much invisible content.
+	 *
+	 * @return detached elements
+	 */
+	public List<SVGElement> detachFullyClippedElements() {
+		return detachFullyClippedElements(DEFAULT_CLIP_MARGIN);
+	}
+
+	/** detaches elements which lie entirely outside their clip region.
+	 *
+	 * @param margin tolerance added to drawn boxes
+	 * @return detached elements
+	 */
+	public List<SVGElement> detachFullyClippedElements(double margin) {
+		List<SVGElement> detached = new ArrayList<SVGElement>();
+		for (SVGElement element : new ArrayList<SVGElement>(elementsByClipPathId.values())) {
+			if (element.getParent() != null && isFullyClipped(element, margin)) {
+				element.detach();
+				detached.add(element);
+			}
+		}
+		if (detached.size() > 0) {
+			removeDetachedElements();
+		}
+		LOG.trace("detached clipped: "+detached.size());
+		return detached;
+	}
+
+	/** detaches clipPaths which no element references.
+	 *
+	 * @return detached clipPaths
+	 */
+	public List<SVGClipPath> detachUnusedClipPaths() {
+		List<SVGClipPath> detached = new ArrayList<SVGClipPath>();
+		for (SVGClipPath clipPath : getClipPaths()) {
+			String id = clipPath.getId();
+			if (!elementsByClipPathId.containsKey(id)) {
+				clipPath.detach();
+				clipPathById.remove(id);
+				clipBoxById.remove(id);
+				detached.add(clipPath);
+			}
+		}
+		return detached;
+	}
+
+	private void removeDetachedElements() {
+		ListMultimap<String, SVGElement> attached = ArrayListMultimap.create();
+		for (Map.Entry<String, SVGElement> entry : elementsByClipPathId.entries()) {
+			if (isUnderRoot(entry.getValue())) {
+				attached.put(entry.getKey(), entry.getValue());
+			}
+		}
+		elementsByClipPathId = attached;
+	}
+
+	private boolean isUnderRoot(Element element) {
+		for (ParentNode parent = element.getParent(); parent != null; parent = parent.getParent()) {
+			if (parent == root) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
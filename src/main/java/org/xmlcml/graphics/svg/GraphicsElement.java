@@ -27,7 +27,11 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /** 
@@ -43,6 +47,8 @@ public class GraphicsElement extends Element implements SVGConstants {
 
 	public static final String NONE = "none";
 	public static final String FILL = "fill";
+	// used by draw(Graphics2D, Shape) if there is no stroke-width
+	protected static final double DEFAULT_DRAW_STROKE_WIDTH = 0.3;
 
 	public enum FontWeight {
 		BOLD,
@@ -71,14 +77,20 @@ public class GraphicsElement extends Element implements SVGConstants {
 	}
 
 	
-	protected Transform2 cumulativeTransform = null/*new Transform2()*/;
+	// replaced, never mutated, so that threads drawing the same tree see a complete transform
+	protected volatile Transform2 cumulativeTransform = null/*new Transform2()*/;
+	// reused by getCumulativeTransform() while no transform in the ancestry changes
+	private volatile CumulativeTransform cachedCumulativeTransform;
 	protected boolean useStyleAttribute = false;
 	private StyleBundle styleBundle;
 	
-	//save when drawing to Graphics2D	
-	private Color saveColor;
-	private Stroke saveStroke;
-	private AffineTransform savedAffineTransform;
+	//save when drawing to Graphics2D; per thread as several threads may draw the same element
+	private static final ThreadLocal<Deque<SavedGraphics>> savedGraphicsStack = new ThreadLocal<Deque<SavedGraphics>>() {
+		@Override
+		protected Deque<SavedGraphics> initialValue() {
+			return new ArrayDeque<SavedGraphics>();
+		}
+	};
 		
 	/** 
 	 * Constructor.
@@ -110,10 +122,12 @@ public class GraphicsElement extends Element implements SVGConstants {
     }
     
     protected Transform2 ensureCumulativeTransform() {
-    	if (cumulativeTransform == null) {
-    		cumulativeTransform = new Transform2();
+    	Transform2 transform = cumulativeTransform;
+    	if (transform == null) {
+    		transform = new Transform2();
+    		cumulativeTransform = transform;
     	}
-    	return cumulativeTransform;
+    	return transform;
     }
     
     /**
@@ -455,23 +469,30 @@ public class GraphicsElement extends Element implements SVGConstants {
 		}
 	}
 
-	/**
-	 * @return the cumulativeTransform
+	/** product of the transforms of this and its ancestors.
+	 * 
+	 * the transform attributes are found by walking up the parents and compared by
+	 * identity with those last seen, so they are parsed again only after one changes.
+	 * 
+	 * @return the cumulativeTransform (a new copy)
 	 */
 	public Transform2 getCumulativeTransform() {
-		Nodes transforms = this.query("ancestor-or-self::*/@transform");
-		cumulativeTransform = new Transform2();
-		for (int i = transforms.size() - 1; i >= 0; i--) {
-			Transform2 t2 = ((SVGElement) transforms.get(i).getParent()).getTransform();
-			cumulativeTransform = t2.concatenate(cumulativeTransform);
+		CumulativeTransform cached = cachedCumulativeTransform;
+		if (cached == null || !cached.isValid(this)) {
+			cached = new CumulativeTransform(this);
+			cachedCumulativeTransform = cached;
 		}
-		return cumulativeTransform;
+		Transform2 transform = new Transform2(cached.transform);
+		cumulativeTransform = transform;
+		return transform;
 	}
 
 	public StyleBundle getStyleBundle() {
 		String style = this.getStyle();
 		if (style != null) {
-			styleBundle = new StyleBundle(style);
+			StyleBundle bundle = new StyleBundle(style);
+			styleBundle = bundle;
+			return bundle;
 		}
 		return styleBundle;
 	}
@@ -527,6 +548,7 @@ public class GraphicsElement extends Element implements SVGConstants {
 	}
 	
 	protected void saveGraphicsSettingsAndApplyTransform(Graphics2D g2d) {
+		savedGraphicsStack.get().push(new SavedGraphics());
 		this.processTransformToAffineTransform(g2d);
 		saveColor(g2d);
 		saveStroke(g2d);
@@ -535,7 +557,7 @@ public class GraphicsElement extends Element implements SVGConstants {
 
 	private void processTransformToAffineTransform(Graphics2D g2d) {
 		// all transforms done in SVG...  ???
-		this.savedAffineTransform = g2d.getTransform();
+		getSavedGraphics().affineTransform = g2d.getTransform();
 		Transform2 transform2 = this.getCumulativeTransform();
 //		AffineTransform currentAffineTransform = (transform2 == null) ? null : transform2.getAffineTransform();
 //		LOG.debug(String.valueOf(this.getClass().getName())+" saved "+savedAffineTransform+" CUM: "+transform2+" "+currentAffineTransform);
@@ -543,29 +565,44 @@ public class GraphicsElement extends Element implements SVGConstants {
 	}
 	
 	private void resetAffineTransform(Graphics2D g2d) {
-		g2d.setTransform(savedAffineTransform);
+		g2d.setTransform(getSavedGraphics().affineTransform);
 	}
 
 	protected void restoreGraphicsSettingsAndTransform(Graphics2D g2d) {
 		this.resetAffineTransform(g2d);
 		restoreColor(g2d);
 		restoreStroke(g2d);
+		Deque<SavedGraphics> stack = savedGraphicsStack.get();
+		if (!stack.isEmpty()) {
+			stack.pop();
+		}
 	}
 
 	protected void saveStroke(Graphics2D g2d) {
-		this.saveStroke = g2d.getStroke();
+		getSavedGraphics().stroke = g2d.getStroke();
 	}
 
 	protected void saveColor(Graphics2D g2d) {
-		this.saveColor = g2d.getColor();
+		getSavedGraphics().color = g2d.getColor();
 	}
 
 	protected void restoreColor(Graphics2D g2d) {
-		g2d.setColor(this.saveColor);
+		g2d.setColor(getSavedGraphics().color);
 	}
 
 	protected void restoreStroke(Graphics2D g2d) {
-		g2d.setStroke(this.saveStroke);
+		g2d.setStroke(getSavedGraphics().stroke);
+	}
+
+	/** settings saved by the innermost element being drawn on this thread.
+	 */
+	private static SavedGraphics getSavedGraphics() {
+		Deque<SavedGraphics> stack = savedGraphicsStack.get();
+		if (stack.isEmpty()) {
+			// saveColor() etc. called outside saveGraphicsSettingsAndApplyTransform()
+			stack.push(new SavedGraphics());
+		}
+		return stack.peek();
 	}
 
 	protected void fill(Graphics2D g2d, Shape shape) {
@@ -583,7 +620,7 @@ public class GraphicsElement extends Element implements SVGConstants {
 		if (stroke != null && !NONE.equalsIgnoreCase(stroke)) {
 			Color strokeColor = convertStroke(stroke);
 			Double strokeWidth = this.getStrokeWidth();
-			strokeWidth = (strokeWidth == null) ? 0.3 : strokeWidth;
+			strokeWidth = (strokeWidth == null) ? DEFAULT_DRAW_STROKE_WIDTH : strokeWidth;
 			strokeWidth = SVGElement.transform(strokeWidth, cumulativeTransform);
 			Stroke s = new BasicStroke((float) (double) strokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER);
 			g2d.setStroke(s);
@@ -715,5 +752,44 @@ public class GraphicsElement extends Element implements SVGConstants {
 	}
 	
 
-}
 
+	/** Graphics2D settings saved while one element is drawn; confined to the drawing thread.
+	 */
+	private static class SavedGraphics {
+		private AffineTransform affineTransform;
+		private Color color;
+		private Stroke stroke;
+	}
+
+	/** transform values of an element and its ancestors (innermost first) and their product.
+	 */
+	private static final class CumulativeTransform {
+		private final String[] values;
+		private final Transform2 transform;
+
+		CumulativeTransform(GraphicsElement element) {
+			List<String> valueList = new ArrayList<String>();
+			Transform2 transform = new Transform2();
+			for (Node node = element; node instanceof Element; node = node.getParent()) {
+				String value = ((Element) node).getAttributeValue(SVGElement.TRANSFORM);
+				if (value != null) {
+					valueList.add(value);
+					transform = ((SVGElement) node).getTransform().concatenate(transform);
+				}
+			}
+			this.values = valueList.toArray(new String[0]);
+			this.transform = transform;
+		}
+
+		boolean isValid(GraphicsElement element) {
+			int i = 0;
+			for (Node node = element; node instanceof Element; node = node.getParent()) {
+				String value = ((Element) node).getAttributeValue(SVGElement.TRANSFORM);
+				if (value != null && (i >= values.length || value != values[i++])) {
+					return false;
+				}
+			}
+			return i == values.length;
+		}
+	}
+}
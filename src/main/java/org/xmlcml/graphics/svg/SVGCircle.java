@@ -16,7 +16,6 @@
 
 package org.xmlcml.graphics.svg;
 
-import nu.xom.Attribute;
 import nu.xom.Element;
 import nu.xom.Node;
 import org.apache.log4j.Logger;
@@ -130,8 +129,8 @@ public class SVGCircle extends SVGShape {
 	 * @param x1 the x1 to set
 	 */
 	public void setXY(Real2 x1) {
-		this.addAttribute(new Attribute(CX, String.valueOf(x1.getX())));
-		this.addAttribute(new Attribute(CY, String.valueOf(x1.getY())));
+		this.setDouble(CX, x1.getX());
+		this.setDouble(CY, x1.getY());
 	}
 
 	/**
@@ -167,7 +166,7 @@ public class SVGCircle extends SVGShape {
 	 * @param rad the rad to set
 	 */
 	public void setRad(double rad) {
-		this.addAttribute(new Attribute(R, String.valueOf(rad)));
+		this.setDouble(R, rad);
 	}
 	
 	/** get radius
@@ -175,9 +174,7 @@ public class SVGCircle extends SVGShape {
 	 * @return Double.NaN if not set
 	 */
 	public double getRad() {
-		String r = this.getAttributeValue(R);
-		Double d = Double.valueOf(r);
-		return (d == null) ? Double.NaN : d.doubleValue();
+		return this.getDouble(R);
 	}
 
 	public Ellipse2D.Double createAndSetCircle2D() {
@@ -20,8 +20,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import nu.xom.Element;
 import nu.xom.Node;
@@ -30,7 +28,6 @@ import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.xmlcml.euclid.Real2Range;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 
 /** supports clipPath (dummy at present)
@@ -45,11 +42,8 @@ public class SVGClipPath extends SVGElement {
 		LOG.setLevel(Level.DEBUG);
 	}
 
-	private static final String CLIP_PATH_ATT = "clip-path";
 	public final static String TAG = "clipPath";
 	public final static String ALL_SVG_PATH_XPATH = ".//svg:clipPath";
-//	clip-path="url(#clipPath1)"
-	private static Pattern CLIP_PATH_PATTERN = Pattern.compile("url\\(#([^\\)]*)\\)") ;
 
 //	private SVGPath path;
 	
@@ -134,29 +128,35 @@ public class SVGClipPath extends SVGElement {
 		return largestClipPath;
 	}
 
+	/** descendants of svgElement keyed by the clipPath id they reference.
+	 * 
+	 * @param svgElement
+	 * @return
+	 * @see ClipPathIndex
+	 */
 	public static Multimap<String, SVGElement> getElementsByClipPath(SVGElement svgElement) {
-		Multimap<String, SVGElement> svgByClipPathId = ArrayListMultimap.create();
-		List<SVGElement> clippedElements = SVGUtil.getQuerySVGElements(svgElement, ".//*[@clip-path]");
-		for (SVGElement clippedElement : clippedElements) {
-			String clipPathId = SVGClipPath.getClipPathRef(clippedElement);
-			svgByClipPathId.put(clipPathId, clippedElement);
-		}
-		return svgByClipPathId;
+		return new ClipPathIndex(svgElement).getElementsByClipPath();
 	}
 
+	/** id referenced by clip-path attribute or style.
+	 * 
+	 * @see ClipPathIndex#getClipPathRef(SVGElement)
+	 */
 	public static String getClipPathRef(SVGElement element) {
-		String pathRef = null;
-		if (element != null) {
-			String clipPathAttVal = element.getAttributeValue(CLIP_PATH_ATT);
-			if (clipPathAttVal != null) {
-				Matcher matcher = CLIP_PATH_PATTERN.matcher(clipPathAttVal);
-				if (matcher.matches()) {
-					pathRef = matcher.group(1);
-				}
-			}
-			
-		}
-		return pathRef;
+		return ClipPathIndex.getClipPathRef(element);
+	}
+
+	/** clipPath referenced by element's clip-path attribute or style.
+	 * 
+	 * resolved through the id index of the containing tree.
+	 * 
+	 * @param element
+	 * @return null if none or not found
+	 */
+	public static SVGClipPath getReferencedClipPath(SVGElement element) {
+		String id = ClipPathIndex.getClipPathRef(element);
+		SVGElement clipPath = id == null ? null : element.getElementById(id);
+		return clipPath instanceof SVGClipPath ? (SVGClipPath) clipPath : null;
 	}
 
 	public static Map<String, SVGClipPath> getClipPathById(SVGElement svgElement) {
@@ -189,32 +189,19 @@ public class SVGClipPath extends SVGElement {
 	 * @return
 	 */
 	public static List<SVGClipPath> extractUsedClipPaths(SVGElement svgElement) {
-		List<SVGClipPath> clipPaths = extractClipPaths(svgElement);
-		LOG.trace("clipPaths: "+clipPaths.size());
-		for (int i = clipPaths.size() - 1; i >= 0; i--) {
-			SVGClipPath clipPath = clipPaths.get(i);
-			String id = clipPath.getId();
-			List<SVGElement> elementsWithClipPathId = findElementsWithClipPath(svgElement, id);
-			if (elementsWithClipPathId.size() == 0) {
-				LOG.trace("removed "+id);
-				clipPaths.remove(i);
-			} else {
-				LOG.trace(""+id+"; "+elementsWithClipPathId.size());
-			}
-		}
-		return clipPaths;
+		return new ClipPathIndex(svgElement).getUsedClipPaths();
 	}
 
-	/** finds elements with a clip-path attribute with given value.
+	/** finds elements with a clip-path attribute or style referencing id.
+	 * 
+	 * for repeated queries create a ClipPathIndex.
 	 * 
 	 * @param svgElement
 	 * @param id
 	 * @return
 	 */
 	public static List<SVGElement> findElementsWithClipPath(SVGElement svgElement, String id) {
-		List<SVGElement> elementsWithClipPathId = SVGUtil.getQuerySVGElements(
-				svgElement, ".//*[contains(@clip-path,'"+id+"')]");
-		return elementsWithClipPathId;
+		return new ArrayList<SVGElement>(new ClipPathIndex(svgElement).getElements(id));
 	}
 
 	/** removes clipPaths that are no used in body of element.
@@ -227,11 +214,12 @@ public class SVGClipPath extends SVGElement {
 	 */
 	public static void detachUnusedClipPathElements(SVGElement svgElement, List<SVGClipPath> clipPathList) {
 		if (clipPathList != null) {
+			ClipPathIndex clipPathIndex = new ClipPathIndex(svgElement);
 			int nclip = clipPathList.size();
 			for (int i = nclip - 1; i >= 0; i--) {
 				SVGClipPath clipPath = clipPathList.get(i);
 				String id = clipPath.getId();
-				if (SVGClipPath.findElementsWithClipPath(svgElement, id).size() == 0) {
+				if (clipPathIndex.getElements(id).size() == 0) {
 					clipPath.detach();
 					clipPathList.remove(i);
 				}
@@ -19,6 +19,9 @@ package org.xmlcml.graphics.svg;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -26,9 +29,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
 import org.xmlcml.euclid.Angle;
@@ -104,8 +110,37 @@ public class SVGElement extends GraphicsElement {
 	private String strokeSave;
 	private String fillSave;
 
+	// BasicStroke default miter limit; bounds the spikes at sharp joins
+	private static final double MITER_LIMIT = 10.0;
+	// device pixels, for antialiasing
+	private static final double CULLING_MARGIN = 1.0;
+
+	private static volatile boolean culling = true;
+	// drawn, culled; per thread so that concurrent renderings can be counted separately
+	private static final ThreadLocal<long[]> drawCounts = new ThreadLocal<long[]>() {
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+	// draw() pass on this thread whose extents may be used for culling (0 if none)
+	private static final ThreadLocal<long[]> currentDrawPass = new ThreadLocal<long[]>() {
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+	private static final AtomicLong drawPasses = new AtomicLong();
+	// guards lazy creation of the id and type indexes on a root
+	private static final Object INDEX_LOCK = new Object();
+
 	protected Real2Range boundingBox = null;
 	protected boolean boundingBoxCached = false;
+	// set by draw(); null if unknown; only valid in the pass which computed it
+	private Real2Range drawnExtent;
+	private long drawnExtentPass;
+	// only on the root of a tree; see getOrCreateIdIndex()
+	private volatile SVGIdIndex idIndex;
+	// only on the root of a tree; see getOrCreateTypeIndex()
+	private volatile SVGTypeIndex typeIndex;
 	//private AffineTransform savedAffineTransform;
 	
 	
@@ -315,22 +350,203 @@ public class SVGElement extends GraphicsElement {
 	 * @param g2d
 	 */
 	public void draw(Graphics2D g2d) {
-		drawElement(g2d);
+		long[] pass = currentDrawPass.get();
+		long previousPass = pass[0];
+		try {
+			if (culling) {
+				pass[0] = drawPasses.incrementAndGet();
+				ParentNode parent = this.getParent();
+				Transform2 parentTransform = (parent instanceof GraphicsElement) ?
+						((GraphicsElement) parent).getCumulativeTransform() : new Transform2();
+				createDrawnExtents(parentTransform);
+				if (isCulled(g2d, getDeviceClip(g2d))) {
+					drawCounts.get()[1]++;
+					return;
+				}
+			} else {
+				pass[0] = 0;
+			}
+			countDrawn();
+			drawElement(g2d);
+		} finally {
+			pass[0] = previousPass;
+		}
 	}
 	
+	/** draws without culling this element or its descendants.
+	 * 
+	 * for callers that have already culled, such as tiled rendering. No drawn extents
+	 * (and so no bounding boxes) are computed, so several threads may draw the same
+	 * tree at once, each on its own Graphics2D.
+	 * 
+	 * @param g2d
+	 */
+	public void drawUnculled(Graphics2D g2d) {
+		long[] pass = currentDrawPass.get();
+		long previousPass = pass[0];
+		try {
+			pass[0] = 0;
+			countDrawn();
+			drawElement(g2d);
+		} finally {
+			pass[0] = previousPass;
+		}
+	}
+
 	/** draws children recursively
+	 * 
+	 * children (and their subtrees) which lie wholly outside the device or the clip of g2d
+	 * are skipped if culling is on and their extents were computed by the enclosing draw();
+	 * called directly, nothing is culled.
 	 * 
 	 * @param g2d
 	 */
 	protected void drawElement(Graphics2D g2d) {
 		saveGraphicsSettingsAndApplyTransform(g2d);
+		Rectangle2D deviceClip = culling ? getDeviceClip(g2d) : null;
 		Elements gList = this.getChildElements();
 		for (int i = 0; i < gList.size(); i++) {
 			SVGElement svge = (SVGElement) gList.get(i);
-			svge.drawElement(g2d);
+			if (deviceClip != null && svge.isCulled(g2d, deviceClip)) {
+				drawCounts.get()[1]++;
+			} else {
+				svge.countDrawn();
+				svge.drawElement(g2d);
+			}
 		}
 		restoreGraphicsSettingsAndTransform(g2d);
 	}
+
+	/** true if drawElement() paints this element itself rather than its children.
+	 * 
+	 * @return true for shapes, texts, markers and titles
+	 */
+	public boolean isDrawable() {
+		return this instanceof SVGShape || this instanceof SVGText ||
+				this instanceof SVGMarker || this instanceof SVGTitle;
+	}
+
+	/** conservative extent of what drawElement() paints, in root coordinates.
+	 * 
+	 * the bounding box under transform, widened by the stroke (including miter spikes).
+	 * 
+	 * @param transform cumulative transform of this element
+	 * @return null if not known; invalid (empty) range if nothing is painted
+	 */
+	public Real2Range getDrawnBoundingBox(Transform2 transform) {
+		Real2Range bbox = getBoundingBox();
+		if (bbox == null || !bbox.isValid()) {
+			return null;
+		}
+		Real2Range transformedBox = new Real2Range();
+		double[] xx = {bbox.getXMin(), bbox.getXMax()};
+		double[] yy = {bbox.getYMin(), bbox.getYMax()};
+		for (double x : xx) {
+			for (double y : yy) {
+				transformedBox.add(transform(new Real2(x, y), transform));
+			}
+		}
+		Double strokeWidth = getStrokeWidth();
+		strokeWidth = transform(strokeWidth == null ? DEFAULT_DRAW_STROKE_WIDTH : strokeWidth, transform);
+		double margin = MITER_LIMIT * Math.abs(strokeWidth);
+		return new Real2Range(
+				new RealRange(transformedBox.getXMin() - margin, transformedBox.getXMax() + margin),
+				new RealRange(transformedBox.getYMin() - margin, transformedBox.getYMax() + margin));
+	}
+
+	/** drawn extents of this and descendants, recorded for culling.
+	 * 
+	 * @param parentTransform cumulative transform of parent
+	 * @return extent (null if unknown)
+	 */
+	private Real2Range createDrawnExtents(Transform2 parentTransform) {
+		Transform2 transform = (this.getAttribute(TRANSFORM) == null) ? 
+				parentTransform : parentTransform.concatenate(getTransform());
+		drawnExtentPass = currentDrawPass.get()[0];
+		if (isDrawable()) {
+			drawnExtent = getDrawnBoundingBox(transform);
+		} else {
+			boolean known = true;
+			Real2Range extent = new Real2Range();
+			Elements childElements = this.getChildElements();
+			for (int i = 0; i < childElements.size(); i++) {
+				Element child = childElements.get(i);
+				if (child instanceof SVGElement) {
+					Real2Range childExtent = ((SVGElement) child).createDrawnExtents(transform);
+					if (childExtent == null) {
+						known = false;
+					} else if (childExtent.isValid()) {
+						extent = extent.plus(childExtent);
+					}
+				}
+			}
+			drawnExtent = known ? extent : null;
+		}
+		return drawnExtent;
+	}
+
+	private boolean isCulled(Graphics2D g2d, Rectangle2D deviceClip) {
+		long pass = currentDrawPass.get()[0];
+		if (pass == 0 || drawnExtentPass != pass || drawnExtent == null) {
+			return false;
+		} else if (!drawnExtent.isValid()) {
+			return true;
+		}
+		Rectangle2D extent = new Rectangle2D.Double(drawnExtent.getXMin(), drawnExtent.getYMin(),
+				drawnExtent.getXRange().getRange(), drawnExtent.getYRange().getRange());
+		Rectangle2D deviceExtent = g2d.getTransform().createTransformedShape(extent).getBounds2D();
+		deviceExtent.setRect(deviceExtent.getX() - CULLING_MARGIN, deviceExtent.getY() - CULLING_MARGIN,
+				deviceExtent.getWidth() + 2 * CULLING_MARGIN, deviceExtent.getHeight() + 2 * CULLING_MARGIN);
+		return !deviceExtent.intersects(deviceClip);
+	}
+
+	private static Rectangle2D getDeviceClip(Graphics2D g2d) {
+		Rectangle device = g2d.getDeviceConfiguration().getBounds();
+		Shape clip = g2d.getClip();
+		if (clip == null) {
+			return device;
+		}
+		Rectangle2D clipBounds = g2d.getTransform().createTransformedShape(clip).getBounds2D();
+		return device.createIntersection(clipBounds);
+	}
+
+	private void countDrawn() {
+		if (isDrawable()) {
+			drawCounts.get()[0]++;
+		}
+	}
+
+	/** whether draw() skips elements which cannot be visible.
+	 * 
+	 * @param cull default true
+	 */
+	public static void setCulling(boolean cull) {
+		culling = cull;
+	}
+
+	public static boolean isCulling() {
+		return culling;
+	}
+
+	/** number of drawable elements painted on this thread since last reset.
+	 */
+	public static long getDrawnCount() {
+		return drawCounts.get()[0];
+	}
+
+	/** number of elements or subtrees skipped by culling on this thread since last reset.
+	 */
+	public static long getCulledCount() {
+		return drawCounts.get()[1];
+	}
+
+	/** resets counts for this thread.
+	 */
+	public static void resetDrawCounts() {
+		long[] counts = drawCounts.get();
+		counts[0] = 0;
+		counts[1] = 0;
+	}
 	
 	/**
 	 * @return the transform
@@ -596,20 +812,28 @@ public class SVGElement extends GraphicsElement {
 	 * @param value if null clear the transform else concatenate
 	 * may be overridden by children such as Text
 	 */
-	protected void setCumulativeTransformRecursively(Object value) {
-		if (value != null) {
-			Transform2 thisTransform = this.getTransform2FromAttribute();
-			ParentNode parentNode = this.getParent();
-			Transform2 parentTransform = (parentNode instanceof GraphicsElement) ?
-					((GraphicsElement) parentNode).getCumulativeTransform() : new Transform2();
-			this.cumulativeTransform = (thisTransform == null) ? parentTransform : parentTransform.concatenate(thisTransform);
-			for (int i = 0; i < this.getChildElements().size(); i++) {
-				Node child = this.getChild(i);
-				if (child instanceof SVGElement) {
-					((SVGElement) child).setCumulativeTransformRecursively(value);
+	protected void setCumulativeTransformRecursively(final Object value) {
+		final SVGElement root = this;
+		SVGTreeTask.walk(this, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				if (value == null) {
+					element.cumulativeTransform = null;
+					return true;
 				}
+				Transform2 parentTransform;
+				if (element == root) {
+					ParentNode parentNode = element.getParent();
+					parentTransform = (parentNode instanceof GraphicsElement) ?
+							((GraphicsElement) parentNode).getCumulativeTransform() : new Transform2();
+				} else {
+					// already set as parents are visited first
+					parentTransform = ((SVGElement) element.getParent()).cumulativeTransform;
+				}
+				Transform2 thisTransform = element.getTransform2FromAttribute();
+				element.cumulativeTransform = (thisTransform == null) ? parentTransform : parentTransform.concatenate(thisTransform);
+				return true;
 			}
-		}
+		});
 	}
 	
 	/**
@@ -662,6 +886,16 @@ public class SVGElement extends GraphicsElement {
 		return xx;
 	}
 
+	/** sets numeric attribute.
+	 * 
+	 * shapes also keep the value (see SVGShape)
+	 * @param attName
+	 * @param value
+	 */
+	protected void setDouble(String attName, double value) {
+		this.addAttribute(new Attribute(attName, String.valueOf(value)));
+	}
+
 	/**
 	 * uses attribute value to calculate transform
 	 * @return current transform or null
@@ -873,15 +1107,27 @@ public class SVGElement extends GraphicsElement {
 	
 	/** subclassed to tidy format.
 	 * by default formats children
+	 * this rewrites the attributes and loses precision; to round only the
+	 * serialized output use SVGWriter.setDecimalPlaces() or SVGUtil.writeSVG()
 	 * @param places decimal places
 	 */
-	public void format(int places) {
+	public void format(final int places) {
 //		formatCommonAttributes(places);
 		formatTransform(places + EXTRA_TRANSFORM_PRECISION);
-		List<SVGElement> childElements = SVGUtil.getQuerySVGElements(this,  "./svg:*");
-		for (SVGElement childElement : childElements) {
-			childElement.format(places);
+		if (getChildCount() == 0) {
+			return;
 		}
+		SVGTreeTask.walk(this, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				if (element.getClass() == SVGG.class) {
+					// same as format() but continues in this walk
+					element.formatTransform(places + EXTRA_TRANSFORM_PRECISION);
+					return true;
+				}
+				element.format(places);
+				return false;
+			}
+		}, SVGTreeTask.DEFAULT_SEQUENTIAL_THRESHOLD, false);
 	}
 	// be careful as transforms require several places in matrix
 	private void formatCommonAttributes(int places) {
@@ -899,12 +1145,13 @@ public class SVGElement extends GraphicsElement {
 		}
 	}
 
-	public void formatTransformRecursively(int places) {
-		this.formatTransform(places);
-		List<SVGElement> childElements = SVGElement.generateElementList(this, ".//svg:*");
-		for (SVGElement childElement : childElements) {
-			childElement.formatTransformRecursively(places);
-		}
+	public void formatTransformRecursively(final int places) {
+		SVGTreeTask.walk(this, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				element.formatTransform(places);
+				return true;
+			}
+		});
 	}
 
 	private Transform2 formatTransform(Transform2 t2, int places) {
@@ -949,11 +1196,11 @@ public class SVGElement extends GraphicsElement {
 	}
 
 	public void setCX(double x) {
-		this.addAttribute(new Attribute(CX, String.valueOf(x)));
+		this.setDouble(CX, x);
 	}
 
 	public void setCY(double y) {
-		this.addAttribute(new Attribute(CY, String.valueOf(y)));
+		this.setDouble(CY, y);
 	}
 
 	public Real2 getCXY() {
@@ -961,11 +1208,11 @@ public class SVGElement extends GraphicsElement {
 	}
 
 	public void setX(double x) {
-		this.addAttribute(new Attribute(X, String.valueOf(x)));
+		this.setDouble(X, x);
 	}
 
 	public void setY(double y) {
-		this.addAttribute(new Attribute(Y, String.valueOf(y)));
+		this.setDouble(Y, y);
 	}
 	
 	public Real2 getXY() {
@@ -991,11 +1238,11 @@ public class SVGElement extends GraphicsElement {
 	}
 
 	public void setWidth(double w) {
-		this.addAttribute(new Attribute("width", String.valueOf(w)));
+		this.setDouble("width", w);
 	}
 	
 	public void setHeight(double h) {
-		this.addAttribute(new Attribute("height", String.valueOf(h)));
+		this.setDouble("height", h);
 	}
 	
 	public void setClassName(String name) {
@@ -1045,7 +1292,7 @@ public class SVGElement extends GraphicsElement {
 	}
 
 	protected void aggregateBBfromSelfAndDescendants() {
-		Nodes childNodes = this.query("./svg:*", XMLConstants.SVG_XPATH);
+		Nodes childNodes = SVGXPath.query(this, "./svg:*");
 		if (childNodes.size() > 0) {
 			boundingBox = new Real2Range();
 		}
@@ -1167,21 +1414,25 @@ public class SVGElement extends GraphicsElement {
 	}
 
 	public static void applyTransformsWithinElementsAndFormat(SVGElement svgElement) {
-		List<SVGElement> elementList = generateElementList(svgElement, ".//svg:*[@transform]");
-		for (SVGElement element : elementList) {
-			element.applyTransformAttributeAndRemove();
-			element.format(2);
-		}
+		SVGTreeTask.walk(svgElement, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				if (element.getAttribute(TRANSFORM) != null) {
+					element.applyTransformAttributeAndRemove();
+					element.format(2);
+				}
+				return true;
+			}
+		}, SVGTreeTask.DEFAULT_SEQUENTIAL_THRESHOLD, false);
 	}
 
 	/**
 	 * @return
 	 */
 	public static List<SVGElement> generateElementList(Element element, String xpath) {
-		Nodes childNodes = element.query(xpath, XMLConstants.SVG_XPATH);
-		List<SVGElement> elementList = new ArrayList<SVGElement>();
-		for (int i = 0; i < childNodes.size(); i++) {
-			elementList.add((SVGElement) childNodes.get(i));
+		List<Element> elements = SVGXPath.queryElements(element, xpath);
+		List<SVGElement> elementList = new ArrayList<SVGElement>(elements.size());
+		for (Element childElement : elements) {
+			elementList.add((SVGElement) childElement);
 		}
 		return elementList;
 	}
@@ -1204,6 +1455,207 @@ public class SVGElement extends GraphicsElement {
 		return getAttributeValue(ID);
 	}
 
+	/** id index of the tree containing this element.
+	 * 
+	 * created on first use and held by the topmost SVGElement ancestor. Kept up to
+	 * date by insertChild/appendChild, removeChild/detach, replaceChild and changes
+	 * to the id attribute.
+	 * 
+	 * @return index
+	 */
+	public SVGIdIndex getOrCreateIdIndex() {
+		SVGElement root = getRootSVGElement();
+		SVGIdIndex index = root.idIndex;
+		if (index == null) {
+			// readers on several threads must share one index
+			synchronized (INDEX_LOCK) {
+				index = root.idIndex;
+				if (index == null) {
+					index = new SVGIdIndex(root);
+					root.idIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/** tag index of the tree containing this element.
+	 * 
+	 * created on first use and held by the topmost SVGElement ancestor. Kept up to
+	 * date by the same operations as the id index.
+	 * 
+	 * @return index
+	 */
+	public SVGTypeIndex getOrCreateTypeIndex() {
+		SVGElement root = getRootSVGElement();
+		SVGTypeIndex index = root.typeIndex;
+		if (index == null) {
+			synchronized (INDEX_LOCK) {
+				index = root.typeIndex;
+				if (index == null) {
+					index = new SVGTypeIndex(root);
+					root.typeIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/** element with id in the tree containing this element.
+	 * 
+	 * @param id
+	 * @return null if not found
+	 */
+	public SVGElement getElementById(String id) {
+		return getOrCreateIdIndex().getElement(id);
+	}
+
+	/** resolves a local reference (#id or url(#id)) in the tree containing this element.
+	 * 
+	 * @param ref
+	 * @return null if not a local reference or not found
+	 */
+	public SVGElement resolveReference(String ref) {
+		return getOrCreateIdIndex().resolveReference(ref);
+	}
+
+	/** marker referenced by marker-start, marker-mid or marker-end.
+	 * 
+	 * reads the attribute or, if absent, the style.
+	 * 
+	 * @param markerProperty e.g. SVGMarker.MARKER_END
+	 * @return referenced element (normally a marker) or null
+	 */
+	public SVGElement getReferencedMarker(String markerProperty) {
+		String ref = getAttributeValue(markerProperty);
+		if (ref == null) {
+			ref = getStyleProperty(markerProperty);
+		}
+		return ref == null ? null : resolveReference(ref);
+	}
+
+	/** value of property in style attribute.
+	 * 
+	 * @param property
+	 * @return null if absent
+	 */
+	String getStyleProperty(String property) {
+		String style = getAttributeValue(STYLE);
+		if (style == null) {
+			return null;
+		}
+		for (String declaration : style.split(";")) {
+			int idx = declaration.indexOf(':');
+			if (idx != -1 && declaration.substring(0, idx).trim().equals(property)) {
+				return declaration.substring(idx + 1).trim();
+			}
+		}
+		return null;
+	}
+
+	private SVGElement getRootSVGElement() {
+		SVGElement root = this;
+		while (root.getParent() instanceof SVGElement) {
+			root = (SVGElement) root.getParent();
+		}
+		return root;
+	}
+
+	private SVGIdIndex getExistingIdIndex() {
+		return getRootSVGElement().idIndex;
+	}
+
+	private void subtreeAdded(Node child) {
+		if (child instanceof SVGElement) {
+			// no longer a root
+			((SVGElement) child).idIndex = null;
+			((SVGElement) child).typeIndex = null;
+		}
+		SVGElement root = getRootSVGElement();
+		if (root.idIndex != null) {
+			root.idIndex.addSubtree(child);
+		}
+		if (root.typeIndex != null) {
+			root.typeIndex.addSubtree(child);
+		}
+	}
+
+	private void subtreeRemoved(Node child) {
+		SVGElement root = getRootSVGElement();
+		if (root.idIndex != null) {
+			root.idIndex.removeSubtree(child);
+		}
+		if (root.typeIndex != null) {
+			root.typeIndex.removeSubtree(child);
+		}
+	}
+
+	@Override
+	public void insertChild(Node child, int position) {
+		super.insertChild(child, position);
+		subtreeAdded(child);
+	}
+
+	@Override
+	public Node removeChild(int position) {
+		Node child = super.removeChild(position);
+		subtreeRemoved(child);
+		return child;
+	}
+
+	@Override
+	public Node removeChild(Node child) {
+		Node removed = super.removeChild(child);
+		subtreeRemoved(removed);
+		return removed;
+	}
+
+	@Override
+	public void replaceChild(Node oldChild, Node newChild) {
+		super.replaceChild(oldChild, newChild);
+		subtreeRemoved(oldChild);
+		subtreeAdded(newChild);
+	}
+
+	@Override
+	public Nodes removeChildren() {
+		Nodes removed = super.removeChildren();
+		for (int i = 0; i < removed.size(); i++) {
+			subtreeRemoved(removed.get(i));
+		}
+		return removed;
+	}
+
+	@Override
+	public void addAttribute(Attribute attribute) {
+		if (!isIdAttribute(attribute)) {
+			super.addAttribute(attribute);
+			return;
+		}
+		String oldId = getId();
+		super.addAttribute(attribute);
+		SVGIdIndex index = getExistingIdIndex();
+		if (index != null) {
+			index.idChanged(this, oldId, attribute.getValue());
+		}
+	}
+
+	@Override
+	public Attribute removeAttribute(Attribute attribute) {
+		Attribute removed = super.removeAttribute(attribute);
+		if (isIdAttribute(attribute)) {
+			SVGIdIndex index = getExistingIdIndex();
+			if (index != null) {
+				index.idChanged(this, attribute.getValue(), null);
+			}
+		}
+		return removed;
+	}
+
+	private static boolean isIdAttribute(Attribute attribute) {
+		return ID.equals(attribute.getLocalName()) && "".equals(attribute.getNamespaceURI());
+	}
+
 	/** removes all transformation attributes
 	 * @transform
 	 * THIS IS NORMALLY ONLY DONE AFTER APPLYING CUMULATIVE TRANSFORMATIONS
@@ -1447,10 +1899,42 @@ public class SVGElement extends GraphicsElement {
 		this.rotateAndAlsoUpdateTransforms(centreOfRotation, angle);
 	}
 
-	public static void format(List<? extends SVGElement> elementList, int nplaces) {
+	/** formats elements, in parallel if none is inside another.
+	 * 
+	 * @param elementList
+	 * @param nplaces
+	 */
+	public static void format(List<? extends SVGElement> elementList, final int nplaces) {
+		if (!areDisjoint(elementList)) {
+			for (SVGElement element : elementList) {
+				element.format(nplaces);
+			}
+			return;
+		}
+		SVGTreeTask.visitAll(elementList, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				element.format(nplaces);
+				return false;
+			}
+		});
+	}
+
+	// true if no element is a descendant of another (or repeated)
+	private static boolean areDisjoint(List<? extends SVGElement> elementList) {
+		Set<Node> elements = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
 		for (SVGElement element : elementList) {
-			element.format(nplaces);
+			if (!elements.add(element)) {
+				return false;
+			}
+		}
+		for (SVGElement element : elementList) {
+			for (ParentNode parent = element.getParent(); parent != null; parent = parent.getParent()) {
+				if (elements.contains(parent)) {
+					return false;
+				}
+			}
 		}
+		return true;
 	}
 	
 	public boolean isBold() {
@@ -0,0 +1,20 @@
+package org.xmlcml.graphics.svg;
+
+/** callback for SVGTreeTask.
+ * <p>
+ * Called for each SVGElement, parent before children. With a parallel walk, sibling
+ * subtrees may be visited concurrently, so a visitor must only change the element it is
+ * given (or its own descendants) and must not insert, detach or re-id elements.
+ * </p>
+ * @author pm286
+ *
+ */
+public interface SVGElementVisitor {
+
+	/** visits an element.
+	 *
+	 * @param element
+	 * @return false if the descendants of element are not to be visited
+	 */
+	boolean visit(SVGElement element);
+}
@@ -26,7 +26,6 @@ import org.xmlcml.euclid.Real2Range;
 import org.xmlcml.euclid.Transform2;
 import org.xmlcml.graphics.svg.path.PathPrimitiveList;
 
-import nu.xom.Attribute;
 import nu.xom.Element;
 import nu.xom.Node;
 
@@ -153,11 +152,11 @@ public class SVGEllipse extends SVGShape {
 	}
 
 	public void setRX(double x) {
-		this.addAttribute(new Attribute(RX, String.valueOf(x)));
+		this.setDouble(RX, x);
 	}
 
 	public void setRY(double y) {
-		this.addAttribute(new Attribute(RY, String.valueOf(y)));
+		this.setDouble(RY, y);
 	}
 
 	/**
@@ -171,7 +170,7 @@ public class SVGEllipse extends SVGShape {
 	 * @param rad the rad to set
 	 */
 	public void setRad(double rad) {
-		this.addAttribute(new Attribute(R, String.valueOf(rad)));
+		this.setDouble(R, rad);
 	}
 
 	/** extent of ellipse
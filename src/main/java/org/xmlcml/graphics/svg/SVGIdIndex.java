@@ -0,0 +1,192 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.ParentNode;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/** id to element map for an SVG tree.
+ * <p>
+ * Held by the root SVGElement (see SVGElement.getOrCreateIdIndex()) and updated
+ * when elements are inserted, detached or have their id set through SVGElement.
+ * Lookups check the element still has the id and is in the tree, and rebuild the
+ * map if not, so edits that bypass SVGElement (e.g. Attribute.setValue()) are
+ * tolerated. With duplicate ids the first element indexed is returned.
+ * </p>
+ * <p>
+ * As lookups may rebuild the map, all methods are synchronized; several threads may
+ * look up ids at once provided none modifies the tree.
+ * </p>
+ * @author pm286
+ *
+ */
+public class SVGIdIndex {
+	private static final Logger LOG = Logger.getLogger(SVGIdIndex.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private SVGElement root;
+	private Map<String, SVGElement> elementById;
+	// set if an indexed element with a duplicated id was removed
+	private boolean stale;
+	private boolean hasDuplicates;
+	private int rebuildCount;
+
+	SVGIdIndex(SVGElement root) {
+		this.root = root;
+		build();
+	}
+
+	private void build() {
+		elementById = new HashMap<String, SVGElement>();
+		hasDuplicates = false;
+		stale = false;
+		addSubtree(root);
+	}
+
+	/** element with id.
+	 *
+	 * @param id
+	 * @return null if none
+	 */
+	public synchronized SVGElement getElement(String id) {
+		if (id == null) {
+			return null;
+		}
+		if (stale) {
+			rebuild();
+		}
+		SVGElement element = elementById.get(id);
+		if (element != null && (!id.equals(element.getId()) || !isInTree(element))) {
+			rebuild();
+			element = elementById.get(id);
+		}
+		return element;
+	}
+
+	/** resolves #id, url(#id) or url('#id').
+	 *
+	 * @param ref
+	 * @return null if not a local reference or not found
+	 */
+	public SVGElement resolveReference(String ref) {
+		return getElement(getReferencedId(ref));
+	}
+
+	/** id in #id, url(#id) or url('#id').
+	 *
+	 * @param ref
+	 * @return null if not a local reference
+	 */
+	public static String getReferencedId(String ref) {
+		if (ref == null) {
+			return null;
+		}
+		String s = ref.trim();
+		if (s.startsWith("url(") && s.endsWith(")")) {
+			s = s.substring(4, s.length() - 1).trim();
+			if (s.length() >= 2 && (s.charAt(0) == '\'' || s.charAt(0) == '"') && s.charAt(s.length() - 1) == s.charAt(0)) {
+				s = s.substring(1, s.length() - 1).trim();
+			}
+		}
+		return s.startsWith("#") && s.length() > 1 ? s.substring(1) : null;
+	}
+
+	public synchronized int size() {
+		if (stale) {
+			rebuild();
+		}
+		return elementById.size();
+	}
+
+	/** number of full rescans since creation (for diagnostics).
+	 */
+	public synchronized int getRebuildCount() {
+		return rebuildCount;
+	}
+
+	public synchronized void rebuild() {
+		rebuildCount++;
+		build();
+	}
+
+	synchronized void addSubtree(Node node) {
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			Node current = stack.remove(stack.size() - 1);
+			if (!(current instanceof Element)) {
+				continue;
+			}
+			Element element = (Element) current;
+			if (element instanceof SVGElement) {
+				addElement((SVGElement) element, ((SVGElement) element).getId());
+			}
+			// reverse so that document order is kept for duplicates
+			for (int i = element.getChildCount() - 1; i >= 0; i--) {
+				stack.add(element.getChild(i));
+			}
+		}
+	}
+
+	synchronized void removeSubtree(Node node) {
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			Node current = stack.remove(stack.size() - 1);
+			if (!(current instanceof Element)) {
+				continue;
+			}
+			Element element = (Element) current;
+			if (element instanceof SVGElement) {
+				removeElement((SVGElement) element, ((SVGElement) element).getId());
+			}
+			for (int i = 0; i < element.getChildCount(); i++) {
+				stack.add(element.getChild(i));
+			}
+		}
+	}
+
+	synchronized void idChanged(SVGElement element, String oldId, String newId) {
+		removeElement(element, oldId);
+		addElement(element, newId);
+	}
+
+	private void addElement(SVGElement element, String id) {
+		if (id != null) {
+			SVGElement existing = elementById.get(id);
+			if (existing == null) {
+				elementById.put(id, element);
+			} else if (existing != element) {
+				hasDuplicates = true;
+			}
+		}
+	}
+
+	private void removeElement(SVGElement element, String id) {
+		if (id != null && elementById.get(id) == element) {
+			elementById.remove(id);
+			if (hasDuplicates) {
+				// another element may now own the id
+				stale = true;
+			}
+		}
+	}
+
+	private boolean isInTree(Element element) {
+		Node node = element;
+		while (node != null && node != root) {
+			ParentNode parent = node.getParent();
+			node = parent;
+		}
+		return node == root;
+	}
+}
@@ -20,21 +20,21 @@ import nu.xom.Attribute;
 import nu.xom.Element;
 import nu.xom.Node;
 import org.apache.log4j.Logger;
-import org.apache.xerces.impl.dv.util.Base64;
 import org.xmlcml.euclid.*;
 
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.Base64;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /** supports defs
  * 
@@ -47,6 +47,8 @@ public class SVGImage extends SVGShape {
 	
 	private static final String DATA = "data";
 	private static final String BASE64 = "base64";
+	private static final String DATA_IMAGE_PREFIX = DATA+":image/";
+	private static final String BASE64_MARKER = ";"+BASE64+",";
 	public static final String IMAGE_PNG = "image/png";
 	public static final String PNG = "PNG";
 	public static final String IMAGE_BMP = "image/bmp";
@@ -60,7 +62,6 @@ public class SVGImage extends SVGShape {
 	private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
 	public final static String TAG ="image";
 	
-	static Pattern IMG_SRC= Pattern.compile("data:(image/.*);base64,(.*)");
 	public final static String ALL_IMAGE_XPATH = ".//svg:image";
 	
 	private static Map<String, String> mimeType2ImageTypeMap;
@@ -68,6 +69,9 @@ public class SVGImage extends SVGShape {
 		mimeType2ImageTypeMap = new HashMap<String, String>();
 		mimeType2ImageTypeMap.put(IMAGE_PNG, PNG);
 	}
+
+	// decoded image and header for one href; replaced, never mutated, when either is filled
+	private volatile ImageCache imageCache;
 	
 	/** constructor
 	 */
@@ -212,8 +216,7 @@ public class SVGImage extends SVGShape {
 		}
 		setXYWidthHeight(bufferedImage);
 		
-		String base64 = convertBufferedImageToBase64(bufferedImage, imageType);
-		String attValue = createHrefAttributeValue(mimeType, base64);
+		String attValue = createHrefAttributeValue(mimeType, bufferedImage);
 		addXlinkHref(attValue);
 		return attValue;
 	}
@@ -229,50 +232,58 @@ public class SVGImage extends SVGShape {
 		this.setHeight(height);
 	}
 
-	private static String createHrefAttributeValue(String mimeType, String base64) {
-		String attValue = DATA+":"+mimeType+";"+BASE64+","+base64;
-		return attValue;
+	/** encodes image straight after the data:...;base64, prefix.
+	 * 
+	 * avoids holding the encoded bytes and a separate base64 String.
+	 */
+	private static String createHrefAttributeValue(String mimeType, BufferedImage bufferedImage) {
+		StringBuilder sb = new StringBuilder(DATA+":"+mimeType+BASE64_MARKER);
+		appendBase64(bufferedImage, mimeType, sb);
+		return sb.toString();
 	}
 
 	public static String convertBufferedImageToBase64(BufferedImage bufferedImage, String imageType) {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		StringBuilder sb = new StringBuilder();
+		appendBase64(bufferedImage, imageType, sb);
+		return sb.toString();
+	}
+
+	/** writes image as base64 PNG onto end of sb.
+	 * 
+	 * The encoder writes directly into sb; there is no intermediate byte[].
+	 * 
+	 * @param bufferedImage
+	 * @param imageType (at present always written as PNG)
+	 * @param sb
+	 */
+	public static void appendBase64(BufferedImage bufferedImage, String imageType, StringBuilder sb) {
 		String format = SVGImage.getFormatFromMimeType(imageType); 
 		LOG.trace("format "+format);
 		format = SVGImage.PNG;
+		OutputStream os = Base64.getEncoder().wrap(new StringBuilderOutputStream(sb));
 		try {
-			boolean ok = ImageIO.write(bufferedImage, format, baos);
+			boolean ok = ImageIO.write(bufferedImage, format, os);
 			if (!ok) {
-				throw new RuntimeException("ImageIO: Cannot convert bufferedImage to ByteArrayOutputStream for type: "+imageType+" / "+bufferedImage);
+				throw new RuntimeException("ImageIO: Cannot convert bufferedImage to base64 for type: "+imageType+" / "+bufferedImage);
 			}
-			baos.close();
+			// writes final padding
+			os.close();
 		} catch (IOException e) {
 			throw new RuntimeException("Cannot read image", e);
 		}
 		LOG.trace("BufferedImage "+bufferedImage);
-		byte[] byteArray = baos.toByteArray();
-		String base64 = Base64.encode(byteArray);
-		return base64;
 	}
 	
 	public static BufferedImage readSrcDataToBufferedImage(String srcValue) {
 //		src="data:image/png;base64,iVBORw0KGgoA..."
-		Matcher matcher = IMG_SRC.matcher(srcValue);
-		String mimeType = null;
-		String srcBase64 = null;
-		if (matcher.matches()) {
-			mimeType = matcher.group(1);
-			srcBase64 = matcher.group(2);
-			LOG.trace("base64 "+srcBase64.length());
-		} else {
+		int start = getBase64Start(srcValue);
+		if (start == -1) {
 			throw new RuntimeException("Cannot convert img/src");
 		}
-
-		byte[] byteArray = Base64.decode(srcBase64);
-		LOG.trace("bytes "+byteArray.length);
-		ByteArrayInputStream bais = new ByteArrayInputStream(byteArray);
+		LOG.trace("base64 "+(srcValue.length() - start));
 		BufferedImage bufferedImage = null;
 		try {
-			bufferedImage = ImageIO.read(bais);
+			bufferedImage = ImageIO.read(createBase64InputStream(srcValue, start));
 			LOG.trace(bufferedImage);
 		} catch (IOException e) {
 			throw new RuntimeException("Cannot read base64 image", e);
@@ -280,18 +291,178 @@ public class SVGImage extends SVGShape {
 		return bufferedImage;
 	}
 
+	/** decoded bytes of base64 data read directly from the characters.
+	 * 
+	 * whitespace and line breaks in the data are skipped.
+	 * 
+	 * @param chars
+	 * @param start offset of first base64 character
+	 * @return stream of decoded bytes
+	 */
+	public static InputStream createBase64InputStream(CharSequence chars, int start) {
+		return Base64.getMimeDecoder().wrap(new CharSequenceInputStream(chars, start));
+	}
+
+	/** offset of base64 data in data:image/...;base64,...
+	 * 
+	 * @param srcValue
+	 * @return offset or -1 if not a base64 image
+	 */
+	public static int getBase64Start(String srcValue) {
+		if (srcValue == null || !srcValue.startsWith(DATA_IMAGE_PREFIX)) {
+			return -1;
+		}
+		int idx = srcValue.indexOf(BASE64_MARKER, DATA_IMAGE_PREFIX.length());
+		return idx == -1 ? -1 : idx + BASE64_MARKER.length();
+	}
+
+	/** mimeType in data:image/...;base64,...
+	 * 
+	 * @param srcValue
+	 * @return mimeType or null if not a base64 image
+	 */
+	public static String getMimeTypeFromSrcValue(String srcValue) {
+		int start = getBase64Start(srcValue);
+		return start == -1 ? null : srcValue.substring(DATA.length() + 1, start - BASE64_MARKER.length());
+	}
+
 	/** converts href/data attribute to BufferedImage.
+	 * 
+	 * The decoded image is cached (softly) until the href changes, so repeated calls
+	 * return the same shared instance. Do not draw on it or set its pixels; use
+	 * {@link #createBufferedImage()} for an image the caller may modify.
 	 * 
 	 * @return null if no image possible.
 	 */
 	public BufferedImage getBufferedImage() {
-		BufferedImage bufferedImage = null;
 		String hrefData = this.getImageValue();
-		if (hrefData != null) {
+		if (hrefData == null) {
+			return null;
+		}
+		ImageCache cache = getImageCache(hrefData);
+		BufferedImage bufferedImage = cache.getBufferedImage();
+		if (bufferedImage == null) {
 			bufferedImage = readSrcDataToBufferedImage(hrefData);
+			if (bufferedImage != null) {
+				imageCache = cache.withBufferedImage(bufferedImage);
+			}
 		}
 		return bufferedImage;
 	}
+
+	/** decodes href/data attribute to a new BufferedImage.
+	 * 
+	 * Neither reads nor fills the cache; the caller owns the result.
+	 * 
+	 * @return null if no image possible.
+	 * @see #getBufferedImage()
+	 */
+	public BufferedImage createBufferedImage() {
+		String hrefData = this.getImageValue();
+		return hrefData == null ? null : readSrcDataToBufferedImage(hrefData);
+	}
+
+	/** pixel width of embedded image.
+	 * 
+	 * read from the image header; does not decode the pixels unless already cached.
+	 * 
+	 * @return width or null if no embedded image
+	 */
+	public Integer getImagePixelWidth() {
+		ImageHeader header = getImageHeader();
+		return header == null ? null : header.width;
+	}
+
+	/** pixel height of embedded image.
+	 * 
+	 * @return height or null if no embedded image
+	 * @see #getImagePixelWidth()
+	 */
+	public Integer getImagePixelHeight() {
+		ImageHeader header = getImageHeader();
+		return header == null ? null : header.height;
+	}
+
+	/** mimeType of embedded image.
+	 * 
+	 * taken from the data URI; if absent from the ImageReader.
+	 * 
+	 * @return mimeType or null if no embedded image
+	 */
+	public String getImageMimeType() {
+		ImageHeader header = getImageHeader();
+		return header == null ? null : header.mimeType;
+	}
+
+	/** forces the next image query to decode the href again.
+	 */
+	public void clearImageCache() {
+		imageCache = null;
+	}
+
+	private ImageCache getImageCache(String hrefData) {
+		ImageCache cache = imageCache;
+		// usually the same String instance as the attribute is unchanged
+		if (cache == null || !hrefData.equals(cache.href)) {
+			cache = new ImageCache(hrefData, null, null);
+			imageCache = cache;
+		}
+		return cache;
+	}
+
+	private ImageHeader getImageHeader() {
+		String hrefData = this.getImageValue();
+		int start = getBase64Start(hrefData);
+		if (start == -1) {
+			return null;
+		}
+		ImageCache cache = getImageCache(hrefData);
+		ImageHeader imageHeader = cache.header;
+		if (imageHeader == null) {
+			BufferedImage bufferedImage = cache.getBufferedImage();
+			imageHeader = bufferedImage != null ?
+					new ImageHeader(bufferedImage.getWidth(), bufferedImage.getHeight(), getMimeTypeFromSrcValue(hrefData)) :
+					readImageHeader(hrefData, start);
+			if (imageHeader != null) {
+				imageCache = cache.withHeader(imageHeader);
+			}
+		}
+		return imageHeader;
+	}
+
+	/** reads dimensions with ImageReader; only the header is decoded.
+	 */
+	private static ImageHeader readImageHeader(String hrefData, int start) {
+		ImageInputStream iis = null;
+		try {
+			iis = ImageIO.createImageInputStream(createBase64InputStream(hrefData, start));
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if (!readers.hasNext()) {
+				throw new RuntimeException("No ImageReader for: "+getMimeTypeFromSrcValue(hrefData));
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(iis, true, true);
+				String mimeType = getMimeTypeFromSrcValue(hrefData);
+				if (mimeType == null && reader.getOriginatingProvider() != null) {
+					mimeType = reader.getOriginatingProvider().getMIMETypes()[0];
+				}
+				return new ImageHeader(reader.getWidth(0), reader.getHeight(0), mimeType);
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read image header", e);
+		} finally {
+			if (iis != null) {
+				try {
+					iis.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
 	/*
 	 * <image transform="matrix(0.06781766590473381,-0.0,-0.0,0.0678967742330725,33.93199920654297,33.12698745727539)"
 	 *  x="0.0" y="0.0" width="702.0" height="310.0" xlink:href="data:image/png;base64,iVBORw0KGgoAAAA..."
@@ -333,10 +504,8 @@ public class SVGImage extends SVGShape {
 
 	public boolean writeImage(File imageFile, String mimeType) throws IOException {
 		boolean wrote = false;
-		Attribute xLinkAttribute = this.getAttribute(HREF, XLINK_NS);
-		if (xLinkAttribute != null) {
-			String xLinkValue = xLinkAttribute.getValue();
-			BufferedImage bufferedImage = readSrcDataToBufferedImage(xLinkValue);
+		if (this.getImageValue() != null) {
+			BufferedImage bufferedImage = getBufferedImage();
 			SVGImage.writeBufferedImage(bufferedImage, mimeType, imageFile);
 			wrote = true;
 		}
@@ -432,6 +601,7 @@ public class SVGImage extends SVGShape {
 			Attribute hrefAttribute = this.getAttribute(HREF, XLINK_NS);
 			if (hrefAttribute != null) {
 				hrefAttribute.detach();
+				clearImageCache();
 			}
 		}
 	}
@@ -453,12 +623,14 @@ public class SVGImage extends SVGShape {
 			Attribute hrefAttribute = this.getAttribute(HREF, XLINK_NS);
 			if (hrefAttribute != null) {
 				hrefAttribute.detach();
+				clearImageCache();
 			}
 		}
 	}
 
 private void addXlinkHref(String href) {
 	this.addAttribute(new Attribute(XLINK_PREF+":"+HREF, XLINK_NS, href));
+	clearImageCache();
 }
 	
 	/** creates an SVGImage from file.
@@ -485,8 +657,7 @@ private void addXlinkHref(String href) {
 		if (format == null) {
 			throw new RuntimeException("Unsupported mime type: "+imageType);
 		}
-		String base64 = SVGImage.convertBufferedImageToBase64(bufferedImage, format);
-		String imageData = SVGImage.createHrefAttributeValue(imageType, base64);
+		String imageData = SVGImage.createHrefAttributeValue(imageType, bufferedImage);
 		LOG.trace(imageData);
 		if (imageData != null) {
 		    svgImage = new SVGImage();
@@ -547,8 +718,7 @@ private void addXlinkHref(String href) {
 		BufferedImage bufferedImage = this.getBufferedImage();
 		if (bufferedImage != null) {
 			BufferedImage transformedImage = applyTransformToImage(bufferedImage, transform);
-			String imageData = SVGImage.convertBufferedImageToBase64(transformedImage, SVGImage.IMAGE_PNG);
-			imageData = SVGImage.createHrefAttributeValue(SVGImage.IMAGE_PNG, imageData);
+			String imageData = SVGImage.createHrefAttributeValue(SVGImage.IMAGE_PNG, transformedImage);
 			this.setImageData(imageData);
 		}
 	}
@@ -600,4 +770,101 @@ private void addXlinkHref(String href) {
 	}
 
 
+	/** ASCII bytes of a CharSequence without copying it.
+	 */
+	private static class CharSequenceInputStream extends InputStream {
+		private CharSequence chars;
+		private int pos;
+
+		CharSequenceInputStream(CharSequence chars, int start) {
+			this.chars = chars;
+			this.pos = start;
+		}
+
+		@Override
+		public int read() {
+			return pos < chars.length() ? chars.charAt(pos++) & 0xff : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			int n = Math.min(len, chars.length() - pos);
+			if (n <= 0) {
+				return -1;
+			}
+			for (int i = 0; i < n; i++) {
+				b[off + i] = (byte) chars.charAt(pos++);
+			}
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return chars.length() - pos;
+		}
+	}
+
+	/** appends ASCII bytes to a StringBuilder.
+	 */
+	private static class StringBuilderOutputStream extends OutputStream {
+		private StringBuilder sb;
+
+		StringBuilderOutputStream(StringBuilder sb) {
+			this.sb = sb;
+		}
+
+		@Override
+		public void write(int b) {
+			sb.append((char) (b & 0xff));
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			for (int i = 0; i < len; i++) {
+				sb.append((char) (b[off + i] & 0xff));
+			}
+		}
+	}
+
+	private static final class ImageHeader {
+		private final int width;
+		private final int height;
+		private final String mimeType;
+
+		ImageHeader(int width, int height, String mimeType) {
+			this.width = width;
+			this.height = height;
+			this.mimeType = mimeType;
+		}
+	}
+
+	/** href with its decoded image and header; immutable so readers on other threads
+	 * never see an image or header paired with a different href.
+	 */
+	private static final class ImageCache {
+		private final String href;
+		private final SoftReference<BufferedImage> imageRef;
+		private final ImageHeader header;
+
+		ImageCache(String href, SoftReference<BufferedImage> imageRef, ImageHeader header) {
+			this.href = href;
+			this.imageRef = imageRef;
+			this.header = header;
+		}
+
+		BufferedImage getBufferedImage() {
+			return imageRef == null ? null : imageRef.get();
+		}
+
+		ImageCache withBufferedImage(BufferedImage bufferedImage) {
+			return new ImageCache(href, new SoftReference<BufferedImage>(bufferedImage), header);
+		}
+
+		ImageCache withHeader(ImageHeader header) {
+			return new ImageCache(href, imageRef, header);
+		}
+	}
 }
@@ -18,6 +18,7 @@ package org.xmlcml.graphics.svg;
 
 import java.awt.BasicStroke;
 import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
@@ -67,6 +68,7 @@ public class SVGLine extends SVGShape {
 	public final static String TAG ="line";
 	public final static double EPS = 0.01;
 
+	private static final String[] GEOMETRY_ATTRIBUTES = {X1, Y1, X2, Y2};
 	private Line2D.Double line2;
 	private Line2 euclidLine;
 	
@@ -157,8 +159,8 @@ public class SVGLine extends SVGShape {
 		if (x12 == null) {
 			System.err.println("null x2/y2 in line: ");
 		} else {
-			this.addAttribute(new Attribute(X+(serial+1), String.valueOf(x12.getX())));
-			this.addAttribute(new Attribute(Y+(serial+1), String.valueOf(x12.getY())));
+			this.setDouble(X+(serial+1), x12.getX());
+			this.setDouble(Y+(serial+1), x12.getY());
 			if (euclidLine != null) {
 				euclidLine.setXY(x12, serial);
 			}
@@ -185,8 +187,8 @@ public class SVGLine extends SVGShape {
 		if (x12 == null) {
 			System.err.println("null x2/y2 in line: ");
 		} else {
-			this.addAttribute(new Attribute(X+serial, String.valueOf(x12.getX())));
-			this.addAttribute(new Attribute(Y+serial, String.valueOf(x12.getY())));
+			this.setDouble(X+serial, x12.getX());
+			this.setDouble(Y+serial, x12.getY());
 			if (euclidLine != null) {
 				euclidLine.setXY(x12, serial);
 			}
@@ -211,8 +213,7 @@ public class SVGLine extends SVGShape {
 	
 	protected void drawElement(Graphics2D g2d) {
 		saveGraphicsSettingsAndApplyTransform(g2d);
-		ensureCumulativeTransform();
-		Line2D line = createAndSetLine2D();
+		Shape line = createTransformedShape();
 		fill(g2d, line);
 		draw(g2d, line);
 		restoreGraphicsSettingsAndTransform(g2d);
@@ -227,6 +228,16 @@ public class SVGLine extends SVGShape {
 		}
 	}
 
+	@Override
+	protected Shape createShape() {
+		return new Line2D.Double(getDouble(X1), getDouble(Y1), getDouble(X2), getDouble(Y2));
+	}
+
+	@Override
+	protected String[] getGeometryAttributeNames() {
+		return GEOMETRY_ATTRIBUTES;
+	}
+
 	public Line2D.Double createAndSetLine2D() {
 		ensureCumulativeTransform();
 		double x1 = this.getDouble(X1);
@@ -17,6 +17,7 @@
 package org.xmlcml.graphics.svg;
 
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.GeneralPath;
@@ -76,6 +77,7 @@ public class SVGPath extends SVGShape {
 	public final static Pattern REPEATED_ML = Pattern.compile("ML(ML)*");
 	private static final double CIRCLE_EPSILON = 0.01;
 	
+	private static final String[] GEOMETRY_ATTRIBUTES = {D};
 	private GeneralPath path2;
 	private boolean isClosed = false;
 	private Real2Array coords = null; // for diagnostics
@@ -222,11 +224,15 @@ public class SVGPath extends SVGShape {
 	
 	protected void drawElement(Graphics2D g2d) {
 		saveGraphicsSettingsAndApplyTransform(g2d);
+		// restored afterwards so that later elements do not depend on drawing order
+		Object antialias = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
 		setAntialiasing(g2d, true);
 //		setAntialiasing(g2d, false);
-		GeneralPath path = createPath2D();
-		path.transform(cumulativeTransform.getAffineTransform());
+		Shape path = createTransformedShape();
 		drawFill(g2d, path);
+		if (antialias != null) {
+			g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialias);
+		}
 		restoreGraphicsSettingsAndTransform(g2d);
 	}
 
@@ -502,6 +508,20 @@ public class SVGPath extends SVGShape {
 		return 0.1;
 	}
 
+	@Override
+	protected Shape createShape() {
+		GeneralPath path = new GeneralPath();
+		for (SVGPathPrimitive pathPrimitive : createPathPrimitives()) {
+			pathPrimitive.operateOn(path);
+		}
+		return path;
+	}
+
+	@Override
+	protected String[] getGeometryAttributeNames() {
+		return GEOMETRY_ATTRIBUTES;
+	}
+
 	public GeneralPath createPath2D() {
 		path2 = new GeneralPath();
 		ensurePrimitives();
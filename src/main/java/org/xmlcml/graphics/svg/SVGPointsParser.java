@@ -0,0 +1,193 @@
+package org.xmlcml.graphics.svg;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.euclid.Real2Array;
+import org.xmlcml.euclid.RealArray;
+
+/** parses the points attribute of polyline and polygon.
+ * <p>
+ * Scans the characters once into an x,y,x,y... double[] without regexes, substrings
+ * or boxing. Accepts the SVG number list grammar: whitespace and/or a single comma
+ * between numbers, or no separator where the next number starts with a sign or a
+ * second decimal point ("1-2", "0.5.5"); signs, leading or trailing points and
+ * exponents. Values are identical to Double.parseDouble(); short decimals are
+ * converted directly and others fall back to Double.parseDouble().
+ * </p>
+ * @author pm286
+ *
+ */
+public class SVGPointsParser {
+	private static final Logger LOG = Logger.getLogger(SVGPointsParser.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	// exactly representable powers of ten
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+	};
+	// largest mantissa converted exactly (2^53)
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	private String points;
+	private int pos;
+	private int length;
+
+	private SVGPointsParser(String points) {
+		this.points = points;
+		this.length = points.length();
+	}
+
+	/** parses points into x0, y0, x1, y1 ...
+	 *
+	 * @param points attribute value
+	 * @return coordinates; null if points is null
+	 * @throws RuntimeException if points is malformed or has an odd number of values
+	 */
+	public static double[] parseCoordinates(String points) {
+		if (points == null) {
+			return null;
+		}
+		return new SVGPointsParser(points).parse();
+	}
+
+	/** parses points into Real2Array.
+	 *
+	 * @param points attribute value
+	 * @return null if points is null
+	 */
+	public static Real2Array createReal2Array(String points) {
+		double[] xy = parseCoordinates(points);
+		return xy == null ? null : Real2Array.createFromPairs(new RealArray(xy));
+	}
+
+	private double[] parse() {
+		// most coordinates are followed by one separator; grow if that underestimates
+		double[] xy = new double[Math.max(2, length / 4)];
+		int count = 0;
+		skipSeparator(true);
+		while (pos < length) {
+			if (count == xy.length) {
+				double[] newXY = new double[count * 2];
+				System.arraycopy(xy, 0, newXY, 0, count);
+				xy = newXY;
+			}
+			xy[count++] = readNumber();
+			skipSeparator(false);
+		}
+		if (count % 2 != 0) {
+			throw new RuntimeException("odd number of coordinates ("+count+") in points: "+abbreviate());
+		}
+		if (count == xy.length) {
+			return xy;
+		}
+		double[] result = new double[count];
+		System.arraycopy(xy, 0, result, 0, count);
+		return result;
+	}
+
+	// whitespace, optionally one comma, whitespace
+	private void skipSeparator(boolean start) {
+		skipWhitespace();
+		if (!start && pos < length && points.charAt(pos) == ',') {
+			pos++;
+			skipWhitespace();
+			if (pos >= length) {
+				throw new RuntimeException("trailing comma in points: "+abbreviate());
+			}
+		}
+	}
+
+	private void skipWhitespace() {
+		while (pos < length) {
+			char c = points.charAt(pos);
+			if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+				break;
+			}
+			pos++;
+		}
+	}
+
+	private double readNumber() {
+		int start = pos;
+		boolean negative = false;
+		char c = points.charAt(pos);
+		if (c == '+' || c == '-') {
+			negative = c == '-';
+			pos++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		// more than 18 significant digits overflow the mantissa
+		int significant = 0;
+		int scale = 0;
+		boolean exact = true;
+		while (pos < length && (c = points.charAt(pos)) >= '0' && c <= '9') {
+			if (mantissa != 0 || c != '0') {
+				significant++;
+			}
+			if (significant > 18) {
+				exact = false;
+			} else {
+				mantissa = mantissa * 10 + (c - '0');
+			}
+			digits++;
+			pos++;
+		}
+		if (pos < length && points.charAt(pos) == '.') {
+			pos++;
+			while (pos < length && (c = points.charAt(pos)) >= '0' && c <= '9') {
+				if (mantissa != 0 || c != '0') {
+					significant++;
+				}
+				if (significant > 18) {
+					exact = false;
+				} else {
+					mantissa = mantissa * 10 + (c - '0');
+					scale++;
+				}
+				digits++;
+				pos++;
+			}
+		}
+		if (digits == 0) {
+			throw new RuntimeException("bad number at "+start+" in points: "+abbreviate());
+		}
+		int exponent = 0;
+		if (pos < length && ((c = points.charAt(pos)) == 'e' || c == 'E')) {
+			int ePos = pos;
+			pos++;
+			boolean negativeExponent = false;
+			if (pos < length && ((c = points.charAt(pos)) == '+' || c == '-')) {
+				negativeExponent = c == '-';
+				pos++;
+			}
+			int expDigits = 0;
+			while (pos < length && (c = points.charAt(pos)) >= '0' && c <= '9') {
+				if (exponent < 10000) {
+					exponent = exponent * 10 + (c - '0');
+				}
+				expDigits++;
+				pos++;
+			}
+			if (expDigits == 0) {
+				throw new RuntimeException("bad exponent at "+ePos+" in points: "+abbreviate());
+			}
+			if (negativeExponent) {
+				exponent = -exponent;
+			}
+		}
+		int power = exponent - scale;
+		if (exact && mantissa <= MAX_EXACT_MANTISSA && power >= -22 && power <= 22) {
+			double value = (power >= 0) ? mantissa * POWERS_OF_TEN[power] : mantissa / POWERS_OF_TEN[-power];
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(points.substring(start, pos));
+	}
+
+	private String abbreviate() {
+		return points.length() > 60 ? points.substring(0, 60)+"..." : points;
+	}
+}
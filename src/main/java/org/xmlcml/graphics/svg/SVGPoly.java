@@ -58,6 +58,10 @@ public abstract class SVGPoly extends SVGShape {
 	public final static List<String> SVG_ATTS = Arrays.asList(POINTS);
 	
 	protected Real2Array real2Array;
+	// points attribute value real2Array was read from or written as
+	private String pointsSource;
+	// outline and the real2Array it was drawn from (which may change without the points attribute)
+	private volatile PolyShape polyShape;
 	protected List<SVGLine> lineList;
 	protected List<SVGMarker> markerList;
 
@@ -114,6 +118,7 @@ public abstract class SVGPoly extends SVGShape {
 		} else {
 			String points = r2a.getStringArray();
 			addAttribute(new Attribute(POINTS, points));
+			pointsSource = getAttributeValue(POINTS);
 			// copy unless same object
 			if (real2Array != r2a) {
 				real2Array = new Real2Array(r2a);
@@ -121,10 +126,15 @@ public abstract class SVGPoly extends SVGShape {
 		}
 	}
 	
+	/** coordinates, parsed from the points attribute only when that has changed.
+	 * 
+	 * if the points attribute has been removed the existing array is kept
+	 */
 	public Real2Array getReal2Array() {
-		if (real2Array == null) {
-			String pointsValue = getAttributeValue("points");
-			real2Array = Real2Array.createFromPairs(pointsValue, ArrayBase.ARRAY_REGEX);
+		String pointsValue = getAttributeValue(POINTS);
+		if (real2Array == null || (pointsValue != null && pointsValue != pointsSource)) {
+			real2Array = SVGPointsParser.createReal2Array(pointsValue);
+			pointsSource = pointsValue;
 		}
 		return real2Array;
 	}
@@ -312,7 +322,8 @@ public abstract class SVGPoly extends SVGShape {
 		}
 		if (lineList == null) {
 			if (pointsAtt != null) {
-				real2Array = Real2Array.createFromPairs(pointsAtt.getValue(), ArrayBase.ARRAY_REGEX);
+				real2Array = SVGPointsParser.createReal2Array(pointsAtt.getValue());
+				pointsSource = pointsAtt.getValue();
 			}
 			String id = getId();
 			lineList = new ArrayList<SVGLine>();
@@ -411,23 +422,85 @@ public abstract class SVGPoly extends SVGShape {
 
 	protected void drawPolylineOrGon(Graphics2D g2d, boolean closed) {
 		saveGraphicsSettingsAndApplyTransform(g2d);
-		getReal2Array();
-		GeneralPath poly = 
-		        new GeneralPath(GeneralPath.WIND_EVEN_ODD, real2Array.size());
-		Real2 xy0 = real2Array.elementAt(0);
-		xy0 = transform(xy0, cumulativeTransform);
+		Shape poly = createTransformedShape(getCachedShape(closed));
+		if (poly != null) {
+			fill(g2d, poly);
+			draw(g2d, poly);
+		}
+		restoreGraphicsSettingsAndTransform(g2d);
+	}
+
+	/** open outline of the points, reused until real2Array changes.
+	 * 
+	 * @return shape (shared; do not alter) or null if no points
+	 */
+	@Override
+	public Shape getCachedShape() {
+		return getCachedShape(false);
+	}
+
+	/** outline of the points, reused until real2Array or closed changes.
+	 * 
+	 * real2Array may be altered without the points attribute, so it is compared by
+	 * identity and size; call clearCachedShape() after moving points in place.
+	 * 
+	 * @param closed close the outline (polygon)
+	 * @return shape (shared; do not alter) or null if no points
+	 */
+	public Shape getCachedShape(boolean closed) {
+		Real2Array array = getReal2Array();
+		int size = (array == null) ? 0 : array.size();
+		PolyShape cached = polyShape;
+		if (cached == null || cached.array != array || cached.size != size || cached.closed != closed) {
+			cached = new PolyShape(createShape(array, size, closed), array, size, closed);
+			polyShape = cached;
+		}
+		return cached.shape;
+	}
+
+	@Override
+	public void clearCachedShape() {
+		super.clearCachedShape();
+		polyShape = null;
+	}
+
+	@Override
+	protected Shape createShape() {
+		Real2Array array = getReal2Array();
+		return createShape(array, (array == null) ? 0 : array.size(), false);
+	}
+
+	private static Shape createShape(Real2Array array, int size, boolean closed) {
+		if (size == 0) {
+			return null;
+		}
+		GeneralPath poly = new GeneralPath(GeneralPath.WIND_EVEN_ODD, size);
+		Real2 xy0 = array.elementAt(0);
 		poly.moveTo(xy0.getX(), xy0.getY());
-		for (int i = 1; i < real2Array.size(); i++) {
-			Real2 xy = real2Array.elementAt(i);
-			xy = transform(xy, cumulativeTransform);
+		for (int i = 1; i < size; i++) {
+			Real2 xy = array.elementAt(i);
 		    poly.lineTo(xy.getX(), xy.getY());
 		}
         if (closed) {
 			poly.closePath();
 		}
-		fill(g2d, poly);
-		draw(g2d, poly);
-		restoreGraphicsSettingsAndTransform(g2d);
+		return poly;
+	}
+
+	/** outline and the geometry it was drawn from; replaced, never altered.
+	 */
+	private static final class PolyShape {
+		final Shape shape;
+		final Real2Array array;
+		final int size;
+		final boolean closed;
+
+		PolyShape(Shape shape, Real2Array array, int size, boolean closed) {
+			this.shape = shape;
+			this.array = array;
+			this.size = size;
+			this.closed = closed;
+		}
 	}
 
 	public SVGRect createRect(double epsilon) {
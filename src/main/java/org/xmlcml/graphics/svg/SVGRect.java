@@ -282,4 +282,23 @@ public class SVGRect extends SVGShape {
 	public Real2 getXY() {
 		return new Real2(getX(), getY());
 	}
+
+	/** width from the kept numeric value; falls back to unit conversion ("px").
+	 */
+	@Override
+	public Double getWidth() {
+		if (getAttribute(WIDTH) == null) {
+			return null;
+		}
+		try {
+			return getDouble(WIDTH);
+		} catch (NumberFormatException e) {
+			return super.getWidth();
+		}
+	}
+
+	@Override
+	public Double getHeight() {
+		return (getAttribute(HEIGHT) == null) ? null : getDouble(HEIGHT);
+	}
 }
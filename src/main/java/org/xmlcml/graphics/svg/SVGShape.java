@@ -1,6 +1,9 @@
 package org.xmlcml.graphics.svg;
 
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.log4j.Level;
@@ -41,6 +44,190 @@ public abstract class SVGShape extends SVGElement {
 		super(element);
 	}
 
+	private static final String[] NO_ATTRIBUTES = new String[0];
+
+	// untransformed shape and the attribute values it was created from
+	private volatile CachedShape cachedShape;
+	// parsed numeric attributes; replaced, never altered, so concurrent readers see whole entries
+	private volatile NumericValue[] numericValues;
+
+	/** shape and the geometry attribute values it was created from.
+	 * 
+	 * replaced, never altered, so a concurrent reader cannot pair a shape with other geometry
+	 */
+	private static final class CachedShape {
+		final Shape shape;
+		final String[] geometry;
+
+		CachedShape(Shape shape, String[] geometry) {
+			this.shape = shape;
+			this.geometry = geometry;
+		}
+	}
+
+	/** value of a numeric attribute and the attribute string it was read from or written as.
+	 */
+	private static final class NumericValue {
+		final String name;
+		final String source;
+		final double value;
+
+		NumericValue(String name, String source, double value) {
+			this.name = name;
+			this.source = source;
+			this.value = value;
+		}
+	}
+
+	/** untransformed Java2D shape, reused until the geometry changes.
+	 * 
+	 * The geometry has changed if any of getGeometryAttributeNames() has a different
+	 * value. Call clearCachedShape() if the geometry is altered without changing attributes.
+	 * 
+	 * @return shape (shared; do not alter) or null if not available
+	 */
+	public Shape getCachedShape() {
+		CachedShape cached = cachedShape;
+		if (cached == null || !isCachedShapeValid(cached.geometry)) {
+			// values read first, so a later change is never hidden
+			String[] geometry = getGeometryAttributeValues();
+			cached = new CachedShape(createShape(), geometry);
+			cachedShape = cached;
+		}
+		return cached.shape;
+	}
+
+	public void clearCachedShape() {
+		cachedShape = null;
+	}
+
+	/** creates untransformed shape for getCachedShape().
+	 * 
+	 * @return null by default
+	 */
+	protected Shape createShape() {
+		return null;
+	}
+
+	/** attributes defining the geometry of createShape().
+	 * 
+	 * @return none by default
+	 */
+	protected String[] getGeometryAttributeNames() {
+		return NO_ATTRIBUTES;
+	}
+
+	private boolean isCachedShapeValid(String[] geometry) {
+		String[] names = getGeometryAttributeNames();
+		for (int i = 0; i < names.length; i++) {
+			String value = getAttributeValue(names[i]);
+			if (value == null ? geometry[i] != null : !value.equals(geometry[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String[] getGeometryAttributeValues() {
+		String[] names = getGeometryAttributeNames();
+		String[] values = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			values[i] = getAttributeValue(names[i]);
+		}
+		return values;
+	}
+
+	/** cached shape under the cumulative transform, for drawing.
+	 * 
+	 * @return new shape unless transform is identity; null if no shape
+	 */
+	protected Shape createTransformedShape() {
+		return createTransformedShape(getCachedShape());
+	}
+
+	/** shape under the cumulative transform, for drawing.
+	 * 
+	 * @param shape untransformed; not altered
+	 * @return new shape unless transform is identity; null if shape is null
+	 */
+	protected Shape createTransformedShape(Shape shape) {
+		AffineTransform affineTransform = ensureCumulativeTransform().getAffineTransform();
+		return (shape == null || affineTransform.isIdentity()) ? shape : affineTransform.createTransformedShape(shape);
+	}
+
+	/** numeric attribute, parsed only if the attribute has changed since last read or set.
+	 * 
+	 * attribute values are compared by identity, so any change to the attribute
+	 * (including Attribute.setValue()) is seen. Safe for concurrent readers; a value
+	 * parsed by two threads at once may be parsed again later.
+	 * 
+	 * @return NaN if absent
+	 * @throws NumberFormatException if not a number
+	 */
+	@Override
+	protected double getDouble(String attName) {
+		String value = getAttributeValue(attName);
+		if (value == null) {
+			return Double.NaN;
+		}
+		NumericValue[] values = numericValues;
+		int i = getNumericIndex(values, attName);
+		if (i >= 0 && values[i].source == value) {
+			return values[i].value;
+		}
+		double d = Double.parseDouble(value);
+		cacheNumericValue(values, i, new NumericValue(attName, value, d));
+		return d;
+	}
+
+	/** sets numeric attribute and keeps the value for getDouble().
+	 */
+	@Override
+	protected void setDouble(String attName, double value) {
+		super.setDouble(attName, value);
+		NumericValue[] values = numericValues;
+		cacheNumericValue(values, getNumericIndex(values, attName), new NumericValue(attName, getAttributeValue(attName), value));
+	}
+
+	@Override
+	public double getCoordinateValueDefaultZero(String attName) {
+		String value = getAttributeValue(attName);
+		if (value == null) {
+			return super.getCoordinateValueDefaultZero(attName);
+		}
+		try {
+			return getDouble(attName);
+		} catch (NumberFormatException e) {
+			throw new RuntimeException("Cannot parse SVG coordinate "+value);
+		}
+	}
+
+	private static int getNumericIndex(NumericValue[] values, String attName) {
+		if (values != null) {
+			for (int i = 0; i < values.length; i++) {
+				if (values[i].name.equals(attName)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/** publishes a copy of values with value at i (or appended if i is negative).
+	 */
+	private void cacheNumericValue(NumericValue[] values, int i, NumericValue value) {
+		// shapes have only a few numeric attributes
+		NumericValue[] newValues;
+		if (i >= 0) {
+			newValues = values.clone();
+		} else {
+			i = values == null ? 0 : values.length;
+			newValues = values == null ? new NumericValue[1] : Arrays.copyOf(values, i + 1);
+		}
+		newValues[i] = value;
+		numericValues = newValues;
+	}
+
 	/** a string that uniquely defines the geometric position without attributes.
 	 * 
 	 * Fairly crude. Object is to identify precise duplicates of the object.
@@ -16,9 +16,13 @@
 
 package org.xmlcml.graphics.svg;
 
+import java.awt.Graphics2D;
+
 import nu.xom.Element;
 import nu.xom.Node;
 
+import org.xmlcml.euclid.Real2Range;
+
 /** supports use/symbol
   <defs>
     <symbol id="MySymbol" viewBox="0 0 20 20">
@@ -38,6 +42,8 @@ import nu.xom.Node;
 public class SVGSymbol extends SVGElement {
 
 	final public static String TAG ="symbol";
+	public static final String VIEW_BOX = "viewBox";
+	public static final String PRESERVE_ASPECT_RATIO = "preserveAspectRatio";
 
 	/** constructor
 	 */
@@ -70,5 +76,66 @@ public class SVGSymbol extends SVGElement {
         return new SVGSymbol(this);
     }
 
+	/** bounding box of symbol geometry in symbol coordinates.
+	 * 
+	 * cached, as it is shared by every SVGUse instance; the cache is cleared when
+	 * children are added or removed (or by setBoundingBoxCached(false)).
+	 */
+	public Real2Range getBoundingBox() {
+		if (boundingBoxNeedsUpdating()) {
+			aggregateBBfromSelfAndDescendants();
+			boundingBoxCached = true;
+		}
+		return boundingBox;
+	}
+
+	@Override
+	public void insertChild(Node child, int position) {
+		super.insertChild(child, position);
+		boundingBoxCached = false;
+	}
+
+	@Override
+	public Node removeChild(int position) {
+		boundingBoxCached = false;
+		return super.removeChild(position);
+	}
+
+	@Override
+	public Node removeChild(Node child) {
+		boundingBoxCached = false;
+		return super.removeChild(child);
+	}
+
+	/** not rendered directly; SVGUse draws the children under its instance transform.
+	 */
+	@Override
+	protected void drawElement(Graphics2D g2d) {
+	}
+
+	/** viewBox as minx, miny, width, height.
+	 * 
+	 * @return null if absent or not 4 numbers
+	 */
+	public double[] getViewBox() {
+		String viewBox = getAttributeValue(VIEW_BOX);
+		if (viewBox == null) {
+			return null;
+		}
+		String[] values = viewBox.trim().split("[\\s,]+");
+		if (values.length != 4) {
+			return null;
+		}
+		double[] box = new double[4];
+		try {
+			for (int i = 0; i < 4; i++) {
+				box[i] = Double.parseDouble(values[i]);
+			}
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		return box;
+	}
+
 
 }
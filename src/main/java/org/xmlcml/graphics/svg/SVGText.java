@@ -34,6 +34,9 @@ public class SVGText extends SVGElement {
 
 	// just in case there is a scaling problem
 	private static final double _SVG2AWT_FONT_SCALE = 1.0;
+	// in ems, for culling
+	private static final double DRAWN_ASCENT = 1.5;
+	private static final double DRAWN_DESCENT = 0.5;
 	
 	public final static String TAG ="text";
 	
@@ -75,6 +78,73 @@ public class SVGText extends SVGElement {
 	private FontWeight fontWeight;
 	private Double widthOfFirstCharacter;
 	private Double heightOfFirstCharacter;
+
+	/** tolerance for classifying orientation */
+	public final static double ORIENTATION_EPS_DEGREES = 1.0;
+	private final static double ROTATION_EPS = 0.001;
+
+	/** rotation quantised to multiples of 90 degrees.
+	 * 
+	 * SVG y-axis points down, so ANGLE_270 is usually text reading upwards.
+	 */
+	public enum Orientation {
+		ANGLE_0(0.0),
+		ANGLE_90(90.0),
+		ANGLE_180(180.0),
+		ANGLE_270(270.0),
+		OTHER(Double.NaN);
+		
+		private double degrees;
+		
+		private Orientation(double degrees) {
+			this.degrees = degrees;
+		}
+		
+		public double getDegrees() {
+			return degrees;
+		}
+		
+		/** classify angle.
+		 * 
+		 * @param degrees any value (normalised to 0-360)
+		 * @param eps tolerance in degrees
+		 * @return OTHER if not within eps of multiple of 90
+		 */
+		public static Orientation getOrientation(double degrees, double eps) {
+			if (Double.isNaN(degrees)) {
+				return OTHER;
+			}
+			double d = degrees % 360.0;
+			d = (d < 0.0) ? d + 360.0 : d;
+			for (Orientation orientation : values()) {
+				if (Math.abs(d - orientation.degrees) <= eps || Math.abs(d - 360.0 - orientation.degrees) <= eps) {
+					return orientation;
+				}
+			}
+			return OTHER;
+		}
+	}
+
+	// cached from transform attribute; replaced when the attribute value changes
+	private volatile Rotation rotation;
+
+	/** rotation derived from one transform attribute value.
+	 * 
+	 * immutable, so concurrent readers never pair a transform with another's orientation
+	 */
+	private static final class Rotation {
+		final String transformValue;
+		final Transform2 transform;
+		final double radians;
+		final Orientation orientation;
+
+		Rotation(String transformValue, Transform2 transform, double radians) {
+			this.transformValue = transformValue;
+			this.transform = transform;
+			this.radians = radians;
+			this.orientation = Orientation.getOrientation(Math.toDegrees(radians), ORIENTATION_EPS_DEGREES);
+		}
+	}
 	
 	/** 
 	 * Constructor
@@ -188,8 +258,10 @@ public class SVGText extends SVGElement {
 			if (fillColor != null) {
 				g2d.setColor(fillColor);
 			}
+			Font savedFont = g2d.getFont();
 			g2d.setFont(font);
 			g2d.drawString(text, (int)xy.x, (int)xy.y);
+			g2d.setFont(savedFont);
 			restoreColor(g2d);
 		}
 		restoreGraphicsSettingsAndTransform(g2d);
@@ -306,6 +378,26 @@ public class SVGText extends SVGElement {
 		estimatedHorizontallength = Double.NaN; 
 	}
 
+	/** generous extent of the glyphs painted by drawElement().
+	 * 
+	 * glyph widths of the AWT font are not known so each character is allowed one em.
+	 */
+	@Override
+	public Real2Range getDrawnBoundingBox(Transform2 transform) {
+		String text = this.getText();
+		Double fontSize = this.getFontSize();
+		if (text == null) {
+			return new Real2Range();
+		} else if (fontSize == null) {
+			return null;
+		}
+		double size = Math.abs(fontSize * transform.getMatrixAsArray()[0] * _SVG2AWT_FONT_SCALE);
+		Real2 xy = transform(new Real2(this.getXY()), transform);
+		return new Real2Range(
+				new RealRange(xy.getX() - size, xy.getX() + (text.length() + 1) * size),
+				new RealRange(xy.getY() - DRAWN_ASCENT * size, xy.getY() + DRAWN_DESCENT * size));
+	}
+
 	/** extent of text
 	 * defined as the point in the middle of the visual string (
 	 * e.g. near the middle of the crossbar in "H")
@@ -374,20 +466,77 @@ public class SVGText extends SVGElement {
 	}
 	
 	private void rotateBoundingBoxForRotatedText() {
-		Transform2 t2 = getTransform();
-		if (t2 != null) {
-			Angle rotation = t2.getAngleOfRotation();
-			if (rotation == null) {
-				LOG.trace("Null angle: "+t2);
-			}
-			// significant rotation?
-			if (rotation != null && !rotation.isEqualTo(0., 0.001)) {
-				Real2[] corners = boundingBox.getCorners();
-				corners[0].transformBy(t2);
-				corners[1].transformBy(t2);
-				boundingBox = new Real2Range(corners[0], corners[1]);
+		Rotation rotation = getOrCreateRotation();
+		// significant rotation?
+		if (rotation.transform != null && Math.abs(rotation.radians) > ROTATION_EPS) {
+			Real2[] corners = boundingBox.getCorners();
+			corners[0].transformBy(rotation.transform);
+			corners[1].transformBy(rotation.transform);
+			boundingBox = new Real2Range(corners[0], corners[1]);
+		}
+	}
+
+	/** recomputes rotation only if transform attribute has changed.
+	 */
+	private Rotation getOrCreateRotation() {
+		String transformValue = getAttributeValue(TRANSFORM);
+		Rotation rotation = this.rotation;
+		if (rotation == null || (transformValue == null ? rotation.transformValue != null : !transformValue.equals(rotation.transformValue))) {
+			Transform2 transform = (transformValue == null) ? null : getTransform();
+			Angle angle = (transform == null) ? null : transform.getAngleOfRotation();
+			if (transform != null && angle == null) {
+				LOG.trace("Null angle: "+transform);
 			}
+			rotation = new Rotation(transformValue, transform, (angle == null) ? 0.0 : angle.getRadian());
+			this.rotation = rotation;
 		}
+		return rotation;
+	}
+
+	/** forces recalculation of cached rotation.
+	 * 
+	 * only needed if the transform is changed without changing the attribute value
+	 */
+	public void clearRotationCache() {
+		rotation = null;
+	}
+
+	/** angle of rotation from transform, cached until transform changes.
+	 * 
+	 * @return angle (0 if no transform)
+	 */
+	@Override
+	public Angle getAngleOfRotation() {
+		return new Angle(getOrCreateRotation().radians);
+	}
+
+	/** cached rotation in radians.
+	 * 
+	 * @return 0 if no transform
+	 */
+	public double getRotationRadians() {
+		return getOrCreateRotation().radians;
+	}
+
+	/** rotation quantised to 0/90/180/270/other.
+	 * 
+	 * cached until transform changes
+	 * @return
+	 */
+	public Orientation getOrientation() {
+		return getOrCreateRotation().orientation;
+	}
+
+	/** is rotation within eps of angle.
+	 * 
+	 * compares modulo 2*PI
+	 * @param angle
+	 * @param eps in radians
+	 * @return
+	 */
+	public boolean isRotatedBy(Angle angle, double eps) {
+		double delta = Math.IEEEremainder(getRotationRadians() - angle.getRadian(), 2.0 * Math.PI);
+		return Math.abs(delta) <= eps;
 	}
 
 	/** 
@@ -751,15 +900,7 @@ public class SVGText extends SVGElement {
 		List<SVGText> textList = extractSelfAndDescendantTexts(svgElement);
 		List<SVGText> newTextList = new ArrayList<SVGText>();
 		for (SVGText text : textList) {
-			Transform2 t2 = text.getTransform();
-			boolean rotated = false;
-			if (t2 == null) {
-				rotated = targetAngle.isEqualTo(0.0, eps);
-			} else {
-				Angle rotAngle = t2.getAngleOfRotation();
-				rotated = Real.isEqual(targetAngle.getRadian(), rotAngle.getRadian(), eps);
-			}
-			if (rotated) {
+			if (Real.isEqual(targetAngle.getRadian(), text.getRotationRadians(), eps)) {
 				newTextList.add(text);
 			}
 		}
@@ -1089,10 +1230,11 @@ public class SVGText extends SVGElement {
 	}
 
 	public static List<SVGText> getRotatedElements(List<SVGText> characterList, Angle angle, double eps) {
-		List<SVGElement> elements = SVGElement.getRotatedElementList(characterList, angle, eps);
 		List<SVGText> textList = new ArrayList<SVGText>();
-		for (SVGElement element : elements) {
-			textList.add((SVGText) element);
+		for (SVGText text : characterList) {
+			if (angle.isEqualTo(text.getRotationRadians(), eps)) {
+				textList.add(text);
+			}
 		}
 		return textList;
 	}
@@ -0,0 +1,189 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import nu.xom.Element;
+import nu.xom.Node;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/** visits an SVG subtree in pre-order, forking large SVGG subtrees.
+ * <p>
+ * Each element is visited before its children. Children which are SVGG with more than
+ * the sequential threshold of descendant elements are visited as separate fork/join
+ * tasks; everything else (and any tree smaller than the threshold) is walked in the
+ * calling thread. Only SVGElement children are walked. Used for the tree-wide
+ * SVGElement operations (format, formatTransformRecursively,
+ * setCumulativeTransformRecursively, ...) and open to any SVGElementVisitor which
+ * obeys its threading rules.
+ * </p>
+ * <p>
+ * Run in the common ForkJoinPool, or in the current pool when called from a task.
+ * </p>
+ * @author pm286
+ *
+ */
+public class SVGTreeTask extends RecursiveAction {
+	private static final Logger LOG = Logger.getLogger(SVGTreeTask.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final long serialVersionUID = 1L;
+
+	/** subtrees with no more descendant elements than this are walked sequentially */
+	public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 1000;
+	/** lists with no more elements than this are visited in one task */
+	private static final int LIST_THRESHOLD = 64;
+
+	private SVGElement element;
+	private SVGElementVisitor visitor;
+	private int threshold;
+	private boolean visitElement;
+
+	private SVGTreeTask(SVGElement element, SVGElementVisitor visitor, int threshold, boolean visitElement) {
+		this.element = element;
+		this.visitor = visitor;
+		this.threshold = threshold;
+		this.visitElement = visitElement;
+	}
+
+	/** visits root and its descendants.
+	 *
+	 * @param root
+	 * @param visitor
+	 */
+	public static void walk(SVGElement root, SVGElementVisitor visitor) {
+		walk(root, visitor, DEFAULT_SEQUENTIAL_THRESHOLD, true);
+	}
+
+	/** visits root (optionally) and its descendants.
+	 *
+	 * @param root
+	 * @param visitor
+	 * @param threshold sequential cut-off in descendant elements (Integer.MAX_VALUE for a serial walk)
+	 * @param visitRoot if false only descendants are visited
+	 */
+	public static void walk(SVGElement root, SVGElementVisitor visitor, int threshold, boolean visitRoot) {
+		if (!isLarger(root, threshold)) {
+			walkSequentially(root, visitor, visitRoot);
+			return;
+		}
+		SVGTreeTask task = new SVGTreeTask(root, visitor, threshold, visitRoot);
+		if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+	}
+
+	/** visits each element of a list and its descendants, splitting the list for large lists.
+	 *
+	 * the elements must be disjoint subtrees (none inside another).
+	 *
+	 * @param elements
+	 * @param visitor
+	 */
+	public static void visitAll(List<? extends SVGElement> elements, SVGElementVisitor visitor) {
+		ListTask task = new ListTask(elements, 0, elements.size(), visitor);
+		if (elements.size() <= LIST_THRESHOLD) {
+			task.compute();
+		} else if (ForkJoinTask.inForkJoinPool()) {
+			task.invoke();
+		} else {
+			ForkJoinPool.commonPool().invoke(task);
+		}
+	}
+
+	@Override
+	protected void compute() {
+		if (visitElement && !visitor.visit(element)) {
+			return;
+		}
+		List<SVGTreeTask> forked = new ArrayList<SVGTreeTask>();
+		for (int i = 0; i < element.getChildCount(); i++) {
+			Node child = element.getChild(i);
+			if (!(child instanceof SVGElement)) {
+				continue;
+			}
+			SVGElement childElement = (SVGElement) child;
+			if (childElement instanceof SVGG && isLarger(childElement, threshold)) {
+				SVGTreeTask task = new SVGTreeTask(childElement, visitor, threshold, true);
+				task.fork();
+				forked.add(task);
+			} else {
+				walkSequentially(childElement, visitor, true);
+			}
+		}
+		for (int i = forked.size() - 1; i >= 0; i--) {
+			forked.get(i).join();
+		}
+	}
+
+	private static void walkSequentially(SVGElement element, SVGElementVisitor visitor, boolean visitElement) {
+		if (visitElement && !visitor.visit(element)) {
+			return;
+		}
+		for (int i = 0; i < element.getChildCount(); i++) {
+			Node child = element.getChild(i);
+			if (child instanceof SVGElement) {
+				walkSequentially((SVGElement) child, visitor, true);
+			}
+		}
+	}
+
+	private static class ListTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private List<? extends SVGElement> elements;
+		private int start;
+		private int end;
+		private SVGElementVisitor visitor;
+
+		ListTask(List<? extends SVGElement> elements, int start, int end, SVGElementVisitor visitor) {
+			this.elements = elements;
+			this.start = start;
+			this.end = end;
+			this.visitor = visitor;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= LIST_THRESHOLD) {
+				for (int i = start; i < end; i++) {
+					walk(elements.get(i), visitor);
+				}
+			} else {
+				int middle = (start + end) / 2;
+				invokeAll(new ListTask(elements, start, middle, visitor), new ListTask(elements, middle, end, visitor));
+			}
+		}
+	}
+
+	// true if element has more than threshold descendant elements; stops counting there
+	private static boolean isLarger(SVGElement element, int threshold) {
+		if (threshold == Integer.MAX_VALUE) {
+			return false;
+		}
+		int count = 0;
+		List<Element> stack = new ArrayList<Element>();
+		stack.add(element);
+		while (!stack.isEmpty()) {
+			Element current = stack.remove(stack.size() - 1);
+			for (int i = 0; i < current.getChildCount(); i++) {
+				if (current.getChild(i) instanceof Element) {
+					if (++count > threshold) {
+						return true;
+					}
+					stack.add((Element) current.getChild(i));
+				}
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,321 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.ParentNode;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/** elements of an SVG tree by tag, in document order.
+ * <p>
+ * Held by the root SVGElement (see SVGElement.getOrCreateTypeIndex()) and used by
+ * SVGUtil.getQuerySVGElements() for ".//svg:tag" queries, which covers the
+ * extractSelfAndDescendant* helpers and the ALL_*_XPATH constants. Each element also
+ * records its preorder position and that of its last descendant; as the list for each tag
+ * is in preorder, the descendants of any element are found by binary search for its range
+ * without walking the tree or the other elements with that tag.
+ * </p>
+ * <p>
+ * Updated when elements are inserted or detached through SVGElement. Positions are
+ * spaced by GAP, so a subtree inserted anywhere is numbered between its neighbours
+ * without renumbering the rest; only when the gap is too small for the subtree is the
+ * index marked stale and rebuilt (with fresh gaps) on the next query.
+ * If the tree contains SVG elements below plain (non-SVGElement) XOM elements, whose
+ * edits cannot be tracked, queries return null and callers fall back to XPath.
+ * </p>
+ * <p>
+ * As queries may rebuild the index, all methods are synchronized; several threads may
+ * query at once provided none modifies the tree.
+ * </p>
+ * @author pm286
+ *
+ */
+public class SVGTypeIndex {
+	private static final Logger LOG = Logger.getLogger(SVGTypeIndex.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	// spacing of positions after a build; leaves room for later insertions
+	private static final long GAP = 1L << 20;
+
+	private SVGElement root;
+	// each list in preorder (increasing position)
+	private Map<String, List<SVGElement>> elementsByTag;
+	// preorder position and position of last descendant
+	private Map<SVGElement, long[]> rangeByElement;
+	// last position assigned and spacing of the next
+	private long position;
+	private long step;
+	private boolean stale;
+	private boolean untracked;
+	private int rebuildCount;
+
+	SVGTypeIndex(SVGElement root) {
+		this.root = root;
+		build();
+	}
+
+	private void build() {
+		elementsByTag = new HashMap<String, List<SVGElement>>();
+		rangeByElement = new IdentityHashMap<SVGElement, long[]>();
+		position = 0;
+		step = GAP;
+		stale = false;
+		untracked = false;
+		addElement(root);
+	}
+
+	/** descendants of element (not element itself) with given SVG tag.
+	 *
+	 * equivalent to XPath ".//svg:tag" from element.
+	 *
+	 * @param element in this tree
+	 * @param tag local name, e.g. SVGPath.TAG
+	 * @return new list in document order; null if the index cannot answer
+	 */
+	public synchronized List<SVGElement> getDescendants(SVGElement element, String tag) {
+		if (stale) {
+			rebuild();
+		}
+		long[] range = rangeByElement.get(element);
+		if (range == null || untracked) {
+			return null;
+		}
+		List<SVGElement> descendants = new ArrayList<SVGElement>();
+		List<SVGElement> elements = elementsByTag.get(tag);
+		if (elements != null) {
+			for (int i = firstAfter(elements, range[0]); i < elements.size(); i++) {
+				SVGElement candidate = elements.get(i);
+				if (rangeByElement.get(candidate)[0] > range[1]) {
+					break;
+				}
+				descendants.add(candidate);
+			}
+		}
+		return descendants;
+	}
+
+	/** index of first element with position greater than position.
+	 */
+	private int firstAfter(List<SVGElement> elements, long position) {
+		int low = 0;
+		int high = elements.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (rangeByElement.get(elements.get(mid))[0] <= position) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/** elements in the whole tree (including the root) with given SVG tag.
+	 *
+	 * @param tag
+	 * @return new list in document order; null if the index cannot answer
+	 */
+	public synchronized List<SVGElement> getElements(String tag) {
+		if (stale) {
+			rebuild();
+		}
+		if (untracked) {
+			return null;
+		}
+		List<SVGElement> elements = elementsByTag.get(tag);
+		return elements == null ? new ArrayList<SVGElement>() : new ArrayList<SVGElement>(elements);
+	}
+
+	/** number of full rescans since creation (for diagnostics).
+	 */
+	public synchronized int getRebuildCount() {
+		return rebuildCount;
+	}
+
+	public synchronized void rebuild() {
+		rebuildCount++;
+		build();
+	}
+
+	synchronized void addSubtree(Node node) {
+		if (stale || untracked || !(node instanceof Element)) {
+			return;
+		}
+		long following = getFollowingPosition(node);
+		long last;
+		if (following == Long.MAX_VALUE) {
+			// end of document (the usual appendChild case)
+			addElement((Element) node);
+			last = position;
+		} else {
+			long preceding = getPrecedingPosition(node);
+			long insertStep = (preceding == -1) ? 0 : (following - preceding) / (countSVGElements(node) + 1);
+			if (insertStep == 0) {
+				stale = true;
+				return;
+			}
+			long endPosition = position;
+			position = preceding;
+			step = insertStep;
+			addElement((Element) node);
+			last = position;
+			position = endPosition;
+			step = GAP;
+		}
+		// ancestors may now end at the new subtree
+		for (ParentNode parent = node.getParent(); parent instanceof SVGElement; parent = parent.getParent()) {
+			long[] range = rangeByElement.get(parent);
+			if (range != null && range[1] < last) {
+				range[1] = last;
+			}
+			if (parent == root) {
+				break;
+			}
+		}
+	}
+
+	synchronized void removeSubtree(Node node) {
+		if (stale || !(node instanceof Element)) {
+			return;
+		}
+		List<Element> stack = new ArrayList<Element>();
+		stack.add((Element) node);
+		Map<String, Integer> removedByTag = new HashMap<String, Integer>();
+		while (!stack.isEmpty()) {
+			Element element = stack.remove(stack.size() - 1);
+			if (element instanceof SVGElement && rangeByElement.remove(element) != null) {
+				String tag = element.getLocalName();
+				Integer count = removedByTag.get(tag);
+				removedByTag.put(tag, count == null ? 1 : count + 1);
+			}
+			for (int i = 0; i < element.getChildCount(); i++) {
+				if (element.getChild(i) instanceof Element) {
+					stack.add((Element) element.getChild(i));
+				}
+			}
+		}
+		// one pass per affected tag keeps the remaining elements in preorder
+		for (String tag : removedByTag.keySet()) {
+			List<SVGElement> elements = elementsByTag.get(tag);
+			if (elements != null) {
+				List<SVGElement> remaining = new ArrayList<SVGElement>(elements.size());
+				for (SVGElement element : elements) {
+					if (rangeByElement.containsKey(element)) {
+						remaining.add(element);
+					}
+				}
+				elementsByTag.put(tag, remaining);
+			}
+		}
+	}
+
+	private void addElement(Element element) {
+		if (element instanceof SVGElement) {
+			position += step;
+			long[] range = new long[]{position, 0};
+			if (SVGConstants.SVG_NAMESPACE.equals(element.getNamespaceURI())) {
+				String tag = element.getLocalName();
+				List<SVGElement> elements = elementsByTag.get(tag);
+				if (elements == null) {
+					elements = new ArrayList<SVGElement>();
+					elementsByTag.put(tag, elements);
+				}
+				if (elements.isEmpty() || rangeByElement.get(elements.get(elements.size() - 1))[0] < position) {
+					elements.add((SVGElement) element);
+				} else {
+					// inserted before the end of the document
+					elements.add(firstAfter(elements, position), (SVGElement) element);
+				}
+			}
+			rangeByElement.put((SVGElement) element, range);
+			addChildren(element, false);
+			range[1] = position;
+		} else {
+			// plain XOM element; XPath would return it if in the SVG namespace
+			if (SVGConstants.SVG_NAMESPACE.equals(element.getNamespaceURI())) {
+				untracked = true;
+			}
+			addChildren(element, true);
+		}
+	}
+
+	private void addChildren(Element element, boolean belowPlainElement) {
+		for (int i = 0; i < element.getChildCount(); i++) {
+			if (element.getChild(i) instanceof Element) {
+				Element child = (Element) element.getChild(i);
+				if (belowPlainElement && child instanceof SVGElement) {
+					// edits below plain elements are not seen by SVGElement
+					untracked = true;
+				}
+				addElement(child);
+			}
+		}
+	}
+
+	/** position of the first indexed element after node's subtree in document order.
+	 *
+	 * @return Long.MAX_VALUE if none
+	 */
+	private long getFollowingPosition(Node node) {
+		Node current = node;
+		while (current != root) {
+			ParentNode parent = current.getParent();
+			if (parent == null) {
+				return Long.MAX_VALUE;
+			}
+			for (int i = parent.indexOf(current) + 1; i < parent.getChildCount(); i++) {
+				long[] range = rangeByElement.get(parent.getChild(i));
+				if (range != null) {
+					return range[0];
+				}
+			}
+			current = parent;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/** position of the last indexed element before node in document order.
+	 *
+	 * the last descendant of the nearest indexed preceding sibling, else the parent.
+	 *
+	 * @return -1 if the parent is not indexed
+	 */
+	private long getPrecedingPosition(Node node) {
+		ParentNode parent = node.getParent();
+		for (int i = parent.indexOf(node) - 1; i >= 0; i--) {
+			long[] range = rangeByElement.get(parent.getChild(i));
+			if (range != null) {
+				return range[1];
+			}
+		}
+		long[] range = rangeByElement.get(parent);
+		return range == null ? -1 : range[0];
+	}
+
+	private static int countSVGElements(Node node) {
+		int count = 0;
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(node);
+		while (!stack.isEmpty()) {
+			Node current = stack.remove(stack.size() - 1);
+			if (current instanceof SVGElement) {
+				count++;
+			}
+			for (int i = 0; i < current.getChildCount(); i++) {
+				if (current.getChild(i) instanceof Element) {
+					stack.add(current.getChild(i));
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -16,11 +16,17 @@
 
 package org.xmlcml.graphics.svg;
 
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+
 import nu.xom.Attribute;
 import nu.xom.Element;
+import nu.xom.Elements;
 import nu.xom.Node;
 import org.xmlcml.euclid.Real2;
 import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.euclid.Transform2;
 
 /** supports use/symbol
   <defs>
@@ -44,6 +50,10 @@ public class SVGUse extends SVGElement {
 	private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
 	private static final String HREF = "href";
 	private static final String XLINK = "xlink";
+	private static final String NONE = "none";
+
+	// set by setSymbol(); not copied; used only while in the same tree as this
+	private SVGSymbol symbol;
 
 	/** constructor
 	 */
@@ -53,6 +63,8 @@ public class SVGUse extends SVGElement {
 	}
 	
 	/** constructor
+	 * 
+	 * the copy resolves its symbol from the href in its own tree
 	 */
 	public SVGUse(SVGElement element) {
 		super(element);
@@ -65,10 +77,8 @@ public class SVGUse extends SVGElement {
 
 	public void setXyAndSymbol(Real2 orig, SVGSymbol symbol) {
 		setXY(orig);
-		String id = symbol.getId();
-		if (id != null) {
-			this.addNamespaceDeclaration(XLINK, XLINK_NS);
-			this.addAttribute(new Attribute(XLINK+":"+HREF, XLINK_NS, "#"+id));
+		if (symbol.getId() != null) {
+			setSymbol(symbol);
 		}
 	}
 
@@ -91,15 +101,172 @@ public class SVGUse extends SVGElement {
     }
 
 
+    /** makes this an instance of symbol.
+     * 
+     * the symbol is referenced, not copied; it should be (or later be placed) in the
+     * same document, normally in defs.
+     * 
+     * @param symbol must have an id
+     */
     public void setSymbol(SVGSymbol symbol) {
-    	
+    	String id = symbol.getId();
+    	if (id == null) {
+    		throw new RuntimeException("symbol must have id");
+    	}
+    	this.symbol = symbol;
+    	this.addNamespaceDeclaration(XLINK, XLINK_NS);
+    	this.addAttribute(new Attribute(XLINK+":"+HREF, XLINK_NS, "#"+id));
+    }
+
+    /** value of xlink:href (normally #id).
+     */
+    public String getHref() {
+    	return getAttributeValue(HREF, XLINK_NS);
+    }
+
+    /** element referenced by xlink:href.
+     * 
+     * resolved through the id index of the containing tree.
+     * 
+     * @return null if not found
+     */
+    public SVGElement getReferencedElement() {
+    	return resolveReference(getHref());
+    }
+
+    /** symbol referenced by xlink:href.
+     * 
+     * the symbol given to setSymbol() is used only if the href still points to it and
+     * it is in the same tree as this; otherwise the href is resolved.
+     * 
+     * @return null if not found or not a symbol
+     */
+    public SVGSymbol getSymbol() {
+    	SVGSymbol symbol = this.symbol;
+    	if (symbol != null && ("#"+symbol.getId()).equals(getHref()) && 
+    			symbol.getParent() != null && getTop(symbol) == getTop(this)) {
+    		return symbol;
+    	}
+    	SVGElement element = getReferencedElement();
+    	return element instanceof SVGSymbol ? (SVGSymbol) element : null;
+    }
+
+    private static Node getTop(Node node) {
+    	while (node.getParent() != null) {
+    		node = node.getParent();
+    	}
+    	return node;
+    }
+
+    /** maps symbol coordinates into the coordinates of this element.
+     * 
+     * translation by x,y and, if the symbol has a viewBox and this has width and
+     * height, the viewBox scaling (preserveAspectRatio none or default xMidYMid meet).
+     * Does not include the transform attribute (see getCumulativeTransform()).
+     * 
+     * @return transform (identity translation if no x, y)
+     */
+    public Transform2 getInstanceTransform() {
+    	double tx = getLength(X, 0.0);
+    	double ty = getLength(Y, 0.0);
+    	double sx = 1.0;
+    	double sy = 1.0;
+    	SVGSymbol symbol = getSymbol();
+    	double[] viewBox = symbol == null ? null : symbol.getViewBox();
+    	double width = getLength(WIDTH, Double.NaN);
+    	double height = getLength(HEIGHT, Double.NaN);
+    	if (viewBox != null && viewBox[2] > 0.0 && viewBox[3] > 0.0 && !Double.isNaN(width) && !Double.isNaN(height)) {
+    		sx = width / viewBox[2];
+    		sy = height / viewBox[3];
+    		if (!NONE.equals(symbol.getAttributeValue(SVGSymbol.PRESERVE_ASPECT_RATIO))) {
+    			double scale = Math.min(sx, sy);
+    			tx += (width - viewBox[2] * scale) / 2.0;
+    			ty += (height - viewBox[3] * scale) / 2.0;
+    			sx = scale;
+    			sy = scale;
+    		}
+    		tx -= viewBox[0] * sx;
+    		ty -= viewBox[1] * sy;
+    	}
+    	return new Transform2(new double[]{sx, 0.0, tx, 0.0, sy, ty, 0.0, 0.0, 1.0});
+    }
+
+    private double getLength(String attName, double defaultValue) {
+    	String value = getAttributeValue(attName);
+    	if (value == null) {
+    		return defaultValue;
+    	}
+    	try {
+    		return Double.parseDouble(value);
+    	} catch (NumberFormatException e) {
+    		// e.g. percentages
+    		return defaultValue;
+    	}
     }
     
-    /** return null
+    /** bounding box of the symbol geometry placed by this instance.
      * 
+     * computed from the symbol's (cached) box and getInstanceTransform(); the
+     * geometry is not copied.
+     * 
+     * @return null if no symbol or it has no geometry
      */
 	public Real2Range getBoundingBox() {
-		return null;
+		SVGSymbol symbol = getSymbol();
+		Real2Range symbolBox = symbol == null ? null : symbol.getBoundingBox();
+		if (symbolBox == null || !symbolBox.isValid()) {
+			return null;
+		}
+		Transform2 instanceTransform = getInstanceTransform();
+		Real2Range box = new Real2Range();
+		box.add(transform(new Real2(symbolBox.getXMin(), symbolBox.getYMin()), instanceTransform));
+		box.add(transform(new Real2(symbolBox.getXMin(), symbolBox.getYMax()), instanceTransform));
+		box.add(transform(new Real2(symbolBox.getXMax(), symbolBox.getYMin()), instanceTransform));
+		box.add(transform(new Real2(symbolBox.getXMax(), symbolBox.getYMax()), instanceTransform));
+		return box;
+	}
+
+	/** painted through the symbol; see drawElement().
+	 */
+	@Override
+	public boolean isDrawable() {
+		return true;
+	}
+
+	/** draws the symbol's children under this instance's transform.
+	 * 
+	 * the instance transform is applied to g2d so that the shared symbol elements
+	 * are drawn in place without copying.
+	 */
+	@Override
+	protected void drawElement(Graphics2D g2d) {
+		SVGSymbol symbol = getSymbol();
+		if (symbol == null) {
+			return;
+		}
+		// both cached until a transform in their ancestry changes; no XPath per draw
+		AffineTransform instanceTransform = getCumulativeTransform().concatenate(getInstanceTransform()).getAffineTransform();
+		AffineTransform symbolTransform = symbol.getCumulativeTransform().getAffineTransform();
+		if (!symbolTransform.isIdentity()) {
+			try {
+				// symbol content is drawn in the user space of the use, not of the defs
+				instanceTransform.concatenate(symbolTransform.createInverse());
+			} catch (NoninvertibleTransformException e) {
+				return;
+			}
+		}
+		AffineTransform savedTransform = g2d.getTransform();
+		g2d.transform(instanceTransform);
+		try {
+			Elements children = symbol.getChildElements();
+			for (int i = 0; i < children.size(); i++) {
+				if (children.get(i) instanceof SVGElement) {
+					((SVGElement) children.get(i)).drawElement(g2d);
+				}
+			}
+		} finally {
+			g2d.setTransform(savedTransform);
+		}
 	}
 	
 
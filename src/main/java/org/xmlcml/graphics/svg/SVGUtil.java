@@ -4,10 +4,13 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.xmlcml.euclid.Real2;
@@ -16,6 +19,7 @@ import org.xmlcml.euclid.RealRange;
 import org.xmlcml.euclid.Transform2;
 import org.xmlcml.euclid.Vector2;
 import org.xmlcml.graphics.svg.linestuff.Path2ShapeConverter;
+import org.xmlcml.graphics.svg.util.SVGWriter;
 import org.xmlcml.xml.XMLConstants;
 import org.xmlcml.xml.XMLUtil;
 
@@ -30,6 +34,7 @@ public class SVGUtil {
 	private static final String PX = "px";
 	private static final String TRANSFORMS_APPLIED = "transformsApplied";
 	private static final Logger LOG = Logger.getLogger(SVGUtil.class);
+	private static final Pattern DESCENDANT_XPATH = Pattern.compile("\\.//svg:([A-Za-z_][\\w\\-\\.]*)");
 
 	/**
 	 * adds a new svg:g between element and its children
@@ -76,7 +81,15 @@ public class SVGUtil {
 	}
 
 	public static List<SVGElement> getQuerySVGElements(SVGElement svgElement, String xpath) {
-		List<Element> elements = XMLUtil.getQueryElements(svgElement, xpath, SVGConstants.SVG_XPATH);
+		Matcher matcher = DESCENDANT_XPATH.matcher(xpath);
+		if (matcher.matches()) {
+			// e.g. ALL_PATH_XPATH; answered from the tree's tag index
+			List<SVGElement> descendants = svgElement.getOrCreateTypeIndex().getDescendants(svgElement, matcher.group(1));
+			if (descendants != null) {
+				return descendants;
+			}
+		}
+		List<Element> elements = SVGXPath.queryElements(svgElement, xpath);
 		List<SVGElement> svgElements = new ArrayList<SVGElement>();
 		for (Element element : elements) {
 			if (!(element instanceof SVGElement)) {
@@ -409,6 +422,40 @@ public class SVGUtil {
 		}
 	}
 
+	/** writes element (compact, UTF-8) with geometry rounded to decimalPlaces.
+	 * 
+	 * rounding is done only in the output (see SVGWriter.setDecimalPlaces()) so the
+	 * element keeps full precision; use instead of format(places) before writing.
+	 * Does not close the stream.
+	 * 
+	 * @param element
+	 * @param os
+	 * @param decimalPlaces
+	 */
+	public static void writeSVG(Element element, OutputStream os, int decimalPlaces) {
+		try {
+			SVGWriter writer = new SVGWriter(os);
+			writer.setDecimalPlaces(decimalPlaces);
+			writer.write(element);
+			writer.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write SVG", e);
+		}
+	}
+
+	public static void writeSVG(Element element, File file, int decimalPlaces) {
+		try {
+			OutputStream os = new FileOutputStream(file);
+			try {
+				writeSVG(element, os, decimalPlaces);
+			} finally {
+				os.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write SVG: "+file, e);
+		}
+	}
+
 	public static SVGSVG createSVGSVG(List<? extends SVGElement> elementList) {
 		SVGSVG svg = new SVGSVG();
 		Real2Range boundingBox = SVGElement.createBoundingBox(elementList);
@@ -0,0 +1,484 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nu.xom.Document;
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.Nodes;
+import nu.xom.ParentNode;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/** XPath evaluation with a direct tree walk for the simple forms used in this library.
+ * <p>
+ * Location paths made of child (/) and descendant (//) steps, relative to the context
+ * (./, .//, or a bare step) or absolute (/, //), are evaluated without XOM/Jaxen. Steps
+ * are svg:name, svg:*, name or * with optional predicates combining, with "and" and
+ * not(), @att, @att='value', count(*)=0 and a child name test (e.g. [svg:text]).
+ * For example ".//svg:*[@transform]", "./svg:*", ".//svg:polyline[not(@merged)]" and
+ * "//svg:*[count(*)=0]". The prefix svg is bound to the SVG namespace.
+ * </p>
+ * <p>
+ * Anything else (other axes, functions, attribute results) is passed to XOM. Parsed
+ * expressions are cached, including the decision to fall back. XOM does not expose
+ * compiled XPath, so fallback expressions are still compiled by XOM on every call.
+ * Results are in document order, as from XOM.
+ * </p>
+ * @author pm286
+ *
+ */
+public class SVGXPath {
+	private static final Logger LOG = Logger.getLogger(SVGXPath.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String SVG_PREFIX = "svg:";
+	// dynamically built expressions should not fill memory
+	private static final int MAX_CACHE_SIZE = 1000;
+	private static final Map<String, SVGXPath> CACHE = new ConcurrentHashMap<String, SVGXPath>();
+
+	private String xpath;
+	// null if not handled by the tree walk
+	private Step[] steps;
+	private boolean absolute;
+
+	private SVGXPath(String xpath) {
+		this.xpath = xpath;
+		try {
+			steps = new Parser(xpath.trim()).parsePath();
+		} catch (UnsupportedOperationException e) {
+			LOG.trace("XOM will evaluate: "+xpath+" ("+e.getMessage()+")");
+			steps = null;
+		}
+	}
+
+	/** compiled (cached) expression.
+	 *
+	 * @param xpath
+	 * @return
+	 */
+	public static SVGXPath compile(String xpath) {
+		SVGXPath compiled = CACHE.get(xpath);
+		if (compiled == null) {
+			compiled = new SVGXPath(xpath);
+			if (CACHE.size() < MAX_CACHE_SIZE) {
+				CACHE.put(xpath, compiled);
+			}
+		}
+		return compiled;
+	}
+
+	/** evaluates xpath with context, using the tree walk where possible.
+	 *
+	 * @param context
+	 * @param xpath
+	 * @return nodes in document order
+	 */
+	public static Nodes query(Element context, String xpath) {
+		return compile(xpath).evaluate(context);
+	}
+
+	/** evaluates xpath with context where the results are elements.
+	 *
+	 * @param context
+	 * @param xpath
+	 * @return elements in document order
+	 */
+	public static List<Element> queryElements(Element context, String xpath) {
+		return compile(xpath).evaluateElements(context);
+	}
+
+	/** whether this expression is evaluated without XOM.
+	 */
+	public boolean isFastPath() {
+		return steps != null;
+	}
+
+	public Nodes evaluate(Element context) {
+		if (steps == null) {
+			return context.query(xpath, SVGConstants.SVG_XPATH);
+		}
+		Nodes nodes = new Nodes();
+		for (Element element : walk(context)) {
+			nodes.append(element);
+		}
+		return nodes;
+	}
+
+	public List<Element> evaluateElements(Element context) {
+		if (steps == null) {
+			Nodes nodes = context.query(xpath, SVGConstants.SVG_XPATH);
+			List<Element> elements = new ArrayList<Element>(nodes.size());
+			for (int i = 0; i < nodes.size(); i++) {
+				if (!(nodes.get(i) instanceof Element)) {
+					throw new RuntimeException("xpath does not select elements: "+xpath);
+				}
+				elements.add((Element) nodes.get(i));
+			}
+			return elements;
+		}
+		return walk(context);
+	}
+
+	private List<Element> walk(Element context) {
+		// boundary: node whose strict descendants may match the first step
+		ParentNode boundary = context;
+		List<Element> tops = new ArrayList<Element>();
+		if (absolute) {
+			Document document = context.getDocument();
+			// a detached tree behaves as though its topmost element were the root element
+			boundary = document;
+			tops.add(document == null ? getTopmostElement(context) : document.getRootElement());
+		} else {
+			addElementChildren(context, tops);
+		}
+		int maxDepth = hasDescendantStep() ? Integer.MAX_VALUE : steps.length;
+		List<Element> results = new ArrayList<Element>();
+		for (Element top : tops) {
+			collect(top, 1, maxDepth, boundary, results);
+		}
+		return results;
+	}
+
+	private void collect(Element element, int depth, int maxDepth, ParentNode boundary, List<Element> results) {
+		if (matches(element, steps.length - 1, boundary)) {
+			results.add(element);
+		}
+		if (depth < maxDepth) {
+			for (int i = 0; i < element.getChildCount(); i++) {
+				Node child = element.getChild(i);
+				if (child instanceof Element) {
+					collect((Element) child, depth + 1, maxDepth, boundary, results);
+				}
+			}
+		}
+	}
+
+	// matches steps 0..stepIndex ending at element
+	private boolean matches(Element element, int stepIndex, ParentNode boundary) {
+		Step step = steps[stepIndex];
+		if (!step.test(element)) {
+			return false;
+		}
+		ParentNode parent = element.getParent();
+		if (stepIndex == 0) {
+			return step.descendant ? isStrictDescendant(element, boundary) : parent == boundary;
+		}
+		if (!step.descendant) {
+			return parent instanceof Element && matches((Element) parent, stepIndex - 1, boundary);
+		}
+		for (ParentNode ancestor = parent; ancestor instanceof Element && ancestor != boundary; ancestor = ancestor.getParent()) {
+			if (matches((Element) ancestor, stepIndex - 1, boundary)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isStrictDescendant(Element element, ParentNode boundary) {
+		for (ParentNode ancestor = element.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+			if (ancestor == boundary) {
+				return true;
+			}
+		}
+		return boundary == null;
+	}
+
+	private boolean hasDescendantStep() {
+		for (Step step : steps) {
+			if (step.descendant) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static Element getTopmostElement(Element element) {
+		Element topmost = element;
+		while (topmost.getParent() instanceof Element) {
+			topmost = (Element) topmost.getParent();
+		}
+		return topmost;
+	}
+
+	private static void addElementChildren(ParentNode parent, List<Element> elements) {
+		for (int i = 0; i < parent.getChildCount(); i++) {
+			if (parent.getChild(i) instanceof Element) {
+				elements.add((Element) parent.getChild(i));
+			}
+		}
+	}
+
+	public String toString() {
+		return xpath;
+	}
+
+	private interface Test {
+		boolean test(Element element);
+	}
+
+	private static class NameTest implements Test {
+		// null for any namespace (*)
+		private String namespaceURI;
+		// null for any name
+		private String localName;
+
+		NameTest(String namespaceURI, String localName) {
+			this.namespaceURI = namespaceURI;
+			this.localName = localName;
+		}
+
+		public boolean test(Element element) {
+			return (namespaceURI == null || namespaceURI.equals(element.getNamespaceURI())) &&
+					(localName == null || localName.equals(element.getLocalName()));
+		}
+	}
+
+	private static class Step {
+		private boolean descendant;
+		private NameTest nameTest;
+		private List<Test> predicates = new ArrayList<Test>();
+
+		boolean test(Element element) {
+			if (!nameTest.test(element)) {
+				return false;
+			}
+			for (Test predicate : predicates) {
+				if (!predicate.test(element)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/** recursive descent over the supported subset; throws UnsupportedOperationException otherwise.
+	 */
+	private class Parser {
+		private String s;
+		private int pos;
+
+		Parser(String s) {
+			this.s = s;
+		}
+
+		Step[] parsePath() {
+			boolean descendant;
+			if (s.startsWith(".//")) {
+				pos = 3;
+				descendant = true;
+			} else if (s.startsWith("./")) {
+				pos = 2;
+				descendant = false;
+			} else if (s.startsWith("//")) {
+				pos = 2;
+				descendant = true;
+				absolute = true;
+			} else if (s.startsWith("/")) {
+				pos = 1;
+				descendant = false;
+				absolute = true;
+			} else {
+				descendant = false;
+			}
+			List<Step> stepList = new ArrayList<Step>();
+			while (true) {
+				Step step = new Step();
+				step.descendant = descendant;
+				step.nameTest = parseNameTest();
+				parsePredicates(step);
+				stepList.add(step);
+				if (pos == s.length()) {
+					break;
+				}
+				if (s.startsWith("//", pos)) {
+					pos += 2;
+					descendant = true;
+				} else if (s.charAt(pos) == '/') {
+					pos++;
+					descendant = false;
+				} else {
+					throw new UnsupportedOperationException("at "+pos);
+				}
+			}
+			return stepList.toArray(new Step[0]);
+		}
+
+		private void parsePredicates(Step step) {
+			while (pos < s.length() && s.charAt(pos) == '[') {
+				pos++;
+				step.predicates.add(parseAnd());
+				skipSpace();
+				expect(']');
+			}
+		}
+
+		private NameTest parseNameTest() {
+			if (s.startsWith(SVG_PREFIX, pos)) {
+				pos += SVG_PREFIX.length();
+				return new NameTest(SVGConstants.SVG_NAMESPACE, parseNameOrStar());
+			}
+			if (pos < s.length() && s.charAt(pos) == '*') {
+				pos++;
+				return new NameTest(null, null);
+			}
+			String name = parseName();
+			if (pos < s.length() && (s.charAt(pos) == ':' || s.charAt(pos) == '(')) {
+				// other prefixes, axes, node tests and functions
+				throw new UnsupportedOperationException(name);
+			}
+			return new NameTest("", name);
+		}
+
+		private String parseNameOrStar() {
+			if (pos < s.length() && s.charAt(pos) == '*') {
+				pos++;
+				return null;
+			}
+			return parseName();
+		}
+
+		private String parseName() {
+			int start = pos;
+			while (pos < s.length() && isNameChar(s.charAt(pos), pos == start)) {
+				pos++;
+			}
+			if (pos == start) {
+				throw new UnsupportedOperationException("name expected at "+pos);
+			}
+			return s.substring(start, pos);
+		}
+
+		private boolean isNameChar(char c, boolean first) {
+			return Character.isLetter(c) || c == '_' || (!first && (Character.isDigit(c) || c == '-' || c == '.'));
+		}
+
+		private Test parseAnd() {
+			final List<Test> terms = new ArrayList<Test>();
+			terms.add(parseTerm());
+			while (true) {
+				skipSpace();
+				if (!s.startsWith("and", pos) || pos + 3 >= s.length() || !isSpaceOrParen(s.charAt(pos + 3))) {
+					break;
+				}
+				pos += 3;
+				terms.add(parseTerm());
+			}
+			if (terms.size() == 1) {
+				return terms.get(0);
+			}
+			return new Test() {
+				public boolean test(Element element) {
+					for (Test term : terms) {
+						if (!term.test(element)) {
+							return false;
+						}
+					}
+					return true;
+				}
+			};
+		}
+
+		private Test parseTerm() {
+			skipSpace();
+			if (s.startsWith("not(", pos)) {
+				pos += 4;
+				final Test negated = parseAnd();
+				skipSpace();
+				expect(')');
+				return new Test() {
+					public boolean test(Element element) {
+						return !negated.test(element);
+					}
+				};
+			}
+			if (s.startsWith("count(*)", pos)) {
+				pos += 8;
+				skipSpace();
+				expect('=');
+				skipSpace();
+				expect('0');
+				return new Test() {
+					public boolean test(Element element) {
+						return element.getChildElements().size() == 0;
+					}
+				};
+			}
+			if (pos < s.length() && s.charAt(pos) == '@') {
+				pos++;
+				final String name = parseName();
+				skipSpace();
+				if (pos < s.length() && s.charAt(pos) == '=') {
+					pos++;
+					skipSpace();
+					final String value = parseLiteral();
+					return new Test() {
+						public boolean test(Element element) {
+							return value.equals(element.getAttributeValue(name));
+						}
+					};
+				}
+				if (pos < s.length() && s.charAt(pos) == ':') {
+					throw new UnsupportedOperationException("prefixed attribute");
+				}
+				return new Test() {
+					public boolean test(Element element) {
+						return element.getAttribute(name) != null;
+					}
+				};
+			}
+			// child element exists
+			final Step childStep = new Step();
+			childStep.nameTest = parseNameTest();
+			parsePredicates(childStep);
+			return new Test() {
+				public boolean test(Element element) {
+					for (int i = 0; i < element.getChildCount(); i++) {
+						Node child = element.getChild(i);
+						if (child instanceof Element && childStep.test((Element) child)) {
+							return true;
+						}
+					}
+					return false;
+				}
+			};
+		}
+
+		private String parseLiteral() {
+			if (pos >= s.length() || (s.charAt(pos) != '\'' && s.charAt(pos) != '"')) {
+				throw new UnsupportedOperationException("literal expected at "+pos);
+			}
+			char quote = s.charAt(pos);
+			int end = s.indexOf(quote, pos + 1);
+			if (end == -1) {
+				throw new UnsupportedOperationException("unterminated literal");
+			}
+			String literal = s.substring(pos + 1, end);
+			pos = end + 1;
+			return literal;
+		}
+
+		private void skipSpace() {
+			while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private boolean isSpaceOrParen(char c) {
+			return Character.isWhitespace(c) || c == '(';
+		}
+
+		private void expect(char c) {
+			if (pos >= s.length() || s.charAt(pos) != c) {
+				throw new UnsupportedOperationException("'"+c+"' expected at "+pos);
+			}
+			pos++;
+		}
+	}
+}
@@ -16,6 +16,8 @@
 
 package org.xmlcml.graphics.svg.image;
 
+import nu.xom.Element;
+
 import org.apache.log4j.Logger;
 import org.xmlcml.euclid.Real2Range;
 import org.xmlcml.graphics.svg.SVGElement;
@@ -25,18 +27,65 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 
+/** renders SVG to a BufferedImage without a display.
+ * 
+ * createImage() draws the whole element into one image on the calling thread.
+ * createTiledImage() and renderTiles() split the image into tiles of tileSize pixels
+ * which are rendered in parallel; each tile only draws the elements whose (transformed)
+ * bounding boxes intersect it. Tiles are pixel-identical to the corresponding region
+ * of createImage() at the same dpi. renderTiles() streams tiles to a TileListener so the
+ * full image need never be allocated.
+ * 
+ * Worker threads share the element and draw it on their own Graphics2D; bounding boxes
+ * for culling are computed once on the calling thread, and the tree must not be
+ * modified while rendering.
+ * 
+ */
 public class HiddenGraphics {
 
 	private final static Logger LOG = Logger.getLogger(HiddenGraphics.class);
 	
+	/** receives rendered tiles.
+	 * 
+	 * called on the thread that requested rendering, in order of completion.
+	 */
+	public interface TileListener {
+		/**
+		 * @param x pixel offset of tile in full image
+		 * @param y pixel offset of tile in full image
+		 * @param tile image (not shared)
+		 */
+		void tileRendered(int x, int y, BufferedImage tile);
+	}
+
+	/** one user unit per pixel */
+	public static final double DEFAULT_DPI = 72.0;
+	public static final int DEFAULT_TILE_SIZE = 512;
 	private static final String PNG = "png";
+	// antialiasing and rounding
+	private static final int PIXEL_MARGIN = 2;
+	private static final Rectangle NOT_DRAWN = new Rectangle();
 	private Dimension dimension;
 	private BufferedImage img;
 	private Graphics2D g;
 	private String type;
 	private Color backgroundColor;
+	private double dpi = DEFAULT_DPI;
+	private int tileSize = DEFAULT_TILE_SIZE;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private AtomicLong drawnCount = new AtomicLong();
+	private AtomicLong culledCount = new AtomicLong();
 	
 	public HiddenGraphics() {
 		setDefaults();
@@ -56,6 +105,46 @@ public class HiddenGraphics {
 		dimension = d;
 	}
 
+	public double getDpi() {
+		return dpi;
+	}
+
+	/** resolution of created images.
+	 * 
+	 * @param dpi default DEFAULT_DPI (72) gives one pixel per user unit
+	 */
+	public void setDpi(double dpi) {
+		if (dpi <= 0.0) {
+			throw new RuntimeException("dpi must be positive: "+dpi);
+		}
+		this.dpi = dpi;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/** 
+	 * @param tileSize width and height of tiles in pixels
+	 */
+	public void setTileSize(int tileSize) {
+		if (tileSize <= 0) {
+			throw new RuntimeException("tileSize must be positive: "+tileSize);
+		}
+		this.tileSize = tileSize;
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/** 
+	 * @param threadCount maximum number of threads for tiled rendering (default number of processors)
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
 	public Graphics2D createGraphics() {
 		return createGraphics(null);
 	}
@@ -67,11 +156,14 @@ public class HiddenGraphics {
 		} else {
 			setDefaultDimension();
 		}
+		int width = getPixelWidth();
+		int height = getPixelHeight();
 		// there may be ultra thin images for lines, etc.
-		img = new BufferedImage(Math.max(1, dimension.width), Math.max(1, dimension.height), BufferedImage.TYPE_INT_ARGB);
+		img = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
 		g = img.createGraphics();
 		g.setBackground(backgroundColor);
-		g.clearRect(0, 0, dimension.width, dimension.height);
+		g.clearRect(0, 0, width, height);
+		applyScale(g);
 		return g;
 	}
 	
@@ -91,8 +183,207 @@ public class HiddenGraphics {
 	public BufferedImage createImage(SVGElement element) {
 		Graphics2D g2D = createGraphics(element);
 		LOG.trace(element.toXML());
+		resetCounts();
+		long drawn = SVGElement.getDrawnCount();
+		long culled = SVGElement.getCulledCount();
 		element.draw(g2D);
+		drawnCount.addAndGet(SVGElement.getDrawnCount() - drawn);
+		culledCount.addAndGet(SVGElement.getCulledCount() - culled);
+		return img;
+	}
+
+	/** renders element in parallel tiles and stitches them.
+	 * 
+	 * result is identical to createImage(element) 
+	 * 
+	 * @param element
+	 * @return image (also available to write())
+	 */
+	public BufferedImage createTiledImage(SVGElement element) {
+		setDimension(element.getBoundingBox().getDimension());
+		final BufferedImage image = new BufferedImage(
+				Math.max(1, getPixelWidth()), Math.max(1, getPixelHeight()), BufferedImage.TYPE_INT_ARGB);
+		renderTiles(element, new TileListener() {
+			public void tileRendered(int x, int y, BufferedImage tile) {
+				image.getRaster().setRect(x, y, tile.getRaster());
+			}
+		});
+		img = image;
 		return img;
 	}
+
+	/** renders element in tiles and passes each to listener.
+	 * 
+	 * the full image is not created.
+	 * 
+	 * @param element
+	 * @param listener
+	 */
+	public void renderTiles(SVGElement element, TileListener listener) {
+		setDimension(element.getBoundingBox().getDimension());
+		resetCounts();
+		final int width = getPixelWidth();
+		final int height = getPixelHeight();
+		final double scale = getScale();
+		final List<SVGElement> drawables = new ArrayList<SVGElement>();
+		addDrawables(element, drawables);
+		final Rectangle[] bounds = new Rectangle[drawables.size()];
+		for (int i = 0; i < bounds.length; i++) {
+			bounds[i] = createDeviceBounds(drawables.get(i), scale);
+		}
+		List<Rectangle> tiles = createTiles(Math.max(1, width), Math.max(1, height));
+		int workers = Math.min(threadCount, tiles.size());
+		LOG.trace("rendering "+drawables.size()+" elements in "+tiles.size()+" tiles on "+workers+" threads");
+		if (workers <= 1) {
+			for (Rectangle tile : tiles) {
+				listener.tileRendered(tile.x, tile.y, renderTile(drawables, bounds, tile, width, height, scale));
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		CompletionService<Tile> completionService = new ExecutorCompletionService<Tile>(executor);
+		try {
+			for (final Rectangle tile : tiles) {
+				completionService.submit(new Callable<Tile>() {
+					public Tile call() throws Exception {
+						return new Tile(tile, renderTile(drawables, bounds, tile, width, height, scale));
+					}
+				});
+			}
+			for (int i = 0; i < tiles.size(); i++) {
+				Tile tile = completionService.take().get();
+				listener.tileRendered(tile.rectangle.x, tile.rectangle.y, tile.image);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while rendering tiles", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("cannot render tile", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private BufferedImage renderTile(List<SVGElement> drawables, Rectangle[] bounds, Rectangle tile,
+			int width, int height, double scale) {
+		BufferedImage tileImage = new BufferedImage(tile.width, tile.height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2d = tileImage.createGraphics();
+		g2d.setBackground(backgroundColor);
+		// only the area cleared by createGraphics() has background
+		Rectangle cleared = tile.intersection(new Rectangle(0, 0, width, height));
+		if (!cleared.isEmpty()) {
+			g2d.clearRect(cleared.x - tile.x, cleared.y - tile.y, cleared.width, cleared.height);
+		}
+		g2d.translate(-tile.x, -tile.y);
+		applyScale(g2d);
+		long drawn = SVGElement.getDrawnCount();
+		long culled = SVGElement.getCulledCount();
+		for (int i = 0; i < bounds.length; i++) {
+			if (bounds[i] == null || bounds[i].intersects(tile)) {
+				drawables.get(i).drawUnculled(g2d);
+			} else {
+				culledCount.incrementAndGet();
+			}
+		}
+		drawnCount.addAndGet(SVGElement.getDrawnCount() - drawn);
+		culledCount.addAndGet(SVGElement.getCulledCount() - culled);
+		g2d.dispose();
+		return tileImage;
+	}
+
+	private List<Rectangle> createTiles(int width, int height) {
+		List<Rectangle> tiles = new ArrayList<Rectangle>();
+		for (int y = 0; y < height; y += tileSize) {
+			for (int x = 0; x < width; x += tileSize) {
+				tiles.add(new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y)));
+			}
+		}
+		return tiles;
+	}
+
+	/** elements which paint themselves, in drawing order.
+	 * 
+	 * mirrors SVGElement.drawElement().
+	 */
+	private static void addDrawables(SVGElement element, List<SVGElement> drawables) {
+		if (element.isDrawable()) {
+			drawables.add(element);
+		} else {
+			for (int i = 0; i < element.getChildElements().size(); i++) {
+				Element child = element.getChildElements().get(i);
+				if (child instanceof SVGElement) {
+					addDrawables((SVGElement) child, drawables);
+				}
+			}
+		}
+	}
+
+	/** pixel region that drawable may touch.
+	 * 
+	 * @return null if unknown (always drawn)
+	 */
+	private static Rectangle createDeviceBounds(SVGElement drawable, double scale) {
+		Real2Range bbox = drawable.getDrawnBoundingBox(drawable.getCumulativeTransform());
+		if (bbox == null) {
+			return null;
+		} else if (!bbox.isValid()) {
+			return NOT_DRAWN;
+		}
+		int xmin = (int) Math.floor(bbox.getXMin() * scale) - PIXEL_MARGIN;
+		int ymin = (int) Math.floor(bbox.getYMin() * scale) - PIXEL_MARGIN;
+		int xmax = (int) Math.ceil(bbox.getXMax() * scale) + PIXEL_MARGIN;
+		int ymax = (int) Math.ceil(bbox.getYMax() * scale) + PIXEL_MARGIN;
+		return new Rectangle(xmin, ymin, xmax - xmin, ymax - ymin);
+	}
+
+	/** elements painted by the last createImage() or tiled rendering.
+	 * 
+	 * for tiles, an element is counted once for each tile it is painted in.
+	 */
+	public long getDrawnCount() {
+		return drawnCount.get();
+	}
+
+	/** elements (or subtrees) skipped as invisible by the last rendering.
+	 * 
+	 * for tiles, counted per tile.
+	 */
+	public long getCulledCount() {
+		return culledCount.get();
+	}
+
+	private void resetCounts() {
+		drawnCount.set(0);
+		culledCount.set(0);
+	}
+
+	private double getScale() {
+		return dpi / DEFAULT_DPI;
+	}
+
+	private void applyScale(Graphics2D g2d) {
+		double scale = getScale();
+		if (scale != 1.0) {
+			g2d.scale(scale, scale);
+		}
+	}
+
+	private int getPixelWidth() {
+		return (int) Math.round(dimension.width * getScale());
+	}
+
+	private int getPixelHeight() {
+		return (int) Math.round(dimension.height * getScale());
+	}
+
+	private static class Tile {
+		private Rectangle rectangle;
+		private BufferedImage image;
+
+		Tile(Rectangle rectangle, BufferedImage image) {
+			this.rectangle = rectangle;
+			this.image = image;
+		}
+	}
 	
 }
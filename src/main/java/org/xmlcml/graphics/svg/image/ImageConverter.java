@@ -1,14 +1,31 @@
 package org.xmlcml.graphics.svg.image;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.xmlcml.euclid.IntRange;
 import org.xmlcml.graphics.svg.SVGImage;
 
+import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /** utility methods to help processing images.
  * <p>
@@ -32,6 +49,8 @@ public class ImageConverter {
 	private String fileroot = "image";
 	private String mimeType = SVGImage.IMAGE_PNG;
 	private List<IntRange> hrefIntRangeArray;
+	private int writerCount = 2;
+	private ImageStore imageStore;
 
 	public ImageConverter() {
 		
@@ -72,7 +91,8 @@ public class ImageConverter {
 	 * 
 	 * <p>Very crude. Designed to parse very long strings on assumption they come from 
 	 * XOM tools. detects <image ... />. If it works may be refined. Range limits point to
-	 * "!<" and "/>!". Note- will fail on prefixed XML.
+	 * "!<" and "/>!". Note- will fail on prefixed XML; see extractImages() for
+	 * a streaming alternative.
 	 * </p>
 	 * @return empty list if none
 	 */
@@ -150,27 +170,136 @@ public class ImageConverter {
 	 */
 	public List<String> createImageFiles() throws IOException {
 		if (imageFilenames == null) {
-			if (imageDirectory == null) {
+			if (imageDirectory == null && imageStore == null) {
 				throw new RuntimeException("No image directory");
 			}
 			extractHrefStrings();
 			imageFilenames = new ArrayList<String>(hrefStrings.size());
 			int index = 1;
-			String suffix = SVGImage.getFormatFromMimeType(mimeType).toLowerCase();
 			for (String hrefString : hrefStrings) {
-				BufferedImage bufferedImage = SVGImage.readSrcDataToBufferedImage(hrefString);
-				String filename = fileroot+"."+index+"."+suffix;
-				File file = new File(imageDirectory, filename);
-				// because this will be relative URL
-				filename = file.toString().replaceAll("\\\\", "/");
-				imageFilenames.add(filename);
-				SVGImage.writeBufferedImage(bufferedImage, mimeType, file);
+				if (imageStore != null) {
+					byte[] bytes = IOUtils.toByteArray(
+							SVGImage.createBase64InputStream(hrefString, SVGImage.getBase64Start(hrefString)));
+					File file = imageStore.writeImage(SVGImage.getMimeTypeFromSrcValue(hrefString), bytes);
+					imageFilenames.add(getRelativeFilename(file));
+				} else {
+					BufferedImage bufferedImage = SVGImage.readSrcDataToBufferedImage(hrefString);
+					File file = createImageFile(index);
+					imageFilenames.add(getRelativeFilename(file));
+					SVGImage.writeBufferedImage(bufferedImage, mimeType, file);
+				}
 				index++;
 			}
 		}
 		return imageFilenames;
 	}
 
+	/** streams SVG to output, writing each embedded image to a file as it is read.
+	 *
+	 * <p>The output is the SVG with each data: href replaced by filePrefix + filename,
+	 * as in replaceHrefDataWithFileRef(). Only the current image's bytes are
+	 * held while reading; files are written by a pool of writerCount threads with
+	 * a bounded queue. Images already in the target mimeType are copied without
+	 * re-encoding. Handles prefixed XML.</p>
+	 *
+	 * @param reader SVG input
+	 * @param writer rewritten SVG
+	 * @param filePrefix prepended to filenames in href (e.g. "../")
+	 * @return filenames of images in document order
+	 * @throws IOException
+	 */
+	public List<String> extractImages(Reader reader, Writer writer, final String filePrefix) throws IOException {
+		if (imageDirectory == null && imageStore == null) {
+			throw new RuntimeException("No image directory");
+		}
+		imageFilenames = new ArrayList<String>();
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(writerCount, writerCount, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(writerCount), new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			new StreamingImageExtractor(reader, writer, new StreamingImageExtractor.ImageHandler() {
+				public String handleImage(final String dataMimeType, final byte[] bytes) throws IOException {
+					final File file;
+					boolean write = true;
+					if (imageStore != null) {
+						ImageStore.StoredImage storedImage = imageStore.addImage(bytes);
+						file = storedImage.getFile();
+						write = storedImage.isFirst();
+					} else {
+						file = createImageFile(imageFilenames.size() + 1);
+					}
+					String filename = getRelativeFilename(file);
+					imageFilenames.add(filename);
+					if (write) {
+						final String targetMimeType = imageStore != null ? imageStore.getMimeType() : mimeType;
+						futures.add(executor.submit(new Callable<Void>() {
+							public Void call() throws IOException {
+								writeImageBytes(dataMimeType, bytes, targetMimeType, file);
+								return null;
+							}
+						}));
+					}
+					return filePrefix + filename;
+				}
+			}).extract();
+		} finally {
+			executor.shutdown();
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while writing images", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Cannot write image", e.getCause());
+		}
+		return imageFilenames;
+	}
+
+	/** streams svgFile to outputSvgFile, extracting images.
+	 *
+	 * @see #extractImages(Reader, Writer, String)
+	 */
+	public List<String> extractImages(File svgFile, File outputSvgFile, String filePrefix) throws IOException {
+		Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(svgFile), "UTF-8"));
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputSvgFile), "UTF-8"));
+			try {
+				return extractImages(reader, writer, filePrefix);
+			} finally {
+				writer.close();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** writes bytes directly if already of mimeType, else re-encodes.
+	 */
+	static void writeImageBytes(String dataMimeType, byte[] bytes, String mimeType, File file) throws IOException {
+		if (mimeType.equals(dataMimeType)) {
+			FileUtils.writeByteArrayToFile(file, bytes);
+		} else {
+			BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(bytes));
+			if (bufferedImage == null) {
+				throw new RuntimeException("Cannot read image of type "+dataMimeType+" for "+file);
+			}
+			SVGImage.writeBufferedImage(bufferedImage, mimeType, file);
+		}
+	}
+
+	private File createImageFile(int index) {
+		String suffix = SVGImage.getFormatFromMimeType(mimeType).toLowerCase();
+		return new File(imageDirectory, fileroot+"."+index+"."+suffix);
+	}
+
+	static String getRelativeFilename(File file) {
+		// because this will be relative URL
+		return file.toString().replaceAll("\\\\", "/");
+	}
+
 	public void replaceHrefDataWithFileRef(String filePrefix) throws IOException {
 		createImageFiles();
 		StringBuilder sb = new StringBuilder(svgString);
@@ -217,6 +346,28 @@ public class ImageConverter {
 		this.mimeType  = mimeType;
 	}
 
+	/**
+	 * @param writerCount threads writing image files in extractImages()
+	 */
+	public void setWriterCount(int writerCount) {
+		if (writerCount <= 0) {
+			throw new RuntimeException("writerCount must be positive: "+writerCount);
+		}
+		this.writerCount = writerCount;
+	}
+
+	/** deduplicates images by content.
+	 *
+	 * <p>If set, createImageFiles() and extractImages() write each distinct image once
+	 * into the store's directory (ignoring imageDirectory, fileroot and mimeType) and
+	 * point duplicate hrefs at the same file. The store may be shared across documents.</p>
+	 *
+	 * @param imageStore null to write every image
+	 */
+	public void setImageStore(ImageStore imageStore) {
+		this.imageStore = imageStore;
+	}
+
 	public String getSVGString() {
 		return svgString;
 	}
@@ -0,0 +1,288 @@
+package org.xmlcml.graphics.svg.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.graphics.svg.SVGImage;
+
+/** content-addressed store for embedded images.
+ * <p>
+ * Images are identified by the SHA-256 of their decoded bytes. Each distinct image
+ * is written once, to a file named from its hash, and every reference resolves to
+ * that file. Files already present in the directory (e.g. from earlier pages of
+ * the same document) are not rewritten. Decoded BufferedImages are shared between
+ * identical images until clear() is called.
+ * </p>
+ * <p>
+ * Thread-safe; one store can be used across a batch of documents.
+ * </p>
+ * @author pm286
+ *
+ */
+public class ImageStore {
+	private static final Logger LOG = Logger.getLogger(ImageStore.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String SHA_256 = "SHA-256";
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/** result of adding an image.
+	 */
+	public static class StoredImage {
+		private String hash;
+		private File file;
+		private boolean first;
+
+		StoredImage(String hash, File file, boolean first) {
+			this.hash = hash;
+			this.file = file;
+			this.first = first;
+		}
+
+		public String getHash() {
+			return hash;
+		}
+
+		/** file holding the (shared) image.
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/** true if the caller must write the file.
+		 *
+		 * false if the content has been seen before or the file exists.
+		 */
+		public boolean isFirst() {
+			return first;
+		}
+	}
+
+	private File directory;
+	private String fileroot = "image";
+	private String mimeType = SVGImage.IMAGE_PNG;
+	private Map<String, File> fileByHash;
+	private Map<String, BufferedImage> imageByHash;
+	private int imageCount;
+	private int duplicateCount;
+	private long bytesSaved;
+	private int sharedImageCount;
+
+	/**
+	 * @param directory created if absent
+	 */
+	public ImageStore(File directory) {
+		if (directory == null) {
+			throw new RuntimeException("null image directory");
+		}
+		this.directory = directory;
+		if (!directory.exists()) {
+			directory.mkdirs();
+		} else if (!directory.isDirectory()) {
+			throw new RuntimeException("must be a directory: "+directory);
+		}
+		fileByHash = new HashMap<String, File>();
+		imageByHash = new HashMap<String, BufferedImage>();
+	}
+
+	/** records decoded image bytes.
+	 *
+	 * @param bytes decoded image (e.g. PNG file contents)
+	 * @return file for this content; write it only if isFirst()
+	 */
+	public synchronized StoredImage addImage(byte[] bytes) {
+		String hash = createHash(bytes);
+		imageCount++;
+		File file = fileByHash.get(hash);
+		if (file != null) {
+			duplicateCount++;
+			bytesSaved += bytes.length;
+			return new StoredImage(hash, file, false);
+		}
+		file = new File(directory, fileroot+"."+hash+"."+getSuffix());
+		fileByHash.put(hash, file);
+		return new StoredImage(hash, file, !file.exists());
+	}
+
+	/** adds image and writes it if not already stored.
+	 *
+	 * @param dataMimeType mimeType of bytes
+	 * @param bytes decoded image
+	 * @return file holding image
+	 * @throws IOException
+	 */
+	public File writeImage(String dataMimeType, byte[] bytes) throws IOException {
+		StoredImage storedImage = addImage(bytes);
+		if (storedImage.isFirst()) {
+			ImageConverter.writeImageBytes(dataMimeType, bytes, mimeType, storedImage.getFile());
+		}
+		return storedImage.getFile();
+	}
+
+	/** writes embedded image of svgImage to store and points its href at the file.
+	 *
+	 * @param svgImage with data: href; unchanged if href is not base64 data
+	 * @param filePrefix prepended to the filename in href (e.g. "../")
+	 * @return file or null if no embedded image
+	 * @throws IOException
+	 */
+	public File replaceHrefDataWithFileRef(SVGImage svgImage, String filePrefix) throws IOException {
+		String href = svgImage.getImageValue();
+		byte[] bytes = decode(href);
+		if (bytes == null) {
+			return null;
+		}
+		File file = writeImage(SVGImage.getMimeTypeFromSrcValue(href), bytes);
+		svgImage.setHref(filePrefix + ImageConverter.getRelativeFilename(file));
+		return file;
+	}
+
+	/** decoded image shared with all identical images read through this store.
+	 *
+	 * @param svgImage
+	 * @return image or null if no embedded image
+	 */
+	public BufferedImage getBufferedImage(SVGImage svgImage) {
+		byte[] bytes = decode(svgImage.getImageValue());
+		return bytes == null ? null : getBufferedImage(bytes);
+	}
+
+	/** decoded image shared with all identical images read through this store.
+	 *
+	 * @param bytes encoded image (e.g. PNG file contents)
+	 * @return image
+	 */
+	public BufferedImage getBufferedImage(byte[] bytes) {
+		String hash = createHash(bytes);
+		synchronized (this) {
+			BufferedImage bufferedImage = imageByHash.get(hash);
+			if (bufferedImage != null) {
+				sharedImageCount++;
+				return bufferedImage;
+			}
+		}
+		BufferedImage bufferedImage = null;
+		try {
+			bufferedImage = ImageIO.read(new ByteArrayInputStream(bytes));
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read image", e);
+		}
+		if (bufferedImage == null) {
+			throw new RuntimeException("Cannot read image: "+hash);
+		}
+		synchronized (this) {
+			BufferedImage existing = imageByHash.get(hash);
+			if (existing != null) {
+				sharedImageCount++;
+				return existing;
+			}
+			imageByHash.put(hash, bufferedImage);
+		}
+		return bufferedImage;
+	}
+
+	/** releases shared BufferedImages; files and counts are kept.
+	 */
+	public synchronized void clear() {
+		imageByHash.clear();
+	}
+
+	private static byte[] decode(String href) {
+		int start = SVGImage.getBase64Start(href);
+		if (start == -1) {
+			return null;
+		}
+		try {
+			return IOUtils.toByteArray(SVGImage.createBase64InputStream(href, start));
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot decode image", e);
+		}
+	}
+
+	/** hex SHA-256 of bytes.
+	 *
+	 * @param bytes
+	 * @return 64 lowercase hex digits
+	 */
+	public static String createHash(byte[] bytes) {
+		MessageDigest digest = null;
+		try {
+			digest = MessageDigest.getInstance(SHA_256);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("No "+SHA_256, e);
+		}
+		byte[] hash = digest.digest(bytes);
+		char[] chars = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			chars[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private String getSuffix() {
+		return SVGImage.getFormatFromMimeType(mimeType).toLowerCase();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public void setFileroot(String fileroot) {
+		this.fileroot = fileroot;
+	}
+
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	public void setMimeType(String mimeType) {
+		if (SVGImage.getFormatFromMimeType(mimeType) == null) {
+			throw new RuntimeException("Unknown mimeType: "+mimeType);
+		}
+		this.mimeType = mimeType;
+	}
+
+	/** all images added. */
+	public synchronized int getImageCount() {
+		return imageCount;
+	}
+
+	/** distinct images. */
+	public synchronized int getUniqueImageCount() {
+		return fileByHash.size();
+	}
+
+	/** images resolved to an earlier copy. */
+	public synchronized int getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/** decoded bytes not written because they duplicated an earlier image. */
+	public synchronized long getBytesSaved() {
+		return bytesSaved;
+	}
+
+	/** BufferedImage requests answered by an existing decoded image. */
+	public synchronized int getSharedImageCount() {
+		return sharedImageCount;
+	}
+
+	public synchronized String getReport() {
+		return "images: "+imageCount+"; unique: "+fileByHash.size()+"; duplicates: "+duplicateCount+
+				"; bytes saved: "+bytesSaved+"; shared BufferedImages: "+sharedImageCount;
+	}
+}
@@ -0,0 +1,242 @@
+package org.xmlcml.graphics.svg.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Base64;
+
+import org.apache.commons.io.IOUtils;
+
+/** copies SVG character stream, replacing base64 image data in image/@href.
+ * <p>
+ * Single pass over the characters; only the decoded bytes of the current image
+ * are held. Elements and attributes are matched by local name so prefixed XML
+ * (svg:image, xl:href) is handled. Comments and CDATA are copied unchanged.
+ * Not a validating parser; assumes well-formed XML.
+ * </p>
+ * @author pm286
+ *
+ */
+class StreamingImageExtractor {
+
+	/** receives each decoded image.
+	 */
+	interface ImageHandler {
+		/**
+		 * @param mimeType from data URI (e.g. image/png)
+		 * @param bytes decoded image bytes
+		 * @return new href value (unescaped)
+		 */
+		String handleImage(String mimeType, byte[] bytes) throws IOException;
+	}
+
+	private static final String IMAGE = "image";
+	private static final String HREF = "href";
+	private static final String DATA_IMAGE = "data:image/";
+	private static final String BASE64 = ";base64";
+	private static final int MAX_HEADER = 256;
+	private static final int NONE = -2;
+
+	private Reader reader;
+	private Writer writer;
+	private ImageHandler handler;
+	private int pushed = NONE;
+
+	StreamingImageExtractor(Reader reader, Writer writer, ImageHandler handler) {
+		this.reader = reader;
+		this.writer = writer;
+		this.handler = handler;
+	}
+
+	void extract() throws IOException {
+		int c;
+		while ((c = read()) != -1) {
+			writer.write(c);
+			if (c == '<') {
+				readMarkup();
+			}
+		}
+		writer.flush();
+	}
+
+	private void readMarkup() throws IOException {
+		StringBuilder name = new StringBuilder();
+		int c;
+		while ((c = read()) != -1 && !isNameEnd(c)) {
+			name.append((char) c);
+			writer.write(c);
+			if (name.length() == 3 && "!--".contentEquals(name)) {
+				copyUntil("-->");
+				return;
+			} else if (name.length() == 8 && "![CDATA[".contentEquals(name)) {
+				copyUntil("]]>");
+				return;
+			}
+		}
+		unread(c);
+		if (IMAGE.equals(getLocalName(name))) {
+			readImageAttributes();
+		}
+	}
+
+	private void readImageAttributes() throws IOException {
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw new RuntimeException("unterminated <image");
+			} else if (c == '>') {
+				writer.write(c);
+				return;
+			} else if (isWhitespace(c) || c == '/') {
+				writer.write(c);
+				continue;
+			}
+			StringBuilder attName = new StringBuilder();
+			while (c != -1 && c != '=' && !isWhitespace(c)) {
+				attName.append((char) c);
+				writer.write(c);
+				c = read();
+			}
+			while (c != -1 && c != '"' && c != '\'') {
+				writer.write(c);
+				c = read();
+			}
+			if (c == -1) {
+				throw new RuntimeException("unterminated attribute: "+attName);
+			}
+			writer.write(c);
+			int quote = c;
+			if (HREF.equals(getLocalName(attName))) {
+				readHrefValue(quote);
+			} else {
+				copyUntil(quote);
+			}
+			writer.write(quote);
+		}
+	}
+
+	/** reads value up to and including closing quote; writes all but the quote.
+	 */
+	private void readHrefValue(int quote) throws IOException {
+		StringBuilder header = new StringBuilder();
+		int c;
+		while ((c = read()) != -1 && c != quote && c != ',' && header.length() < MAX_HEADER) {
+			header.append((char) c);
+		}
+		String h = header.toString();
+		if (c == ',' && h.startsWith(DATA_IMAGE) && h.endsWith(BASE64)) {
+			String mimeType = h.substring("data:".length(), h.length() - BASE64.length());
+			Base64CharStream base64Stream = new Base64CharStream(quote);
+			byte[] bytes = IOUtils.toByteArray(Base64.getMimeDecoder().wrap(base64Stream));
+			// decoder may stop at padding
+			base64Stream.drain();
+			writer.write(escape(handler.handleImage(mimeType, bytes)));
+		} else {
+			writer.write(h);
+			if (c == -1) {
+				throw new RuntimeException("unterminated href");
+			} else if (c != quote) {
+				writer.write(c);
+				copyUntil(quote);
+			}
+		}
+	}
+
+	/** copies up to and including end. */
+	private void copyUntil(String end) throws IOException {
+		StringBuilder tail = new StringBuilder();
+		int c;
+		while ((c = read()) != -1) {
+			writer.write(c);
+			tail.append((char) c);
+			if (tail.length() > end.length()) {
+				tail.deleteCharAt(0);
+			}
+			if (end.contentEquals(tail)) {
+				return;
+			}
+		}
+	}
+
+	/** copies up to quote; consumes but does not write quote. */
+	private void copyUntil(int quote) throws IOException {
+		int c;
+		while ((c = read()) != quote) {
+			if (c == -1) {
+				throw new RuntimeException("unterminated attribute value");
+			}
+			writer.write(c);
+		}
+	}
+
+	private int read() throws IOException {
+		if (pushed != NONE) {
+			int c = pushed;
+			pushed = NONE;
+			return c;
+		}
+		return reader.read();
+	}
+
+	private void unread(int c) {
+		pushed = c;
+	}
+
+	private static boolean isNameEnd(int c) {
+		return c == -1 || c == '>' || c == '/' || isWhitespace(c);
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static String getLocalName(CharSequence name) {
+		String s = name.toString();
+		return s.substring(s.indexOf(':') + 1);
+	}
+
+	private static String escape(String value) {
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;").replace("'", "&apos;");
+	}
+
+	/** characters of attribute value as bytes, ending at quote.
+	 *
+	 * character references (e.g. &#10;) are skipped.
+	 */
+	private class Base64CharStream extends InputStream {
+		private int quote;
+		private boolean ended;
+
+		Base64CharStream(int quote) {
+			this.quote = quote;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (ended) {
+				return -1;
+			}
+			int c = StreamingImageExtractor.this.read();
+			while (c == '&') {
+				while ((c = StreamingImageExtractor.this.read()) != ';' && c != -1 && c != quote) {
+				}
+				if (c == ';') {
+					c = StreamingImageExtractor.this.read();
+				}
+			}
+			if (c == -1) {
+				throw new RuntimeException("unterminated href");
+			} else if (c == quote) {
+				ended = true;
+				return -1;
+			}
+			return c & 0xff;
+		}
+
+		void drain() throws IOException {
+			while (read() != -1) {
+			}
+		}
+	}
+}
@@ -0,0 +1,363 @@
+package org.xmlcml.graphics.svg.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.imgscalr.Scalr;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGImage;
+
+/** renders many SVG pages to thumbnails or previews.
+ *
+ * Pages are drawn on a pool of worker threads into a fixed set of reusable
+ * BufferedImages of (oversample * target) size, scaled down with imgscalr
+ * and written by a separate writer pool so that rendering does not wait for
+ * encoding and disk. The writer queue is bounded; when it is full the rendering
+ * thread writes the image itself.
+ *
+ * The page is taken as the region from (0,0) to the far corner of its bounding box
+ * and is scaled uniformly to fit the target box.
+ *
+ * Failed pages are logged and counted; the batch continues.
+ *
+ * @author pm286
+ *
+ */
+public class ThumbnailRenderer {
+	private static final Logger LOG = Logger.getLogger(ThumbnailRenderer.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	public static final int DEFAULT_TARGET_SIZE = 200;
+	public static final double DEFAULT_OVERSAMPLE = 2.0;
+	public static final String SVG_SUFFIX = "svg";
+	private static final int WRITE_QUEUE_PER_WRITER = 4;
+
+	private int targetWidth = DEFAULT_TARGET_SIZE;
+	private int targetHeight = DEFAULT_TARGET_SIZE;
+	private double oversample = DEFAULT_OVERSAMPLE;
+	private int threadCount = Runtime.getRuntime().availableProcessors();
+	private int writerCount = 1;
+	private String mimeType = SVGImage.IMAGE_PNG;
+	private Color backgroundColor = Color.WHITE;
+	private Scalr.Method scalingMethod = Scalr.Method.QUALITY;
+
+	private AtomicInteger pageCount = new AtomicInteger();
+	private AtomicInteger failedCount = new AtomicInteger();
+	private long elapsedMillis;
+
+	public ThumbnailRenderer() {
+	}
+
+	/** renders all *.svg files in directory.
+	 *
+	 * @param inputDir
+	 * @param outputDir thumbnails named after the svg files
+	 */
+	public void renderDirectory(File inputDir, File outputDir) {
+		File[] files = inputDir.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return SVG_SUFFIX.equalsIgnoreCase(FilenameUtils.getExtension(name));
+			}
+		});
+		if (files == null) {
+			throw new RuntimeException("Cannot read directory: "+inputDir);
+		}
+		Arrays.sort(files);
+		renderFiles(Arrays.asList(files), outputDir);
+	}
+
+	/** renders svg files, parsing each on a worker thread.
+	 *
+	 * @param svgFiles
+	 * @param outputDir thumbnails named after the svg files
+	 */
+	public void renderFiles(List<File> svgFiles, File outputDir) {
+		List<PageSource> sources = new ArrayList<PageSource>();
+		for (final File svgFile : svgFiles) {
+			sources.add(new PageSource(createOutputFile(outputDir, FilenameUtils.getBaseName(svgFile.getName()))) {
+				SVGElement getPage() {
+					return SVGElement.readAndCreateSVG(svgFile);
+				}
+			});
+		}
+		render(sources);
+	}
+
+	/** renders elements already in memory.
+	 *
+	 * elements are only read; but must not be drawn elsewhere concurrently.
+	 *
+	 * @param pages
+	 * @param outputDir
+	 * @param baseName thumbnails are baseName.0.png, baseName.1.png ...
+	 */
+	public void renderElements(List<? extends SVGElement> pages, File outputDir, String baseName) {
+		List<PageSource> sources = new ArrayList<PageSource>();
+		for (int i = 0; i < pages.size(); i++) {
+			final SVGElement page = pages.get(i);
+			sources.add(new PageSource(createOutputFile(outputDir, baseName+"."+i)) {
+				SVGElement getPage() {
+					return page;
+				}
+			});
+		}
+		render(sources);
+	}
+
+	private void render(List<PageSource> sources) {
+		pageCount.set(0);
+		failedCount.set(0);
+		long start = System.currentTimeMillis();
+		int workers = Math.max(1, Math.min(threadCount, sources.size()));
+		final BlockingQueue<BufferedImage> bufferPool = new ArrayBlockingQueue<BufferedImage>(workers);
+		int bufferWidth = (int) Math.ceil(targetWidth * oversample);
+		int bufferHeight = (int) Math.ceil(targetHeight * oversample);
+		for (int i = 0; i < workers; i++) {
+			bufferPool.add(new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_ARGB));
+		}
+		ExecutorService renderExecutor = Executors.newFixedThreadPool(workers);
+		final ThreadPoolExecutor writeExecutor = new ThreadPoolExecutor(writerCount, writerCount, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(writerCount * WRITE_QUEUE_PER_WRITER), new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			List<Future<?>> renderFutures = new ArrayList<Future<?>>();
+			for (final PageSource source : sources) {
+				renderFutures.add(renderExecutor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						renderPage(source, bufferPool, writeExecutor);
+						return null;
+					}
+				}));
+			}
+			waitFor(renderFutures);
+		} finally {
+			renderExecutor.shutdown();
+			writeExecutor.shutdown();
+			try {
+				writeExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("interrupted while writing thumbnails", e);
+			}
+		}
+		elapsedMillis = System.currentTimeMillis() - start;
+		LOG.debug("rendered "+pageCount+" pages ("+failedCount+" failed) in "+elapsedMillis+" ms; "+
+				String.format("%.1f", getPagesPerSecond())+" pages/s");
+	}
+
+	private void renderPage(final PageSource source, BlockingQueue<BufferedImage> bufferPool,
+			ThreadPoolExecutor writeExecutor) throws InterruptedException {
+		final BufferedImage thumbnail;
+		BufferedImage buffer = bufferPool.take();
+		try {
+			SVGElement page = source.getPage();
+			if (page == null) {
+				throw new RuntimeException("no SVG");
+			}
+			thumbnail = createThumbnail(page, buffer);
+		} catch (RuntimeException e) {
+			LOG.error("Cannot render "+source.outputFile+": "+e);
+			failedCount.incrementAndGet();
+			return;
+		} finally {
+			bufferPool.put(buffer);
+		}
+		writeExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					SVGImage.writeBufferedImage(thumbnail, mimeType, source.outputFile);
+					pageCount.incrementAndGet();
+				} catch (IOException e) {
+					LOG.error("Cannot write "+source.outputFile+": "+e);
+					failedCount.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	/** draws page into pooled buffer and scales down.
+	 *
+	 * @return new image not sharing data with buffer
+	 */
+	private BufferedImage createThumbnail(SVGElement page, BufferedImage buffer) {
+		Real2Range bbox = page.getBoundingBox();
+		if (bbox == null || !bbox.isValid()) {
+			throw new RuntimeException("page has no bounding box");
+		}
+		double pageWidth = Math.max(1.0, bbox.getXMax());
+		double pageHeight = Math.max(1.0, bbox.getYMax());
+		double scale = Math.min(buffer.getWidth() / pageWidth, buffer.getHeight() / pageHeight);
+		int width = Math.max(1, Math.min(buffer.getWidth(), (int) Math.ceil(pageWidth * scale)));
+		int height = Math.max(1, Math.min(buffer.getHeight(), (int) Math.ceil(pageHeight * scale)));
+		Graphics2D g2d = buffer.createGraphics();
+		try {
+			g2d.setBackground(backgroundColor);
+			g2d.clearRect(0, 0, buffer.getWidth(), buffer.getHeight());
+			g2d.setClip(0, 0, width, height);
+			g2d.scale(scale, scale);
+			page.draw(g2d);
+		} finally {
+			g2d.dispose();
+		}
+		BufferedImage region = buffer.getSubimage(0, 0, width, height);
+		BufferedImage thumbnail = Scalr.resize(region, scalingMethod, targetWidth, targetHeight);
+		if (thumbnail.getRaster().getDataBuffer() == buffer.getRaster().getDataBuffer()) {
+			// no scaling was needed; must not hand the pooled buffer to the writer
+			thumbnail = Scalr.crop(region, 0, 0, width, height);
+			if (thumbnail.getRaster().getDataBuffer() == buffer.getRaster().getDataBuffer()) {
+				throw new RuntimeException("cannot copy pooled buffer");
+			}
+		}
+		return thumbnail;
+	}
+
+	private static void waitFor(List<Future<?>> futures) {
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while rendering thumbnails", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("cannot render thumbnails", e.getCause());
+		}
+	}
+
+	private File createOutputFile(File outputDir, String baseName) {
+		return new File(outputDir, baseName+"."+getSuffix());
+	}
+
+	private String getSuffix() {
+		int idx = mimeType.lastIndexOf("/");
+		return idx == -1 ? mimeType : mimeType.substring(idx + 1);
+	}
+
+	/** pages written by the last run.
+	 */
+	public int getPageCount() {
+		return pageCount.get();
+	}
+
+	/** pages which could not be read, rendered or written in the last run.
+	 */
+	public int getFailedCount() {
+		return failedCount.get();
+	}
+
+	/** wall-clock time of the last run, including writing.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public double getPagesPerSecond() {
+		return pageCount.get() * 1000.0 / Math.max(1, elapsedMillis);
+	}
+
+	public int getTargetWidth() {
+		return targetWidth;
+	}
+
+	public int getTargetHeight() {
+		return targetHeight;
+	}
+
+	/** thumbnails fit within this box, keeping aspect ratio.
+	 *
+	 * @param targetWidth
+	 * @param targetHeight
+	 */
+	public void setTargetSize(int targetWidth, int targetHeight) {
+		if (targetWidth <= 0 || targetHeight <= 0) {
+			throw new RuntimeException("target size must be positive: "+targetWidth+" x "+targetHeight);
+		}
+		this.targetWidth = targetWidth;
+		this.targetHeight = targetHeight;
+	}
+
+	public double getOversample() {
+		return oversample;
+	}
+
+	/** pages are drawn at oversample * target size before scaling down.
+	 *
+	 * @param oversample (>= 1.0) default 2.0
+	 */
+	public void setOversample(double oversample) {
+		this.oversample = Math.max(1.0, oversample);
+	}
+
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * @param threadCount rendering threads (and pooled buffers)
+	 */
+	public void setThreadCount(int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	public int getWriterCount() {
+		return writerCount;
+	}
+
+	/**
+	 * @param writerCount threads encoding and writing images
+	 */
+	public void setWriterCount(int writerCount) {
+		this.writerCount = Math.max(1, writerCount);
+	}
+
+	public String getMimeType() {
+		return mimeType;
+	}
+
+	/**
+	 * @param mimeType ImageIO writer type (default SVGImage.IMAGE_PNG)
+	 */
+	public void setMimeType(String mimeType) {
+		this.mimeType = mimeType;
+	}
+
+	public void setBackgroundColor(Color backgroundColor) {
+		this.backgroundColor = backgroundColor;
+	}
+
+	public void setScalingMethod(Scalr.Method scalingMethod) {
+		this.scalingMethod = scalingMethod;
+	}
+
+	private abstract static class PageSource {
+		private File outputFile;
+
+		PageSource(File outputFile) {
+			this.outputFile = outputFile;
+		}
+
+		abstract SVGElement getPage();
+	}
+}
@@ -13,7 +13,6 @@ import org.xmlcml.euclid.Real2Array;
 import org.xmlcml.euclid.Real2Range;
 import org.xmlcml.euclid.RealArray;
 import org.xmlcml.euclid.RealRange;
-import org.xmlcml.euclid.Transform2;
 import org.xmlcml.graphics.svg.SVGElement;
 import org.xmlcml.graphics.svg.SVGG;
 import org.xmlcml.graphics.svg.SVGLine;
@@ -297,7 +296,7 @@ public class Axis {
 			analyzeVerticalAxis(verticalTexts);
 			for (SVGText rotatedText : verticalTexts) {
 				LOG.trace("ROT "+rotatedText.getValue()+" .. "+
-			       rotatedText.getTransform().getAngleOfRotation().getDegrees());
+			       rotatedText.getAngleOfRotation().getDegrees());
 			}
 		}
 	}
@@ -691,15 +690,9 @@ public class Axis {
 		LOG.trace("ORIENT "+orientation+" texts "+textList.size());
 		List<SVGText> subTextList = new ArrayList<SVGText>();
 		for (SVGText text : textList) {
-			Transform2 transform = text.getTransform();
-			boolean isRotated = false;
-			Double degrees = null;
-			if (transform != null) {
-				degrees = transform.getAngleOfRotation().getDegrees();
-			} else {
-				degrees = 0.0;
-			}
-			isRotated = Math.abs(degrees) > eps;
+			// cached on text
+			double degrees = Math.toDegrees(text.getRotationRadians());
+			boolean isRotated = Math.abs(degrees) > eps;
 			LOG.trace("IS ROT "+isRotated);
 			if (isRotated == LineOrientation.VERTICAL.equals(orientation)) {
 				LOG.trace("ADDED TEXT ");
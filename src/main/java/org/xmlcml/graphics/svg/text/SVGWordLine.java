@@ -135,6 +135,20 @@ public class SVGWordLine extends SVGG {
 		return wordList;
 	}
 
+	/** appends word as child and keeps the cached word list in step.
+	 * 
+	 * avoids requerying children when lines are built incrementally
+	 * @param word
+	 */
+	public void addWord(SVGWord word) {
+		if (wordList == null && this.getChildCount() == 0) {
+			wordList = new ArrayList<SVGWord>();
+		}
+		getOrCreateSVGWordList();
+		this.appendChild(word);
+		wordList.add(word);
+	}
+
 	/** returns value if the is exactly one Phrase.
 	 * 
 	 * @return
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.Nodes;
 
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -27,20 +29,79 @@ public class SVGWordPara extends SVGG {
 	}
 	
 	public static final String CLASS = "para";
+	private List<SVGWordLine> wordLineList;
 	
 	public SVGWordPara() {
 		super();
 		this.setClassName(CLASS);
 	}
 
+	/** lines in this para.
+	 * 
+	 * the lines are cached; the cache is kept in step with appended lines and dropped
+	 * on any other change to the children (through addLine() or XOM).
+	 * 
+	 * @return new list (a copy of the cache)
+	 */
 	public List<SVGWordLine> getSVGLineList() {
-		List<Element> elements = XMLUtil.getQueryElements(this, "*[@class='"+SVGWordLine.CLASS+"']");
-		List<SVGWordLine> wordLineList = new ArrayList<SVGWordLine>();
-		for (Element element : elements) {
-			wordLineList.add((SVGWordLine) element);
+		if (wordLineList == null) {
+			List<Element> elements = XMLUtil.getQueryElements(this, "*[@class='"+SVGWordLine.CLASS+"']");
+			wordLineList = new ArrayList<SVGWordLine>();
+			for (Element element : elements) {
+				wordLineList.add((SVGWordLine) element);
+			}
 		}
-		return wordLineList;
+		return new ArrayList<SVGWordLine>(wordLineList);
 	}
 
+	/** appends line as child.
+	 * 
+	 * @param line
+	 */
+	public void addLine(SVGWordLine line) {
+		this.appendChild(line);
+	}
+
+	@Override
+	public void insertChild(Node child, int position) {
+		boolean append = position == getChildCount();
+		super.insertChild(child, position);
+		if (wordLineList == null) {
+			return;
+		}
+		if (append && isWordLine(child)) {
+			wordLineList.add((SVGWordLine) child);
+		} else if (!append || child instanceof Element) {
+			wordLineList = null;
+		}
+	}
+
+	@Override
+	public Node removeChild(int position) {
+		wordLineList = null;
+		return super.removeChild(position);
+	}
+
+	@Override
+	public Node removeChild(Node child) {
+		wordLineList = null;
+		return super.removeChild(child);
+	}
+
+	@Override
+	public void replaceChild(Node oldChild, Node newChild) {
+		wordLineList = null;
+		super.replaceChild(oldChild, newChild);
+	}
+
+	@Override
+	public Nodes removeChildren() {
+		wordLineList = null;
+		return super.removeChildren();
+	}
+
+	private static boolean isWordLine(Node child) {
+		return child instanceof SVGWordLine && SVGWordLine.CLASS.equals(((SVGWordLine) child).getAttributeValue("class"));
+	}
 
 }
@@ -0,0 +1,263 @@
+package org.xmlcml.graphics.svg.text;
+
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.graphics.svg.SVGText;
+
+/** builds SVGWordPara/SVGWordLine/SVGWord hierarchies incrementally from characters.
+ *
+ * Characters must be supplied in reading order (e.g. from PDF2SVG). Each word, line and
+ * paragraph is passed to the Listener as soon as it is closed so that callers can process,
+ * serialise or detach it at once; the builder itself only holds the current paragraph, so
+ * memory does not grow with the length of the document.
+ *
+ * A word is closed by a space character or a horizontal gap larger than
+ * wordGapFactor * fontSize. A line is closed when the baseline moves by more than
+ * lineTolerance * fontSize or x moves backwards. A paragraph is closed when the line spacing
+ * exceeds paraSpacingFactor * fontSize or the next line is above the last (new column).
+ *
+ * Geometry is read once per character and the word string is accumulated before the
+ * SVGWord is created, so there is no requerying of child elements.
+ *
+ * @author pm286
+ *
+ */
+public class SVGWordStreamBuilder {
+	private static final Logger LOG = Logger.getLogger(SVGWordStreamBuilder.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	/** receives closed components.
+	 *
+	 * Words are closed before their line, lines before their paragraph.
+	 */
+	public interface Listener {
+		void wordClosed(SVGWord word);
+		void lineClosed(SVGWordLine line);
+		void paraClosed(SVGWordPara para);
+	}
+
+	public static final double DEFAULT_WORD_GAP_FACTOR = SVGText.SPACE_FACTOR;
+	public static final double DEFAULT_LINE_TOLERANCE = TextLineClusterer.DEFAULT_BASELINE_TOLERANCE;
+	public static final double DEFAULT_PARA_SPACING_FACTOR = 1.5;
+	private static final double DEFAULT_FONT_SIZE = 1.0;
+
+	private Listener listener;
+	private double wordGapFactor = DEFAULT_WORD_GAP_FACTOR;
+	private double lineTolerance = DEFAULT_LINE_TOLERANCE;
+	private double paraSpacingFactor = DEFAULT_PARA_SPACING_FACTOR;
+
+	// current word
+	private SVGText wordTemplate;
+	private StringBuilder wordString;
+	private double wordEndX;
+	// current line
+	private SVGWordLine line;
+	private double lineY;
+	private double lineFontSize;
+	private double lineEndX;
+	// current para
+	private SVGWordPara para;
+	private double lastLineY = Double.NaN;
+	private double lastLineFontSize;
+
+	private int characterCount;
+	private int wordCount;
+	private int lineCount;
+	private int paraCount;
+
+	public SVGWordStreamBuilder(Listener listener) {
+		this.listener = listener;
+	}
+
+	/** adds next character in reading order.
+	 *
+	 * @param character (not altered; copied into word)
+	 */
+	public void add(SVGText character) {
+		String s = character == null ? null : character.getText();
+		if (s == null) {
+			return;
+		}
+		characterCount++;
+		double x = character.getX();
+		double y = character.getY();
+		Double fs = character.getFontSize();
+		double fontSize = (fs == null || fs <= 0.0) ? DEFAULT_FONT_SIZE : fs;
+		Real2Range bbox = character.getBoundingBox();
+		double endX = bbox == null ? x : bbox.getXMax();
+
+		if (!isOnCurrentLine(x, y, fontSize)) {
+			closeLine();
+			if (isNewPara(y, fontSize)) {
+				closePara();
+			}
+			openLine(y, fontSize);
+		}
+		if (s.trim().length() == 0) {
+			closeWord();
+		} else {
+			if (wordString != null && x - wordEndX > wordGapFactor * fontSize) {
+				closeWord();
+			}
+			if (wordString == null) {
+				wordTemplate = character;
+				wordString = new StringBuilder();
+			}
+			wordString.append(s);
+			wordEndX = endX;
+		}
+		lineEndX = Math.max(lineEndX, endX);
+	}
+
+	/** adds characters in reading order.
+	 *
+	 * @param characters
+	 */
+	public void addAll(List<SVGText> characters) {
+		for (SVGText character : characters) {
+			add(character);
+		}
+	}
+
+	/** closes current word, line and paragraph.
+	 *
+	 * must be called after the last character.
+	 */
+	public void finish() {
+		closeLine();
+		closePara();
+		LOG.trace("characters: "+characterCount+"; words: "+wordCount+"; lines: "+lineCount+"; paras: "+paraCount);
+	}
+
+	private boolean isOnCurrentLine(double x, double y, double fontSize) {
+		if (line == null) {
+			return false;
+		}
+		double tolerance = lineTolerance * Math.max(fontSize, lineFontSize);
+		// allow small overlap from kerning
+		return Math.abs(y - lineY) <= tolerance && x >= lineEndX - fontSize;
+	}
+
+	private boolean isNewPara(double y, double fontSize) {
+		if (para == null || Double.isNaN(lastLineY)) {
+			return false;
+		}
+		double spacing = y - lastLineY;
+		return spacing < 0 || spacing > paraSpacingFactor * Math.max(fontSize, lastLineFontSize);
+	}
+
+	private void openLine(double y, double fontSize) {
+		line = new SVGWordLine();
+		lineY = y;
+		lineFontSize = fontSize;
+		lineEndX = -Double.MAX_VALUE;
+	}
+
+	private void closeWord() {
+		if (wordString != null) {
+			SVGText wordText = (SVGText) wordTemplate.copy();
+			wordText.setText(wordString.toString());
+			SVGWord word = new SVGWord();
+			word.appendChild(wordText);
+			line.addWord(word);
+			wordCount++;
+			if (listener != null) {
+				listener.wordClosed(word);
+			}
+			wordString = null;
+			wordTemplate = null;
+		}
+	}
+
+	private void closeLine() {
+		closeWord();
+		if (line != null) {
+			if (line.getChildCount() > 0) {
+				if (para == null) {
+					para = new SVGWordPara();
+				}
+				para.addLine(line);
+				lastLineY = lineY;
+				lastLineFontSize = lineFontSize;
+				lineCount++;
+				if (listener != null) {
+					listener.lineClosed(line);
+				}
+			}
+			line = null;
+		}
+	}
+
+	private void closePara() {
+		if (para != null) {
+			paraCount++;
+			if (listener != null) {
+				listener.paraClosed(para);
+			}
+			para = null;
+		}
+		lastLineY = Double.NaN;
+	}
+
+	/** convenience: builds a complete page (not streamed).
+	 *
+	 * @param characters in reading order
+	 * @return page containing all paragraphs
+	 */
+	public static SVGWordPage createPage(List<SVGText> characters) {
+		final SVGWordPage page = new SVGWordPage();
+		SVGWordStreamBuilder builder = new SVGWordStreamBuilder(new Listener() {
+			public void wordClosed(SVGWord word) {
+			}
+			public void lineClosed(SVGWordLine line) {
+			}
+			public void paraClosed(SVGWordPara para) {
+				page.appendChild(para);
+			}
+		});
+		builder.addAll(characters);
+		builder.finish();
+		return page;
+	}
+
+	public double getWordGapFactor() {
+		return wordGapFactor;
+	}
+
+	public void setWordGapFactor(double wordGapFactor) {
+		this.wordGapFactor = wordGapFactor;
+	}
+
+	public double getLineTolerance() {
+		return lineTolerance;
+	}
+
+	public void setLineTolerance(double lineTolerance) {
+		this.lineTolerance = lineTolerance;
+	}
+
+	public double getParaSpacingFactor() {
+		return paraSpacingFactor;
+	}
+
+	public void setParaSpacingFactor(double paraSpacingFactor) {
+		this.paraSpacingFactor = paraSpacingFactor;
+	}
+
+	public int getWordCount() {
+		return wordCount;
+	}
+
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	public int getParaCount() {
+		return paraCount;
+	}
+}
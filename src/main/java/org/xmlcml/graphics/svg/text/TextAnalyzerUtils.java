@@ -139,6 +139,12 @@ public class TextAnalyzerUtils {
 
 	private static final double Y_SCALE = 10;
 
+	/** buckets characters by scaled, rounded y.
+	 * 
+	 * splits lines which straddle a bucket boundary
+	 * @deprecated use createCharacterLines()
+	 */
+	@Deprecated
 	public static Multimap<Integer, SVGText> createCharactersByY(List<SVGText> textCharacters) {
 		Multimap<Integer, SVGText> charactersByY = ArrayListMultimap.create();
 		for (SVGText text : textCharacters) {
@@ -149,6 +155,15 @@ public class TextAnalyzerUtils {
 		return charactersByY;
 	}
 
+	/** clusters characters into lines using default TextLineClusterer.
+	 * 
+	 * @param textCharacters
+	 * @return lines sorted by baseline, each with characters sorted by x
+	 */
+	public static List<TextLine> createCharacterLines(List<SVGText> textCharacters) {
+		return new TextLineClusterer().createLines(textCharacters);
+	}
+
 //
 //	public static List<Chunk> castToChunks(List<SVGElement> chunkElements) {
 //		List<Chunk> chunks = new ArrayList<Chunk>();
@@ -0,0 +1,106 @@
+package org.xmlcml.graphics.svg.text;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGText;
+
+/** a line of characters sharing a common baseline.
+ *
+ * Lightweight (not an SVGElement) result of TextLineClusterer. Characters are held
+ * in increasing x order. The baseline and font size are those of the main
+ * (largest) font on the line; sub- and superscripts are attached to the line and can
+ * be recognised by their offset from the baseline.
+ *
+ * @author pm286
+ *
+ */
+public class TextLine {
+
+	private double baselineY;
+	private double fontSize;
+	private List<SVGText> characterList;
+
+	public TextLine(double baselineY, double fontSize, List<SVGText> characterList) {
+		this.baselineY = baselineY;
+		this.fontSize = fontSize;
+		this.characterList = characterList == null ? new ArrayList<SVGText>() : characterList;
+	}
+
+	/** y coordinate of the main font on the line.
+	 *
+	 * @return
+	 */
+	public double getBaselineY() {
+		return baselineY;
+	}
+
+	/** largest font size on the line.
+	 *
+	 * @return
+	 */
+	public double getFontSize() {
+		return fontSize;
+	}
+
+	/** characters in x order.
+	 *
+	 * @return unmodifiable list
+	 */
+	public List<SVGText> getCharacterList() {
+		return Collections.unmodifiableList(characterList);
+	}
+
+	public int size() {
+		return characterList.size();
+	}
+
+	/** character is above baseline by more than eps * fontSize.
+	 *
+	 * @param text
+	 * @param eps fraction of line font size
+	 * @return
+	 */
+	public boolean isSuperscript(SVGText text, double eps) {
+		Double y = text == null ? null : text.getY();
+		return y != null && baselineY - y > eps * fontSize;
+	}
+
+	/** character is below baseline by more than eps * fontSize.
+	 *
+	 * @param text
+	 * @param eps fraction of line font size
+	 * @return
+	 */
+	public boolean isSubscript(SVGText text, double eps) {
+		Double y = text == null ? null : text.getY();
+		return y != null && y - baselineY > eps * fontSize;
+	}
+
+	/** concatenated values of characters (no spaces added).
+	 *
+	 * @return
+	 */
+	public String getStringValue() {
+		StringBuilder sb = new StringBuilder();
+		for (SVGText text : characterList) {
+			String s = text.getText();
+			if (s != null) {
+				sb.append(s);
+			}
+		}
+		return sb.toString();
+	}
+
+	public Real2Range getBoundingBox() {
+		return SVGElement.createBoundingBox(characterList);
+	}
+
+	@Override
+	public String toString() {
+		return "y: "+baselineY+"; fs: "+fontSize+"; "+getStringValue();
+	}
+}
@@ -0,0 +1,218 @@
+package org.xmlcml.graphics.svg.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.graphics.svg.SVGText;
+
+/** clusters characters into lines by sorting on baseline and sweeping.
+ *
+ * Replaces the bucketing in TextAnalyzerUtils.createCharactersByY(), which splits lines
+ * whose characters straddle a bucket boundary. Here characters are sorted once by y and
+ * swept; a character joins the current line if its baseline is within
+ * baselineTolerance * fontSize of the line's main baseline. Lines of smaller font which sit
+ * just above or below a line of larger font are then attached as super/subscripts.
+ *
+ * Coordinates and font sizes are read once per character so the cost is dominated by
+ * the two sorts (O(n log n)).
+ *
+ * @author pm286
+ *
+ */
+public class TextLineClusterer {
+	private static final Logger LOG = Logger.getLogger(TextLineClusterer.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	/** max baseline difference on same line as fraction of font size */
+	public static final double DEFAULT_BASELINE_TOLERANCE = 0.3;
+	/** max offset of sub/superscript baseline as fraction of main font size */
+	public static final double DEFAULT_SCRIPT_OFFSET = 0.6;
+	/** script font must be smaller than this fraction of main font */
+	public static final double DEFAULT_SCRIPT_FONT_RATIO = 0.95;
+	private static final double DEFAULT_FONT_SIZE = 1.0;
+
+	private double baselineTolerance = DEFAULT_BASELINE_TOLERANCE;
+	private double scriptOffset = DEFAULT_SCRIPT_OFFSET;
+	private double scriptFontRatio = DEFAULT_SCRIPT_FONT_RATIO;
+
+	public TextLineClusterer() {
+	}
+
+	/** creates lines sorted by baseline; characters in each line are sorted by x.
+	 *
+	 * @param characters (unchanged)
+	 * @return lines (empty if characters is null or empty)
+	 */
+	public List<TextLine> createLines(List<SVGText> characters) {
+		List<TextLine> lines = new ArrayList<TextLine>();
+		if (characters == null || characters.size() == 0) {
+			return lines;
+		}
+		Glyph[] glyphs = createGlyphs(characters);
+		Arrays.sort(glyphs, new BaselineComparator());
+		List<Cluster> clusters = sweep(glyphs);
+		attachScripts(clusters);
+		for (Cluster cluster : clusters) {
+			if (cluster.target == null) {
+				lines.add(cluster.createTextLine());
+			}
+		}
+		LOG.trace("characters: "+characters.size()+"; clusters: "+clusters.size()+"; lines: "+lines.size());
+		return lines;
+	}
+
+	private Glyph[] createGlyphs(List<SVGText> characters) {
+		Glyph[] glyphs = new Glyph[characters.size()];
+		for (int i = 0; i < glyphs.length; i++) {
+			glyphs[i] = new Glyph(characters.get(i));
+		}
+		return glyphs;
+	}
+
+	private List<Cluster> sweep(Glyph[] glyphs) {
+		List<Cluster> clusters = new ArrayList<Cluster>();
+		Cluster current = null;
+		for (Glyph glyph : glyphs) {
+			if (current == null || !current.accepts(glyph, baselineTolerance)) {
+				current = new Cluster();
+				clusters.add(current);
+			}
+			current.add(glyph);
+		}
+		return clusters;
+	}
+
+	/** attach clusters of smaller font to an adjacent cluster of larger font.
+	 *
+	 * Targets always have larger font so chains (e.g. sub-subscripts) terminate.
+	 */
+	private void attachScripts(List<Cluster> clusters) {
+		for (int i = 0; i < clusters.size(); i++) {
+			Cluster cluster = clusters.get(i);
+			Cluster above = (i == 0) ? null : clusters.get(i - 1);
+			Cluster below = (i == clusters.size() - 1) ? null : clusters.get(i + 1);
+			// superscript sits above the baseline of the line below it
+			double superOffset = scriptOffsetTo(cluster, below);
+			// subscript sits below the baseline of the line above it
+			double subOffset = scriptOffsetTo(cluster, above);
+			if (!Double.isNaN(superOffset) && (Double.isNaN(subOffset) || superOffset <= subOffset)) {
+				cluster.target = below;
+			} else if (!Double.isNaN(subOffset)) {
+				cluster.target = above;
+			}
+		}
+		for (Cluster cluster : clusters) {
+			if (cluster.target != null) {
+				Cluster root = cluster.target;
+				while (root.target != null) {
+					root = root.target;
+				}
+				root.glyphList.addAll(cluster.glyphList);
+			}
+		}
+	}
+
+	/** offset of script from main line as fraction of main font size.
+	 *
+	 * @return NaN if script is not a valid sub/superscript of main
+	 */
+	private double scriptOffsetTo(Cluster script, Cluster main) {
+		if (main == null || script.fontSize >= scriptFontRatio * main.fontSize) {
+			return Double.NaN;
+		}
+		double offset = Math.abs(script.baselineY - main.baselineY) / main.fontSize;
+		return offset <= scriptOffset ? offset : Double.NaN;
+	}
+
+	public double getBaselineTolerance() {
+		return baselineTolerance;
+	}
+
+	public void setBaselineTolerance(double baselineTolerance) {
+		this.baselineTolerance = baselineTolerance;
+	}
+
+	public double getScriptOffset() {
+		return scriptOffset;
+	}
+
+	public void setScriptOffset(double scriptOffset) {
+		this.scriptOffset = scriptOffset;
+	}
+
+	public double getScriptFontRatio() {
+		return scriptFontRatio;
+	}
+
+	public void setScriptFontRatio(double scriptFontRatio) {
+		this.scriptFontRatio = scriptFontRatio;
+	}
+
+	/** character with coordinates parsed once. */
+	private static class Glyph {
+		SVGText text;
+		double x;
+		double y;
+		double fontSize;
+
+		Glyph(SVGText text) {
+			this.text = text;
+			this.x = text.getX();
+			this.y = text.getY();
+			Double fs = text.getFontSize();
+			this.fontSize = (fs == null || fs <= 0.0) ? DEFAULT_FONT_SIZE : fs;
+		}
+	}
+
+	/** characters accumulated during the sweep.
+	 *
+	 * baseline and fontSize are those of the largest font so far.
+	 */
+	private static class Cluster {
+		List<Glyph> glyphList = new ArrayList<Glyph>();
+		double baselineY;
+		double fontSize;
+		Cluster target;
+
+		boolean accepts(Glyph glyph, double tolerance) {
+			double maxFontSize = Math.max(fontSize, glyph.fontSize);
+			return Math.abs(glyph.y - baselineY) <= tolerance * maxFontSize;
+		}
+
+		void add(Glyph glyph) {
+			if (glyphList.size() == 0 || glyph.fontSize > fontSize) {
+				baselineY = glyph.y;
+				fontSize = glyph.fontSize;
+			}
+			glyphList.add(glyph);
+		}
+
+		TextLine createTextLine() {
+			Glyph[] glyphs = glyphList.toArray(new Glyph[0]);
+			Arrays.sort(glyphs, new XComparator());
+			List<SVGText> textList = new ArrayList<SVGText>(glyphs.length);
+			for (Glyph glyph : glyphs) {
+				textList.add(glyph.text);
+			}
+			return new TextLine(baselineY, fontSize, textList);
+		}
+	}
+
+	private static class BaselineComparator implements Comparator<Glyph> {
+		public int compare(Glyph g0, Glyph g1) {
+			return Double.compare(g0.y, g1.y);
+		}
+	}
+
+	private static class XComparator implements Comparator<Glyph> {
+		public int compare(Glyph g0, Glyph g1) {
+			return Double.compare(g0.x, g1.x);
+		}
+	}
+}
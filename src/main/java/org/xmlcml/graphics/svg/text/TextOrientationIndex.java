@@ -0,0 +1,124 @@
+package org.xmlcml.graphics.svg.text;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.euclid.Angle;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGText;
+import org.xmlcml.graphics.svg.SVGText.Orientation;
+
+/** texts partitioned by orientation.
+ *
+ * Built once per page so that searches for rotated labels (e.g. vertical axis titles)
+ * are lookups rather than rescans of every text's transform. Uses the orientation
+ * cached on each SVGText. The index is a snapshot; rebuild it if texts are added or
+ * their transforms changed.
+ *
+ * @author pm286
+ *
+ */
+public class TextOrientationIndex {
+	private static final Logger LOG = Logger.getLogger(TextOrientationIndex.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private Map<Orientation, List<SVGText>> textsByOrientation;
+	private int size;
+
+	public TextOrientationIndex(List<SVGText> texts) {
+		textsByOrientation = new EnumMap<Orientation, List<SVGText>>(Orientation.class);
+		for (Orientation orientation : Orientation.values()) {
+			textsByOrientation.put(orientation, new ArrayList<SVGText>());
+		}
+		for (SVGText text : texts) {
+			textsByOrientation.get(text.getOrientation()).add(text);
+		}
+		size = texts.size();
+	}
+
+	/** indexes all descendant texts of element.
+	 *
+	 * @param element
+	 * @return
+	 */
+	public static TextOrientationIndex createIndex(SVGElement element) {
+		return new TextOrientationIndex(SVGText.extractSelfAndDescendantTexts(element));
+	}
+
+	/** texts in document order with given orientation.
+	 *
+	 * @param orientation
+	 * @return list (not a copy; do not alter)
+	 */
+	public List<SVGText> getTexts(Orientation orientation) {
+		return textsByOrientation.get(orientation);
+	}
+
+	/** unrotated texts.
+	 *
+	 * @return
+	 */
+	public List<SVGText> getHorizontalTexts() {
+		return getTexts(Orientation.ANGLE_0);
+	}
+
+	/** texts with any significant rotation.
+	 *
+	 * @return new list
+	 */
+	public List<SVGText> getRotatedTexts() {
+		List<SVGText> rotatedTexts = new ArrayList<SVGText>();
+		for (Orientation orientation : Orientation.values()) {
+			if (!Orientation.ANGLE_0.equals(orientation)) {
+				rotatedTexts.addAll(textsByOrientation.get(orientation));
+			}
+		}
+		return rotatedTexts;
+	}
+
+	/** texts rotated by angle.
+	 *
+	 * If every angle within eps of angle is in one multiple-of-90-degrees partition only
+	 * that partition is searched; if none can be in a neighbouring partition that
+	 * partition and the OTHER texts are searched; otherwise all texts.
+	 *
+	 * @param angle
+	 * @param eps tolerance in radians
+	 * @return new list
+	 */
+	public List<SVGText> getTextsWithAngle(Angle angle, double eps) {
+		double degrees = angle.getDegrees();
+		Orientation orientation = Orientation.getOrientation(degrees, SVGText.ORIENTATION_EPS_DEGREES);
+		// furthest the matching texts can be from the nearest multiple of 90
+		double reach = Math.abs(degrees - 90.0 * Math.rint(degrees / 90.0)) + Math.toDegrees(eps);
+		List<SVGText> candidates = null;
+		if (!Orientation.OTHER.equals(orientation) && reach <= SVGText.ORIENTATION_EPS_DEGREES) {
+			candidates = textsByOrientation.get(orientation);
+		} else if (!Orientation.OTHER.equals(orientation) && reach < 90.0 - SVGText.ORIENTATION_EPS_DEGREES) {
+			candidates = new ArrayList<SVGText>(textsByOrientation.get(orientation));
+			candidates.addAll(textsByOrientation.get(Orientation.OTHER));
+		} else {
+			candidates = new ArrayList<SVGText>();
+			for (List<SVGText> texts : textsByOrientation.values()) {
+				candidates.addAll(texts);
+			}
+		}
+		List<SVGText> textList = new ArrayList<SVGText>();
+		for (SVGText text : candidates) {
+			if (text.isRotatedBy(angle, eps)) {
+				textList.add(text);
+			}
+		}
+		return textList;
+	}
+
+	public int size() {
+		return size;
+	}
+}
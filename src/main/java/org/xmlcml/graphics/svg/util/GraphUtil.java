@@ -23,6 +23,7 @@ import org.xmlcml.graphics.svg.SVGG;
 import org.xmlcml.graphics.svg.SVGSVG;
 import org.xmlcml.graphics.svg.SVGScript;
 import org.xmlcml.graphics.svg.SVGUtil;
+import org.xmlcml.graphics.svg.SVGXPath;
 import org.xmlcml.graphics.svg.linestuff.BoundingBoxManager;
 import org.xmlcml.xml.XMLConstants;
 
@@ -126,7 +127,7 @@ public class GraphUtil {
 	public static Nodes query(SVGElement svgElement, String xpath) {
 		Nodes nodes = null;
 		try {
-			nodes = svgElement.query(xpath, XMLConstants.SVG_XPATH);
+			nodes = SVGXPath.query(svgElement, xpath);
 		} catch (Exception e) {
 			throw new RuntimeException("Error in xpath: "+xpath);
 		}
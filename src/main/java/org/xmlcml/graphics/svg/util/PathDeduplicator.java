@@ -0,0 +1,297 @@
+package org.xmlcml.graphics.svg.util;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.ParentNode;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Real2Array;
+import org.xmlcml.graphics.svg.SVGDefs;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGPath;
+import org.xmlcml.graphics.svg.SVGPathPrimitive;
+import org.xmlcml.graphics.svg.SVGSymbol;
+import org.xmlcml.graphics.svg.SVGUse;
+import org.xmlcml.graphics.svg.path.ClosePrimitive;
+import org.xmlcml.graphics.svg.path.PathPrimitiveList;
+import org.xmlcml.graphics.svg.path.SVGPathParser;
+
+/** replaces repeated paths (typically glyph outlines from PDF conversion) by symbol + use.
+ * <p>
+ * Paths are grouped by their outline translated so that the first moveto is at the
+ * origin (rounded to decimalPlaces) together with their presentation attributes.
+ * Each group with at least minCount members becomes one SVGSymbol in SVGDefs and each
+ * member is replaced in place by an SVGUse at its origin, keeping its id, transform,
+ * clip-path and mask. Rendering is unchanged to within the rounding of the outline.
+ * Paths in defs, symbols, clipPaths, markers, patterns and masks are not touched, nor
+ * are paths with arcs (which SVGPathParser approximates) or with child elements.
+ * </p>
+ * @author pm286
+ *
+ */
+public class PathDeduplicator {
+	private static final Logger LOG = Logger.getLogger(PathDeduplicator.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	public static final int DEFAULT_DECIMAL_PLACES = 3;
+	public static final int DEFAULT_MIN_COUNT = 2;
+	public static final String DEFAULT_ID_PREFIX = "glyph";
+
+	private static final String XLINK = "xlink";
+	private static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+	// attributes which stay on the instance rather than the shared outline
+	private static final String OVERFLOW = "overflow";
+	private static final String VISIBLE = "visible";
+	private static final List<String> USE_ATTRIBUTES = Arrays.asList(
+			new String[]{SVGElement.ID, "transform", "clip-path", "mask"});
+	private static final Set<String> SKIPPED_ELEMENTS = new HashSet<String>(Arrays.asList(
+			new String[]{SVGDefs.TAG, SVGSymbol.TAG, "clipPath", "marker", "pattern", "mask"}));
+
+	private int decimalPlaces = DEFAULT_DECIMAL_PLACES;
+	private int minCount = DEFAULT_MIN_COUNT;
+	private String idPrefix = DEFAULT_ID_PREFIX;
+	private int pathCount;
+	private int replacedCount;
+
+	public PathDeduplicator() {
+	}
+
+	/** places to which normalised outline coordinates are rounded before comparison.
+	 *
+	 * @param decimalPlaces
+	 */
+	public void setDecimalPlaces(int decimalPlaces) {
+		this.decimalPlaces = decimalPlaces;
+	}
+
+	/** minimum number of identical paths for a symbol to be created.
+	 *
+	 * @param minCount
+	 */
+	public void setMinCount(int minCount) {
+		this.minCount = minCount;
+	}
+
+	/** prefix for generated symbol ids (made unique within the document).
+	 *
+	 * @param idPrefix
+	 */
+	public void setIdPrefix(String idPrefix) {
+		this.idPrefix = idPrefix;
+	}
+
+	/** replaces repeated paths under root by uses of shared symbols.
+	 *
+	 * @param root normally the SVGSVG; the defs are its first defs child (created if absent)
+	 * @return symbols created, in order of first occurrence
+	 */
+	public List<SVGSymbol> deduplicate(SVGElement root) {
+		pathCount = 0;
+		replacedCount = 0;
+		Map<String, List<PathInstance>> instancesByKey = new LinkedHashMap<String, List<PathInstance>>();
+		collectPaths(root, instancesByKey);
+		List<SVGSymbol> symbols = new ArrayList<SVGSymbol>();
+		SVGDefs defs = null;
+		int serial = 0;
+		for (List<PathInstance> instances : instancesByKey.values()) {
+			if (instances.size() < minCount) {
+				continue;
+			}
+			if (defs == null) {
+				defs = ensureDefs(root);
+				root.addNamespaceDeclaration(XLINK, XLINK_NS);
+			}
+			String id;
+			do {
+				id = idPrefix + (++serial);
+			} while (root.getElementById(id) != null);
+			SVGSymbol symbol = createSymbol(id, instances.get(0));
+			defs.appendChild(symbol);
+			symbols.add(symbol);
+			for (PathInstance instance : instances) {
+				replaceByUse(instance, symbol);
+			}
+		}
+		LOG.trace("paths: "+pathCount+"; replaced: "+replacedCount+"; symbols: "+symbols.size());
+		return symbols;
+	}
+
+	/** number of paths considered in the last deduplicate().
+	 */
+	public int getPathCount() {
+		return pathCount;
+	}
+
+	/** number of paths replaced by uses in the last deduplicate().
+	 */
+	public int getReplacedCount() {
+		return replacedCount;
+	}
+
+	private void collectPaths(Element element, Map<String, List<PathInstance>> instancesByKey) {
+		for (int i = 0; i < element.getChildCount(); i++) {
+			Node child = element.getChild(i);
+			if (!(child instanceof Element)) {
+				continue;
+			}
+			Element childElement = (Element) child;
+			if (childElement instanceof SVGPath) {
+				pathCount++;
+				PathInstance instance = createInstance((SVGPath) childElement);
+				if (instance != null) {
+					List<PathInstance> instances = instancesByKey.get(instance.key);
+					if (instances == null) {
+						instances = new ArrayList<PathInstance>();
+						instancesByKey.put(instance.key, instances);
+					}
+					instances.add(instance);
+				}
+			} else if (!SKIPPED_ELEMENTS.contains(childElement.getLocalName())) {
+				collectPaths(childElement, instancesByKey);
+			}
+		}
+	}
+
+	private PathInstance createInstance(SVGPath path) {
+		String d = path.getDString();
+		if (d == null || d.indexOf('A') != -1 || d.indexOf('a') != -1 || path.getChildElements().size() > 0) {
+			return null;
+		}
+		PathPrimitiveList primitives;
+		try {
+			primitives = new SVGPathParser().parseDString(d);
+		} catch (RuntimeException e) {
+			LOG.trace("cannot parse path: "+e.getMessage());
+			return null;
+		}
+		Real2 first = primitives.size() == 0 ? null : primitives.get(0).getFirstCoord();
+		if (first == null) {
+			return null;
+		}
+		Real2 origin = new Real2(first.getX(), first.getY());
+		String normalizedD = createNormalizedD(primitives, origin);
+		StringBuilder key = new StringBuilder(normalizedD);
+		for (Attribute attribute : getSymbolAttributes(path)) {
+			key.append('\u0000').append(attribute.getNamespaceURI()).append(':').append(attribute.getLocalName())
+				.append('=').append(attribute.getValue());
+		}
+		return new PathInstance(path, origin, normalizedD, key.toString());
+	}
+
+	private String createNormalizedD(PathPrimitiveList primitives, Real2 origin) {
+		StringBuilder sb = new StringBuilder();
+		for (SVGPathPrimitive primitive : primitives) {
+			sb.append(primitive.getTag());
+			Real2Array coords = primitive.getCoordArray();
+			// ClosePrimitive records the current point, which is not written
+			if (coords != null && !(primitive instanceof ClosePrimitive)) {
+				for (int i = 0; i < coords.size(); i++) {
+					Real2 coord = coords.get(i);
+					sb.append(formatCoordinate(coord.getX() - origin.getX())).append(' ');
+					sb.append(formatCoordinate(coord.getY() - origin.getY())).append(' ');
+				}
+			}
+		}
+		return sb.toString().trim();
+	}
+
+	private String formatCoordinate(double value) {
+		BigDecimal rounded = BigDecimal.valueOf(value).setScale(decimalPlaces, BigDecimal.ROUND_HALF_EVEN);
+		return rounded.signum() == 0 ? "0" : rounded.stripTrailingZeros().toPlainString();
+	}
+
+	// sorted so that attribute order does not affect grouping
+	private static List<Attribute> getSymbolAttributes(SVGPath path) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int i = 0; i < path.getAttributeCount(); i++) {
+			Attribute attribute = path.getAttribute(i);
+			String name = attribute.getLocalName();
+			if (attribute.getNamespaceURI().length() == 0 && (SVGPath.D.equals(name) || USE_ATTRIBUTES.contains(name))) {
+				continue;
+			}
+			attributes.add(attribute);
+		}
+		Collections.sort(attributes, new Comparator<Attribute>() {
+			public int compare(Attribute a1, Attribute a2) {
+				int c = a1.getNamespaceURI().compareTo(a2.getNamespaceURI());
+				return c != 0 ? c : a1.getLocalName().compareTo(a2.getLocalName());
+			}
+		});
+		return attributes;
+	}
+
+	private static SVGSymbol createSymbol(String id, PathInstance instance) {
+		SVGSymbol symbol = new SVGSymbol();
+		symbol.setId(id);
+		// the instanced viewport starts at the use's x,y; outlines extend to negative coordinates
+		symbol.addAttribute(new Attribute(OVERFLOW, VISIBLE));
+		// copy rather than new SVGPath() which adds a default style
+		SVGPath outline = (SVGPath) instance.path.copy();
+		for (String name : USE_ATTRIBUTES) {
+			Attribute attribute = outline.getAttribute(name);
+			if (attribute != null) {
+				outline.removeAttribute(attribute);
+			}
+		}
+		outline.setDString(instance.normalizedD);
+		symbol.appendChild(outline);
+		return symbol;
+	}
+
+	private void replaceByUse(PathInstance instance, SVGSymbol symbol) {
+		SVGPath path = instance.path;
+		SVGUse use = new SVGUse();
+		for (String name : USE_ATTRIBUTES) {
+			Attribute attribute = path.getAttribute(name);
+			if (attribute != null) {
+				use.addAttribute((Attribute) attribute.copy());
+			}
+		}
+		use.setXY(instance.origin);
+		use.setSymbol(symbol);
+		ParentNode parent = path.getParent();
+		parent.replaceChild(path, use);
+		replacedCount++;
+	}
+
+	private static SVGDefs ensureDefs(SVGElement root) {
+		for (int i = 0; i < root.getChildCount(); i++) {
+			if (root.getChild(i) instanceof SVGDefs) {
+				return (SVGDefs) root.getChild(i);
+			}
+		}
+		SVGDefs defs = new SVGDefs();
+		root.insertChild(defs, 0);
+		return defs;
+	}
+
+	private static class PathInstance {
+		private SVGPath path;
+		private Real2 origin;
+		private String normalizedD;
+		private String key;
+
+		PathInstance(SVGPath path, Real2 origin, String normalizedD, String key) {
+			this.path = path;
+			this.origin = origin;
+			this.normalizedD = normalizedD;
+			this.key = key;
+		}
+	}
+}
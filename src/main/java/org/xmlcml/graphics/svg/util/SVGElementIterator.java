@@ -1,40 +1,362 @@
 package org.xmlcml.graphics.svg.util;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.xmlcml.graphics.svg.SVGElement;
 
+import nu.xom.Element;
 import nu.xom.Elements;
+import nu.xom.Node;
+import nu.xom.ParentNode;
 
+/** iterates over SVGElements.
+ * <p>
+ * Either over a list or Elements, or lazily in document order (pre-order) over an
+ * SVGElement and its descendants. The tree walk keeps only a stack of ancestors and
+ * child positions; elements can be filtered by class and predicate (non-matching
+ * elements are skipped but their descendants are still visited) and subtrees pruned,
+ * either with a predicate or by calling skipChildren() after next(). Non-SVGElement
+ * children are descended into but not returned. The tree must not be modified during a
+ * walk.
+ * </p>
+ * <p>
+ * stream() returns a Stream over a tree walk which splits by subtrees for parallel use.
+ * </p>
+ * @author pm286
+ *
+ */
 public class SVGElementIterator implements Iterator<SVGElement> {
 
 	private Iterator<? extends SVGElement> iterator;
 	private ElementsIterator elementsIterator;
-	
+
+	// tree walk
+	private SVGElement root;
+	private Class<? extends SVGElement> type;
+	private Predicate<? super SVGElement> filter;
+	private Predicate<? super SVGElement> prune;
+	private ParentNode[] parents;
+	private int[] indexes;
+	private int depth;
+	// last node visited by the walk, whose successor is not yet computed
+	private Element current;
+	private boolean skipCurrentChildren;
+	private SVGElement nextElement;
+	private boolean finished;
+
 	public SVGElementIterator(List<? extends SVGElement> elementList) {
 		iterator = elementList.iterator();
 	}
+
 	public SVGElementIterator(Elements elements) {
 		elementsIterator = new ElementsIterator(elements);
 	}
+
+	/** pre-order walk over root and its descendants.
+	 *
+	 * @param root
+	 */
+	public SVGElementIterator(SVGElement root) {
+		this(root, null, null, null);
+	}
+
+	/** pre-order walk over root and its descendants.
+	 *
+	 * @param root
+	 * @param type only return instances of type (null for all)
+	 * @param filter only return elements for which this is true (null for all)
+	 * @param prune do not descend below elements for which this is true (null to visit all)
+	 */
+	public SVGElementIterator(SVGElement root, Class<? extends SVGElement> type,
+			Predicate<? super SVGElement> filter, Predicate<? super SVGElement> prune) {
+		this.root = root;
+		this.type = type;
+		this.filter = filter;
+		this.prune = prune;
+		parents = new ParentNode[16];
+		indexes = new int[16];
+	}
+
 	public boolean hasNext() {
-		return iterator != null ? iterator.hasNext() : elementsIterator.hasNext();
+		if (iterator != null) {
+			return iterator.hasNext();
+		} else if (elementsIterator != null) {
+			return elementsIterator.hasNext();
+		}
+		ensureNext();
+		return nextElement != null;
 	}
+
+	public SVGElement next() {
+		if (iterator != null) {
+			return iterator.next();
+		} else if (elementsIterator != null) {
+			return elementsIterator.next();
+		}
+		ensureNext();
+		if (nextElement == null) {
+			throw new NoSuchElementException();
+		}
+		SVGElement element = nextElement;
+		nextElement = null;
+		return element;
+	}
+
+	/** do not visit the descendants of the element last returned by next().
+	 *
+	 * must be called before the following hasNext() or next().
+	 */
+	public void skipChildren() {
+		if (root == null || nextElement != null || current == null) {
+			throw new IllegalStateException("skipChildren() must follow next() in a tree walk");
+		}
+		skipCurrentChildren = true;
+	}
+
+	/** removes (list) or detaches (Elements) the element last returned.
+	 *
+	 * not supported for tree walks.
+	 */
 	public void remove() {
 		if (iterator != null) {
 			iterator.remove();
-		} else {
+		} else if (elementsIterator != null) {
 			elementsIterator.remove();
+		} else {
+			throw new UnsupportedOperationException("cannot remove during tree walk");
 		}
 	}
-	
 
-	public SVGElement next() {
-		return iterator.next();
+	private void ensureNext() {
+		while (nextElement == null && !finished) {
+			Element node = advance();
+			if (node == null) {
+				finished = true;
+			} else if (accept(node)) {
+				nextElement = (SVGElement) node;
+			}
+		}
+	}
+
+	private boolean accept(Element node) {
+		return node instanceof SVGElement &&
+				(type == null || type.isInstance(node)) &&
+				(filter == null || filter.test((SVGElement) node));
 	}
 
+	// next node in pre-order, or null
+	private Element advance() {
+		if (current == null) {
+			current = root;
+			return root;
+		}
+		boolean descend = !skipCurrentChildren &&
+				!(prune != null && current instanceof SVGElement && prune.test((SVGElement) current));
+		skipCurrentChildren = false;
+		if (descend) {
+			int i = nextElementIndex(current, 0);
+			if (i != -1) {
+				push(current, i);
+				current = (Element) current.getChild(i);
+				return current;
+			}
+		}
+		while (depth > 0) {
+			ParentNode parent = parents[depth - 1];
+			int i = nextElementIndex(parent, indexes[depth - 1] + 1);
+			if (i != -1) {
+				indexes[depth - 1] = i;
+				current = (Element) parent.getChild(i);
+				return current;
+			}
+			parents[--depth] = null;
+		}
+		return null;
+	}
+
+	private static int nextElementIndex(ParentNode parent, int start) {
+		for (int i = start; i < parent.getChildCount(); i++) {
+			if (parent.getChild(i) instanceof Element) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void push(ParentNode parent, int index) {
+		if (depth == parents.length) {
+			ParentNode[] newParents = new ParentNode[depth * 2];
+			System.arraycopy(parents, 0, newParents, 0, depth);
+			parents = newParents;
+			int[] newIndexes = new int[depth * 2];
+			System.arraycopy(indexes, 0, newIndexes, 0, depth);
+			indexes = newIndexes;
+		}
+		parents[depth] = parent;
+		indexes[depth++] = index;
+	}
+
+	/** sequential stream over root and its descendants in document order.
+	 *
+	 * @param root
+	 * @return
+	 */
+	public static Stream<SVGElement> stream(SVGElement root) {
+		return stream(root, null, null, null, false);
+	}
+
+	/** stream over root and descendants of given type.
+	 *
+	 * @param root
+	 * @param type
+	 * @return
+	 */
+	public static <T extends SVGElement> Stream<T> stream(SVGElement root, final Class<T> type) {
+		return stream(root, type, null, null, false).map(new Function<SVGElement, T>() {
+			public T apply(SVGElement element) {
+				return type.cast(element);
+			}
+		});
+	}
+
+	/** stream over root and its descendants in document order.
+	 *
+	 * @param root
+	 * @param type only instances of type (null for all)
+	 * @param filter (null for all)
+	 * @param prune do not descend below elements for which this is true (null to visit all)
+	 * @param parallel if true the stream splits by subtrees; the tree must not be modified
+	 * @return
+	 */
+	public static Stream<SVGElement> stream(SVGElement root, Class<? extends SVGElement> type,
+			Predicate<? super SVGElement> filter, Predicate<? super SVGElement> prune, boolean parallel) {
+		return StreamSupport.stream(new SVGElementSpliterator(root, type, filter, prune), parallel);
+	}
+
+	/** spliterator over root and its descendants (see stream()).
+	 */
+	public static Spliterator<SVGElement> spliterator(SVGElement root, Class<? extends SVGElement> type,
+			Predicate<? super SVGElement> filter, Predicate<? super SVGElement> prune) {
+		return new SVGElementSpliterator(root, type, filter, prune);
+	}
+
+	/** walks a sequence of subtrees; splits off a prefix of the pending subtrees.
+	 */
+	private static class SVGElementSpliterator implements Spliterator<SVGElement> {
+
+		private Class<? extends SVGElement> type;
+		private Predicate<? super SVGElement> filter;
+		private Predicate<? super SVGElement> prune;
+		// returned (if accepted) before anything else, without their descendants
+		private List<Element> heads;
+		// subtree being walked
+		private SVGElementIterator walk;
+		// subtree roots still to be walked, in document order
+		private List<Element> pending;
+
+		SVGElementSpliterator(SVGElement root, Class<? extends SVGElement> type,
+				Predicate<? super SVGElement> filter, Predicate<? super SVGElement> prune) {
+			this(type, filter, prune);
+			pending.add(root);
+		}
+
+		private SVGElementSpliterator(Class<? extends SVGElement> type,
+				Predicate<? super SVGElement> filter, Predicate<? super SVGElement> prune) {
+			this.type = type;
+			this.filter = filter;
+			this.prune = prune;
+			heads = new ArrayList<Element>();
+			pending = new ArrayList<Element>();
+		}
+
+		public boolean tryAdvance(Consumer<? super SVGElement> action) {
+			while (true) {
+				if (!heads.isEmpty()) {
+					Element element = heads.remove(0);
+					if (accept(element)) {
+						action.accept((SVGElement) element);
+						return true;
+					}
+				} else if (walk != null && walk.hasNext()) {
+					action.accept(walk.next());
+					return true;
+				} else if (!pending.isEmpty()) {
+					walk = createWalk(pending.remove(0));
+				} else {
+					walk = null;
+					return false;
+				}
+			}
+		}
+
+		public Spliterator<SVGElement> trySplit() {
+			while (walk == null && pending.size() == 1) {
+				// open the single subtree: its root joins the heads, its children are pending
+				Element root = pending.remove(0);
+				heads.add(root);
+				if (!(prune != null && root instanceof SVGElement && prune.test((SVGElement) root))) {
+					for (int i = 0; i < root.getChildCount(); i++) {
+						if (root.getChild(i) instanceof Element) {
+							pending.add((Element) root.getChild(i));
+						}
+					}
+				}
+			}
+			if (pending.size() < 2) {
+				return null;
+			}
+			// the prefix (heads, walk in progress, first half) goes to the new spliterator
+			SVGElementSpliterator prefix = new SVGElementSpliterator(type, filter, prune);
+			prefix.heads = heads;
+			prefix.walk = walk;
+			int half = pending.size() / 2;
+			prefix.pending.addAll(pending.subList(0, half));
+			pending = new ArrayList<Element>(pending.subList(half, pending.size()));
+			heads = new ArrayList<Element>();
+			walk = null;
+			return prefix;
+		}
+
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+
+		public int characteristics() {
+			return ORDERED | NONNULL | DISTINCT;
+		}
+
+		private boolean accept(Element element) {
+			return element instanceof SVGElement &&
+					(type == null || type.isInstance(element)) &&
+					(filter == null || filter.test((SVGElement) element));
+		}
+
+		private SVGElementIterator createWalk(Element root) {
+			if (root instanceof SVGElement) {
+				return new SVGElementIterator((SVGElement) root, type, filter, prune);
+			}
+			// plain element: its children are walked next
+			int position = 0;
+			for (int i = 0; i < root.getChildCount(); i++) {
+				Node child = root.getChild(i);
+				if (child instanceof Element) {
+					pending.add(position++, (Element) child);
+				}
+			}
+			return null;
+		}
+	}
 }
+
 class ElementsIterator {
 	int index;
 	private Elements elements;
@@ -42,18 +364,24 @@ class ElementsIterator {
 		this.elements = elements;
 		index = 0;
 	}
-	
+
 	boolean hasNext() {
 		return index < elements.size();
 	}
 
 	SVGElement next() {
+		if (index >= elements.size()) {
+			throw new NoSuchElementException();
+		}
 		return (SVGElement) elements.get(index++);
 	}
-	
-	// this adances the pointer. Apparently it's mandatory
+
+	// Elements is a snapshot so detaching does not move later elements
 	public void remove() {
-		index++;
+		if (index == 0) {
+			throw new IllegalStateException("next() not called");
+		}
+		elements.get(index - 1).detach();
 	}
-	
+
 }
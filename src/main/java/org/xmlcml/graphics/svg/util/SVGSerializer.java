@@ -26,35 +26,45 @@ public class SVGSerializer extends Serializer {
 	 */
 	public void write(Text text) throws IOException {
 		String s = text.getValue();
-		LOG.trace(s.length());
-		StringBuilder sb = new StringBuilder();
-		int codePointCount = s.codePointCount(0, s.length());
-		int charIndex = 0;
-		for (int i = 0; i < codePointCount; i++) {
-			int codepoint = s.codePointAt(charIndex);
-			int charCount = Character.charCount(codepoint);
-			LOG.trace(codepoint+" "+charCount);
-			charIndex += charCount;
-			if (codepoint > 127) {
+		int length = s.length();
+		int i = 0;
+		while (i < length && !needsEscape(s.charAt(i))) {
+			i++;
+		}
+		if (i == length) {
+			writeRaw(s);
+			return;
+		}
+		StringBuilder sb = new StringBuilder(length + 16);
+		sb.append(s, 0, i);
+		for (; i < length; i++) {
+			char c = s.charAt(i);
+			if (c > 127) {
+				int codepoint = s.codePointAt(i);
+				i += Character.charCount(codepoint) - 1;
 				sb.append("&#");
 				sb.append(codepoint);
 				sb.append(";");
 // escape the main XML characters				
-			} else if (codepoint == (char)'&') {
+			} else if (c == '&') {
 				sb.append("&amp;");
-			} else if (codepoint == (char)'<') {
+			} else if (c == '<') {
 				sb.append("&lt;");
-			} else if (codepoint ==(char)'>') {
+			} else if (c == '>') {
 				sb.append("&gt;");
-			} else if (codepoint ==(char)'\'') {
+			} else if (c == '\'') {
 				sb.append("&apos;");
-			} else if (codepoint ==(char)'"') {
+			} else if (c == '"') {
 				sb.append("&quot;");
 			} else {
-				sb.append((char)codepoint);
+				sb.append(c);
 			}
 		}
 		writeRaw(sb.toString());
 	}
 
+	private static boolean needsEscape(char c) {
+		return c > 127 || c == '&' || c == '<' || c == '>' || c == '\'' || c == '"';
+	}
+
 }
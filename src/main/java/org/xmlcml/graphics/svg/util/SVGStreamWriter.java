@@ -0,0 +1,387 @@
+package org.xmlcml.graphics.svg.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import nu.xom.Element;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.euclid.Real;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.euclid.RealRange;
+import org.xmlcml.euclid.Transform2;
+import org.xmlcml.graphics.svg.SVGConstants;
+import org.xmlcml.graphics.svg.SVGDefs;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGG;
+import org.xmlcml.graphics.svg.SVGLine;
+import org.xmlcml.graphics.svg.SVGPath;
+import org.xmlcml.graphics.svg.SVGRect;
+import org.xmlcml.graphics.svg.SVGSVG;
+import org.xmlcml.graphics.svg.SVGText;
+import org.xmlcml.graphics.svg.StyleBundle;
+
+/** writes an SVG document element by element without building a tree.
+ * <p>
+ * The document is opened with startSVG(); groups and defs are opened with startGroup()
+ * and startDefs() and closed with end(); close() ends any open elements. Between these,
+ * primitives (line, rect, text, path) are written directly from their coordinates with
+ * the current style, and existing SVGElements are serialised with write(). Only the
+ * stack of open elements is kept, so memory does not grow with the document.
+ * </p>
+ * <p>
+ * Numbers are written with decimalPlaces (default 3; negative for full precision), which
+ * also applies to the geometry of written SVGElements (see SVGWriter.setDecimalPlaces()).
+ * </p>
+ * <pre>
+ * SVGStreamWriter writer = new SVGStreamWriter(new FileOutputStream(file));
+ * writer.startSVG(600.0, 800.0);
+ * writer.setStyle("red", "none", 0.4, 1.0);
+ * writer.drawBoundingBoxes(elements);
+ * writer.close();
+ * </pre>
+ * @author pm286
+ *
+ */
+public class SVGStreamWriter {
+	private static final Logger LOG = Logger.getLogger(SVGStreamWriter.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	public static final int DEFAULT_DECIMAL_PLACES = 3;
+	private static final String STYLE = "style";
+
+	private SVGWriter writer;
+	private List<String> openTags;
+	private int decimalPlaces;
+	private String style;
+	private boolean closed;
+
+	/** writes UTF-8 to os.
+	 *
+	 * @param os closed by close()
+	 */
+	public SVGStreamWriter(OutputStream os) {
+		this(new SVGWriter(os));
+		setDecimalPlaces(DEFAULT_DECIMAL_PLACES);
+	}
+
+	/** writes through an existing SVGWriter, keeping its settings (e.g. rawUTF8, decimalPlaces).
+	 *
+	 * @param writer
+	 */
+	public SVGStreamWriter(SVGWriter writer) {
+		this.writer = writer;
+		this.decimalPlaces = writer.getDecimalPlaces();
+		openTags = new ArrayList<String>();
+	}
+
+	/** places for coordinates of primitives and geometry of elements.
+	 *
+	 * @param places negative for full precision
+	 */
+	public void setDecimalPlaces(int places) {
+		this.decimalPlaces = places;
+		writer.setDecimalPlaces(places);
+	}
+
+	public int getDecimalPlaces() {
+		return decimalPlaces;
+	}
+
+	/** style for subsequent primitives and groups.
+	 *
+	 * @param style CSS style (as in the style attribute); null for none
+	 */
+	public void setStyle(String style) {
+		this.style = (style == null || style.trim().length() == 0) ? null : style.trim();
+	}
+
+	public void setStyle(StyleBundle styleBundle) {
+		setStyle(styleBundle == null ? null : styleBundle.toString());
+	}
+
+	/** style as used by SVGElement.drawBox().
+	 */
+	public void setStyle(String stroke, String fill, double strokeWidth, double opacity) {
+		setStyle(new StyleBundle(null, fill, null, 0.0, null, null, opacity, stroke, strokeWidth));
+	}
+
+	public String getStyle() {
+		return style;
+	}
+
+	/** number of open svg, g and defs elements.
+	 */
+	public int getDepth() {
+		return openTags.size();
+	}
+
+	/** writes XML declaration and opens svg element.
+	 *
+	 * @param width null to omit
+	 * @param height null to omit
+	 */
+	public void startSVG(Double width, Double height) {
+		if (openTags.size() > 0) {
+			throw new RuntimeException("svg must be the root element");
+		}
+		try {
+			writer.writeXMLDeclaration();
+			writer.startTag(SVGSVG.TAG);
+			writer.attribute("xmlns", SVGConstants.SVG_NAMESPACE);
+			writer.attribute("xmlns:xlink", SVGConstants.XLINK_NS);
+			if (width != null) {
+				writeNumberAttribute("width", width);
+			}
+			if (height != null) {
+				writeNumberAttribute("height", height);
+			}
+			openElement(SVGSVG.TAG);
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write svg", e);
+		}
+	}
+
+	public void startSVG() {
+		startSVG(null, null);
+	}
+
+	/** opens g with current style (if any).
+	 */
+	public void startGroup() {
+		startGroup(null, null);
+	}
+
+	/** opens g.
+	 *
+	 * @param id null to omit
+	 * @param transform null to omit
+	 */
+	public void startGroup(String id, Transform2 transform) {
+		ensureOpen();
+		try {
+			writer.startTag(SVGG.TAG);
+			if (id != null) {
+				writer.attribute(SVGElement.ID, id);
+			}
+			if (transform != null) {
+				writeTransform(transform);
+			}
+			writeStyle();
+			openElement(SVGG.TAG);
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write g", e);
+		}
+	}
+
+	/** opens defs; close with end().
+	 */
+	public void startDefs() {
+		ensureOpen();
+		try {
+			writer.startTag(SVGDefs.TAG);
+			openElement(SVGDefs.TAG);
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write defs", e);
+		}
+	}
+
+	/** closes the innermost open g, defs or svg.
+	 */
+	public void end() {
+		ensureOpen();
+		try {
+			writer.endTag(openTags.remove(openTags.size() - 1));
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write end tag", e);
+		}
+	}
+
+	public void line(Real2 xy0, Real2 xy1) {
+		line(xy0.getX(), xy0.getY(), xy1.getX(), xy1.getY());
+	}
+
+	public void line(double x1, double y1, double x2, double y2) {
+		ensureOpen();
+		try {
+			writer.startTag(SVGLine.TAG);
+			writeNumberAttribute("x1", x1);
+			writeNumberAttribute("y1", y1);
+			writeNumberAttribute("x2", x2);
+			writeNumberAttribute("y2", y2);
+			writeStyle();
+			writer.closeEmptyTag();
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write line", e);
+		}
+	}
+
+	public void rect(double x, double y, double width, double height) {
+		ensureOpen();
+		try {
+			writer.startTag(SVGRect.TAG);
+			writeNumberAttribute("x", x);
+			writeNumberAttribute("y", y);
+			writeNumberAttribute("width", width);
+			writeNumberAttribute("height", height);
+			writeStyle();
+			writer.closeEmptyTag();
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write rect", e);
+		}
+	}
+
+	/** writes box as rect, widening zero-size ranges by 1.0 either side as SVGElement.createGraphicalBox().
+	 *
+	 * @param box ignored if null or without ranges
+	 */
+	public void rect(Real2Range box) {
+		if (box == null) {
+			return;
+		}
+		RealRange xr = box.getXRange();
+		RealRange yr = box.getYRange();
+		if (xr == null || yr == null) {
+			LOG.trace("null bbox");
+			return;
+		}
+		double dx = (xr.getRange() < Real.EPS) ? 1.0 : 0.0;
+		double dy = (yr.getRange() < Real.EPS) ? 1.0 : 0.0;
+		rect(xr.getMin() - dx, yr.getMin() - dy, xr.getRange() + 2 * dx, yr.getRange() + 2 * dy);
+	}
+
+	public void text(double x, double y, String text) {
+		ensureOpen();
+		try {
+			writer.startTag(SVGText.TAG);
+			writeNumberAttribute("x", x);
+			writeNumberAttribute("y", y);
+			writeStyle();
+			writer.closeStartTag();
+			writer.text(text);
+			writer.endTag(SVGText.TAG);
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write text", e);
+		}
+	}
+
+	/** writes path; d is rounded to decimalPlaces.
+	 */
+	public void path(String d) {
+		ensureOpen();
+		try {
+			writer.startTag(SVGPath.TAG);
+			writer.writeRaw(" d=\"");
+			writer.writeRoundedNumbers(d, decimalPlaces);
+			writer.writeRaw('"');
+			writeStyle();
+			writer.closeEmptyTag();
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write path", e);
+		}
+	}
+
+	/** writes element and descendants (current style is not applied).
+	 *
+	 * @param element usually SVG; may still be in a tree
+	 */
+	public void write(Element element) {
+		ensureOpen();
+		try {
+			writer.writeInSVG(element);
+		} catch (IOException e) {
+			throw new RuntimeException("cannot write element", e);
+		}
+	}
+
+	/** streaming equivalent of SVGElement.drawBoxes() with current style.
+	 */
+	public void drawBoxes(List<Real2Range> boxes) {
+		for (Real2Range box : boxes) {
+			rect(box);
+		}
+	}
+
+	/** streaming equivalent of SVGElement.drawBoundingBoxes() with current style.
+	 */
+	public void drawBoundingBoxes(List<? extends SVGElement> elements) {
+		for (SVGElement element : elements) {
+			rect(element.getBoundingBox());
+		}
+	}
+
+	public void flush() {
+		try {
+			writer.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("cannot flush", e);
+		}
+	}
+
+	/** ends all open elements and closes the stream.
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		while (openTags.size() > 0) {
+			end();
+		}
+		try {
+			writer.writeRaw('\n');
+			writer.close();
+		} catch (IOException e) {
+			throw new RuntimeException("cannot close", e);
+		}
+		closed = true;
+	}
+
+	private void openElement(String tag) throws IOException {
+		writer.closeStartTag();
+		openTags.add(tag);
+	}
+
+	private void ensureOpen() {
+		if (openTags.isEmpty()) {
+			throw new RuntimeException(closed ? "writer is closed" : "must call startSVG() first");
+		}
+	}
+
+	private void writeNumberAttribute(String name, double value) throws IOException {
+		if (decimalPlaces < 0) {
+			writer.attribute(name, String.valueOf(value));
+		} else {
+			writer.attribute(name, value, decimalPlaces);
+		}
+	}
+
+	private void writeTransform(Transform2 transform) throws IOException {
+		double[] matrix = transform.getMatrixAsArray();
+		int places = writer.getTransformDecimalPlaces();
+		writer.writeRaw(" transform=\"matrix(");
+		int[] order = {0, 3, 1, 4, 2, 5};
+		for (int i = 0; i < order.length; i++) {
+			if (i > 0) {
+				writer.writeRaw(',');
+			}
+			if (places < 0) {
+				writer.writeRaw(String.valueOf(matrix[order[i]]));
+			} else {
+				writer.writeDouble(matrix[order[i]], places);
+			}
+		}
+		writer.writeRaw(")\"");
+	}
+
+	private void writeStyle() throws IOException {
+		if (style != null) {
+			writer.attribute(STYLE, style);
+		}
+	}
+}
@@ -0,0 +1,629 @@
+package org.xmlcml.graphics.svg.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import nu.xom.Attribute;
+import nu.xom.Comment;
+import nu.xom.DocType;
+import nu.xom.Document;
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.ProcessingInstruction;
+import nu.xom.Text;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.xmlcml.graphics.svg.SVGConstants;
+
+/** writes SVG (or any XOM tree) as XML through a char buffer.
+ * <p>
+ * Text and attribute values are escaped straight into the buffer, which is passed to the
+ * underlying Writer when full; nothing is built per node. Non-ASCII characters are
+ * written as numeric character references (as SVGSerializer does) unless rawUTF8 is
+ * set, when they are written as characters (the OutputStream constructor encodes UTF-8).
+ * Doubles are written with a fixed maximum number of decimal places, trailing zeros
+ * removed, without creating Strings.
+ * </p>
+ * <p>
+ * If decimalPlaces is set, numbers in the geometry attributes of SVG elements (coordinates,
+ * sizes, points, d, viewBox and, with extra places, transform) are rounded as they are
+ * written, so the tree keeps full precision and need not be format()ted first. Integers
+ * and numbers with no more than the given places are copied unchanged; everything else
+ * in the value (commands, separators, units) is kept.
+ * </p>
+ * <p>
+ * write(Element) emits a compact serialisation (no indentation, empty elements as
+ * &lt;x/&gt;) with the namespace declarations needed for the subtree. The low-level
+ * methods (startTag, attribute, closeStartTag, ...) can be used to write elements
+ * directly. Not thread-safe.
+ * </p>
+ * @author pm286
+ *
+ */
+public class SVGWriter {
+	private static final Logger LOG = Logger.getLogger(SVGWriter.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	public static final Charset UTF_8 = Charset.forName("UTF-8");
+	/** maximum decimal places for writeDouble() */
+	public static final int MAX_DECIMAL_PLACES = 9;
+
+	private static final int BUFFER_SIZE = 16384;
+	private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+	private static final long[] POWERS_OF_TEN = {
+		1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+	};
+	// beyond this scaled values are not exact in a long/double
+	private static final double MAX_FAST_SCALED = 1.0e15;
+	// as SVGElement.format()
+	private static final int EXTRA_TRANSFORM_PRECISION = 2;
+	private static final String TRANSFORM = "transform";
+	private static final Set<String> GEOMETRY_ATTRIBUTE_NAMES = new HashSet<String>(Arrays.asList(
+		"x", "y", "x1", "y1", "x2", "y2", "cx", "cy", "r", "rx", "ry", "dx", "dy",
+		"width", "height", "points", "d", "viewBox", TRANSFORM
+	));
+
+	private Writer writer;
+	private char[] buffer;
+	private int count;
+	private long charCount;
+	private char[] digits;
+	private boolean rawUTF8;
+	private int decimalPlaces = -1;
+	private int transformDecimalPlaces = -1;
+	// set by scanNumber
+	private int fractionDigits;
+	private boolean hasExponent;
+	// in-scope namespace bindings of the elements being written
+	private String[] scopePrefixes;
+	private String[] scopeURIs;
+	private int scopeSize;
+
+	/** writes UTF-8 to stream.
+	 *
+	 * @param os
+	 */
+	public SVGWriter(OutputStream os) {
+		this(new OutputStreamWriter(os, UTF_8));
+	}
+
+	public SVGWriter(Writer writer) {
+		this.writer = writer;
+		buffer = new char[BUFFER_SIZE];
+		digits = new char[20];
+		scopePrefixes = new String[16];
+		scopeURIs = new String[16];
+	}
+
+	/** write non-ASCII characters as characters rather than character references.
+	 *
+	 * only use if the Writer can encode them (e.g. UTF-8)
+	 * @param rawUTF8
+	 */
+	public void setRawUTF8(boolean rawUTF8) {
+		this.rawUTF8 = rawUTF8;
+	}
+
+	public boolean isRawUTF8() {
+		return rawUTF8;
+	}
+
+	/** round numbers in geometry attributes to places as they are written.
+	 *
+	 * transforms get 2 extra places (up to MAX_DECIMAL_PLACES), as in SVGElement.format().
+	 * @param places 0 to MAX_DECIMAL_PLACES; negative writes values unchanged (default)
+	 */
+	public void setDecimalPlaces(int places) {
+		checkPlaces(places);
+		this.decimalPlaces = places;
+		this.transformDecimalPlaces = places < 0 ? places : Math.min(MAX_DECIMAL_PLACES, places + EXTRA_TRANSFORM_PRECISION);
+	}
+
+	public int getDecimalPlaces() {
+		return decimalPlaces;
+	}
+
+	/** overrides the places for transform set by setDecimalPlaces().
+	 *
+	 * @param places negative writes transforms unchanged
+	 */
+	public void setTransformDecimalPlaces(int places) {
+		checkPlaces(places);
+		this.transformDecimalPlaces = places;
+	}
+
+	public int getTransformDecimalPlaces() {
+		return transformDecimalPlaces;
+	}
+
+	private static void checkPlaces(int places) {
+		if (places > MAX_DECIMAL_PLACES) {
+			throw new RuntimeException("decimal places must be 0-"+MAX_DECIMAL_PLACES+": "+places);
+		}
+	}
+
+	/** number of characters written so far.
+	 */
+	public long getCharCount() {
+		return charCount + count;
+	}
+
+	public void writeXMLDeclaration() throws IOException {
+		writeRaw("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+	}
+
+	/** writes declaration and document children.
+	 *
+	 * @param document
+	 * @throws IOException
+	 */
+	public void write(Document document) throws IOException {
+		writeXMLDeclaration();
+		for (int i = 0; i < document.getChildCount(); i++) {
+			Node child = document.getChild(i);
+			writeNode(child);
+			writeRaw('\n');
+		}
+	}
+
+	/** writes element and its descendants.
+	 *
+	 * @param element
+	 * @throws IOException
+	 */
+	public void write(Element element) throws IOException {
+		scopeSize = 0;
+		writeElement(element);
+	}
+
+	/** writes element and its descendants inside an svg element written by this writer.
+	 *
+	 * the SVG default namespace and xlink prefix are assumed to be declared already.
+	 * @param element
+	 * @throws IOException
+	 */
+	public void writeInSVG(Element element) throws IOException {
+		scopeSize = 0;
+		pushScope("", SVGConstants.SVG_NAMESPACE);
+		pushScope("xlink", SVGConstants.XLINK_NS);
+		writeElement(element);
+	}
+
+	private void writeNode(Node node) throws IOException {
+		if (node instanceof Element) {
+			writeElement((Element) node);
+		} else if (node instanceof Text) {
+			text(node.getValue());
+		} else if (node instanceof Comment) {
+			writeRaw("<!--");
+			writeRaw(node.getValue());
+			writeRaw("-->");
+		} else if (node instanceof ProcessingInstruction) {
+			ProcessingInstruction pi = (ProcessingInstruction) node;
+			writeRaw("<?");
+			writeRaw(pi.getTarget());
+			if (pi.getValue().length() > 0) {
+				writeRaw(' ');
+				writeRaw(pi.getValue());
+			}
+			writeRaw("?>");
+		} else if (node instanceof DocType) {
+			writeRaw(node.toXML());
+		}
+	}
+
+	private void writeElement(Element element) throws IOException {
+		int scopeMark = scopeSize;
+		startTag(element.getQualifiedName());
+		for (int i = 0; i < element.getNamespaceDeclarationCount(); i++) {
+			String prefix = element.getNamespacePrefix(i);
+			String uri = element.getNamespaceURI(prefix);
+			if ("xml".equals(prefix) || uri.equals(getInScopeURI(prefix))) {
+				continue;
+			}
+			if (prefix.length() == 0) {
+				attribute("xmlns", uri);
+			} else {
+				writeRaw(" xmlns:");
+				writeRaw(prefix);
+				writeRaw("=\"");
+				writeAttributeValue(uri);
+				writeRaw('"');
+			}
+			pushScope(prefix, uri);
+		}
+		for (int i = 0; i < element.getAttributeCount(); i++) {
+			writeAttribute(element.getAttribute(i));
+		}
+		if (element.getChildCount() == 0) {
+			closeEmptyTag();
+		} else {
+			closeStartTag();
+			for (int i = 0; i < element.getChildCount(); i++) {
+				writeNode(element.getChild(i));
+			}
+			endTag(element.getQualifiedName());
+		}
+		scopeSize = scopeMark;
+	}
+
+	/** writes an attribute of an element being serialised.
+	 *
+	 * override to rewrite values.
+	 * @param attribute
+	 * @throws IOException
+	 */
+	protected void writeAttribute(Attribute attribute) throws IOException {
+		int places = getPlaces(attribute);
+		if (places < 0) {
+			attribute(attribute.getQualifiedName(), attribute.getValue());
+		} else {
+			writeRaw(' ');
+			writeRaw(attribute.getQualifiedName());
+			writeRaw("=\"");
+			writeRoundedNumbers(attribute.getValue(), places);
+			writeRaw('"');
+		}
+	}
+
+	// places for rounding attribute, or -1
+	private int getPlaces(Attribute attribute) {
+		if (decimalPlaces < 0 && transformDecimalPlaces < 0) {
+			return -1;
+		}
+		String name = attribute.getLocalName();
+		if (attribute.getNamespaceURI().length() > 0 || !GEOMETRY_ATTRIBUTE_NAMES.contains(name)) {
+			return -1;
+		}
+		Node parent = attribute.getParent();
+		if (!(parent instanceof Element) || !SVGConstants.SVG_NAMESPACE.equals(((Element) parent).getNamespaceURI())) {
+			return -1;
+		}
+		return TRANSFORM.equals(name) ? transformDecimalPlaces : decimalPlaces;
+	}
+
+	/** writes value with each number rounded to places, escaping other characters.
+	 *
+	 * a space is inserted where rounding would merge two numbers separated only by
+	 * a sign or decimal point (e.g. "1-0.0001" or "0.5.5" in d).
+	 * @param value
+	 * @param places if negative value is written unchanged
+	 * @throws IOException
+	 */
+	public void writeRoundedNumbers(String value, int places) throws IOException {
+		if (places < 0) {
+			writeAttributeValue(value);
+			return;
+		}
+		int length = value.length();
+		int i = 0;
+		while (i < length) {
+			if (!isNumberStart(value, i)) {
+				int start = i;
+				do {
+					i++;
+				} while (i < length && !isNumberStart(value, i));
+				writeAttributeValue(start == 0 && i == length ? value : value.substring(start, i));
+				continue;
+			}
+			int start = i;
+			i = scanNumber(value, i);
+			if (!hasExponent && fractionDigits <= places) {
+				for (int j = start; j < i; j++) {
+					writeRaw(value.charAt(j));
+				}
+				continue;
+			}
+			double d = Double.parseDouble(value.substring(start, i));
+			if (start > 0 && !isNegativeWhenRounded(d, places)) {
+				char previous = value.charAt(start - 1);
+				if ((previous >= '0' && previous <= '9') || previous == '.') {
+					writeRaw(' ');
+				}
+			}
+			writeDouble(d, places);
+			// "1.9999.5" must not become "2.5"
+			if (i < length && value.charAt(i) == '.') {
+				writeRaw(' ');
+			}
+		}
+	}
+
+	private static boolean isNumberStart(String s, int i) {
+		char c = s.charAt(i);
+		if (c >= '0' && c <= '9') {
+			return true;
+		}
+		if (c == '+' || c == '-') {
+			return i + 1 < s.length() && (isDigit(s, i + 1) || (s.charAt(i + 1) == '.' && i + 2 < s.length() && isDigit(s, i + 2)));
+		}
+		return c == '.' && i + 1 < s.length() && isDigit(s, i + 1);
+	}
+
+	private static boolean isDigit(String s, int i) {
+		char c = s.charAt(i);
+		return c >= '0' && c <= '9';
+	}
+
+	// returns end of number starting at i; sets fractionDigits and hasExponent
+	private int scanNumber(String s, int i) {
+		int length = s.length();
+		fractionDigits = 0;
+		hasExponent = false;
+		char c = s.charAt(i);
+		if (c == '+' || c == '-') {
+			i++;
+		}
+		while (i < length && isDigit(s, i)) {
+			i++;
+		}
+		if (i < length && s.charAt(i) == '.') {
+			i++;
+			while (i < length && isDigit(s, i)) {
+				i++;
+				fractionDigits++;
+			}
+		}
+		if (i < length && ((c = s.charAt(i)) == 'e' || c == 'E')) {
+			int j = i + 1;
+			if (j < length && ((c = s.charAt(j)) == '+' || c == '-')) {
+				j++;
+			}
+			if (j < length && isDigit(s, j)) {
+				while (j < length && isDigit(s, j)) {
+					j++;
+				}
+				hasExponent = true;
+				i = j;
+			}
+		}
+		return i;
+	}
+
+	private static boolean isNegativeWhenRounded(double d, int places) {
+		return d < 0 && Math.abs(d) * POWERS_OF_TEN[places] >= 0.5;
+	}
+
+	private String getInScopeURI(String prefix) {
+		for (int i = scopeSize - 1; i >= 0; i--) {
+			if (scopePrefixes[i].equals(prefix)) {
+				return scopeURIs[i];
+			}
+		}
+		return prefix.length() == 0 ? "" : (prefix.equals("xml") ? XML_NS : null);
+	}
+
+	private void pushScope(String prefix, String uri) {
+		if (scopeSize == scopePrefixes.length) {
+			String[] prefixes = new String[scopeSize * 2];
+			String[] uris = new String[scopeSize * 2];
+			System.arraycopy(scopePrefixes, 0, prefixes, 0, scopeSize);
+			System.arraycopy(scopeURIs, 0, uris, 0, scopeSize);
+			scopePrefixes = prefixes;
+			scopeURIs = uris;
+		}
+		scopePrefixes[scopeSize] = prefix;
+		scopeURIs[scopeSize++] = uri;
+	}
+
+	/** writes "&lt;name".
+	 */
+	public void startTag(String qualifiedName) throws IOException {
+		writeRaw('<');
+		writeRaw(qualifiedName);
+	}
+
+	/** writes ' name="value"' with value escaped.
+	 */
+	public void attribute(String qualifiedName, String value) throws IOException {
+		writeRaw(' ');
+		writeRaw(qualifiedName);
+		writeRaw("=\"");
+		writeAttributeValue(value);
+		writeRaw('"');
+	}
+
+	/** writes ' name="value"' with at most places decimals.
+	 */
+	public void attribute(String qualifiedName, double value, int places) throws IOException {
+		writeRaw(' ');
+		writeRaw(qualifiedName);
+		writeRaw("=\"");
+		writeDouble(value, places);
+		writeRaw('"');
+	}
+
+	public void closeStartTag() throws IOException {
+		writeRaw('>');
+	}
+
+	public void closeEmptyTag() throws IOException {
+		writeRaw("/>");
+	}
+
+	public void endTag(String qualifiedName) throws IOException {
+		writeRaw("</");
+		writeRaw(qualifiedName);
+		writeRaw('>');
+	}
+
+	/** writes escaped character data.
+	 */
+	public void text(String s) throws IOException {
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c == '&') {
+				writeRaw("&amp;");
+			} else if (c == '<') {
+				writeRaw("&lt;");
+			} else if (c == '>') {
+				writeRaw("&gt;");
+			} else if (c == '\r') {
+				writeRaw("&#xD;");
+			} else if (c < 128) {
+				writeRaw(c);
+			} else {
+				i = writeNonASCII(s, i);
+			}
+		}
+	}
+
+	/** writes escaped attribute value (without quotes).
+	 */
+	public void writeAttributeValue(String s) throws IOException {
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c == '&') {
+				writeRaw("&amp;");
+			} else if (c == '<') {
+				writeRaw("&lt;");
+			} else if (c == '>') {
+				writeRaw("&gt;");
+			} else if (c == '"') {
+				writeRaw("&quot;");
+			} else if (c == '\t') {
+				writeRaw("&#x9;");
+			} else if (c == '\n') {
+				writeRaw("&#xA;");
+			} else if (c == '\r') {
+				writeRaw("&#xD;");
+			} else if (c < 128) {
+				writeRaw(c);
+			} else {
+				i = writeNonASCII(s, i);
+			}
+		}
+	}
+
+	// returns index of last char used
+	private int writeNonASCII(String s, int i) throws IOException {
+		char c = s.charAt(i);
+		if (rawUTF8) {
+			writeRaw(c);
+			return i;
+		}
+		int codePoint = c;
+		if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+			codePoint = Character.toCodePoint(c, s.charAt(++i));
+		}
+		writeRaw("&#");
+		writeLong(codePoint);
+		writeRaw(';');
+		return i;
+	}
+
+	/** writes value rounded to at most places decimals, trailing zeros removed.
+	 *
+	 * e.g. (1.23456, 3) gives "1.235", (2.5, 3) gives "2.5", (-0.0001, 3) gives "0".
+	 * NaN and infinities are written as by String.valueOf().
+	 *
+	 * @param value
+	 * @param places 0 to MAX_DECIMAL_PLACES
+	 * @throws IOException
+	 */
+	public void writeDouble(double value, int places) throws IOException {
+		if (places < 0 || places > MAX_DECIMAL_PLACES) {
+			throw new RuntimeException("decimal places must be 0-"+MAX_DECIMAL_PLACES+": "+places);
+		}
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			writeRaw(String.valueOf(value));
+			return;
+		}
+		long power = POWERS_OF_TEN[places];
+		double scaled = Math.abs(value) * power;
+		if (scaled >= MAX_FAST_SCALED) {
+			writeRaw(new BigDecimal(value).setScale(places, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString());
+			return;
+		}
+		long rounded = Math.round(scaled);
+		if (rounded == 0) {
+			writeRaw('0');
+			return;
+		}
+		if (value < 0) {
+			writeRaw('-');
+		}
+		writeLong(rounded / power);
+		long fraction = rounded % power;
+		if (fraction != 0) {
+			int fractionPlaces = places;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				fractionPlaces--;
+			}
+			writeRaw('.');
+			// leading zeros of fraction
+			for (long p = POWERS_OF_TEN[fractionPlaces - 1]; p > fraction; p /= 10) {
+				writeRaw('0');
+			}
+			writeLong(fraction);
+		}
+	}
+
+	/** writes non-negative integer.
+	 */
+	private void writeLong(long value) throws IOException {
+		int pos = digits.length;
+		do {
+			digits[--pos] = (char) ('0' + (value % 10));
+			value /= 10;
+		} while (value > 0);
+		for (int i = pos; i < digits.length; i++) {
+			writeRaw(digits[i]);
+		}
+	}
+
+	/** writes unescaped string.
+	 */
+	public void writeRaw(String s) throws IOException {
+		int length = s.length();
+		int start = 0;
+		while (start < length) {
+			if (count == buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(length - start, buffer.length - count);
+			s.getChars(start, start + n, buffer, count);
+			count += n;
+			start += n;
+		}
+	}
+
+	/** writes unescaped char.
+	 */
+	public void writeRaw(char c) throws IOException {
+		if (count == buffer.length) {
+			flushBuffer();
+		}
+		buffer[count++] = c;
+	}
+
+	private void flushBuffer() throws IOException {
+		writer.write(buffer, 0, count);
+		charCount += count;
+		count = 0;
+	}
+
+	public void flush() throws IOException {
+		flushBuffer();
+		writer.flush();
+	}
+
+	public void close() throws IOException {
+		flush();
+		writer.close();
+	}
+}
@@ -0,0 +1,402 @@
+package org.xmlcml.graphics.svg.words;
+
+/** recognises numeric tokens in tick labels without exceptions or intermediate Strings.
+ *
+ * Classifies a character sequence as INTEGER (fits in int), DECIMAL, SCIENTIFIC (1.2E-3)
+ * or POWER_OF_TEN (1.2x10^-3, 1.2&times;10&#x207b;&#xb3; or two spans "1.2x10" "-3").
+ * Leading/trailing whitespace is ignored and U+2212 (MINUS SIGN) is accepted as a minus.
+ *
+ * The scanner holds its results in fields so one instance should be reused for a batch
+ * (it is not thread-safe). Values are identical to Double.parseDouble: mantissas below 2^53
+ * with powers up to 10^22 are converted with one correctly rounded operation and all
+ * other inputs fall back to Double.parseDouble.
+ *
+ * @author pm286
+ *
+ */
+public class NumberScanner {
+
+	public enum NumberType {
+		NONE,
+		INTEGER,
+		DECIMAL,
+		SCIENTIFIC,
+		POWER_OF_TEN
+	}
+
+	private static final char MINUS_SIGN = '\u2212';
+	private static final char TIMES = '\u00D7';
+	private static final char MIDDLE_DOT = '\u00B7';
+	private static final char SUPERSCRIPT_MINUS = '\u207B';
+	private static final char SUPERSCRIPT_PLUS = '\u207A';
+	private static final int MAX_DIGITS = 18;
+	private static final int MAX_EXPONENT = 9999;
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+	};
+
+	// results
+	private NumberType type = NumberType.NONE;
+	private int intValue;
+	private double doubleValue = Double.NaN;
+
+	// working state
+	private boolean negative;
+	private long mantissa;
+	private int significantDigits;
+	private int scale;
+	private boolean truncated;
+	private boolean hasPoint;
+	private int exponent;
+
+	public NumberScanner() {
+	}
+
+	/** classifies whole sequence.
+	 *
+	 * @param cs (may be null)
+	 * @return type (NONE if not numeric)
+	 */
+	public NumberType scan(CharSequence cs) {
+		return cs == null ? reset() : scan(cs, 0, cs.length());
+	}
+
+	/** classifies cs[start, end).
+	 *
+	 * @param cs
+	 * @param start
+	 * @param end
+	 * @return type (NONE if not numeric)
+	 */
+	public NumberType scan(CharSequence cs, int start, int end) {
+		reset();
+		start = skipWhitespace(cs, start, end);
+		end = trimWhitespace(cs, start, end);
+		if (start >= end) {
+			return type;
+		}
+		int caret = indexOf(cs, start, end, '^');
+		int superscript = indexOfSuperscript(cs, start, end);
+		if (caret >= 0) {
+			return scanPowerOfTen(cs, start, caret, caret + 1, end, false);
+		} else if (superscript >= 0) {
+			return scanPowerOfTen(cs, start, superscript, superscript, end, true);
+		}
+		int next = scanNumber(cs, start, end);
+		if (next < 0) {
+			return type;
+		}
+		boolean hasExponent = false;
+		if (next < end && (cs.charAt(next) == 'e' || cs.charAt(next) == 'E')) {
+			next = scanExponent(cs, next + 1, end, false);
+			hasExponent = true;
+		}
+		if (next != end) {
+			return type;
+		}
+		if (hasExponent) {
+			type = NumberType.SCIENTIFIC;
+		} else if (!hasPoint && !truncated && mantissa <= Integer.MAX_VALUE + (negative ? 1L : 0L)) {
+			type = NumberType.INTEGER;
+			intValue = (int) (negative ? -mantissa : mantissa);
+		} else {
+			type = NumberType.DECIMAL;
+		}
+		doubleValue = createDouble(cs, start, end, hasExponent ? exponent : 0);
+		return type;
+	}
+
+	/** classifies abscissa and power held in separate spans (e.g. "1.2x10" and "-3").
+	 *
+	 * @param abscissa ending in "10", optionally preceded by multiplier and mantissa
+	 * @param power signed integer
+	 * @return POWER_OF_TEN or NONE
+	 */
+	public NumberType scanPowerOfTen(CharSequence abscissa, CharSequence power) {
+		reset();
+		if (abscissa == null || power == null) {
+			return type;
+		}
+		int start = skipWhitespace(power, 0, power.length());
+		int end = trimWhitespace(power, start, power.length());
+		if (scanExponent(power, start, end, false) != end || start == end) {
+			return reset();
+		}
+		int powerValue = exponent;
+		return scanAbscissa(abscissa, 0, abscissa.length(), powerValue);
+	}
+
+	/** classifies abscissa with a known power.
+	 *
+	 * @param abscissa ending in "10", optionally preceded by multiplier and mantissa
+	 * @param power
+	 * @return POWER_OF_TEN or NONE
+	 */
+	public NumberType scanPowerOfTen(CharSequence abscissa, int power) {
+		reset();
+		return abscissa == null ? type : scanAbscissa(abscissa, 0, abscissa.length(), power);
+	}
+
+	public NumberType getType() {
+		return type;
+	}
+
+	/** value if type is INTEGER.
+	 *
+	 * @return
+	 */
+	public int getIntValue() {
+		return intValue;
+	}
+
+	/** value for any numeric type (NaN if NONE).
+	 *
+	 * @return
+	 */
+	public double getDoubleValue() {
+		return doubleValue;
+	}
+
+	private NumberType reset() {
+		type = NumberType.NONE;
+		intValue = 0;
+		doubleValue = Double.NaN;
+		return type;
+	}
+
+	private NumberType scanPowerOfTen(CharSequence cs, int start, int abscissaEnd, int powerStart, int end, boolean superscript) {
+		int powerEnd = scanExponent(cs, powerStart, end, superscript);
+		if (powerEnd != end || powerStart == end) {
+			return reset();
+		}
+		return scanAbscissa(cs, start, abscissaEnd, exponent);
+	}
+
+	/** abscissa of form [mantissa [multiplier]] 10.
+	 *
+	 * follows TypedNumber.createAndParseExponentialForm(); multiplier may be x, X, &times;, &middot; or *
+	 */
+	private NumberType scanAbscissa(CharSequence cs, int start, int end, int power) {
+		start = skipWhitespace(cs, start, end);
+		end = trimWhitespace(cs, start, end);
+		if (end - start < 2 || cs.charAt(end - 2) != '1' || cs.charAt(end - 1) != '0') {
+			return reset();
+		}
+		int mantissaEnd = trimWhitespace(cs, start, end - 2);
+		if (mantissaEnd > start && isMultiplier(cs.charAt(mantissaEnd - 1))) {
+			mantissaEnd = trimWhitespace(cs, start, mantissaEnd - 1);
+		}
+		if (mantissaEnd == start) {
+			// "10^n"
+			negative = false;
+			mantissa = 1;
+			scale = 0;
+			truncated = false;
+		} else if (mantissaEnd == start + 1 && isMinus(cs.charAt(start))) {
+			// "-10^n"
+			negative = true;
+			mantissa = 1;
+			scale = 0;
+			truncated = false;
+		} else if (scanNumber(cs, start, mantissaEnd) != mantissaEnd) {
+			return reset();
+		}
+		if (truncated) {
+			// very long mantissa; not expected in labels
+			return reset();
+		}
+		type = NumberType.POWER_OF_TEN;
+		doubleValue = scaleValue(mantissa, scale + power, negative);
+		return type;
+	}
+
+	/** scans [sign] digits [. digits] into mantissa/scale.
+	 *
+	 * @return index after number or -1 if no digits
+	 */
+	private int scanNumber(CharSequence cs, int start, int end) {
+		negative = false;
+		mantissa = 0L;
+		significantDigits = 0;
+		scale = 0;
+		truncated = false;
+		hasPoint = false;
+		int i = start;
+		if (i < end) {
+			char c = cs.charAt(i);
+			if (isMinus(c)) {
+				negative = true;
+				i++;
+			} else if (c == '+') {
+				i++;
+			}
+		}
+		int digits = 0;
+		while (i < end && isDigit(cs.charAt(i))) {
+			addDigit(cs.charAt(i) - '0', false);
+			digits++;
+			i++;
+		}
+		if (i < end && cs.charAt(i) == '.') {
+			hasPoint = true;
+			i++;
+			while (i < end && isDigit(cs.charAt(i))) {
+				addDigit(cs.charAt(i) - '0', true);
+				digits++;
+				i++;
+			}
+		}
+		return digits == 0 ? -1 : i;
+	}
+
+	private void addDigit(int digit, boolean fraction) {
+		if (significantDigits < MAX_DIGITS) {
+			mantissa = mantissa * 10 + digit;
+			if (mantissa != 0) {
+				significantDigits++;
+			}
+			if (fraction) {
+				scale--;
+			}
+		} else {
+			truncated = true;
+			if (!fraction) {
+				scale++;
+			}
+		}
+	}
+
+	/** scans signed integer exponent into exponent field.
+	 *
+	 * @return index after exponent or -1
+	 */
+	private int scanExponent(CharSequence cs, int start, int end, boolean superscript) {
+		int i = start;
+		boolean negativeExponent = false;
+		if (i < end) {
+			char c = cs.charAt(i);
+			if (superscript ? c == SUPERSCRIPT_MINUS : isMinus(c)) {
+				negativeExponent = true;
+				i++;
+			} else if (superscript ? c == SUPERSCRIPT_PLUS : c == '+') {
+				i++;
+			}
+		}
+		int value = 0;
+		int digitStart = i;
+		while (i < end) {
+			int digit = superscript ? superscriptDigit(cs.charAt(i)) : (isDigit(cs.charAt(i)) ? cs.charAt(i) - '0' : -1);
+			if (digit < 0) {
+				break;
+			}
+			value = Math.min(value * 10 + digit, MAX_EXPONENT);
+			i++;
+		}
+		if (i == digitStart) {
+			return -1;
+		}
+		exponent = negativeExponent ? -value : value;
+		return i;
+	}
+
+	private double createDouble(CharSequence cs, int start, int end, int power) {
+		if (truncated) {
+			return parseLongNumber(cs, start, end);
+		}
+		return scaleValue(mantissa, scale + power, negative);
+	}
+
+	/** mantissa * 10^power, correctly rounded.
+	 *
+	 * one floating-point operation when mantissa < 2^53 and |power| <= 22; otherwise
+	 * Double.parseDouble (rare in labels).
+	 */
+	private static double scaleValue(long mantissa, int power, boolean negative) {
+		double value;
+		if (mantissa == 0L) {
+			value = 0.0;
+		} else if (power == 0) {
+			value = (double) mantissa;
+		} else if (mantissa < (1L << 53) && power > 0 && power < POWERS_OF_TEN.length) {
+			value = mantissa * POWERS_OF_TEN[power];
+		} else if (mantissa < (1L << 53) && power < 0 && -power < POWERS_OF_TEN.length) {
+			value = mantissa / POWERS_OF_TEN[-power];
+		} else {
+			return Double.parseDouble((negative ? "-" : "") + mantissa + "E" + power);
+		}
+		return negative ? -value : value;
+	}
+
+	/** rare path for more than MAX_DIGITS significant digits.
+	 */
+	private static double parseLongNumber(CharSequence cs, int start, int end) {
+		StringBuilder sb = new StringBuilder(end - start);
+		for (int i = start; i < end; i++) {
+			char c = cs.charAt(i);
+			sb.append(c == MINUS_SIGN ? '-' : c);
+		}
+		return Double.parseDouble(sb.toString());
+	}
+
+	private static int indexOf(CharSequence cs, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (cs.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOfSuperscript(CharSequence cs, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = cs.charAt(i);
+			if (c == SUPERSCRIPT_MINUS || c == SUPERSCRIPT_PLUS || superscriptDigit(c) >= 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int superscriptDigit(char c) {
+		switch (c) {
+		case '\u2070': return 0;
+		case '\u00B9': return 1;
+		case '\u00B2': return 2;
+		case '\u00B3': return 3;
+		case '\u2074': return 4;
+		case '\u2075': return 5;
+		case '\u2076': return 6;
+		case '\u2077': return 7;
+		case '\u2078': return 8;
+		case '\u2079': return 9;
+		default: return -1;
+		}
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isMinus(char c) {
+		return c == '-' || c == MINUS_SIGN;
+	}
+
+	private static boolean isMultiplier(char c) {
+		return c == 'x' || c == 'X' || c == TIMES || c == MIDDLE_DOT || c == '*';
+	}
+
+	private static int skipWhitespace(CharSequence cs, int start, int end) {
+		while (start < end && Character.isWhitespace(cs.charAt(start))) {
+			start++;
+		}
+		return start;
+	}
+
+	private static int trimWhitespace(CharSequence cs, int start, int end) {
+		while (end > start && Character.isWhitespace(cs.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+}
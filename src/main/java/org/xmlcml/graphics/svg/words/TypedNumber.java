@@ -8,10 +8,10 @@ import java.util.List;
 import nu.xom.Attribute;
 
 import org.apache.log4j.Logger;
-import org.xmlcml.euclid.Real;
 import org.xmlcml.graphics.svg.SVGElement;
 import org.xmlcml.graphics.svg.SVGTSpan;
 import org.xmlcml.graphics.svg.SVGText;
+import org.xmlcml.graphics.svg.words.NumberScanner.NumberType;
 import org.xmlcml.xml.XMLConstants;
 
 /** may be obsolete, but not checked */
@@ -34,10 +34,19 @@ public class TypedNumber {
 	 * @param text
 	 */
 	TypedNumber(SVGText text) {
+		this(text, new NumberScanner());
+	}
+
+	/** create either from the text value of Child TSpans
+	 * 
+	 * @param text
+	 * @param scanner reused for batches
+	 */
+	TypedNumber(SVGText text, NumberScanner scanner) {
 		if (text.getChildElements().size() == 0) {
-			createFromString(text.getValue().trim());
+			createFromScanner(scanner, text.getValue());
 		} else {
-			TypedNumber typedNumber = createFromText(text);
+			TypedNumber typedNumber = createFromText(text, scanner);
 			if (typedNumber != null) {
 				this.number = typedNumber.number;
 				this.dataType = typedNumber.dataType;
@@ -56,9 +65,20 @@ public class TypedNumber {
 		dataType = XMLConstants.XSD_DOUBLE;
 	}
 
-	private void createFromString(String value) {
-		createInteger(value);
-		createDouble(value);
+	/** integers that fit in int become XSD_INTEGER; all other numeric forms XSD_DOUBLE.
+	 * 
+	 * @param scanner
+	 * @param value
+	 */
+	private void createFromScanner(NumberScanner scanner, CharSequence value) {
+		NumberType type = scanner.scan(value);
+		if (NumberType.INTEGER.equals(type)) {
+			number = Integer.valueOf(scanner.getIntValue());
+			dataType = XMLConstants.XSD_INTEGER;
+		} else if (!NumberType.NONE.equals(type)) {
+			number = Double.valueOf(scanner.getDoubleValue());
+			dataType = XMLConstants.XSD_DOUBLE;
+		}
 	}
 
 	/** create from SVGText 
@@ -69,69 +89,85 @@ public class TypedNumber {
 	 * @return
 	 */
 	public static TypedNumber createFromText(SVGText text) {
+		return createFromText(text, new NumberScanner());
+	}
+
+	private static TypedNumber createFromText(SVGText text, NumberScanner scanner) {
 		TypedNumber typedNumber = null;
 		List<SVGTSpan> tSpans = text.getChildTSpans();
 		if (tSpans.size() == 0) {
-			typedNumber = new TypedNumber(text); 
+			typedNumber = new TypedNumber(text, scanner); 
 		} else if (tSpans.size() == 1) {
-			typedNumber = TypedNumber.createNumber(tSpans.get(0)); 
+			typedNumber = TypedNumber.createNumber(tSpans.get(0), scanner); 
 		} else if (tSpans.size() == 2) {
-			typedNumber = interpretExponentialNotation(tSpans);
+			typedNumber = interpretExponentialNotation(tSpans, scanner);
 		}
 		return typedNumber;
 	}
 
 	/** requires a list of exactly 2 
+	 * 
+	 * of form 1.2x10<sup>34</sup>; the second span must be raised (smaller y) or
+	 * have a smaller font, otherwise two plain numbers would be read as a power
 	 * 
 	 * @param tSpans
-	 * @return
+	 * @return null if not of this form
 	 */
 	public static TypedNumber interpretExponentialNotation(List<SVGTSpan> tSpans) {
+		return interpretExponentialNotation(tSpans, new NumberScanner());
+	}
+
+	private static TypedNumber interpretExponentialNotation(List<SVGTSpan> tSpans, NumberScanner scanner) {
 		TypedNumber typedNumber = null;
-//		// of form 1.2x10<sup>34</sup>
-//		if (tSpans.size() == 2) {
-//			SVGTSpan tSpan0 = tSpans.get(0);
-//			SVGTSpan tSpan1 = tSpans.get(1);
-//			Integer power = null;
-//			if (SubSup.SUPERSCRIPT.toString().equals(tSpan1.getAttributeValue(SubSupAnalyzerX.SCRIPT_TYPE))) {
-//				try {
-//					power = new Integer(tSpan1.getValue());
-//					typedNumber = createAndParseExponentialForm(tSpan0.getValue().trim(), power);
-//				} catch (Exception e) {
-//				}
-//			}
-//		}
+		if (tSpans.size() == 2) {
+			SVGTSpan tSpan0 = tSpans.get(0);
+			SVGTSpan tSpan1 = tSpans.get(1);
+			if (isSuperscript(tSpan0, tSpan1, scanner) &&
+				NumberType.POWER_OF_TEN.equals(scanner.scanPowerOfTen(tSpan0.getValue(), tSpan1.getValue()))) {
+				typedNumber = new TypedNumber(scanner.getDoubleValue());
+			}
+		}
 		return typedNumber;
 	}
 
+	private static boolean isSuperscript(SVGTSpan base, SVGTSpan script, NumberScanner scanner) {
+		double y0 = scanAttribute(base, SVGElement.Y, scanner);
+		double y1 = scanAttribute(script, SVGElement.Y, scanner);
+		if (!Double.isNaN(y0) && !Double.isNaN(y1)) {
+			return y1 < y0;
+		}
+		Double fontSize0 = base.getFontSize();
+		Double fontSize1 = script.getFontSize();
+		return fontSize0 != null && fontSize1 != null && fontSize1 < fontSize0;
+	}
+
+	private static double scanAttribute(SVGElement element, String attName, NumberScanner scanner) {
+		scanner.scan(element.getAttributeValue(attName));
+		return scanner.getDoubleValue();
+	}
+
+	/** abscissa of form [mantissa[x]]10 with separate power.
+	 * 
+	 * @param abscissaText e.g. "1.2x10"
+	 * @param power
+	 * @return null if abscissa cannot be interpreted
+	 */
 	public static TypedNumber createAndParseExponentialForm(String abscissaText, Integer power) {
 		TypedNumber typedNumber = null;
-		if (abscissaText.endsWith("10")) {
-			abscissaText = abscissaText.substring(0,  abscissaText.length()-2);
-			if (abscissaText.length() == 0) {
-				abscissaText = abscissaText + "1.0";
-			} else {
-				// deal with multiplier (times) character
-				if (abscissaText.endsWith("x") || abscissaText.endsWith("X")) {
-					abscissaText = abscissaText.substring(0,  abscissaText.length()-1);
-				}
-			}
-			abscissaText = abscissaText + "E";
-			if (power >= 0) {
-				abscissaText = abscissaText + "+";
-			}
-			abscissaText = abscissaText + power;
-			LOG.trace("SUPERSCRIPTED NUMBER "+abscissaText);
-			double dd = Real.parseDouble(abscissaText);
-			if (!Double.isNaN(dd)) {                  
-				typedNumber = new TypedNumber(new Double(dd));
-			}
+		NumberScanner scanner = new NumberScanner();
+		if (power != null && NumberType.POWER_OF_TEN.equals(scanner.scanPowerOfTen(abscissaText, power))) {
+			LOG.trace("SUPERSCRIPTED NUMBER "+abscissaText+"^"+power);
+			typedNumber = new TypedNumber(scanner.getDoubleValue());
 		}
 		return typedNumber;
 	}
 	
 	public static TypedNumber createNumber(SVGText text) {
-		TypedNumber number = new TypedNumber(text);
+		return createNumber(text, new NumberScanner());
+	}
+
+	static TypedNumber createNumber(SVGText text, NumberScanner scanner) {
+		TypedNumber number = new TypedNumber(text, scanner);
 		return number.number == null ? null : number;
 	}
 
@@ -143,26 +179,6 @@ public class TypedNumber {
 		return dataType;
 	}
 
-	private void createDouble(String value) {
-		if (number == null) {
-			try {
-				Double dubble = Double.valueOf(value);
-				number = dubble;
-				dataType = XMLConstants.XSD_DOUBLE;
-			} catch (Exception e1) {
-			}
-		}
-	}
-
-	private void createInteger(String value) {
-		try {
-			Integer integer = new Integer(value);
-			number = integer;
-			dataType = XMLConstants.XSD_INTEGER;
-		} catch (Exception e) {
-		}
-	}
-
 	void setDataType(String dataType) {
 		this.dataType = dataType;
 	}
@@ -36,8 +36,9 @@ public class TypedNumberList implements Iterable<TypedNumber> {
 		if (spanList != null && spanList.size() > 0) {
 			typedNumberList = new TypedNumberList();
 			typedNumberList.dataType = null;
+			NumberScanner scanner = new NumberScanner();
 			for (SVGTSpan tSpan : spanList) {
-				TypedNumber typedNumber = new TypedNumber(tSpan);
+				TypedNumber typedNumber = new TypedNumber(tSpan, scanner);
 				if (typedNumber == null || typedNumber.getDataType() == null) {
 					return null;
 				}
@@ -0,0 +1,97 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.List;
+
+import nu.xom.Attribute;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.xml.XMLUtil;
+
+public class ClipPathIndexTest {
+
+	private static final String SVG =
+			"<svg xmlns='http://www.w3.org/2000/svg'>"
+			+ "<defs>"
+			+ "<clipPath id='clipPath1'><path d='M0 0 L100 0 L100 100 L0 100 Z'/></clipPath>"
+			+ "<clipPath id='clipPath10'><path d='M200 200 L300 200 L300 300 L200 300 Z'/></clipPath>"
+			+ "<clipPath id='clipPath2'><path d='M0 0 L10 0 L10 10 Z'/></clipPath>"
+			+ "</defs>"
+			+ "<g>"
+			// inside clipPath1
+			+ "<rect id='r1' x='10' y='10' width='20' height='20' clip-path='url(#clipPath1)'/>"
+			// outside clipPath1 (style reference)
+			+ "<rect id='r2' x='150' y='150' width='20' height='20' style='stroke-width:1.0;clip-path:url(#clipPath1);'/>"
+			// overlaps edge
+			+ "<line id='l1' x1='90' y1='50' x2='150' y2='50' clip-path='url(#clipPath1)'/>"
+			// outside clipPath10
+			+ "<path id='p1' d='M10 10 L20 20' clip-path='url(#clipPath10)'/>"
+			// transformed; not culled
+			+ "<rect id='r3' x='150' y='150' width='20' height='20' transform='translate(-100,-100)' clip-path='url(#clipPath1)'/>"
+			+ "</g>"
+			+ "</svg>";
+
+	private static SVGElement createSVG() {
+		return SVGElement.readAndCreateSVG(XMLUtil.parseXML(SVG));
+	}
+
+	@Test
+	public void testIndex() {
+		SVGElement svg = createSVG();
+		ClipPathIndex index = new ClipPathIndex(svg);
+		Assert.assertEquals(3, index.getClipPaths().size());
+		Assert.assertEquals(4, index.getElements("clipPath1").size());
+		Assert.assertEquals("r2", index.getElements("clipPath1").get(1).getId());
+		// exact id match; clipPath1 does not match clipPath10
+		Assert.assertEquals(1, index.getElements("clipPath10").size());
+		Assert.assertEquals(2, index.getUsedClipPaths().size());
+		Assert.assertEquals(100.0, index.getClipBox("clipPath1").getXMax(), 0.001);
+		Assert.assertNull(index.getClipBox("missing"));
+		Assert.assertEquals(1, SVGClipPath.findElementsWithClipPath(svg, "clipPath10").size());
+		Assert.assertEquals(2, SVGClipPath.extractUsedClipPaths(svg).size());
+	}
+
+	@Test
+	public void testClipPathRefIgnoresOtherUrls() {
+		SVGRect rect = new SVGRect();
+		rect.addAttribute(new Attribute("style", "fill:url(#grad1);clip-path:url(#c1)"));
+		Assert.assertEquals("c1", ClipPathIndex.getClipPathRef(rect));
+		Assert.assertEquals("c1", SVGClipPath.getClipPathRef(rect));
+		rect.addAttribute(new Attribute("style", "fill:url(#grad1);stroke:red"));
+		Assert.assertNull(ClipPathIndex.getClipPathRef(rect));
+		rect.addAttribute(new Attribute("clip-path", "url(#c2)"));
+		Assert.assertEquals("c2", SVGClipPath.getClipPathRef(rect));
+	}
+
+	@Test
+	public void testDetachFullyClipped() {
+		SVGElement svg = createSVG();
+		ClipPathIndex index = new ClipPathIndex(svg);
+		List<SVGElement> detached = index.detachFullyClippedElements();
+		Assert.assertEquals(2, detached.size());
+		Assert.assertEquals("r2", detached.get(0).getId());
+		Assert.assertEquals("p1", detached.get(1).getId());
+		Assert.assertEquals(3, index.getElements("clipPath1").size());
+		Assert.assertEquals(0, index.getElements("clipPath10").size());
+		List<SVGClipPath> unused = index.detachUnusedClipPaths();
+		Assert.assertEquals(2, unused.size());
+		Assert.assertEquals(1, SVGClipPath.extractClipPaths(svg).size());
+		Assert.assertEquals(3, SVGUtil.getQuerySVGElements(svg, "//*[local-name()='rect' or local-name()='line']").size());
+	}
+
+	@Test
+	public void testStrokeKeepsElement() {
+		SVGElement svg = createSVG();
+		SVGRect rect = new SVGRect(new Real2(101.0, 10.0), new Real2(110.0, 20.0));
+		rect.setStrokeWidth(1.0);
+		rect.addAttribute(new nu.xom.Attribute("clip-path", "url(#clipPath1)"));
+		((SVGElement) svg.getChildElements().get(1)).appendChild(rect);
+		ClipPathIndex index = new ClipPathIndex(svg);
+		// stroke (with miter) reaches into the clip box
+		Assert.assertFalse(index.isFullyClipped(rect, ClipPathIndex.DEFAULT_CLIP_MARGIN));
+		rect.setStrokeWidth(0.0);
+		Assert.assertFalse(index.isFullyClipped(rect, 2.0));
+		Assert.assertTrue(index.isFullyClipped(rect, 0.0));
+	}
+}
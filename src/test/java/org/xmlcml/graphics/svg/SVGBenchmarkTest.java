@@ -0,0 +1,279 @@
+package org.xmlcml.graphics.svg;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import nu.xom.Element;
+import nu.xom.Serializer;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.xerces.impl.dv.util.Base64;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xmlcml.euclid.ArrayBase;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.euclid.RealRange;
+import org.xmlcml.euclid.Real2Array;
+import org.xmlcml.graphics.svg.util.SVGStreamWriter;
+import org.xmlcml.graphics.svg.util.SVGWriter;
+import org.xmlcml.graphics.svg.words.NumberScanner;
+import org.xmlcml.graphics.svg.words.NumberScanner.NumberType;
+import org.xmlcml.xml.XMLUtil;
+
+/** timings of the faster paths against the code they replace.
+ *
+ * Opt-in: timings mean nothing under the parallel surefire run, so remove the @Ignore
+ * and run this class on its own. Results are only logged; correctness is covered by
+ * the tests of each class.
+ *
+ * @author pm286
+ *
+ */
+@Ignore("benchmark; run on its own")
+public class SVGBenchmarkTest {
+	private static final Logger LOG = Logger.getLogger(SVGBenchmarkTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	@Test
+	public void testXPath() {
+		Element svg = SVGXPathTest.createLargeSVG(200, 20);
+		int repeats = 20;
+		for (String pattern : SVGXPathTest.PATTERNS) {
+			// warm up both
+			svg.query(pattern, SVGConstants.SVG_XPATH);
+			SVGXPath.query(svg, pattern);
+			long nanos = System.nanoTime();
+			for (int i = 0; i < repeats; i++) {
+				svg.query(pattern, SVGConstants.SVG_XPATH);
+			}
+			long xomNanos = System.nanoTime() - nanos;
+			nanos = System.nanoTime();
+			for (int i = 0; i < repeats; i++) {
+				SVGXPath.query(svg, pattern);
+			}
+			long fastNanos = System.nanoTime() - nanos;
+			LOG.debug(String.format("%-52s XOM %8.2f ms  tree walk %8.2f ms",
+					pattern, xomNanos / 1.0e6 / repeats, fastNanos / 1.0e6 / repeats));
+		}
+	}
+
+	@Test
+	public void testTypeIndex() {
+		SVGG page = SVGTypeIndexTest.createPage(2000);
+		int queries = 50;
+		long millis = System.currentTimeMillis();
+		for (int i = 0; i < queries; i++) {
+			XMLUtil.getQueryElements(page, SVGText.ALL_TEXT_XPATH, SVGConstants.SVG_XPATH);
+		}
+		long xpathMillis = System.currentTimeMillis() - millis;
+		millis = System.currentTimeMillis();
+		for (int i = 0; i < queries; i++) {
+			SVGText.extractSelfAndDescendantTexts(page);
+		}
+		LOG.debug(queries+" text queries: xpath "+xpathMillis+" ms, index "+(System.currentTimeMillis() - millis)+" ms");
+	}
+
+	@Test
+	public void testPoints() {
+		for (int npoints : new int[]{10000, 100000}) {
+			String points = SVGPointsParserTest.createPoints(npoints);
+			// warm up both
+			Real2Array.createFromPairs(points, ArrayBase.ARRAY_REGEX);
+			SVGPointsParser.createReal2Array(points);
+			int repeats = 5;
+			long nanos = System.nanoTime();
+			for (int i = 0; i < repeats; i++) {
+				Real2Array.createFromPairs(points, ArrayBase.ARRAY_REGEX);
+			}
+			long regexNanos = System.nanoTime() - nanos;
+			nanos = System.nanoTime();
+			for (int i = 0; i < repeats; i++) {
+				SVGPointsParser.createReal2Array(points);
+			}
+			long scanNanos = System.nanoTime() - nanos;
+			LOG.debug(String.format("%6d points (%.1f MB): regex %.2f ms, scan %.2f ms",
+					npoints, points.length() / 1.0e6, regexNanos / 1.0e6 / repeats, scanNanos / 1.0e6 / repeats));
+		}
+	}
+
+	@Test
+	public void testNumericAttributes() {
+		List<SVGLine> lines = new ArrayList<SVGLine>();
+		for (int i = 0; i < 10000; i++) {
+			lines.add(new SVGLine(new Real2(i / 3.0, i / 7.0), new Real2(i / 11.0, i / 13.0)));
+		}
+		long millis = System.currentTimeMillis();
+		double sum = 0.0;
+		for (int repeat = 0; repeat < 20; repeat++) {
+			for (SVGLine line : lines) {
+				sum += line.getXY(0).getX() + line.getXY(1).getY();
+			}
+		}
+		LOG.debug("200000 line reads: "+(System.currentTimeMillis() - millis)+" ms ("+sum+")");
+	}
+
+	@Test
+	public void testWriter() throws Exception {
+		File[] files = {
+			new File(Fixtures.PATHS_DIR, "scatterplots-1471-2148-11-322-page7.svg"),
+			new File(Fixtures.SVG_DIR, "svgimages/multiple-image-page6.svg"),
+		};
+		for (File file : files) {
+			SVGElement svg = SVGElement.readAndCreateSVG(file);
+			int repeats = 5;
+			long nanos = System.nanoTime();
+			long chars = 0;
+			for (int i = 0; i < repeats; i++) {
+				SVGWriter writer = new SVGWriter(new ByteArrayOutputStream());
+				writer.write(svg);
+				writer.flush();
+				chars += writer.getCharCount();
+			}
+			long writerNanos = System.nanoTime() - nanos;
+			nanos = System.nanoTime();
+			for (int i = 0; i < repeats; i++) {
+				new Serializer(new ByteArrayOutputStream(), "UTF-8").write(new nu.xom.Document((Element) svg.copy()));
+			}
+			long serializerNanos = System.nanoTime() - nanos;
+			LOG.debug(String.format("%s (%.1f MB): SVGWriter %.1f ms, Serializer %.1f ms",
+					file.getName(), chars / 1.0e6 / repeats, writerNanos / 1.0e6 / repeats, serializerNanos / 1.0e6 / repeats));
+		}
+	}
+
+	@Test
+	public void testStreamWriter() {
+		final long[] bytes = new long[1];
+		OutputStream counter = new OutputStream() {
+			@Override
+			public void write(int b) {
+				bytes[0]++;
+			}
+			@Override
+			public void write(byte[] b, int off, int len) {
+				bytes[0] += len;
+			}
+		};
+		int nboxes = 500000;
+		long millis = System.currentTimeMillis();
+		SVGStreamWriter writer = new SVGStreamWriter(counter);
+		writer.startSVG(1000.0, 1000.0);
+		writer.setStyle("red", "none", 0.4, 1.0);
+		for (int page = 0; page < 10; page++) {
+			writer.startGroup("page" + page, null);
+			for (int i = 0; i < nboxes / 10; i++) {
+				double x = (i * 7) % 1000 + 0.123456;
+				double y = (i * 13) % 1000 + 0.654321;
+				writer.rect(new Real2Range(new RealRange(x, x + 5.5), new RealRange(y, y + 3.25)));
+			}
+			writer.end();
+		}
+		writer.close();
+		LOG.debug(nboxes+" boxes streamed: "+bytes[0] / 1000000+" MB in "+(System.currentTimeMillis() - millis)+" ms");
+	}
+
+	/** peak heap of streaming decode against regex and full byte[] decode.
+	 */
+	@Test
+	public void testImageBase64Heap() {
+		BufferedImage image = SVGImageTest.createNoiseImage(1500, 1500);
+		final String src = "data:image/png;base64,"+SVGImage.convertBufferedImageToBase64(image, SVGImage.IMAGE_PNG);
+		image = null;
+		long streamPeak = measurePeakHeap(new Runnable() {
+			public void run() {
+				SVGImage.readSrcDataToBufferedImage(src);
+			}
+		});
+		long copyPeak = measurePeakHeap(new Runnable() {
+			public void run() {
+				Matcher matcher = Pattern.compile("data:(image/.*);base64,(.*)").matcher(src);
+				matcher.matches();
+				byte[] bytes = Base64.decode(matcher.group(2));
+				try {
+					ImageIO.read(new ByteArrayInputStream(bytes));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		LOG.debug("base64 chars: "+src.length()+"; peak heap streaming: "+(streamPeak >> 20)+" MB; copying: "+(copyPeak >> 20)+" MB");
+	}
+
+	@Test
+	public void testNumberScanner() {
+		int n = 200000;
+		String[] labels = new String[n];
+		for (int i = 0; i < n; i++) {
+			labels[i] = (i % 3 == 0) ? String.valueOf(i) : (i % 3 == 1) ? String.valueOf(i * 0.25) : "x"+i;
+		}
+		NumberScanner scanner = new NumberScanner();
+		long millis = System.currentTimeMillis();
+		int scanned = 0;
+		for (String label : labels) {
+			if (scanner.scan(label) != NumberType.NONE) {
+				scanned++;
+			}
+		}
+		long scanMillis = System.currentTimeMillis() - millis;
+		millis = System.currentTimeMillis();
+		for (String label : labels) {
+			try {
+				Integer.valueOf(label);
+			} catch (NumberFormatException e) {
+				try {
+					Double.valueOf(label);
+				} catch (NumberFormatException e1) {
+				}
+			}
+		}
+		LOG.debug("scanner: "+scanMillis+" ms; exception parsing: "+(System.currentTimeMillis() - millis)+" ms for "+n+" labels ("+scanned+" numbers)");
+	}
+
+	private static long measurePeakHeap(Runnable runnable) {
+		final Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		final long base = runtime.totalMemory() - runtime.freeMemory();
+		final AtomicLong peak = new AtomicLong();
+		final AtomicBoolean done = new AtomicBoolean();
+		Thread sampler = new Thread() {
+			public void run() {
+				while (!done.get()) {
+					peak.set(Math.max(peak.get(), runtime.totalMemory() - runtime.freeMemory() - base));
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		sampler.setDaemon(true);
+		sampler.start();
+		try {
+			runnable.run();
+		} finally {
+			done.set(true);
+			try {
+				sampler.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return peak.get();
+	}
+}
@@ -16,6 +16,7 @@
 
 package org.xmlcml.graphics.svg;
 
+import java.awt.Graphics2D;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,6 +31,8 @@ import org.xmlcml.euclid.RealRange;
 import org.xmlcml.euclid.RealRange.Direction;
 import org.xmlcml.euclid.RealRangeArray;
 import org.xmlcml.euclid.Transform2;
+import org.xmlcml.euclid.Vector2;
+import org.xmlcml.graphics.svg.image.HiddenGraphics;
 import org.xmlcml.testutil.TestUtils;
 import org.xmlcml.xml.XMLConstants;
 
@@ -197,4 +200,51 @@ public class SVGElementTest {
 		Assert.assertEquals(2,  rotatedElements.size());
 		
 	}
+
+	@Test
+	public void testDrawElementDoesNotCullOnStaleExtents() {
+		SVGSVG svg = new SVGSVG();
+		svg.appendChild(new SVGCircle(new Real2(50., 50.), 20.));
+		SVGG offPage = new SVGG();
+		offPage.setTransform(new Transform2(new Vector2(1000., 1000.)));
+		for (int i = 0; i < 10; i++) {
+			offPage.appendChild(new SVGCircle(new Real2(i * 10., 10.), 5.));
+		}
+		svg.appendChild(offPage);
+		Graphics2D g = new HiddenGraphics().createGraphics();
+		SVGElement.resetDrawCounts();
+		svg.draw(g);
+		Assert.assertEquals("culled", 1, SVGElement.getCulledCount());
+		// move group onto the page; extents from the last draw() are now wrong
+		offPage.removeAttribute(offPage.getAttribute("transform"));
+		SVGElement.resetDrawCounts();
+		svg.drawElement(g);
+		Assert.assertEquals("culled", 0, SVGElement.getCulledCount());
+		Assert.assertEquals("drawn", 11, SVGElement.getDrawnCount());
+	}
+
+	/** cached cumulative transform follows edits to ancestors.
+	 */
+	@Test
+	public void testCumulativeTransformFollowsEdits() {
+		SVGSVG svg = new SVGSVG();
+		SVGG g = new SVGG();
+		g.setTransform(new Transform2(new Vector2(10., 0.)));
+		svg.appendChild(g);
+		SVGG g2 = new SVGG();
+		g.appendChild(g2);
+		SVGLine line = new SVGLine(new Real2(0., 0.), new Real2(1., 1.));
+		g2.appendChild(line);
+		Assert.assertTrue(new Real2(10., 0.).isEqualTo(SVGUtil.getTransformedXY(line, new Real2(0., 0.)), 0.001));
+		// edit bypassing setTransform()
+		SVGG other = new SVGG();
+		other.setTransform(new Transform2(new Vector2(20., 5.)));
+		g.getAttribute("transform").setValue(other.getAttributeValue("transform"));
+		Assert.assertTrue(new Real2(20., 5.).isEqualTo(SVGUtil.getTransformedXY(line, new Real2(0., 0.)), 0.001));
+		g2.setTransform(new Transform2(new Vector2(1., 1.)));
+		Assert.assertTrue(new Real2(21., 6.).isEqualTo(SVGUtil.getTransformedXY(line, new Real2(0., 0.)), 0.001));
+		line.detach();
+		svg.appendChild(line);
+		Assert.assertTrue(new Real2(0., 0.).isEqualTo(SVGUtil.getTransformedXY(line, new Real2(0., 0.)), 0.001));
+	}
 }
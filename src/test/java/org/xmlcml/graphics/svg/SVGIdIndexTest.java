@@ -0,0 +1,165 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.xml.XMLUtil;
+
+public class SVGIdIndexTest {
+	private static final Logger LOG = Logger.getLogger(SVGIdIndexTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String SVG =
+			"<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink'>"
+			+ "<defs>"
+			+ "<symbol id='glyph1'><path d='M0 0 L1 1'/></symbol>"
+			+ "<marker id='arrow'><path d='M0 0 L1 1'/></marker>"
+			+ "<clipPath id='clip1'><rect x='0' y='0' width='10' height='10'/></clipPath>"
+			+ "</defs>"
+			+ "<g id='g1'>"
+			+ "<use id='use1' xlink:href='#glyph1'/>"
+			+ "<line id='line1' x1='0' y1='0' x2='10' y2='10' marker-end='url(#arrow)'/>"
+			+ "<line id='line2' x1='0' y1='0' x2='10' y2='10' style='stroke:black;marker-start:url(&quot;#arrow&quot;)'/>"
+			+ "<rect id='rect1' x='0' y='0' width='10' height='10' style='clip-path:url(#clip1)'/>"
+			+ "</g>"
+			+ "</svg>";
+
+	private static SVGElement createSVG() {
+		return SVGElement.readAndCreateSVG(XMLUtil.parseXML(SVG));
+	}
+
+	@Test
+	public void testResolve() {
+		SVGElement svg = createSVG();
+		SVGUse use = (SVGUse) svg.getElementById("use1");
+		Assert.assertEquals("#glyph1", use.getHref());
+		Assert.assertEquals("glyph1", use.getSymbol().getId());
+		SVGElement line1 = svg.getElementById("line1");
+		Assert.assertTrue(line1.getReferencedMarker(SVGMarker.MARKER_END) instanceof SVGMarker);
+		Assert.assertNull(line1.getReferencedMarker(SVGMarker.MARKER_START));
+		Assert.assertEquals("arrow", svg.getElementById("line2").getReferencedMarker(SVGMarker.MARKER_START).getId());
+		Assert.assertEquals("clip1", SVGClipPath.getReferencedClipPath(svg.getElementById("rect1")).getId());
+		Assert.assertNull(svg.resolveReference("http://example.org/#glyph1"));
+		Assert.assertEquals("glyph1", SVGIdIndex.getReferencedId(" url( '#glyph1' ) "));
+		// same index from any element of the tree
+		Assert.assertSame(svg.getOrCreateIdIndex(), line1.getOrCreateIdIndex());
+	}
+
+	@Test
+	public void testMaintained() {
+		SVGElement svg = createSVG();
+		SVGIdIndex index = svg.getOrCreateIdIndex();
+		SVGElement g = svg.getElementById("g1");
+		SVGG newG = new SVGG();
+		newG.setId("g2");
+		SVGLine line = new SVGLine(new Real2(0.0, 0.0), new Real2(1.0, 1.0));
+		line.setId("line3");
+		newG.appendChild(line);
+		g.appendChild(newG);
+		Assert.assertSame(line, svg.getElementById("line3"));
+		line.setId("line4");
+		Assert.assertNull(svg.getElementById("line3"));
+		Assert.assertSame(line, svg.getElementById("line4"));
+		newG.detach();
+		Assert.assertNull(svg.getElementById("line4"));
+		Assert.assertNull(svg.getElementById("g2"));
+		svg.getElementById("line1").detach();
+		Assert.assertNull(svg.getElementById("line1"));
+		Assert.assertEquals(0, index.getRebuildCount());
+		// detached subtree has its own index
+		Assert.assertSame(line, newG.getElementById("line4"));
+	}
+
+	@Test
+	public void testDuplicates() {
+		SVGElement svg = createSVG();
+		SVGElement g = svg.getElementById("g1");
+		SVGRect rect = new SVGRect(0.0, 0.0, 1.0, 1.0);
+		rect.setId("rect1");
+		g.appendChild(rect);
+		SVGElement rect1 = svg.getElementById("rect1");
+		Assert.assertNotSame(rect, rect1);
+		rect1.detach();
+		Assert.assertSame(rect, svg.getElementById("rect1"));
+	}
+
+	@Test
+	public void testManyUses() {
+		SVGElement svg = createSVG();
+		SVGElement g = svg.getElementById("g1");
+		SVGSymbol symbol = (SVGSymbol) svg.getElementById("glyph1");
+		int n = 20000;
+		for (int i = 0; i < n; i++) {
+			SVGUse use = new SVGUse(new Real2(i, 0.0), symbol);
+			use.setId("u"+i);
+			g.appendChild(use);
+		}
+		int resolved = 0;
+		for (int i = 0; i < n; i++) {
+			SVGUse use = (SVGUse) svg.getElementById("u"+i);
+			if (use.getSymbol() == symbol) {
+				resolved++;
+			}
+		}
+		Assert.assertEquals(n, resolved);
+		Assert.assertEquals(0, svg.getOrCreateIdIndex().getRebuildCount());
+	}
+
+	/** lookups that create and rebuild the index from several threads.
+	 */
+	@Test
+	public void testConcurrentLookups() throws InterruptedException {
+		final SVGElement svg = createSVG();
+		final SVGElement g = (SVGElement) svg.getChildElements().get(1);
+		final SVGSymbol symbol = (SVGSymbol) svg.getChildElements().get(0).getChildElements().get(0);
+		final int n = 2000;
+		for (int i = 0; i < n; i++) {
+			SVGUse use = new SVGUse(new Real2(i, 0.0), symbol);
+			use.setId("u"+i);
+			g.appendChild(use);
+		}
+		final int[] errors = new int[1];
+		final List<SVGIdIndex> indexes = new ArrayList<SVGIdIndex>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread() {
+				public void run() {
+					SVGIdIndex index = g.getOrCreateIdIndex();
+					synchronized (indexes) {
+						indexes.add(index);
+					}
+					for (int repeat = 0; repeat < 5; repeat++) {
+						if (repeat == 2) {
+							index.rebuild();
+						}
+						for (int i = 0; i < n; i++) {
+							SVGUse use = (SVGUse) svg.getElementById("u"+i);
+							if (use == null || !use.getId().equals("u"+i) || use.getSymbol() != symbol) {
+								synchronized (errors) {
+									errors[0]++;
+								}
+							}
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(0, errors[0]);
+		for (SVGIdIndex index : indexes) {
+			Assert.assertSame(svg.getOrCreateIdIndex(), index);
+		}
+	}
+}
@@ -4,16 +4,19 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Random;
 
 import javax.imageio.ImageIO;
 
 import org.apache.log4j.Logger;
+import org.apache.xerces.impl.dv.util.Base64;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -434,6 +437,86 @@ public class SVGImageTest {
 		return bufferedImage;
 	}
 	
+	@Test
+	public void testStreamingBase64() throws IOException {
+		BufferedImage image = createNoiseImage(40, 30);
+		String base64 = SVGImage.convertBufferedImageToBase64(image, SVGImage.IMAGE_PNG);
+		// same encoding as previous ByteArrayOutputStream route
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ImageIO.write(image, SVGImage.PNG, baos);
+		Assert.assertEquals(Base64.encode(baos.toByteArray()), base64);
+		String src = "data:image/png;base64,"+base64;
+		Assert.assertEquals(SVGImage.IMAGE_PNG, SVGImage.getMimeTypeFromSrcValue(src));
+		Assert.assertEquals(-1, SVGImage.getBase64Start("myimage.png"));
+		assertSameImage(image, SVGImage.readSrcDataToBufferedImage(src));
+		// line-wrapped data
+		StringBuilder wrapped = new StringBuilder("data:image/png;base64,");
+		for (int i = 0; i < base64.length(); i += 76) {
+			wrapped.append(base64, i, Math.min(base64.length(), i + 76)).append("\n");
+		}
+		assertSameImage(image, SVGImage.readSrcDataToBufferedImage(wrapped.toString()));
+		SVGImage svgImage = new SVGImage();
+		svgImage.readImageDataIntoSrcValue(image, SVGImage.IMAGE_PNG);
+		Assert.assertEquals(src, svgImage.getImageValue());
+	}
+
+	@Test
+	public void testCachedBufferedImage() {
+		BufferedImage image = createNoiseImage(40, 30);
+		SVGImage svgImage = new SVGImage();
+		svgImage.readImageDataIntoSrcValue(image, SVGImage.IMAGE_PNG);
+		// header only
+		Assert.assertEquals(40, (int) svgImage.getImagePixelWidth());
+		Assert.assertEquals(30, (int) svgImage.getImagePixelHeight());
+		Assert.assertEquals(SVGImage.IMAGE_PNG, svgImage.getImageMimeType());
+		BufferedImage decoded = svgImage.getBufferedImage();
+		Assert.assertSame(decoded, svgImage.getBufferedImage());
+		// caller-owned copy
+		BufferedImage copy = svgImage.createBufferedImage();
+		Assert.assertNotSame(decoded, copy);
+		assertSameImage(image, copy);
+		// new href invalidates
+		svgImage.readImageDataIntoSrcValue(createNoiseImage(20, 10), SVGImage.IMAGE_PNG);
+		Assert.assertEquals(20, (int) svgImage.getImagePixelWidth());
+		BufferedImage decoded1 = svgImage.getBufferedImage();
+		Assert.assertNotSame(decoded, decoded1);
+		Assert.assertEquals(10, decoded1.getHeight());
+		svgImage.setImageData(null);
+		Assert.assertNull(svgImage.getBufferedImage());
+		Assert.assertNull(svgImage.getImagePixelWidth());
+	}
+
+	/** image whose base64 spans many decode buffers.
+	 */
+	@Test
+	public void testLargerImageBase64RoundTrip() {
+		BufferedImage image = createNoiseImage(300, 200);
+		String src = "data:image/png;base64,"+SVGImage.convertBufferedImageToBase64(image, SVGImage.IMAGE_PNG);
+		assertSameImage(image, SVGImage.readSrcDataToBufferedImage(src));
+	}
+
+	static BufferedImage createNoiseImage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(42);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, random.nextInt(0x1000000));
+			}
+		}
+		return image;
+	}
+
+	private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+		Assert.assertNotNull(actual);
+		Assert.assertEquals(expected.getWidth(), actual.getWidth());
+		Assert.assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				Assert.assertEquals((expected.getRGB(x, y) & 0xffffff), (actual.getRGB(x, y) & 0xffffff));
+			}
+		}
+	}
+
 	private BufferedImage makeGrayscale(int[] iArray, WritableRaster raster) {
 		int cols = raster.getWidth();
 		int rows = raster.getHeight();
@@ -0,0 +1,105 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.ArrayBase;
+import org.xmlcml.euclid.Real2Array;
+
+import nu.xom.Attribute;
+
+public class SVGPointsParserTest {
+	private static final Logger LOG = Logger.getLogger(SVGPointsParserTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	@Test
+	public void testSeparators() {
+		double[] expected = {10.0, -20.5, 0.5, 0.25, 300.0, 4.0E-3};
+		String[] forms = {
+			"10 -20.5 0.5 0.25 300 4e-3",
+			"10,-20.5 0.5,0.25 300,4E-3",
+			" 10 , -20.5\t.5,\n.25 3e2 , 0.004 ",
+			"10-20.5.5.25+300.0 .004",
+			"10.0,-20.50 +0.5,2.5e-1 300,4.0e-3",
+		};
+		for (String form : forms) {
+			Assert.assertArrayEquals(form, expected, SVGPointsParser.parseCoordinates(form), 0.0);
+		}
+		Assert.assertEquals(0, SVGPointsParser.parseCoordinates("  ").length);
+		Assert.assertNull(SVGPointsParser.parseCoordinates(null));
+	}
+
+	@Test
+	public void testErrors() {
+		String[] bad = {"1 2 3", "1,,2", ",1 2", "1 2,", "1 x", "1e 2", "- 1"};
+		for (String points : bad) {
+			try {
+				SVGPointsParser.parseCoordinates(points);
+				Assert.fail("should fail: "+points);
+			} catch (RuntimeException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testSameAsParseDouble() {
+		Random random = new Random(47);
+		String[] strings = new String[20000];
+		for (int i = 0; i < strings.length; i++) {
+			double d = (random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(12) - 4);
+			switch (i % 4) {
+			case 0: strings[i] = String.valueOf(d); break;
+			case 1: strings[i] = String.format(Locale.ROOT, "%.3f", d); break;
+			case 2: strings[i] = String.format(Locale.ROOT, "%.17e", d); break;
+			default: strings[i] = String.format(Locale.ROOT, "%.25f", d); break;
+			}
+		}
+		StringBuilder sb = new StringBuilder();
+		for (String s : strings) {
+			sb.append(s).append(' ');
+		}
+		double[] parsed = SVGPointsParser.parseCoordinates(sb.toString());
+		for (int i = 0; i < strings.length; i++) {
+			Assert.assertEquals(strings[i], Double.doubleToLongBits(Double.parseDouble(strings[i])), Double.doubleToLongBits(parsed[i]));
+		}
+	}
+
+	@Test
+	public void testPolyline() {
+		SVGPolyline polyline = new SVGPolyline();
+		polyline.addAttribute(new Attribute("points", "0,0 10,5 20,0"));
+		Real2Array array = polyline.getReal2Array();
+		Assert.assertEquals(3, array.size());
+		Assert.assertEquals(5.0, array.get(1).getY(), 0.0);
+	}
+
+	@Test
+	public void testSameAsRegex() {
+		String points = createPoints(10000);
+		Real2Array expected = Real2Array.createFromPairs(points, ArrayBase.ARRAY_REGEX);
+		Real2Array array = SVGPointsParser.createReal2Array(points);
+		Assert.assertEquals(expected.size(), array.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getX(), array.get(i).getX(), 0.0);
+			Assert.assertEquals(expected.get(i).getY(), array.get(i).getY(), 0.0);
+		}
+	}
+
+	// digitised line plot
+	static String createPoints(int npoints) {
+		StringBuilder sb = new StringBuilder();
+		Random random = new Random(11);
+		for (int i = 0; i < npoints; i++) {
+			sb.append(String.format(Locale.ROOT, "%.3f", 50.0 + i * 0.05)).append(' ');
+			sb.append(String.format(Locale.ROOT, "%.3f", 400.0 - 100.0 * random.nextDouble())).append(' ');
+		}
+		return sb.toString();
+	}
+}
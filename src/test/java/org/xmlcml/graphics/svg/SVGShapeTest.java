@@ -1,5 +1,6 @@
 package org.xmlcml.graphics.svg;
 
+import java.awt.Shape;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,6 +12,10 @@ import org.xmlcml.euclid.IntArray;
 import org.xmlcml.euclid.Real2;
 import org.xmlcml.euclid.Real2Array;
 import org.xmlcml.euclid.RealArray;
+import org.xmlcml.euclid.Transform2;
+import org.xmlcml.euclid.Vector2;
+
+import nu.xom.Attribute;
 
 
 
@@ -196,4 +201,129 @@ private static final Logger LOG = Logger.getLogger(SVGShapeTest.class);
 
 	
 
+	@Test
+	public void testCachedLineShape() {
+		SVGLine line = new SVGLine(new Real2(0.0, 0.0), new Real2(10.0, 20.0));
+		Shape shape = line.getCachedShape();
+		Assert.assertSame("reused", shape, line.getCachedShape());
+		Assert.assertEquals(20.0, shape.getBounds2D().getHeight(), epsilon);
+		line.setXY(new Real2(10.0, 30.0), 1);
+		Shape shape1 = line.getCachedShape();
+		Assert.assertNotSame("invalidated", shape, shape1);
+		Assert.assertEquals(30.0, shape1.getBounds2D().getHeight(), epsilon);
+	}
+
+	@Test
+	public void testCachedPathShape() {
+		SVGPath path = new SVGPath("M 0 0 L 10 0 L 10 10 Z");
+		Shape shape = path.getCachedShape();
+		Assert.assertSame("reused", shape, path.getCachedShape());
+		Assert.assertEquals(10.0, shape.getBounds2D().getWidth(), epsilon);
+		path.setDString("M 0 0 L 40 0 L 40 10 Z");
+		Assert.assertEquals(40.0, path.getCachedShape().getBounds2D().getWidth(), epsilon);
+	}
+
+	@Test
+	public void testCachedPolylineShape() {
+		SVGPolyline polyline = new SVGPolyline(new Real2Array(new RealArray(new double[]{0.0, 10.0, 20.0}), new RealArray(new double[]{0.0, 5.0, 0.0})));
+		Shape shape = polyline.getCachedShape();
+		Assert.assertSame("reused", shape, polyline.getCachedShape());
+		Assert.assertEquals(20.0, shape.getBounds2D().getWidth(), epsilon);
+		// alters real2Array but not the points attribute
+		polyline.add(new Real2(50.0, 0.0));
+		Assert.assertEquals(50.0, polyline.getCachedShape().getBounds2D().getWidth(), epsilon);
+		// closing is part of the cached entry, not state left by the last draw
+		Shape closed = polyline.getCachedShape(true);
+		Assert.assertNotSame(closed, polyline.getCachedShape(false));
+		Assert.assertSame(polyline.getCachedShape(false), polyline.getCachedShape());
+	}
+
+	/** transform applied at draw time must not alter the cached shape.
+	 */
+	@Test
+	public void testTransformedShape() {
+		SVGG g = new SVGG();
+		g.setTransform(new Transform2(new Vector2(100.0, 0.0)));
+		SVGLine line = new SVGLine(new Real2(0.0, 0.0), new Real2(10.0, 0.0));
+		g.appendChild(line);
+		line.getCumulativeTransform();
+		Shape transformed = line.createTransformedShape();
+		Assert.assertEquals(100.0, transformed.getBounds2D().getX(), epsilon);
+		Assert.assertEquals(0.0, line.getCachedShape().getBounds2D().getX(), epsilon);
+	}
+
+	@Test
+	public void testNumericAttributes() {
+		SVGLine line = new SVGLine(new Real2(1.5, 2.0), new Real2(3.0, 4.0));
+		Assert.assertEquals("1.5", line.getAttributeValue("x1"));
+		Assert.assertEquals(3.0, line.getXY(1).getX(), epsilon);
+		// attribute edits bypassing the setters are seen
+		line.getAttribute("x2").setValue("7");
+		Assert.assertEquals(7.0, line.getXY(1).getX(), epsilon);
+		line.addAttribute(new Attribute("y2", "8.5"));
+		Assert.assertEquals(8.5, line.getXY(1).getY(), epsilon);
+		SVGLine copy = new SVGLine(line);
+		Assert.assertEquals(7.0, copy.getXY(1).getX(), epsilon);
+
+		SVGRect rect = new SVGRect(1.0, 2.0, 3.0, 4.0);
+		rect.setWidth(5.0);
+		Assert.assertEquals(5.0, rect.getWidth(), epsilon);
+		rect.addAttribute(new Attribute("width", "6px"));
+		Assert.assertEquals(6.0, rect.getWidth(), epsilon);
+		rect.getAttribute("height").detach();
+		Assert.assertNull(rect.getHeight());
+
+		SVGCircle circle = new SVGCircle(new Real2(1.0, 2.0), 3.0);
+		Assert.assertEquals(3.0, circle.getRad(), epsilon);
+		circle.getAttribute("cx").setValue("10");
+		Assert.assertEquals(10.0, circle.getCX(), epsilon);
+	}
+
+	@Test
+	public void testPolylinePointsReparsed() {
+		SVGPolyline polyline = new SVGPolyline(new Real2Array(new RealArray(new double[]{0.0, 10.0}), new RealArray(new double[]{0.0, 5.0})));
+		Real2Array array = polyline.getReal2Array();
+		Assert.assertSame(array, polyline.getReal2Array());
+		polyline.addAttribute(new Attribute("points", "0.0 0.0 30.0 5.0 40.0 0.0"));
+		Assert.assertEquals(3, polyline.getReal2Array().size());
+	}
+
+	@Test
+	public void testConcurrentNumericReads() throws InterruptedException {
+		final List<SVGLine> lines = new ArrayList<SVGLine>();
+		for (int i = 0; i < 2000; i++) {
+			SVGLine line = new SVGLine(new Real2(i / 3.0, i / 7.0), new Real2(i / 11.0, i / 13.0));
+			// new attribute strings, so every reader starts by parsing
+			line.getAttribute("x1").setValue(String.valueOf(i / 3.0));
+			line.getAttribute("y2").setValue(String.valueOf(i / 13.0));
+			lines.add(line);
+		}
+		final int[] errors = new int[1];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread() {
+				public void run() {
+					for (int repeat = 0; repeat < 20; repeat++) {
+						for (int i = 0; i < lines.size(); i++) {
+							SVGLine line = lines.get(i);
+							if (line.getXY(0).getX() != i / 3.0 || line.getXY(0).getY() != i / 7.0 ||
+									line.getXY(1).getX() != i / 11.0 || line.getXY(1).getY() != i / 13.0) {
+								synchronized (errors) {
+									errors[0]++;
+								}
+							}
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(0, errors[0]);
+	}
+
 }
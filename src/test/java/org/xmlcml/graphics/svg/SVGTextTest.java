@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.xmlcml.euclid.Angle;
 import org.xmlcml.euclid.Real2;
 import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.graphics.svg.text.TextOrientationIndex;
 import org.xmlcml.testutil.TestUtils;
 import org.xmlcml.xml.XMLUtil;
 
@@ -491,4 +492,60 @@ public class SVGTextTest {
 		XMLUtil.outputQuietly(svg, new File(textDir, "text3.svg"), 1);
 	}
 	
+
+	@Test
+	public void testCachedOrientation() {
+		SVGText text = new SVGText(new Real2(100., 200.), "label");
+		Assert.assertEquals(SVGText.Orientation.ANGLE_0, text.getOrientation());
+		Assert.assertEquals(0.0, text.getRotationRadians(), 0.0001);
+		text.rotateText(new Angle(Math.PI / 2));
+		// cache is invalidated by the new transform
+		double radians = text.getTransform().getAngleOfRotation().getRadian();
+		Assert.assertEquals(radians, text.getRotationRadians(), 0.0001);
+		Assert.assertEquals(Math.PI / 2, Math.abs(radians), 0.0001);
+		SVGText.Orientation orientation = text.getOrientation();
+		Assert.assertTrue(orientation.toString(), 
+				SVGText.Orientation.ANGLE_90.equals(orientation) || SVGText.Orientation.ANGLE_270.equals(orientation));
+		text.rotateText(new Angle(Math.PI));
+		Assert.assertEquals(SVGText.Orientation.ANGLE_180, text.getOrientation());
+		text.rotateText(new Angle(0.3));
+		Assert.assertEquals(SVGText.Orientation.OTHER, text.getOrientation());
+	}
+
+	@Test
+	public void testOrientationIndex() {
+		SVGG g = new SVGG();
+		g.appendChild(new SVGText(new Real2(10., 20.), "x"));
+		SVGText rotated = new SVGText(new Real2(10., 40.), "y");
+		rotated.rotateText(new Angle(Math.PI / 2));
+		g.appendChild(rotated);
+		g.appendChild(new SVGText(new Real2(30., 20.), "z"));
+		TextOrientationIndex index = TextOrientationIndex.createIndex(g);
+		Assert.assertEquals(3, index.size());
+		Assert.assertEquals(2, index.getHorizontalTexts().size());
+		Assert.assertEquals(1, index.getRotatedTexts().size());
+		Angle angle = rotated.getAngleOfRotation();
+		List<SVGText> found = index.getTextsWithAngle(angle, 0.001);
+		Assert.assertEquals(1, found.size());
+		Assert.assertEquals("y", found.get(0).getText());
+		Assert.assertEquals(1, SVGText.extractSelfAndDescendantTextsWithSpecificAngle(g, angle, 0.001).size());
+	}
+
+	@Test
+	public void testOrientationIndexNearPartitionEdge() {
+		SVGG g = new SVGG();
+		g.appendChild(new SVGText(new Real2(10., 20.), "x"));
+		SVGText slightlyRotated = new SVGText(new Real2(10., 40.), "y");
+		slightlyRotated.rotateText(new Angle(Math.toRadians(1.3)));
+		g.appendChild(slightlyRotated);
+		Assert.assertEquals(SVGText.Orientation.OTHER, slightlyRotated.getOrientation());
+		TextOrientationIndex index = TextOrientationIndex.createIndex(g);
+		// query is in the ANGLE_0 partition but the OTHER text is within eps of it
+		double radians = slightlyRotated.getAngleOfRotation().getRadian();
+		Angle query = new Angle(radians * 0.9 / 1.3);
+		List<SVGText> found = index.getTextsWithAngle(query, Math.toRadians(0.5));
+		Assert.assertEquals(1, found.size());
+		Assert.assertEquals("y", found.get(0).getText());
+		Assert.assertEquals(found.size(), SVGText.extractSelfAndDescendantTextsWithSpecificAngle(g, query, Math.toRadians(0.5)).size());
+	}
 }
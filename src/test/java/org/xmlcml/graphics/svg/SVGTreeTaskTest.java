@@ -0,0 +1,105 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Transform2;
+
+public class SVGTreeTaskTest {
+	private static final Logger LOG = Logger.getLogger(SVGTreeTaskTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	// pages of groups large enough to be forked
+	private static SVGG createDocument(int pages, int groups) {
+		SVGG document = new SVGG();
+		for (int p = 0; p < pages; p++) {
+			SVGG page = new SVGG();
+			page.setTransform(new Transform2(new double[]{1.0, 0.0, 0.123456789, 0.0, 1.0, p * 1000.987654321, 0.0, 0.0, 1.0}));
+			for (int i = 0; i < groups; i++) {
+				SVGG g = new SVGG();
+				g.setTransform(new Transform2(new double[]{1.0, 0.0, i / 7.0, 0.0, 1.0, i / 3.0, 0.0, 0.0, 1.0}));
+				g.appendChild(new SVGLine(new Real2(i / 3.0, 0.0), new Real2(i / 7.0, 1.0 / 3.0)));
+				g.appendChild(new SVGText(new Real2(i / 9.0, 2.0 / 3.0), "t"+i));
+				page.appendChild(g);
+			}
+			document.appendChild(page);
+		}
+		return document;
+	}
+
+	@Test
+	public void testVisitor() {
+		SVGG document = createDocument(4, 600);
+		final AtomicInteger count = new AtomicInteger();
+		final List<SVGElement> visited = Collections.synchronizedList(new ArrayList<SVGElement>());
+		SVGTreeTask.walk(document, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				count.incrementAndGet();
+				visited.add(element);
+				return true;
+			}
+		});
+		Assert.assertEquals(1 + 4 * (1 + 600 * 3), count.get());
+		Assert.assertEquals(SVGElement.generateElementList(document, "descendant-or-self::svg:*").size(), visited.size());
+		// prune groups
+		count.set(0);
+		SVGTreeTask.walk(document, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				count.incrementAndGet();
+				return element.getParent() == null;
+			}
+		}, 10, true);
+		Assert.assertEquals(5, count.get());
+	}
+
+	@Test
+	public void testFormatSameAsSerial() {
+		SVGG parallel = createDocument(4, 600);
+		SVGG serial = createDocument(4, 600);
+		parallel.format(2);
+		SVGTreeTask.walk(serial, new SVGElementVisitor() {
+			public boolean visit(SVGElement element) {
+				if (element instanceof SVGG) {
+					element.formatTransform(4);
+					return true;
+				}
+				element.format(2);
+				return false;
+			}
+		}, Integer.MAX_VALUE, true);
+		Assert.assertEquals(serial.toXML(), parallel.toXML());
+		SVGG page = (SVGG) parallel.getChildElements().get(1);
+		Assert.assertEquals(0.1235, page.getTransform().getMatrixAsArray()[2], 1.0e-10);
+	}
+
+	@Test
+	public void testCumulativeTransform() {
+		SVGG document = createDocument(2, 1200);
+		document.setCumulativeTransformRecursively();
+		SVGG page = (SVGG) document.getChildElements().get(1);
+		SVGLine line = (SVGLine) page.getChildElements().get(3).getChildElements().get(0);
+		double[] matrix = line.cumulativeTransform.getMatrixAsArray();
+		Assert.assertEquals(0.123456789 + 3 / 7.0, matrix[2], 1.0e-9);
+		Assert.assertEquals(1000.987654321 + 1.0, matrix[5], 1.0e-9);
+		document.clearCumulativeTransformRecursively();
+		Assert.assertNull(line.cumulativeTransform);
+	}
+
+	@Test
+	public void testFormatList() {
+		SVGG document = createDocument(2, 300);
+		List<SVGLine> lines = SVGLine.extractSelfAndDescendantLines(document);
+		Assert.assertEquals(600, lines.size());
+		SVGElement.format(lines, 1);
+		Assert.assertEquals(0.1, lines.get(1).getXY(1).getX(), 1.0e-10);
+	}
+}
@@ -0,0 +1,203 @@
+package org.xmlcml.graphics.svg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nu.xom.Element;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.xml.XMLUtil;
+
+public class SVGTypeIndexTest {
+	private static final Logger LOG = Logger.getLogger(SVGTypeIndexTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String SVG =
+			"<svg xmlns='http://www.w3.org/2000/svg'>"
+			+ "<defs><clipPath id='c1'><path d='M0 0 L1 1'/></clipPath></defs>"
+			+ "<g id='g1'><path id='p1' d='M0 0 L1 1'/><text id='t1' x='0' y='0'>a</text>"
+			+ "<g id='g2'><path id='p2' d='M0 0 L1 1'/><text id='t2' x='0' y='0'>b</text></g>"
+			+ "</g>"
+			+ "<g id='g3'><path id='p3' d='M0 0 L1 1'/></g>"
+			+ "</svg>";
+
+	private static SVGElement createSVG() {
+		return SVGElement.readAndCreateSVG(XMLUtil.parseXML(SVG));
+	}
+
+	private static void assertSameAsXPath(SVGElement element, String xpath) {
+		List<Element> expected = XMLUtil.getQueryElements(element, xpath, SVGConstants.SVG_XPATH);
+		List<SVGElement> found = SVGUtil.getQuerySVGElements(element, xpath);
+		Assert.assertEquals(xpath, expected.size(), found.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertSame(expected.get(i), found.get(i));
+		}
+	}
+
+	@Test
+	public void testQueries() {
+		SVGElement svg = createSVG();
+		assertSameAsXPath(svg, SVGPath.ALL_PATH_XPATH);
+		assertSameAsXPath(svg, SVGText.ALL_TEXT_XPATH);
+		assertSameAsXPath(svg, SVGClipPath.ALL_SVG_PATH_XPATH);
+		assertSameAsXPath(svg.getElementById("g1"), SVGPath.ALL_PATH_XPATH);
+		assertSameAsXPath(svg.getElementById("g2"), SVGPath.ALL_PATH_XPATH);
+		assertSameAsXPath(svg.getElementById("p1"), SVGPath.ALL_PATH_XPATH);
+		Assert.assertEquals(4, SVGPath.extractSelfAndDescendantPaths(svg).size());
+		Assert.assertEquals("t2", SVGText.extractSelfAndDescendantTexts(svg.getElementById("g2")).get(0).getId());
+		Assert.assertEquals(1, SVGClipPath.extractClipPaths(svg).size());
+		Assert.assertEquals(3, svg.getOrCreateTypeIndex().getElements(SVGG.TAG).size());
+	}
+
+	@Test
+	public void testMaintained() {
+		SVGElement svg = createSVG();
+		SVGTypeIndex index = svg.getOrCreateTypeIndex();
+		SVGElement g3 = svg.getElementById("g3");
+		// appends at the end of the document are indexed incrementally
+		SVGG g4 = new SVGG();
+		g4.appendChild(new SVGPath("M0 0 L2 2"));
+		g3.appendChild(g4);
+		svg.appendChild(new SVGPath("M0 0 L3 3"));
+		assertSameAsXPath(svg, SVGPath.ALL_PATH_XPATH);
+		assertSameAsXPath(g3, SVGPath.ALL_PATH_XPATH);
+		svg.getElementById("p2").detach();
+		svg.getElementById("g1").detach();
+		assertSameAsXPath(svg, SVGPath.ALL_PATH_XPATH);
+		assertSameAsXPath(svg, SVGText.ALL_TEXT_XPATH);
+		Assert.assertEquals(0, index.getRebuildCount());
+		// insertion earlier in the document is numbered between its neighbours
+		g3.insertChild(new SVGPath("M0 0 L4 4"), 0);
+		assertSameAsXPath(svg, SVGPath.ALL_PATH_XPATH);
+		assertSameAsXPath(g3, SVGPath.ALL_PATH_XPATH);
+		assertSameAsXPath(g4, SVGPath.ALL_PATH_XPATH);
+		Assert.assertEquals(0, index.getRebuildCount());
+	}
+
+	/** inserts before the end alternating with queries; no rebuild until a gap is used up.
+	 */
+	@Test
+	public void testInsertsBetweenQueries() {
+		SVGG page = createPage(50);
+		SVGTypeIndex index = page.getOrCreateTypeIndex();
+		for (int i = 0; i < 200; i++) {
+			SVGG g = (SVGG) page.getChildElements().get((i * 7) % page.getChildElements().size());
+			SVGG inserted = new SVGG();
+			inserted.appendChild(new SVGText(new Real2(i, 3.0), "i"+i));
+			g.insertChild(inserted, i % 3);
+			Assert.assertEquals(50 + i + 1, index.getDescendants(page, SVGText.TAG).size());
+		}
+		assertSameAsXPath(page, SVGText.ALL_TEXT_XPATH);
+		for (int i = 0; i < page.getChildElements().size(); i++) {
+			assertSameAsXPath((SVGElement) page.getChildElements().get(i), SVGText.ALL_TEXT_XPATH);
+		}
+		Assert.assertEquals(0, index.getRebuildCount());
+		// always inserting at the same point halves the gap each time
+		SVGG first = (SVGG) page.getChildElements().get(0);
+		for (int i = 0; i < 40; i++) {
+			first.insertChild(new SVGText(new Real2(i, 4.0), "f"+i), 0);
+		}
+		assertSameAsXPath(page, SVGText.ALL_TEXT_XPATH);
+		assertSameAsXPath(first, SVGText.ALL_TEXT_XPATH);
+		Assert.assertTrue(index.getRebuildCount() > 0);
+	}
+
+	@Test
+	public void testConcurrentQueries() throws InterruptedException {
+		final SVGG page = createPage(500);
+		// inserts at one point use up the gap, so the first query rebuilds
+		page.getOrCreateTypeIndex();
+		for (int i = 0; i < 30; i++) {
+			page.insertChild(new SVGText(new Real2(i, 5.0), "s"+i), 0);
+		}
+		final int[] errors = new int[1];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread() {
+				public void run() {
+					for (int repeat = 0; repeat < 20; repeat++) {
+						if (repeat == 10) {
+							page.getOrCreateTypeIndex().rebuild();
+						}
+						if (SVGText.extractSelfAndDescendantTexts(page).size() != 530) {
+							synchronized (errors) {
+								errors[0]++;
+							}
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		Assert.assertEquals(0, errors[0]);
+	}
+
+	@Test
+	public void testDescendantsOfSmallSubtrees() {
+		SVGG page = new SVGG();
+		for (int i = 0; i < 20; i++) {
+			SVGG g = new SVGG();
+			g.appendChild(new SVGLine(new Real2(i, 0.0), new Real2(i, 1.0)));
+			g.appendChild(new SVGLine(new Real2(i, 1.0), new Real2(i, 2.0)));
+			page.appendChild(g);
+		}
+		SVGTypeIndex index = page.getOrCreateTypeIndex();
+		// removals and appends keep each tag list in document order
+		page.getChildElements().get(3).detach();
+		((SVGElement) page.getChildElements().get(5)).getChildElements().get(0).detach();
+		SVGG last = (SVGG) page.getChildElements().get(page.getChildElements().size() - 1);
+		last.appendChild(new SVGLine(new Real2(0.0, 0.0), new Real2(1.0, 1.0)));
+		Assert.assertEquals(0, index.getRebuildCount());
+		for (int i = 0; i < page.getChildElements().size(); i++) {
+			SVGElement g = (SVGElement) page.getChildElements().get(i);
+			assertSameAsXPath(g, SVGLine.ALL_LINE_XPATH);
+			List<SVGElement> lines = index.getDescendants(g, SVGLine.TAG);
+			Assert.assertEquals(i == 5 ? 1 : (i == 18 ? 3 : 2), lines.size());
+		}
+		assertSameAsXPath(page, SVGLine.ALL_LINE_XPATH);
+		Assert.assertEquals(0, index.getDescendants((SVGElement) index.getElements(SVGLine.TAG).get(0), SVGLine.TAG).size());
+	}
+
+	@Test
+	public void testPlainElements() {
+		SVGElement svg = createSVG();
+		Element plain = new Element("metadata", "http://example.org/");
+		svg.appendChild(plain);
+		assertSameAsXPath(svg, SVGPath.ALL_PATH_XPATH);
+		// SVG content below an untracked element falls back to XPath
+		plain.appendChild(new SVGPath("M0 0 L1 1"));
+		svg.getOrCreateTypeIndex().rebuild();
+		Assert.assertNull(svg.getOrCreateTypeIndex().getDescendants(svg, SVGPath.TAG));
+		assertSameAsXPath(svg, SVGPath.ALL_PATH_XPATH);
+	}
+
+	@Test
+	public void testManyGroups() {
+		SVGG page = createPage(2000);
+		Assert.assertEquals(2000, SVGText.extractSelfAndDescendantTexts(page).size());
+		assertSameAsXPath(page, SVGText.ALL_TEXT_XPATH);
+		assertSameAsXPath((SVGElement) page.getChildElements().get(1000), SVGText.ALL_TEXT_XPATH);
+	}
+
+	static SVGG createPage(int ngroups) {
+		SVGG page = new SVGG();
+		for (int i = 0; i < ngroups; i++) {
+			SVGG g = new SVGG();
+			g.appendChild(new SVGLine(new Real2(i, 0.0), new Real2(i, 1.0)));
+			g.appendChild(new SVGText(new Real2(i, 2.0), "t"+i));
+			page.appendChild(g);
+		}
+		return page;
+	}
+}
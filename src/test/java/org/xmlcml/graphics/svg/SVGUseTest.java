@@ -0,0 +1,137 @@
+package org.xmlcml.graphics.svg;
+
+import java.awt.image.BufferedImage;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.graphics.svg.image.HiddenGraphics;
+import org.xmlcml.xml.XMLUtil;
+
+public class SVGUseTest {
+	private static final Logger LOG = Logger.getLogger(SVGUseTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String DEFS =
+			"<defs>"
+			+ "<symbol id='square'><rect x='0' y='0' width='10' height='10' style='fill:black;stroke:black;'/></symbol>"
+			+ "<symbol id='grid' viewBox='0 0 20 20'>"
+			+ "<rect x='1' y='1' width='8' height='8'/><rect x='11' y='11' width='8' height='8'/>"
+			+ "</symbol>"
+			+ "</defs>";
+
+	private static SVGElement createSVG(String body) {
+		return SVGElement.readAndCreateSVG(XMLUtil.parseXML(
+				"<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink'>"
+				+ DEFS + body + "</svg>"));
+	}
+
+	@Test
+	public void testBoundingBox() {
+		SVGElement svg = createSVG(
+				"<use id='u1' x='50' y='40' xlink:href='#square'/>"
+				+ "<use id='u2' x='45' y='10' width='10' height='10' xlink:href='#grid'/>"
+				+ "<use id='u3' x='45' y='10' width='20' height='10' xlink:href='#grid'/>"
+				+ "<use id='u4' xlink:href='#missing'/>");
+		Real2Range box = svg.getElementById("u1").getBoundingBox();
+		Assert.assertEquals(50.0, box.getXMin(), 0.001);
+		Assert.assertEquals(60.0, box.getXMax(), 0.001);
+		Assert.assertEquals(40.0, box.getYMin(), 0.001);
+		// viewBox scaled by 0.5
+		box = svg.getElementById("u2").getBoundingBox();
+		Assert.assertEquals(45.5, box.getXMin(), 0.001);
+		Assert.assertEquals(19.5, box.getYMax(), 0.001);
+		// xMidYMid meet centres horizontally
+		box = svg.getElementById("u3").getBoundingBox();
+		Assert.assertEquals(50.5, box.getXMin(), 0.001);
+		Assert.assertEquals(59.5, box.getXMax(), 0.001);
+		Assert.assertNull(svg.getElementById("u4").getBoundingBox());
+		svg.getElementById("grid").addAttribute(new nu.xom.Attribute(SVGSymbol.PRESERVE_ASPECT_RATIO, "none"));
+		box = svg.getElementById("u3").getBoundingBox();
+		Assert.assertEquals(46.0, box.getXMin(), 0.001);
+		Assert.assertEquals(64.0, box.getXMax(), 0.001);
+	}
+
+	@Test
+	public void testSharedSymbol() {
+		SVGElement svg = createSVG("<g id='g1'/>");
+		SVGElement g = svg.getElementById("g1");
+		SVGSymbol symbol = (SVGSymbol) svg.getElementById("square");
+		int n = 10000;
+		for (int i = 0; i < n; i++) {
+			g.appendChild(new SVGUse(new Real2(i * 20.0, 0.0), symbol));
+		}
+		Real2Range total = null;
+		for (int i = 0; i < n; i++) {
+			Real2Range box = ((SVGUse) g.getChildElements().get(i)).getBoundingBox();
+			total = total == null ? box : total.plus(box);
+		}
+		Assert.assertEquals(n * 20.0 - 10.0, total.getXMax(), 0.001);
+		// geometry is referenced, not copied
+		Assert.assertEquals(1, symbol.getChildElements().size());
+		Assert.assertEquals(0, g.getChildElements().get(0).getChildCount());
+		Assert.assertSame(symbol.getBoundingBox(), symbol.getBoundingBox());
+		// a copy resolves its href in its own tree
+		SVGUse copy = (SVGUse) g.getChildElements().get(1).copy();
+		Assert.assertNull(copy.getSymbol());
+		g.appendChild(copy);
+		Assert.assertSame(symbol, copy.getSymbol());
+		// cached box follows edits to the symbol
+		symbol.appendChild(new SVGRect(new Real2(0.0, 0.0), new Real2(15.0, 15.0)));
+		Assert.assertEquals(35.0, ((SVGUse) g.getChildElements().get(1)).getBoundingBox().getXMax(), 0.001);
+	}
+
+	@Test
+	public void testCopiedDocumentUsesOwnSymbol() {
+		SVGElement svg = createSVG("<g id='g1'/>");
+		SVGSymbol symbol = (SVGSymbol) svg.getElementById("square");
+		SVGUse use = new SVGUse(new Real2(20.0, 0.0), symbol);
+		svg.getElementById("g1").appendChild(use);
+		SVGElement svgCopy = (SVGElement) svg.copy();
+		SVGUse useCopy = (SVGUse) svgCopy.getElementById("g1").getChildElements().get(0);
+		SVGSymbol symbolCopy = useCopy.getSymbol();
+		Assert.assertNotNull(symbolCopy);
+		Assert.assertNotSame(symbol, symbolCopy);
+		Assert.assertSame(svgCopy.getElementById("square"), symbolCopy);
+		// a detached symbol is no longer used even though use still holds it
+		symbol.detach();
+		Assert.assertNull(use.getSymbol());
+	}
+
+	@Test
+	public void testDraw() {
+		BufferedImage instanced = render(createSVG(
+				"<use x='50' y='40' xlink:href='#square'/>"));
+		BufferedImage expanded = render(createSVG(
+				"<rect x='50' y='40' width='10' height='10' style='fill:black;stroke:black;'/>"));
+		Assert.assertEquals(expanded.getWidth(), instanced.getWidth());
+		int instancedCount = countPainted(instanced);
+		int expandedCount = countPainted(expanded);
+		Assert.assertTrue("painted "+instancedCount, instancedCount > 0);
+		// symbols in defs are not painted in place
+		Assert.assertEquals(expandedCount, instancedCount, expandedCount / 50 + 1);
+	}
+
+	private static BufferedImage render(SVGElement svg) {
+		HiddenGraphics hiddenGraphics = new HiddenGraphics();
+		return hiddenGraphics.createImage(svg);
+	}
+
+	private static int countPainted(BufferedImage image) {
+		int background = image.getRGB(0, 0);
+		int count = 0;
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				if (image.getRGB(x, y) != background) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,131 @@
+package org.xmlcml.graphics.svg;
+
+import nu.xom.Document;
+import nu.xom.Element;
+import nu.xom.Nodes;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.xml.XMLUtil;
+
+public class SVGXPathTest {
+	private static final Logger LOG = Logger.getLogger(SVGXPathTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	// patterns used in the library
+	static final String[] PATTERNS = {
+		"./svg:*",
+		".//svg:*",
+		"./svg:text",
+		"./svg:g",
+		"./svg:g/svg:polyline",
+		".//svg:*[@transform]",
+		".//svg:polyline[not(@merged)]",
+		".//svg:g[@class='word']/svg:text",
+		"./svg:g[@name='para' and svg:text]",
+		"./svg:text[not(@font-size)]",
+		"//svg:*[count(*)=0]",
+		"//svg:g[@font-size and svg:text[not(@font-size)]]",
+		"//svg:defs/svg:clipPath",
+		"/svg:svg/svg:defs",
+		"/*",
+		"*",
+		".//svg:g//svg:text",
+	};
+
+	private static final String[] FALLBACK = {
+		"ancestor-or-self::*/@transform",
+		".//svg:g[(count(*)+count(svg:*))=0]",
+		"./svg:*[contains(@class, 'word')]",
+		".//svg:text[1]",
+	};
+
+	private static final String SVG =
+			"<svg xmlns='http://www.w3.org/2000/svg'>"
+			+ "<defs><clipPath id='c1'><path d='M0 0 L1 1'/></clipPath></defs>"
+			+ "<g font-size='10' transform='translate(1,1)'><text>a</text><text font-size='8'>b</text>"
+			+ "<g class='word'><text>c</text><g class='word'><text>d</text></g><text>e</text></g>"
+			+ "<polyline points='0 0 1 1'/><polyline merged='true' points='0 0 1 1'/></g>"
+			+ "<g name='para'><text transform='scale(2)'>f</text></g><g name='para'/>"
+			+ "<g><g/><polyline points='0 0 1 1'/></g>"
+			+ "<x:other xmlns:x='http://example.org/'><x:leaf/></x:other>"
+			+ "</svg>";
+
+	private static void assertSameAsXOM(Element context, String xpath) {
+		Nodes expected = context.query(xpath, SVGConstants.SVG_XPATH);
+		Nodes found = SVGXPath.query(context, xpath);
+		Assert.assertEquals(xpath, expected.size(), found.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertSame(xpath, expected.get(i), found.get(i));
+		}
+	}
+
+	@Test
+	public void testPatterns() {
+		Element svg = XMLUtil.parseXML(SVG);
+		Element g = (Element) svg.getChildElements().get(1);
+		for (String pattern : PATTERNS) {
+			Assert.assertTrue(pattern, SVGXPath.compile(pattern).isFastPath());
+			assertSameAsXOM(svg, pattern);
+			assertSameAsXOM(g, pattern);
+		}
+		for (String pattern : FALLBACK) {
+			Assert.assertFalse(pattern, SVGXPath.compile(pattern).isFastPath());
+			assertSameAsXOM(g, pattern);
+		}
+	}
+
+	@Test
+	public void testDetached() {
+		Element svg = XMLUtil.parseXML(SVG);
+		if (svg.getDocument() != null) {
+			svg.getDocument().setRootElement(new Element("dummy"));
+		}
+		Element g = (Element) svg.getChildElements().get(1);
+		for (String pattern : PATTERNS) {
+			assertSameAsXOM(svg, pattern);
+			assertSameAsXOM(g, pattern);
+		}
+		// a subtree
+		g.detach();
+		for (String pattern : PATTERNS) {
+			assertSameAsXOM(g, pattern);
+		}
+		new Document(g);
+		for (String pattern : PATTERNS) {
+			assertSameAsXOM(g, pattern);
+		}
+	}
+
+	@Test
+	public void testSVGElements() {
+		SVGElement svg = SVGElement.readAndCreateSVG(XMLUtil.parseXML(SVG.replaceAll("<x:other.*</x:other>", "")));
+		Assert.assertEquals(2, SVGElement.generateElementList(svg, ".//svg:*[@transform]").size());
+		Assert.assertEquals(2, SVGUtil.getQuerySVGElements(svg, ".//svg:polyline[not(@merged)]").size());
+	}
+
+	@Test
+	public void testLargeSVG() {
+		Element svg = createLargeSVG(20, 8);
+		for (String pattern : PATTERNS) {
+			assertSameAsXOM(svg, pattern);
+		}
+	}
+
+	static Element createLargeSVG(int groups, int texts) {
+		StringBuilder sb = new StringBuilder("<svg xmlns='http://www.w3.org/2000/svg'><defs><clipPath id='c'><rect/></clipPath></defs>");
+		for (int i = 0; i < groups; i++) {
+			sb.append("<g class='word' font-size='9'"+(i % 3 == 0 ? " transform='translate(1,1)'" : "")+">");
+			for (int j = 0; j < texts; j++) {
+				sb.append("<text"+(j % 2 == 0 ? " font-size='8'" : "")+">t</text><polyline"+(j % 4 == 0 ? " merged='true'" : "")+"/>");
+			}
+			sb.append("<g name='para'><text>p</text></g></g>");
+		}
+		sb.append("</svg>");
+		return XMLUtil.parseXML(sb.toString());
+	}
+}
@@ -5,12 +5,17 @@ import org.apache.log4j.Logger;
 import org.junit.Assert;
 import org.junit.Test;
 import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Transform2;
+import org.xmlcml.euclid.Vector2;
 import org.xmlcml.graphics.svg.*;
 import org.xmlcml.xml.XMLUtil;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class HiddenGraphicsTest {
 
@@ -108,6 +113,169 @@ public class HiddenGraphicsTest {
 		hg.write(SVGImage.IMAGE_PNG, new File("target/image.g.8.2.png"));
 	}
 	
+	@Test
+	public void testTiledImage() {
+		SVGElement svg = createTiledExampleSvg();
+		HiddenGraphics hg = new HiddenGraphics();
+		BufferedImage image = hg.createImage(svg);
+		hg = new HiddenGraphics();
+		hg.setTileSize(37);
+		hg.setThreadCount(4);
+		BufferedImage tiledImage = hg.createTiledImage(svg);
+		assertPixelsEqual(image, tiledImage);
+	}
+	
+	@Test
+	public void testTiledImageDpi() throws Exception {
+		SVGElement svg = createTiledExampleSvg();
+		HiddenGraphics hg = new HiddenGraphics();
+		hg.setDpi(150.0);
+		BufferedImage image = hg.createImage(svg);
+		Assert.assertEquals(Math.round(svg.getBoundingBox().getDimension().width * 150.0 / 72.0), image.getWidth());
+		hg = new HiddenGraphics();
+		hg.setDpi(150.0);
+		hg.setTileSize(64);
+		hg.setThreadCount(3);
+		BufferedImage tiledImage = hg.createTiledImage(svg);
+		assertPixelsEqual(image, tiledImage);
+		hg.write(SVGImage.IMAGE_PNG, new File("target/tiledExample150.png"));
+	}
+	
+	@Test
+	public void testRenderTilesStreaming() {
+		SVGElement svg = createTiledExampleSvg();
+		HiddenGraphics hg = new HiddenGraphics();
+		hg.setTileSize(100);
+		hg.setThreadCount(2);
+		final List<Rectangle> tiles = new ArrayList<Rectangle>();
+		hg.renderTiles(svg, new HiddenGraphics.TileListener() {
+			public void tileRendered(int x, int y, BufferedImage tile) {
+				tiles.add(new Rectangle(x, y, tile.getWidth(), tile.getHeight()));
+			}
+		});
+		Dimension dimension = svg.getBoundingBox().getDimension();
+		int area = 0;
+		for (Rectangle tile : tiles) {
+			area += tile.width * tile.height;
+		}
+		int nx = (dimension.width + 99) / 100;
+		int ny = (dimension.height + 99) / 100;
+		Assert.assertEquals(nx * ny, tiles.size());
+		Assert.assertEquals(dimension.width * dimension.height, area);
+	}
+	
+	/** workers draw the same elements; here under a transformed parent.
+	 */
+	@Test
+	public void testTiledImageSharedElements() {
+		SVGG parent = new SVGG();
+		parent.setTransform(new Transform2(new Vector2(15., 25.)));
+		SVGElement svg = createTiledExampleSvg();
+		parent.appendChild(svg);
+		String xml = parent.toXML();
+		HiddenGraphics hg = new HiddenGraphics();
+		BufferedImage image = hg.createImage(svg);
+		hg = new HiddenGraphics();
+		hg.setTileSize(16);
+		hg.setThreadCount(8);
+		BufferedImage tiledImage = hg.createTiledImage(svg);
+		assertPixelsEqual(image, tiledImage);
+		Assert.assertEquals(xml, parent.toXML());
+	}
+	
+	@Test
+	public void testTiledFixture() throws Exception {
+		SVGElement svg = SVGElement.readAndCreateSVG(Fixtures.IMAGE_G_8_2_SVG);
+		HiddenGraphics hg = new HiddenGraphics();
+		hg.setDpi(300.0);
+		BufferedImage image = hg.createImage(svg);
+		hg = new HiddenGraphics();
+		hg.setDpi(300.0);
+		hg.setTileSize(128);
+		BufferedImage tiledImage = hg.createTiledImage(svg);
+		assertPixelsEqual(image, tiledImage);
+	}
+	
+	@Test
+	public void testCulling() {
+		SVGSVG svg = new SVGSVG();
+		SVGCircle circle = new SVGCircle(new Real2(50., 50.), 20.);
+		circle.setFill("green");
+		svg.appendChild(circle);
+		SVGG offPage = new SVGG();
+		offPage.setTransform(new Transform2(new Vector2(1000., 1000.)));
+		for (int i = 0; i < 10; i++) {
+			offPage.appendChild(new SVGCircle(new Real2(i * 10., 10.), 5.));
+		}
+		svg.appendChild(offPage);
+		svg.appendChild(new SVGLine(new Real2(500., 10.), new Real2(600., 10.)));
+		HiddenGraphics hg = new HiddenGraphics();
+		Graphics2D g = hg.createGraphics();
+		SVGElement.resetDrawCounts();
+		svg.draw(g);
+		Assert.assertEquals("drawn", 1, SVGElement.getDrawnCount());
+		// group is culled as one subtree
+		Assert.assertEquals("culled", 2, SVGElement.getCulledCount());
+		g.setClip(200, 200, 50, 50);
+		SVGElement.resetDrawCounts();
+		svg.draw(g);
+		Assert.assertEquals("drawn", 0, SVGElement.getDrawnCount());
+		Assert.assertEquals("culled", 3, SVGElement.getCulledCount());
+	}
+	
+	@Test
+	public void testCullingDoesNotChangeImage() {
+		SVGElement svg = createTiledExampleSvg();
+		svg.appendChild(new SVGCircle(new Real2(-500., -500.), 5.));
+		HiddenGraphics hg = new HiddenGraphics();
+		BufferedImage image = hg.createImage(svg);
+		Assert.assertEquals(1, hg.getCulledCount());
+		BufferedImage unculledImage = null;
+		try {
+			SVGElement.setCulling(false);
+			unculledImage = new HiddenGraphics().createImage(svg);
+		} finally {
+			SVGElement.setCulling(true);
+		}
+		assertPixelsEqual(unculledImage, image);
+	}
+	
+	private static void assertPixelsEqual(BufferedImage expected, BufferedImage found) {
+		Assert.assertEquals("width", expected.getWidth(), found.getWidth());
+		Assert.assertEquals("height", expected.getHeight(), found.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				if (expected.getRGB(x, y) != found.getRGB(x, y)) {
+					Assert.fail("pixels differ at ("+x+","+y+"): "+
+						Integer.toHexString(expected.getRGB(x, y))+" != "+Integer.toHexString(found.getRGB(x, y)));
+				}
+			}
+		}
+	}
+	
+	/** shapes, paths, text and a transformed group spread over several tiles.
+	 */
+	private SVGElement createTiledExampleSvg() {
+		SVGElement svg = createExampleSvg();
+		SVGPath path = new SVGPath("M 10 20 C 60 0 90 90 140 30 L 300 250");
+		path.setStroke("blue");
+		path.setStrokeWidth(2.0);
+		path.setFill("none");
+		svg.appendChild(path);
+		SVGText text = new SVGText(new Real2(40., 260.), "tiled text");
+		text.setFontSize(18.0);
+		text.setFill("black");
+		svg.appendChild(text);
+		SVGG g = new SVGG();
+		g.setTransform(new Transform2(new Vector2(60., 40.)));
+		SVGRect rect = new SVGRect(new Real2(100., 100.), new Real2(180., 150.));
+		rect.setStroke("black");
+		rect.setFill("yellow");
+		g.appendChild(rect);
+		svg.appendChild(g);
+		return svg;
+	}
+	
 	private SVGElement createExampleSvg() {
 		SVGSVG g = new SVGSVG();
 		SVGCircle circle;
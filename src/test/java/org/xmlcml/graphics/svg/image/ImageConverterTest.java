@@ -12,6 +12,8 @@ import org.xmlcml.xml.XMLUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.List;
 
 
@@ -99,4 +101,58 @@ public class ImageConverterTest {
 		SVGUtil.debug(svgElement, "target/largeElement.svg", 1);
 	}
 	
+	@Test
+	public void testExtractImagesStreaming() throws IOException {
+		ImageConverter imageConverter = new ImageConverter();
+		imageConverter.setImageDirectory(new File(new File("target"), "images/streaming/"));
+		imageConverter.setFileroot("image");
+		StringWriter writer = new StringWriter();
+		List<String> imageFilenameList = imageConverter.extractImages(new StringReader(Fixtures.IMAGE_SVG), writer, "../");
+		Assert.assertEquals("[target/images/streaming/image.1.png]", imageFilenameList.toString());
+		Assert.assertEquals("svgString", 
+				"<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"><image  x=\"0.0\" y=\"0.0\" width=\"16.0\" height=\"16.0\" xlink:href=\"../target/images/streaming/image.1.png\"/></svg>",
+				writer.toString());
+		SVGElement svgElement = SVGImage.createSVGFromImage(new File(imageFilenameList.get(0)), SVGImage.IMAGE_PNG);
+		Assert.assertTrue(svgElement.toXML().contains("iVBORw0KGgoAAAANSUhEUgAAABAAAAAQCAYAAAAf8/9hAAAAMklEQVR42mP4J8LwHx0zAAE2cWzyeBUSgxnw2UwMnzouINVmnF4YwmEwmg7Is3kYhQEA6pzZRchLX5wAAAAASUVORK5CYII="));
+	}
+
+	@Test
+	public void testExtractImagesPrefixed() throws IOException {
+		String svg = "<svg:svg xmlns:svg='http://www.w3.org/2000/svg' xmlns:xl='http://www.w3.org/1999/xlink'>"
+				+ "<!-- <svg:image xl:href='data:image/png;base64,AAAA'/> -->"
+				+ "<svg:image width='16' xl:href='data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAABAAAAAQCAYAAAAf8/9hAAAAMklEQVR42mP4J8LwHx0zAAE2cWzyeBUSgxnw2UwMnzouINVmnF4YwmEwmg7Is3kYhQEA6pzZRchLX5wAAAAASUVORK5CYII='>"
+				+ "</svg:image></svg:svg>";
+		ImageConverter imageConverter = new ImageConverter();
+		imageConverter.setImageDirectory(new File(new File("target"), "images/prefixed/"));
+		StringWriter writer = new StringWriter();
+		List<String> imageFilenameList = imageConverter.extractImages(new StringReader(svg), writer, "");
+		Assert.assertEquals(1, imageFilenameList.size());
+		Assert.assertTrue(writer.toString().contains("<!-- <svg:image xl:href='data:image/png;base64,AAAA'/> -->"));
+		Assert.assertTrue(writer.toString().contains("<svg:image width='16' xl:href='target/images/prefixed/image.1.png'>"));
+		Assert.assertTrue(new File(imageFilenameList.get(0)).exists());
+		XMLUtil.parseXML(writer.toString());
+	}
+
+	/** streaming output matches in-memory replaceHrefDataWithFileRef.
+	 */
+	@Test
+	public void testLargeFileStreaming() throws IOException {
+		File imageDir = new File(new File("target"), "images/");
+		ImageConverter imageConverter = new ImageConverter();
+		imageConverter.readSVGFile(Fixtures.LARGE_IMAGE_SVG);
+		imageConverter.setImageDirectory(imageDir);
+		imageConverter.setFileroot("imagez");
+		imageConverter.replaceHrefDataWithFileRef("../");
+		String svgString = imageConverter.getSVGString();
+
+		ImageConverter streamingConverter = new ImageConverter();
+		streamingConverter.setImageDirectory(imageDir);
+		streamingConverter.setFileroot("imagez");
+		streamingConverter.setWriterCount(3);
+		File outputSvg = new File("target/largeElementStreaming.svg");
+		List<String> filenames = streamingConverter.extractImages(Fixtures.LARGE_IMAGE_SVG, outputSvg, "../");
+		Assert.assertEquals(6, filenames.size());
+		Assert.assertEquals(svgString, org.apache.commons.io.FileUtils.readFileToString(outputSvg, "UTF-8"));
+	}
+
 }
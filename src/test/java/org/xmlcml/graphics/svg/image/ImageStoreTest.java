@@ -0,0 +1,90 @@
+package org.xmlcml.graphics.svg.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.graphics.svg.SVGImage;
+
+public class ImageStoreTest {
+	private static final Logger LOG = Logger.getLogger(ImageStoreTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String LOGO = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAABAAAAAQCAYAAAAf8/9hAAAAMklEQVR42mP4J8LwHx0zAAE2cWzyeBUSgxnw2UwMnzouINVmnF4YwmEwmg7Is3kYhQEA6pzZRchLX5wAAAAASUVORK5CYII=";
+
+	private static File createStoreDirectory(String name) {
+		File dir = new File("target/imagestore/"+name);
+		FileUtils.deleteQuietly(dir);
+		return dir;
+	}
+
+	private static SVGImage createImage(int width) {
+		BufferedImage image = new BufferedImage(width, 10, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(1, 1, 0xff0000);
+		SVGImage svgImage = new SVGImage();
+		svgImage.readImageDataIntoSrcValue(image, SVGImage.IMAGE_PNG);
+		return svgImage;
+	}
+
+	@Test
+	public void testDeduplicateStreaming() throws IOException {
+		String other = createImage(12).getImageValue();
+		StringBuilder svg = new StringBuilder("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink'>");
+		for (String href : new String[]{LOGO, other, LOGO, LOGO}) {
+			svg.append("<image xlink:href='"+href+"'/>");
+		}
+		svg.append("</svg>");
+		ImageStore imageStore = new ImageStore(createStoreDirectory("streaming"));
+		ImageConverter imageConverter = new ImageConverter();
+		imageConverter.setImageStore(imageStore);
+		StringWriter writer = new StringWriter();
+		List<String> filenames = imageConverter.extractImages(new StringReader(svg.toString()), writer, "");
+		Assert.assertEquals(4, filenames.size());
+		Assert.assertEquals(filenames.get(0), filenames.get(2));
+		Assert.assertEquals(filenames.get(0), filenames.get(3));
+		Assert.assertNotEquals(filenames.get(0), filenames.get(1));
+		Assert.assertEquals(2, imageStore.getDirectory().list().length);
+		Assert.assertEquals(4, imageStore.getImageCount());
+		Assert.assertEquals(2, imageStore.getUniqueImageCount());
+		Assert.assertEquals(2, imageStore.getDuplicateCount());
+		long logoBytes = new File(filenames.get(0)).length();
+		Assert.assertEquals(2 * logoBytes, imageStore.getBytesSaved());
+		LOG.debug(imageStore.getReport());
+
+		// next document reuses stored file
+		ImageConverter imageConverter1 = new ImageConverter();
+		imageConverter1.setImageStore(imageStore);
+		imageConverter1.readSVGString("<svg xmlns='http://www.w3.org/2000/svg' xmlns:xlink='http://www.w3.org/1999/xlink'><image xlink:href=\""+LOGO+"\"/></svg>");
+		imageConverter1.replaceHrefDataWithFileRef("../");
+		Assert.assertTrue(imageConverter1.getSVGString().contains("xlink:href=\"../"+filenames.get(0)+"\""));
+		Assert.assertEquals(3, imageStore.getDuplicateCount());
+	}
+
+	@Test
+	public void testSVGImage() throws IOException {
+		ImageStore imageStore = new ImageStore(createStoreDirectory("svgimage"));
+		SVGImage image0 = createImage(20);
+		SVGImage image1 = createImage(20);
+		BufferedImage bufferedImage = imageStore.getBufferedImage(image0);
+		Assert.assertSame(bufferedImage, imageStore.getBufferedImage(image1));
+		Assert.assertEquals(1, imageStore.getSharedImageCount());
+		File file0 = imageStore.replaceHrefDataWithFileRef(image0, "");
+		File file1 = imageStore.replaceHrefDataWithFileRef(image1, "");
+		Assert.assertEquals(file0, file1);
+		Assert.assertTrue(file0.exists());
+		Assert.assertEquals(image0.getImageValue(), image1.getImageValue());
+		Assert.assertTrue(file0.getName().matches("image\\.[0-9a-f]{64}\\.png"));
+		imageStore.clear();
+		Assert.assertNotSame(bufferedImage, imageStore.getBufferedImage(createImage(20)));
+	}
+}
@@ -0,0 +1,93 @@
+package org.xmlcml.graphics.svg.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.graphics.svg.Fixtures;
+import org.xmlcml.graphics.svg.SVGCircle;
+import org.xmlcml.graphics.svg.SVGG;
+import org.xmlcml.graphics.svg.SVGLine;
+import org.xmlcml.graphics.svg.SVGRect;
+import org.xmlcml.graphics.svg.SVGSVG;
+import org.xmlcml.graphics.svg.SVGText;
+
+public class ThumbnailRendererTest {
+	private static final Logger LOG = Logger.getLogger(ThumbnailRendererTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static List<SVGSVG> createPages(int count) {
+		List<SVGSVG> pages = new ArrayList<SVGSVG>();
+		for (int i = 0; i < count; i++) {
+			SVGSVG svg = new SVGSVG();
+			SVGG g = new SVGG();
+			svg.appendChild(g);
+			g.appendChild(new SVGRect(new Real2(10.0, 10.0), new Real2(500.0, 700.0)));
+			g.appendChild(new SVGLine(new Real2(20.0, 20.0 + i * 10.0), new Real2(480.0, 600.0)));
+			g.appendChild(new SVGCircle(new Real2(250.0, 350.0), 50.0 + i));
+			g.appendChild(new SVGText(new Real2(50.0, 100.0), "page "+i));
+			pages.add(svg);
+		}
+		return pages;
+	}
+
+	@Test
+	public void testRenderElements() throws IOException {
+		File outputDir = new File("target/thumbnails/elements");
+		outputDir.mkdirs();
+		ThumbnailRenderer renderer = new ThumbnailRenderer();
+		renderer.setTargetSize(100, 120);
+		renderer.setThreadCount(3);
+		List<SVGSVG> pages = createPages(10);
+		renderer.renderElements(pages, outputDir, "page");
+		Assert.assertEquals(10, renderer.getPageCount());
+		Assert.assertEquals(0, renderer.getFailedCount());
+		Assert.assertTrue(renderer.getPagesPerSecond() > 0.0);
+		for (int i = 0; i < pages.size(); i++) {
+			File file = new File(outputDir, "page."+i+".png");
+			Assert.assertTrue(file.toString(), file.exists());
+			BufferedImage image = ImageIO.read(file);
+			Assert.assertTrue(image.getWidth() <= 100);
+			Assert.assertTrue(image.getHeight() <= 120);
+			// aspect ratio kept; height is the limiting dimension
+			Assert.assertEquals(120, image.getHeight());
+		}
+	}
+
+	@Test
+	public void testRenderFiles() {
+		File outputDir = new File("target/thumbnails/files");
+		outputDir.mkdirs();
+		ThumbnailRenderer renderer = new ThumbnailRenderer();
+		renderer.setTargetSize(150, 150);
+		renderer.renderFiles(Arrays.asList(new File[] {
+				Fixtures.IMAGE_G_2_2_SVG, Fixtures.IMAGE_G_3_2_SVG, Fixtures.IMAGE_G_8_2_SVG,
+				new File(Fixtures.IMAGES_DIR, "missing.svg")}), outputDir);
+		Assert.assertEquals(3, renderer.getPageCount());
+		Assert.assertEquals(1, renderer.getFailedCount());
+		Assert.assertTrue(new File(outputDir, "image.g.8.2.png").exists());
+		LOG.debug("fixtures: "+String.format("%.1f", renderer.getPagesPerSecond())+" pages/s");
+	}
+
+	@Test
+	public void testBadTargetSize() {
+		try {
+			new ThumbnailRenderer().setTargetSize(0, 10);
+			Assert.fail("should throw");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
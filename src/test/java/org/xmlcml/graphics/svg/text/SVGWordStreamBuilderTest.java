@@ -0,0 +1,92 @@
+package org.xmlcml.graphics.svg.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.graphics.svg.SVGText;
+
+public class SVGWordStreamBuilderTest {
+
+	private static void addString(List<SVGText> texts, double x, double y, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			SVGText text = new SVGText(new Real2(x + i * 6.0, y), s.substring(i, i + 1));
+			text.setFontSize(10.0);
+			texts.add(text);
+		}
+	}
+
+	private static List<SVGText> createCharacters() {
+		List<SVGText> texts = new ArrayList<SVGText>();
+		addString(texts, 10.0, 100.0, "ab");
+		addString(texts, 30.0, 100.0, "cd");
+		addString(texts, 10.0, 112.0, "e f");
+		// new paragraph
+		addString(texts, 10.0, 150.0, "gh");
+		return texts;
+	}
+
+	@Test
+	public void testStreamingEvents() {
+		final List<String> events = new ArrayList<String>();
+		SVGWordStreamBuilder builder = new SVGWordStreamBuilder(new SVGWordStreamBuilder.Listener() {
+			public void wordClosed(SVGWord word) {
+				events.add("w:"+word.getStringValue());
+			}
+			public void lineClosed(SVGWordLine line) {
+				events.add("l:"+line.getOrCreateSVGWordList().size());
+			}
+			public void paraClosed(SVGWordPara para) {
+				events.add("p:"+para.getSVGLineList().size());
+			}
+		});
+		List<SVGText> texts = createCharacters();
+		for (int i = 0; i < 4; i++) {
+			builder.add(texts.get(i));
+		}
+		// first word is emitted before the input is exhausted
+		Assert.assertEquals("[w:ab]", events.toString());
+		for (int i = 4; i < texts.size(); i++) {
+			builder.add(texts.get(i));
+		}
+		builder.finish();
+		Assert.assertEquals("[w:ab, w:cd, l:2, w:e, w:f, l:2, p:2, w:gh, l:1, p:1]", events.toString());
+		Assert.assertEquals(5, builder.getWordCount());
+		Assert.assertEquals(3, builder.getLineCount());
+		Assert.assertEquals(2, builder.getParaCount());
+	}
+
+	@Test
+	public void testCreatePage() {
+		SVGWordPage page = SVGWordStreamBuilder.createPage(createCharacters());
+		Assert.assertEquals("lines", 3, page.getSVGLineList().size());
+		SVGWordPara para = (SVGWordPara) page.getChildElements().get(0);
+		List<SVGWord> words = para.getSVGLineList().get(0).getOrCreateSVGWordList();
+		Assert.assertEquals("words", 2, words.size());
+		Assert.assertEquals("cd", words.get(1).getStringValue());
+		Assert.assertEquals(30.0, words.get(1).getXY().getX(), 0.001);
+	}
+
+	@Test
+	public void testParaLineListFollowsXOMChanges() {
+		SVGWordPara para = new SVGWordPara();
+		SVGWordLine line0 = new SVGWordLine();
+		para.addLine(line0);
+		Assert.assertEquals(1, para.getSVGLineList().size());
+		SVGWordLine line1 = new SVGWordLine();
+		para.appendChild(line1);
+		Assert.assertEquals(2, para.getSVGLineList().size());
+		// callers get their own list, as before caching
+		para.getSVGLineList().clear();
+		Assert.assertEquals(2, para.getSVGLineList().size());
+		line0.detach();
+		Assert.assertEquals(1, para.getSVGLineList().size());
+		Assert.assertSame(line1, para.getSVGLineList().get(0));
+		para.insertChild(line0, 0);
+		Assert.assertSame(line0, para.getSVGLineList().get(0));
+		para.removeChildren();
+		Assert.assertEquals(0, para.getSVGLineList().size());
+	}
+}
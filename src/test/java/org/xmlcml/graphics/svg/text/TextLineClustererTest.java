@@ -0,0 +1,104 @@
+package org.xmlcml.graphics.svg.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.graphics.svg.SVGText;
+
+public class TextLineClustererTest {
+	private static final Logger LOG = Logger.getLogger(TextLineClustererTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static SVGText createCharacter(double x, double y, String s, double fontSize) {
+		SVGText text = new SVGText(new Real2(x, y), s);
+		text.setFontSize(fontSize);
+		return text;
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testStraddlingBucketBoundary() {
+		List<SVGText> texts = new ArrayList<SVGText>();
+		// scaled y would be 1000 and 1001 in createCharactersByY
+		texts.add(createCharacter(10.0, 100.04, "a", 10.0));
+		texts.add(createCharacter(16.0, 100.06, "b", 10.0));
+		texts.add(createCharacter(22.0, 100.04, "c", 10.0));
+		Assert.assertEquals("buckets", 2, TextAnalyzerUtils.createCharactersByY(texts).keySet().size());
+		List<TextLine> lines = TextAnalyzerUtils.createCharacterLines(texts);
+		Assert.assertEquals("lines", 1, lines.size());
+		Assert.assertEquals("abc", lines.get(0).getStringValue());
+	}
+
+	@Test
+	public void testSortsByBaselineAndX() {
+		List<SVGText> texts = new ArrayList<SVGText>();
+		texts.add(createCharacter(22.0, 112.0, "f", 10.0));
+		texts.add(createCharacter(10.0, 100.0, "a", 10.0));
+		texts.add(createCharacter(10.0, 112.0, "d", 10.0));
+		texts.add(createCharacter(16.0, 100.0, "b", 10.0));
+		texts.add(createCharacter(16.0, 112.0, "e", 10.0));
+		List<TextLine> lines = new TextLineClusterer().createLines(texts);
+		Assert.assertEquals("lines", 2, lines.size());
+		Assert.assertEquals("ab", lines.get(0).getStringValue());
+		Assert.assertEquals("def", lines.get(1).getStringValue());
+		Assert.assertEquals(100.0, lines.get(0).getBaselineY(), 0.001);
+	}
+
+	@Test
+	public void testSuperscriptAndSubscript() {
+		List<SVGText> texts = new ArrayList<SVGText>();
+		texts.add(createCharacter(10.0, 100.0, "x", 10.0));
+		SVGText sup = createCharacter(16.0, 96.0, "2", 7.0);
+		texts.add(sup);
+		texts.add(createCharacter(21.0, 100.0, "+", 10.0));
+		texts.add(createCharacter(27.0, 100.0, "H", 10.0));
+		SVGText sub = createCharacter(33.0, 102.5, "2", 7.0);
+		texts.add(sub);
+		// next line
+		texts.add(createCharacter(10.0, 112.0, "y", 10.0));
+		List<TextLine> lines = new TextLineClusterer().createLines(texts);
+		Assert.assertEquals("lines", 2, lines.size());
+		TextLine line = lines.get(0);
+		Assert.assertEquals("x2+H2", line.getStringValue());
+		Assert.assertEquals(10.0, line.getFontSize(), 0.001);
+		Assert.assertTrue("sup", line.isSuperscript(sup, 0.1));
+		Assert.assertTrue("sub", line.isSubscript(sub, 0.1));
+		Assert.assertFalse("sub", line.isSuperscript(sub, 0.1));
+		Assert.assertEquals("y", lines.get(1).getStringValue());
+	}
+
+	@Test
+	public void testEmpty() {
+		Assert.assertEquals(0, new TextLineClusterer().createLines(null).size());
+		Assert.assertEquals(0, new TextLineClusterer().createLines(new ArrayList<SVGText>()).size());
+	}
+
+	/** dense two-column page with baseline jitter; one line per baseline spanning both columns.
+	 */
+	@Test
+	public void testTwoColumns() {
+		int nlines = 70;
+		int ncharsPerColumnLine = 90;
+		List<SVGText> texts = new ArrayList<SVGText>();
+		for (int line = 0; line < nlines; line++) {
+			// small baseline jitter as emitted by PDF converters
+			double y = 50.0 + line * 11.0 + ((line % 3) - 1) * 0.05;
+			for (int col = 0; col < 2; col++) {
+				double x0 = 40.0 + col * 280.0;
+				for (int i = 0; i < ncharsPerColumnLine; i++) {
+					texts.add(createCharacter(x0 + i * 2.9, y, "abcdefghij".substring(i % 10, i % 10 + 1), 9.0));
+				}
+			}
+		}
+		List<TextLine> lines = new TextLineClusterer().createLines(texts);
+		Assert.assertEquals("lines", nlines, lines.size());
+		Assert.assertEquals("chars", 2 * ncharsPerColumnLine, lines.get(0).size());
+	}
+}
@@ -0,0 +1,129 @@
+package org.xmlcml.graphics.svg.util;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGSymbol;
+import org.xmlcml.graphics.svg.SVGUse;
+import org.xmlcml.graphics.svg.SVGUtil;
+import org.xmlcml.graphics.svg.image.HiddenGraphics;
+import org.xmlcml.xml.XMLUtil;
+
+public class PathDeduplicatorTest {
+	private static final Logger LOG = Logger.getLogger(PathDeduplicatorTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	// glyph-like outlines in absolute coordinates relative to their first moveto
+	private static final String[] OUTLINES = {
+		"M%s %s L%s %s L%s %s Z",
+		"M%s %s C%s %s %s %s %s %s Z",
+	};
+	private static final double[][] OFFSETS = {
+		{0.0, 0.0, 6.0, 0.0, 3.0, -8.0},
+		{0.0, 0.0, 1.5, -4.0, 4.5, -4.0, 6.0, 0.0},
+	};
+
+	private static String createPage(int lines, int glyphsPerLine) {
+		StringBuilder sb = new StringBuilder(
+				"<svg xmlns='http://www.w3.org/2000/svg'><g id='page'>");
+		int serial = 0;
+		for (int line = 0; line < lines; line++) {
+			for (int glyph = 0; glyph < glyphsPerLine; glyph++) {
+				int type = (line + glyph) % 2;
+				// offsets which are not exact in binary
+				double x = 10.1 + glyph * 7.3;
+				double y = 20.7 + line * 11.9;
+				Object[] coords = new Object[OFFSETS[type].length];
+				for (int i = 0; i < coords.length; i += 2) {
+					coords[i] = String.valueOf(x + OFFSETS[type][i]);
+					coords[i + 1] = String.valueOf(y + OFFSETS[type][i + 1]);
+				}
+				String fill = line == 0 ? "red" : "black";
+				sb.append("<path id='p"+(serial++)+"' style='fill:"+fill+";stroke:none;' d='"+
+						String.format(OUTLINES[type], coords)+"'/>");
+			}
+		}
+		// unique path and a clipPath path are left alone
+		sb.append("<path d='M1 1 L2 5 L3 1'/>");
+		sb.append("</g><clipPath id='c'><path d='M10.1 20.7 L16.1 20.7 L13.1 12.7 Z'/></clipPath></svg>");
+		return sb.toString();
+	}
+
+	@Test
+	public void testDeduplicate() {
+		SVGElement svg = SVGElement.readAndCreateSVG(XMLUtil.parseXML(createPage(3, 10)));
+		PathDeduplicator deduplicator = new PathDeduplicator();
+		List<SVGSymbol> symbols = deduplicator.deduplicate(svg);
+		// 2 outlines x 2 fills
+		Assert.assertEquals(4, symbols.size());
+		Assert.assertEquals(31, deduplicator.getPathCount());
+		Assert.assertEquals(30, deduplicator.getReplacedCount());
+		Assert.assertEquals("glyph1", symbols.get(0).getId());
+		// outlines go above the first moveto, which SVG viewers clip unless overflow is visible
+		for (SVGSymbol symbol : symbols) {
+			Assert.assertEquals("visible", symbol.getAttributeValue("overflow"));
+		}
+		Assert.assertEquals(30, SVGUtil.getQuerySVGElements(svg, "//*[local-name()='use']").size());
+		SVGUse use = (SVGUse) svg.getElementById("p0");
+		Assert.assertSame(symbols.get(0), use.getSymbol());
+		Assert.assertEquals("M0 0 L6 0 L3 -8 Z", ((SVGElement) symbols.get(0).getChildElements().get(0)).getAttributeValue("d"));
+		Assert.assertTrue(((SVGElement) symbols.get(0).getChildElements().get(0)).getAttributeValue("style").contains("fill:red"));
+		Assert.assertNull(((SVGElement) symbols.get(0).getChildElements().get(0)).getId());
+		Assert.assertEquals(2, SVGUtil.getQuerySVGElements(svg, "//*[local-name()='g']/*[local-name()='path'] | //*[local-name()='clipPath']/*").size());
+		Real2Range box = use.getBoundingBox();
+		Assert.assertEquals(10.1, box.getXMin(), 0.001);
+		Assert.assertEquals(12.7, box.getYMin(), 0.001);
+	}
+
+	@Test
+	public void testRenderingAndSize() {
+		String page = createPage(40, 60);
+		SVGElement original = SVGElement.readAndCreateSVG(XMLUtil.parseXML(page));
+		SVGElement svg = SVGElement.readAndCreateSVG(XMLUtil.parseXML(page));
+		new PathDeduplicator().deduplicate(svg);
+		String xml = svg.toXML();
+		LOG.debug("size "+page.length()+" -> "+xml.length());
+		Assert.assertTrue(xml.length() * 3 < page.length() * 2);
+
+		Real2Range originalBox = original.getBoundingBox();
+		Real2Range box = svg.getBoundingBox();
+		Assert.assertEquals(originalBox.getXMin(), box.getXMin(), 0.001);
+		Assert.assertEquals(originalBox.getYMax(), box.getYMax(), 0.001);
+		BufferedImage originalImage = new HiddenGraphics().createImage(original);
+		BufferedImage image = new HiddenGraphics().createImage(svg);
+		Assert.assertEquals(originalImage.getWidth(), image.getWidth());
+		int differences = 0;
+		int painted = 0;
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				if (originalImage.getRGB(x, y) != originalImage.getRGB(0, 0)) {
+					painted++;
+				}
+				if (!isClose(originalImage.getRGB(x, y), image.getRGB(x, y), 16)) {
+					differences++;
+				}
+			}
+		}
+		LOG.debug("painted "+painted+"; differences "+differences);
+		Assert.assertTrue(painted > 0);
+		// same geometry; at most a few antialiased edge pixels may differ
+		Assert.assertTrue("differences "+differences, differences <= painted / 500);
+	}
+
+	private static boolean isClose(int argb0, int argb1, int tolerance) {
+		for (int shift = 0; shift < 32; shift += 8) {
+			if (Math.abs(((argb0 >> shift) & 0xff) - ((argb1 >> shift) & 0xff)) > tolerance) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,164 @@
+package org.xmlcml.graphics.svg.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import nu.xom.Element;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.graphics.svg.SVGConstants;
+import org.xmlcml.graphics.svg.SVGDefs;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGG;
+import org.xmlcml.graphics.svg.SVGLine;
+import org.xmlcml.graphics.svg.SVGPath;
+import org.xmlcml.graphics.svg.SVGText;
+import org.xmlcml.xml.XMLUtil;
+
+public class SVGElementIteratorTest {
+	private static final Logger LOG = Logger.getLogger(SVGElementIteratorTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static final String SVG =
+			"<svg xmlns='http://www.w3.org/2000/svg'>"
+			+ "<defs><clipPath id='c1'><path d='M0 0 L1 1'/></clipPath></defs>"
+			+ "<g id='g1'><path id='p1' d='M0 0 L1 1'/><text id='t1' x='0' y='0'>a</text>"
+			+ "<g id='g2'><path id='p2' d='M0 0 L1 1'/><text id='t2' x='0' y='0'>b</text></g>"
+			+ "</g>"
+			+ "<g id='g3'><path id='p3' d='M0 0 L1 1'/></g>"
+			+ "</svg>";
+
+	private static SVGElement createSVG() {
+		return SVGElement.readAndCreateSVG(XMLUtil.parseXML(SVG));
+	}
+
+	private static List<SVGElement> toList(SVGElementIterator iterator) {
+		List<SVGElement> list = new ArrayList<SVGElement>();
+		while (iterator.hasNext()) {
+			list.add(iterator.next());
+		}
+		return list;
+	}
+
+	private static void assertSameElements(List<? extends Element> expected, List<? extends Element> found) {
+		Assert.assertEquals(expected.size(), found.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertSame(expected.get(i), found.get(i));
+		}
+	}
+
+	@Test
+	public void testPreOrder() {
+		SVGElement svg = createSVG();
+		List<Element> expected = XMLUtil.getQueryElements(svg, "descendant-or-self::svg:*", SVGConstants.SVG_XPATH);
+		assertSameElements(expected, toList(new SVGElementIterator(svg)));
+		assertSameElements(expected, SVGElementIterator.stream(svg).collect(Collectors.<SVGElement>toList()));
+		SVGElement g2 = svg.getElementById("g2");
+		Assert.assertEquals(3, toList(new SVGElementIterator(g2)).size());
+	}
+
+	@Test
+	public void testFilters() {
+		SVGElement svg = createSVG();
+		Assert.assertEquals(4, toList(new SVGElementIterator(svg, SVGPath.class, null, null)).size());
+		Assert.assertEquals(3, SVGElementIterator.stream(svg, SVGG.class).count());
+		Predicate<SVGElement> hasId = new Predicate<SVGElement>() {
+			public boolean test(SVGElement element) {
+				return element.getId() != null;
+			}
+		};
+		Assert.assertEquals(9, toList(new SVGElementIterator(svg, null, hasId, null)).size());
+		Assert.assertEquals(2, toList(new SVGElementIterator(svg, SVGText.class, hasId, null)).size());
+	}
+
+	@Test
+	public void testPrune() {
+		SVGElement svg = createSVG();
+		Predicate<SVGElement> isDefs = new Predicate<SVGElement>() {
+			public boolean test(SVGElement element) {
+				return element instanceof SVGDefs;
+			}
+		};
+		Assert.assertEquals(3, toList(new SVGElementIterator(svg, SVGPath.class, null, isDefs)).size());
+		Assert.assertEquals(3, SVGElementIterator.stream(svg, SVGPath.class, null, isDefs, true).count());
+		// skip the subtree of g1
+		SVGElementIterator iterator = new SVGElementIterator(svg);
+		List<String> ids = new ArrayList<String>();
+		while (iterator.hasNext()) {
+			SVGElement element = iterator.next();
+			if ("g1".equals(element.getId())) {
+				iterator.skipChildren();
+			}
+			ids.add(element.getId());
+		}
+		Assert.assertEquals("[null, null, c1, null, g1, g3, p3]", ids.toString());
+	}
+
+	@Test
+	public void testElements() {
+		SVGElement svg = createSVG();
+		SVGElementIterator iterator = new SVGElementIterator(svg.getChildElements());
+		Assert.assertTrue(iterator.hasNext());
+		Assert.assertTrue(iterator.next() instanceof SVGDefs);
+		iterator.remove();
+		Assert.assertEquals("g1", iterator.next().getId());
+		Assert.assertEquals("g3", iterator.next().getId());
+		Assert.assertFalse(iterator.hasNext());
+		Assert.assertEquals(2, svg.getChildElements().size());
+	}
+
+	@Test
+	public void testParallel() {
+		SVGG page = new SVGG();
+		for (int i = 0; i < 500; i++) {
+			SVGG g = new SVGG();
+			g.appendChild(new SVGLine(new Real2(i, 0.0), new Real2(i, 1.0)));
+			SVGG inner = new SVGG();
+			inner.appendChild(new SVGText(new Real2(i, 2.0), "t"+i));
+			g.appendChild(inner);
+			page.appendChild(g);
+		}
+		List<SVGElement> sequential = SVGElementIterator.stream(page).collect(Collectors.<SVGElement>toList());
+		Assert.assertEquals(2001, sequential.size());
+		// ordered stream keeps document order when collected in parallel
+		List<SVGElement> parallel = SVGElementIterator.stream(page, null, null, null, true)
+				.collect(Collectors.<SVGElement>toList());
+		assertSameElements(sequential, parallel);
+		Assert.assertEquals(500, SVGElementIterator.stream(page, SVGText.class, null, null, true).count());
+	}
+
+	/** a root whose content is all in one g still splits.
+	 */
+	@Test
+	public void testSplitSingleGroup() {
+		SVGElement svg = SVGElement.readAndCreateSVG(XMLUtil.parseXML(
+				"<svg xmlns='http://www.w3.org/2000/svg'><g id='g1'><g id='g2'>"
+				+ "<path id='p1' d='M0 0 L1 1'/><path id='p2' d='M0 0 L1 1'/><path id='p3' d='M0 0 L1 1'/>"
+				+ "</g></g></svg>"));
+		List<SVGElement> sequential = SVGElementIterator.stream(svg).collect(Collectors.<SVGElement>toList());
+		Spliterator<SVGElement> suffix = SVGElementIterator.spliterator(svg, null, null, null);
+		Spliterator<SVGElement> prefix = suffix.trySplit();
+		Assert.assertNotNull(prefix);
+		final List<SVGElement> found = new ArrayList<SVGElement>();
+		Consumer<SVGElement> collector = new Consumer<SVGElement>() {
+			public void accept(SVGElement element) {
+				found.add(element);
+			}
+		};
+		prefix.forEachRemaining(collector);
+		suffix.forEachRemaining(collector);
+		assertSameElements(sequential, found);
+		// a single leaf cannot split
+		Assert.assertNull(SVGElementIterator.spliterator(svg.getElementById("p1"), null, null, null).trySplit());
+	}
+}
@@ -0,0 +1,156 @@
+package org.xmlcml.graphics.svg.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Real2Range;
+import org.xmlcml.euclid.RealRange;
+import org.xmlcml.euclid.Transform2;
+import org.xmlcml.graphics.svg.SVGCircle;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGG;
+import org.xmlcml.graphics.svg.SVGLine;
+import org.xmlcml.graphics.svg.SVGPath;
+import org.xmlcml.graphics.svg.SVGRect;
+import org.xmlcml.graphics.svg.SVGSVG;
+import org.xmlcml.graphics.svg.SVGText;
+
+public class SVGStreamWriterTest {
+	private static final Logger LOG = Logger.getLogger(SVGStreamWriterTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	@Test
+	public void testDocument() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SVGStreamWriter writer = new SVGStreamWriter(baos);
+		writer.startSVG(600.0, 800.0);
+		writer.startDefs();
+		SVGPath marker = new SVGPath("M0 0 L1 1");
+		marker.setId("m1");
+		writer.write(marker);
+		writer.end();
+		writer.startGroup("g0", new Transform2(new double[]{1.0, 0.0, 10.0, 0.0, 1.0, 20.0, 0.0, 0.0, 1.0}));
+		writer.setStyle("red", "none", 0.4, 1.0);
+		writer.line(new Real2(1.0 / 3.0, 0.0), new Real2(2.0 / 3.0, 1.0));
+		writer.startGroup();
+		writer.rect(1.0, 2.0, 3.0, 4.0);
+		writer.text(5.0, 6.0, "a < b");
+		writer.path("M1.23456 2 L3.00001-4");
+		Assert.assertEquals(3, writer.getDepth());
+		writer.write(new SVGCircle(new Real2(1.23456, 2.0), 3.0));
+		writer.close();
+		Assert.assertEquals(0, writer.getDepth());
+
+		String xml = new String(baos.toByteArray(), SVGWriter.UTF_8);
+		Assert.assertTrue(xml, xml.startsWith("<?xml"));
+		Assert.assertTrue(xml, xml.contains("<line x1=\"0.333\" y1=\"0\" x2=\"0.667\" y2=\"1\" style=\""));
+		Assert.assertTrue(xml, xml.contains("transform=\"matrix(1,0,0,1,10,20)\""));
+		Assert.assertTrue(xml, xml.contains(">a &lt; b</text>"));
+		Assert.assertTrue(xml, xml.contains("d=\"M1.235 2 L3-4\""));
+		// written elements share the svg namespace declaration
+		Assert.assertEquals(1, xml.split("xmlns=").length - 1);
+
+		SVGElement svg = SVGElement.readAndCreateSVG(new ByteArrayInputStream(baos.toByteArray()));
+		Assert.assertTrue(svg instanceof SVGSVG);
+		Assert.assertEquals("600", svg.getAttributeValue("width"));
+		Assert.assertEquals(1, SVGElement.generateElementList(svg, "./svg:defs/svg:path[@id='m1']").size());
+		Assert.assertEquals(1, SVGElement.generateElementList(svg, "./svg:g/svg:g/svg:rect").size());
+		List<SVGElement> circles = SVGElement.generateElementList(svg, "./svg:g/svg:g/svg:circle");
+		Assert.assertEquals(1, circles.size());
+		Assert.assertEquals("1.235", circles.get(0).getAttributeValue("cx"));
+		SVGLine line = (SVGLine) SVGElement.generateElementList(svg, "//svg:line").get(0);
+		Assert.assertEquals("red", line.getStroke());
+		Assert.assertEquals(0.4, line.getStrokeWidth(), 0.0);
+		Assert.assertEquals("a < b", ((SVGText) SVGElement.generateElementList(svg, "//svg:text").get(0)).getText());
+	}
+
+	@Test
+	public void testDrawBoxes() {
+		List<Real2Range> boxes = new ArrayList<Real2Range>();
+		boxes.add(new Real2Range(new RealRange(10.0, 20.0), new RealRange(30.0, 45.5)));
+		// degenerate box is widened as in SVGElement.createGraphicalBox()
+		boxes.add(new Real2Range(new RealRange(5.0, 5.0), new RealRange(1.0, 2.0)));
+		SVGG g = new SVGG();
+		SVGElement.drawBoxes(boxes, g, "blue", "none", 0.5, 1.0);
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SVGStreamWriter writer = new SVGStreamWriter(baos);
+		writer.startSVG();
+		writer.setStyle("blue", "none", 0.5, 1.0);
+		writer.drawBoxes(boxes);
+		writer.close();
+		SVGElement svg = SVGElement.readAndCreateSVG(new ByteArrayInputStream(baos.toByteArray()));
+		List<SVGRect> streamed = SVGRect.extractSelfAndDescendantRects(svg);
+		List<SVGRect> built = SVGRect.extractSelfAndDescendantRects(g);
+		Assert.assertEquals(2, streamed.size());
+		for (int i = 0; i < built.size(); i++) {
+			Assert.assertTrue(built.get(i).getBoundingBox().isEqualTo(streamed.get(i).getBoundingBox(), 0.001));
+			Assert.assertEquals(built.get(i).getStroke(), streamed.get(i).getStroke());
+			Assert.assertEquals(built.get(i).getStrokeWidth(), streamed.get(i).getStrokeWidth());
+		}
+	}
+
+	@Test
+	public void testErrors() {
+		SVGStreamWriter writer = new SVGStreamWriter(new ByteArrayOutputStream());
+		try {
+			writer.line(0.0, 0.0, 1.0, 1.0);
+			Assert.fail("not started");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		writer.startSVG();
+		writer.end();
+		try {
+			writer.end();
+			Assert.fail("nothing open");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testLargeOverlay() {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		int npages = 10;
+		int nboxes = 500;
+		SVGStreamWriter writer = new SVGStreamWriter(baos);
+		writer.startSVG(1000.0, 1000.0);
+		writer.setStyle("red", "none", 0.4, 1.0);
+		for (int page = 0; page < npages; page++) {
+			writer.startGroup("page" + page, null);
+			for (int i = 0; i < nboxes; i++) {
+				double x = (i * 7) % 1000 + 0.123456;
+				double y = (i * 13) % 1000 + 0.654321;
+				writer.rect(new Real2Range(new RealRange(x, x + 5.5), new RealRange(y, y + 3.25)));
+			}
+			writer.end();
+			Assert.assertEquals(1, writer.getDepth());
+		}
+		writer.close();
+		Assert.assertEquals(0, writer.getDepth());
+
+		SVGElement svg = SVGElement.readAndCreateSVG(new ByteArrayInputStream(baos.toByteArray()));
+		List<SVGElement> groups = SVGElement.generateElementList(svg, "./svg:g");
+		Assert.assertEquals(npages, groups.size());
+		for (int page = 0; page < npages; page++) {
+			SVGElement g = groups.get(page);
+			Assert.assertEquals("page" + page, g.getId());
+			Assert.assertEquals(nboxes, SVGElement.generateElementList(g, "./svg:rect").size());
+		}
+		Assert.assertEquals(npages * nboxes, SVGRect.extractSelfAndDescendantRects(svg).size());
+		SVGRect rect = (SVGRect) SVGElement.generateElementList(groups.get(1), "./svg:rect").get(1);
+		Assert.assertEquals("7.123", rect.getAttributeValue("x"));
+		Assert.assertEquals("5.5", rect.getAttributeValue("width"));
+		Assert.assertEquals("red", rect.getStroke());
+	}
+}
@@ -0,0 +1,221 @@
+package org.xmlcml.graphics.svg.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+import nu.xom.Text;
+import nu.xom.canonical.Canonicalizer;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.graphics.svg.Fixtures;
+import org.xmlcml.graphics.svg.SVGElement;
+import org.xmlcml.graphics.svg.SVGG;
+import org.xmlcml.graphics.svg.SVGLine;
+import org.xmlcml.graphics.svg.SVGPolyline;
+import org.xmlcml.graphics.svg.SVGText;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.euclid.Transform2;
+import org.xmlcml.xml.XMLUtil;
+
+public class SVGWriterTest {
+	private static final Logger LOG = Logger.getLogger(SVGWriterTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	private static String write(Element element, boolean rawUTF8) throws IOException {
+		StringWriter sw = new StringWriter();
+		SVGWriter writer = new SVGWriter(sw);
+		writer.setRawUTF8(rawUTF8);
+		writer.write(element);
+		writer.flush();
+		return sw.toString();
+	}
+
+	@Test
+	public void testEscaping() throws IOException {
+		Element e = new Element("e");
+		e.addAttribute(new Attribute("a", "x<y & \"z\"\t>\n"));
+		e.appendChild(new Text("1 < 2 && 3 > 2 \"q\" é≠𝐀"));
+		Assert.assertEquals("<e a=\"x&lt;y &amp; &quot;z&quot;&#x9;&gt;&#xA;\">"
+				+ "1 &lt; 2 &amp;&amp; 3 &gt; 2 \"q\" &#233;&#8800;&#119808;</e>", write(e, false));
+		Assert.assertEquals("<e a=\"x&lt;y &amp; &quot;z&quot;&#x9;&gt;&#xA;\">"
+				+ "1 &lt; 2 &amp;&amp; 3 &gt; 2 \"q\" é≠𝐀</e>", write(e, true));
+		Assert.assertEquals(XMLUtil.parseXML(e.toXML()).toXML(), XMLUtil.parseXML(write(e, false)).toXML());
+	}
+
+	@Test
+	public void testRawUTF8Stream() throws IOException {
+		SVGText text = new SVGText(new Real2(1.0, 2.0), "αβ");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		SVGWriter writer = new SVGWriter(baos);
+		writer.setRawUTF8(true);
+		writer.write(text);
+		writer.close();
+		String s = new String(baos.toByteArray(), SVGWriter.UTF_8);
+		Assert.assertTrue(s, s.contains(">αβ</text>"));
+	}
+
+	@Test
+	public void testNamespaces() throws IOException {
+		SVGG g = new SVGG();
+		SVGG inner = new SVGG();
+		inner.addAttribute(new Attribute("id", "t"));
+		g.appendChild(inner);
+		Element foreign = new Element("x:f", "http://example.org/x");
+		foreign.addAttribute(new Attribute("x:a", "http://example.org/x", "1"));
+		Element plain = new Element("p");
+		foreign.appendChild(plain);
+		g.appendChild(foreign);
+		String xml = write(g, false);
+		Assert.assertEquals("<g xmlns=\"http://www.w3.org/2000/svg\"><g id=\"t\"/>"
+				+ "<x:f xmlns:x=\"http://example.org/x\" x:a=\"1\"><p xmlns=\"\"/></x:f></g>", xml);
+		// subtree gets its own declaration
+		Assert.assertEquals("<g xmlns=\"http://www.w3.org/2000/svg\" id=\"t\"/>", write((Element) g.getChild(0), false));
+		assertCanonicallyEqual(g, XMLUtil.parseXML(xml));
+	}
+
+	@Test
+	public void testWriteDouble() throws IOException {
+		Assert.assertEquals("1.235", writeDouble(1.23456, 3));
+		Assert.assertEquals("2.5", writeDouble(2.5, 3));
+		Assert.assertEquals("0", writeDouble(-0.0001, 3));
+		Assert.assertEquals("0", writeDouble(-0.0, 2));
+		Assert.assertEquals("-1.05", writeDouble(-1.0500001, 3));
+		Assert.assertEquals("100", writeDouble(99.9996, 3));
+		Assert.assertEquals("0.001", writeDouble(0.001, 3));
+		Assert.assertEquals("3", writeDouble(3.4, 0));
+		Assert.assertEquals("12345678901234567890", writeDouble(12345678901234567890.0, 2));
+		Assert.assertEquals("NaN", writeDouble(Double.NaN, 2));
+		Assert.assertEquals("-Infinity", writeDouble(Double.NEGATIVE_INFINITY, 2));
+		Random random = new Random(3);
+		for (int i = 0; i < 10000; i++) {
+			double d = (random.nextDouble() - 0.5) * Math.pow(10.0, random.nextInt(8));
+			int places = random.nextInt(6);
+			String s = writeDouble(d, places);
+			// may differ from decimal rounding only by one in the last place (binary ties)
+			BigDecimal expected = new BigDecimal(d).setScale(places, RoundingMode.HALF_UP);
+			Assert.assertTrue(d+" "+places+" "+s, expected.subtract(new BigDecimal(s)).abs().compareTo(BigDecimal.ONE.movePointLeft(places)) < 0);
+			Assert.assertFalse(s, s.endsWith("0") && s.contains("."));
+		}
+		try {
+			writeDouble(1.0, 10);
+			Assert.fail("too many places");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	private static String writeDouble(double d, int places) throws IOException {
+		StringWriter sw = new StringWriter();
+		SVGWriter writer = new SVGWriter(sw);
+		writer.writeDouble(d, places);
+		writer.flush();
+		return sw.toString();
+	}
+
+	@Test
+	public void testRoundedNumbers() throws IOException {
+		Assert.assertEquals("M1.235 2 L3 -4.5 z", writeRounded("M1.23456 2 L3 -4.5 z", 3));
+		Assert.assertEquals("matrix(1,0,0,1,0.33,120000)", writeRounded("matrix(1,0,0,1,0.333333,1.2E5)", 2));
+		Assert.assertEquals("10.5px", writeRounded("10.5001px", 2));
+		// separators implied by sign or second point must survive rounding
+		Assert.assertEquals("M1 0", writeRounded("M1-0.0001", 3));
+		Assert.assertEquals("1 1", writeRounded("0.5.5", 0));
+		Assert.assertEquals("2 .5", writeRounded("1.9999.5", 2));
+		Assert.assertEquals("1-2.35", writeRounded("1-2.3456", 2));
+		Assert.assertEquals("a&amp;b 1.5", writeRounded("a&b 1.50001", 1));
+		Assert.assertEquals("1.23456", writeRounded("1.23456", -1));
+	}
+
+	private static String writeRounded(String value, int places) throws IOException {
+		StringWriter sw = new StringWriter();
+		SVGWriter writer = new SVGWriter(sw);
+		writer.writeRoundedNumbers(value, places);
+		writer.flush();
+		return sw.toString();
+	}
+
+	@Test
+	public void testDecimalPlaces() throws IOException {
+		SVGG g = new SVGG();
+		g.setTransform(new Transform2(new double[]{1.0, 0.0, 1.0 / 3.0, 0.0, 1.0, 2.0 / 3.0, 0.0, 0.0, 1.0}));
+		SVGLine line = new SVGLine(new Real2(1.0 / 3.0, 10.0), new Real2(2.0 / 3.0, 20.123456));
+		line.addAttribute(new Attribute("id", "l0.123456"));
+		g.appendChild(line);
+		SVGPolyline polyline = new SVGPolyline();
+		polyline.addAttribute(new Attribute("points", "0.11111,0.22222 1,2.5"));
+		g.appendChild(polyline);
+		Element foreign = new Element("f", "http://example.org/x");
+		foreign.addAttribute(new Attribute("x", "0.123456"));
+		g.appendChild(foreign);
+		String before = g.toXML();
+		StringWriter sw = new StringWriter();
+		SVGWriter writer = new SVGWriter(sw);
+		writer.setDecimalPlaces(2);
+		Assert.assertEquals(4, writer.getTransformDecimalPlaces());
+		writer.write(g);
+		writer.flush();
+		String xml = sw.toString();
+		Assert.assertTrue(xml, xml.contains("transform=\"matrix(1.0,0.0,0.0,1.0,0.3333,0.6667)\""));
+		Assert.assertTrue(xml, xml.contains("x1=\"0.33\""));
+		Assert.assertTrue(xml, xml.contains("y1=\"10.0\""));
+		Assert.assertTrue(xml, xml.contains("x2=\"0.67\""));
+		Assert.assertTrue(xml, xml.contains("y2=\"20.12\""));
+		Assert.assertTrue(xml, xml.contains("id=\"l0.123456\""));
+		Assert.assertTrue(xml, xml.contains("points=\"0.11,0.22 1,2.5\""));
+		Assert.assertTrue(xml, xml.contains("x=\"0.123456\""));
+		// tree keeps full precision
+		Assert.assertEquals(before, g.toXML());
+		Assert.assertEquals(1.0 / 3.0, line.getXY(0).getX(), 0.0);
+		// same value as SVGLine.format(2)
+		Element rounded = XMLUtil.parseXML(xml).getChildElements().get(0);
+		Assert.assertEquals(line.getXY(1).format(2).getY(), Double.parseDouble(rounded.getAttributeValue("y2")), 0.0);
+	}
+
+	@Test
+	public void testLowLevel() throws IOException {
+		StringWriter sw = new StringWriter();
+		SVGWriter writer = new SVGWriter(sw);
+		writer.startTag("line");
+		writer.attribute("x1", 1.0 / 3.0, 2);
+		writer.attribute("stroke", "red");
+		writer.closeEmptyTag();
+		writer.flush();
+		Assert.assertEquals("<line x1=\"0.33\" stroke=\"red\"/>", sw.toString());
+	}
+
+	@Test
+	public void testLargePages() throws IOException {
+		File[] files = {
+			new File(Fixtures.PATHS_DIR, "scatterplots-1471-2148-11-322-page7.svg"),
+			new File(Fixtures.SVG_DIR, "svgimages/multiple-image-page6.svg"),
+		};
+		for (File file : files) {
+			SVGElement svg = SVGElement.readAndCreateSVG(file);
+			// round trip
+			String xml = write(svg, false);
+			assertCanonicallyEqual(svg, XMLUtil.parseXML(xml));
+		}
+	}
+
+	private static void assertCanonicallyEqual(Element expected, Element actual) throws IOException {
+		Assert.assertEquals(canonicalize(expected), canonicalize(actual));
+	}
+
+	private static String canonicalize(Element element) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new Canonicalizer(baos).write(element);
+		return new String(baos.toByteArray(), SVGWriter.UTF_8);
+	}
+}
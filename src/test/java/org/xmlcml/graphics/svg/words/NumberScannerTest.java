@@ -0,0 +1,142 @@
+package org.xmlcml.graphics.svg.words;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.euclid.Real2;
+import org.xmlcml.graphics.svg.SVGTSpan;
+import org.xmlcml.graphics.svg.SVGText;
+import org.xmlcml.graphics.svg.words.NumberScanner.NumberType;
+import org.xmlcml.xml.XMLConstants;
+
+public class NumberScannerTest {
+	private static final Logger LOG = Logger.getLogger(NumberScannerTest.class);
+	static {
+		LOG.setLevel(Level.DEBUG);
+	}
+
+	@Test
+	public void testInteger() {
+		NumberScanner scanner = new NumberScanner();
+		Assert.assertEquals(NumberType.INTEGER, scanner.scan(" 123 "));
+		Assert.assertEquals(123, scanner.getIntValue());
+		Assert.assertEquals(NumberType.INTEGER, scanner.scan("-45"));
+		Assert.assertEquals(-45, scanner.getIntValue());
+		Assert.assertEquals(NumberType.INTEGER, scanner.scan("\u221245"));
+		Assert.assertEquals(-45, scanner.getIntValue());
+		// too large for int
+		Assert.assertEquals(NumberType.DECIMAL, scanner.scan("12345678901"));
+		Assert.assertEquals(12345678901.0, scanner.getDoubleValue(), 0.0);
+	}
+
+	@Test
+	public void testDecimalAndScientific() {
+		NumberScanner scanner = new NumberScanner();
+		String[] values = {"0.1", "-2.5", ".5", "3.", "1.23E-4", "6.02e23", "-1E+3", "0.000123456789012345678901", "123.456"};
+		for (String value : values) {
+			Assert.assertNotEquals(value, NumberType.NONE, scanner.scan(value));
+			Assert.assertEquals(value, Double.parseDouble(value), scanner.getDoubleValue(), 0.0);
+		}
+		Assert.assertEquals(NumberType.SCIENTIFIC, scanner.scan("1.23E-4"));
+		Assert.assertEquals(NumberType.DECIMAL, scanner.scan("1.5"));
+	}
+
+	@Test
+	public void testLargeMantissaOrPower() {
+		NumberScanner scanner = new NumberScanner();
+		// mantissa >= 2^53 or |power| > 22 cannot be scaled in one rounding step
+		String[] values = {"9007199254740993.5", "123456789012345678E-30", "1.7976931348623157E308",
+				"2.2250738585072014E-308", "4.9E-324", "-8.98846567431158E307", "3.0E-25", "7.0E23"};
+		for (String value : values) {
+			Assert.assertNotEquals(value, NumberType.NONE, scanner.scan(value));
+			Assert.assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+					Double.doubleToLongBits(scanner.getDoubleValue()));
+		}
+	}
+
+	@Test
+	public void testPowerOfTen() {
+		NumberScanner scanner = new NumberScanner();
+		Assert.assertEquals(NumberType.POWER_OF_TEN, scanner.scan("1.5x10^-3"));
+		Assert.assertEquals(1.5e-3, scanner.getDoubleValue(), 1.0e-18);
+		Assert.assertEquals(NumberType.POWER_OF_TEN, scanner.scan("10\u207B\u00B3"));
+		Assert.assertEquals(1.0e-3, scanner.getDoubleValue(), 1.0e-18);
+		Assert.assertEquals(NumberType.POWER_OF_TEN, scanner.scanPowerOfTen("2\u00D710", "5"));
+		Assert.assertEquals(2.0e5, scanner.getDoubleValue(), 0.0);
+		Assert.assertEquals(NumberType.POWER_OF_TEN, scanner.scanPowerOfTen("10", -2));
+		Assert.assertEquals(0.01, scanner.getDoubleValue(), 0.0);
+		Assert.assertEquals(NumberType.NONE, scanner.scanPowerOfTen("12", 3));
+	}
+
+	@Test
+	public void testRejects() {
+		NumberScanner scanner = new NumberScanner();
+		String[] values = {"", " ", "abc", "1.2.3", "-", "1E", "12a", null};
+		for (String value : values) {
+			Assert.assertEquals(value, NumberType.NONE, scanner.scan(value));
+			Assert.assertTrue(value, Double.isNaN(scanner.getDoubleValue()));
+		}
+	}
+
+	@Test
+	public void testTypedNumber() {
+		TypedNumber number = TypedNumber.createNumber(new SVGText(new Real2(1.0, 2.0), "42"));
+		Assert.assertEquals(XMLConstants.XSD_INTEGER, number.getDataType());
+		Assert.assertEquals(42, number.getNumber());
+		number = TypedNumber.createNumber(new SVGText(new Real2(1.0, 2.0), "\u22120.5"));
+		Assert.assertEquals(XMLConstants.XSD_DOUBLE, number.getDataType());
+		Assert.assertEquals(-0.5, number.getNumber().doubleValue(), 0.0);
+		Assert.assertNull(TypedNumber.createNumber(new SVGText(new Real2(1.0, 2.0), "n/a")));
+		number = TypedNumber.createAndParseExponentialForm("3x10", -2);
+		Assert.assertEquals(0.03, number.getNumber().doubleValue(), 1.0e-15);
+	}
+
+	@Test
+	public void testExponentialTSpans() {
+		List<SVGTSpan> tSpans = new ArrayList<SVGTSpan>();
+		tSpans.add(new SVGTSpan(new Real2(10.0, 100.0), "5x10"));
+		tSpans.add(new SVGTSpan(new Real2(30.0, 96.0), "3"));
+		TypedNumber number = TypedNumber.interpretExponentialNotation(tSpans);
+		Assert.assertNotNull(number);
+		Assert.assertEquals(5000.0, number.getNumber().doubleValue(), 0.0);
+		// second span on same baseline is not a superscript
+		tSpans.get(1).setY(100.0);
+		Assert.assertNull(TypedNumber.interpretExponentialNotation(tSpans));
+	}
+
+	/** reused scanner agrees with exception-driven parsing of tick labels.
+	 */
+	@Test
+	public void testSameAsExceptionParsing() {
+		int n = 20000;
+		String[] labels = new String[n];
+		for (int i = 0; i < n; i++) {
+			labels[i] = (i % 3 == 0) ? String.valueOf(i) : (i % 3 == 1) ? String.valueOf(i * 0.25) : "x"+i;
+		}
+		NumberScanner scanner = new NumberScanner();
+		int scanned = 0;
+		for (String label : labels) {
+			if (scanner.scan(label) != NumberType.NONE) {
+				scanned++;
+			}
+		}
+		int parsed = 0;
+		for (String label : labels) {
+			try {
+				Integer.valueOf(label);
+				parsed++;
+			} catch (NumberFormatException e) {
+				try {
+					Double.valueOf(label);
+					parsed++;
+				} catch (NumberFormatException e1) {
+				}
+			}
+		}
+		Assert.assertEquals(parsed, scanned);
+	}
+}